@@ -0,0 +1,417 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+
+/**
+ * A small, fixed set of long-lived SNMP4J sessions that are shared by all
+ * agents.
+ *
+ * Normally every walk and every get opens its own UDP socket and SNMP4J
+ * dispatcher thread and closes them again when it is done.  When the pool is
+ * enabled by setting <code>org.opennms.snmp.snmp4j.sessionPool.size</code>
+ * to a positive number, requests are instead sent through one of that many
+ * sessions, picked by agent address.  Every session keeps listening for the
+ * lifetime of the JVM and SNMP4J matches the responses to their requests by
+ * request ID, so any number of requests to any number of agents can be
+ * outstanding on one session.
+ *
+ * The sessions are created with {@link Snmp4JAgentConfig#createSnmpSession()}
+ * the first time they are needed, just like the sessions of their own that
+ * agents use without the pool.  SNMPv3 agents share one session per set of
+ * user credentials, since the user based security model of that session
+ * holds the agent's user.  At most
+ * <code>org.opennms.snmp.snmp4j.sessionPool.maxV3Sessions</code> of these
+ * are kept; the least recently used one is closed when another is needed,
+ * which fails any requests that are still outstanding on it.
+ *
+ * The pool counts requests, responses, timeouts and errors and keeps track
+ * of the number of requests in flight.  These are available through the
+ * <code>OpenNMS:Name=Snmp4JSessionPool</code> MBean.
+ */
+public final class Snmp4JSessionPool implements Snmp4JSessionPoolMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    /**
+     * The number of shared sessions, 0 (the default) disables the pool.
+     */
+    public static final String SIZE_PROPERTY = "org.opennms.snmp.snmp4j.sessionPool.size";
+
+    /**
+     * The number of SNMPv3 sessions kept open, one per set of credentials.
+     */
+    public static final String MAX_V3_SESSIONS_PROPERTY = "org.opennms.snmp.snmp4j.sessionPool.maxV3Sessions";
+
+    /** Constant <code>DEFAULT_MAX_V3_SESSIONS=16</code> */
+    public static final int DEFAULT_MAX_V3_SESSIONS = 16;
+
+    public static final String OBJECT_NAME = "OpenNMS:Name=Snmp4JSessionPool";
+
+    private static Snmp4JSessionPool s_instance = null;
+
+    private static boolean s_initialized = false;
+
+    private final Snmp[] m_sessions;
+
+    private final Map<String, Snmp> m_v3Sessions;
+
+    private final AtomicInteger m_inFlight = new AtomicInteger();
+
+    private final AtomicInteger m_peakInFlight = new AtomicInteger();
+
+    private final AtomicLong m_requests = new AtomicLong();
+
+    private final AtomicLong m_responses = new AtomicLong();
+
+    private final AtomicLong m_timeouts = new AtomicLong();
+
+    private final AtomicLong m_errors = new AtomicLong();
+
+    /**
+     * Creates a pool; the sessions themselves are created when they are
+     * first used.
+     *
+     * @param size the number of sessions shared by SNMPv1 and SNMPv2c agents
+     */
+    Snmp4JSessionPool(final int size) {
+        this(size, Integer.getInteger(MAX_V3_SESSIONS_PROPERTY, DEFAULT_MAX_V3_SESSIONS));
+    }
+
+    /**
+     * Creates a pool; the sessions themselves are created when they are
+     * first used.
+     *
+     * @param size the number of sessions shared by SNMPv1 and SNMPv2c agents
+     * @param maxV3Sessions the number of SNMPv3 sessions kept open
+     */
+    Snmp4JSessionPool(final int size, final int maxV3Sessions) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        if (maxV3Sessions < 1) {
+            throw new IllegalArgumentException("maxV3Sessions must be at least 1");
+        }
+        m_sessions = new Snmp[size];
+        m_v3Sessions = new LinkedHashMap<String, Snmp>(16, 0.75f, true) {
+            private static final long serialVersionUID = -6202329476271227463L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Snmp> eldest) {
+                if (size() > maxV3Sessions) {
+                    LOG.debug("Closing the least recently used of {} SNMPv3 sessions.", maxV3Sessions);
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the shared pool, creating it the first time it is needed.
+     *
+     * @return the pool, or null if it is disabled or could not be created
+     */
+    public static synchronized Snmp4JSessionPool getInstance() {
+        if (s_initialized) {
+            return s_instance;
+        }
+        s_initialized = true;
+
+        final int size = Integer.getInteger(SIZE_PROPERTY, 0);
+        if (size <= 0) {
+            return null;
+        }
+
+        s_instance = new Snmp4JSessionPool(size);
+        LOG.info("Sending SNMP requests through {} shared sessions.", size);
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(s_instance, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            LOG.warn("Unable to register {}", OBJECT_NAME, e);
+        }
+        return s_instance;
+    }
+
+    /**
+     * Returns the pool to use for an agent.
+     *
+     * @param agentConfig the agent to send requests to
+     * @return the pool, or null if requests to this agent should use a
+     *         session of their own
+     */
+    static Snmp4JSessionPool getPool(final Snmp4JAgentConfig agentConfig) {
+        return getInstance();
+    }
+
+    /**
+     * Send a request and wait for its response.
+     *
+     * @param agentConfig the agent
+     * @param pdu the request
+     * @return the response event, whose response is null on a timeout
+     * @throws IOException if the request could not be sent
+     */
+    public ResponseEvent send(final Snmp4JAgentConfig agentConfig, final PDU pdu) throws IOException {
+        final Snmp session = getSession(agentConfig);
+        final Target target = agentConfig.getTarget();
+        started();
+        ResponseEvent event = null;
+        try {
+            event = session.send(pdu, target);
+            return event;
+        } finally {
+            completed(event);
+        }
+    }
+
+    /**
+     * Send a request, the response (or timeout) is passed to the listener.
+     *
+     * @param agentConfig the agent
+     * @param pdu the request
+     * @param target the target to send the request to, from
+     *        {@link Snmp4JAgentConfig#getTarget()}
+     * @param listener the listener to call with the response
+     * @throws IOException if the request could not be sent
+     */
+    public void send(final Snmp4JAgentConfig agentConfig, final PDU pdu, final Target target, final ResponseListener listener) throws IOException {
+        final Snmp session = getSession(agentConfig);
+        started();
+        try {
+            session.send(pdu, target, null, new CountingResponseListener(session, listener));
+        } catch (final IOException e) {
+            completed(null);
+            throw e;
+        } catch (final RuntimeException e) {
+            completed(null);
+            throw e;
+        }
+    }
+
+    /**
+     * Close all of the sessions.
+     */
+    synchronized void close() {
+        for (int i = 0; i < m_sessions.length; i++) {
+            close(m_sessions[i]);
+            m_sessions[i] = null;
+        }
+        for (final Snmp session : m_v3Sessions.values()) {
+            close(session);
+        }
+        m_v3Sessions.clear();
+    }
+
+    private static void close(final Snmp session) {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (final IOException e) {
+                LOG.warn("Error closing shared SNMP session", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the session to send requests to the agent through, creating
+     * it if it is the first request that uses it.  The session is created
+     * and bound without holding the pool's lock, so other requests are not
+     * held up by it; if another thread created the same session meanwhile,
+     * that one is used and the new one is closed again.
+     *
+     * @param agentConfig the agent
+     * @return a listening session
+     * @throws IOException if the session could not be created
+     */
+    Snmp getSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final String key = agentConfig.isSnmpV3() ? getCredentialsKey(agentConfig) : null;
+        final int index;
+        if (key == null) {
+            final int hash = agentConfig.getInetAddress() == null ? 0 : agentConfig.getInetAddress().hashCode();
+            index = (hash & Integer.MAX_VALUE) % m_sessions.length;
+        } else {
+            index = -1;
+        }
+
+        synchronized (this) {
+            final Snmp session = key == null ? m_sessions[index] : m_v3Sessions.get(key);
+            if (session != null) {
+                return session;
+            }
+        }
+
+        final Snmp created = createSession(agentConfig);
+        final Snmp existing;
+        synchronized (this) {
+            existing = key == null ? m_sessions[index] : m_v3Sessions.get(key);
+            if (existing == null) {
+                if (key == null) {
+                    m_sessions[index] = created;
+                } else {
+                    m_v3Sessions.put(key, created);
+                }
+                return created;
+            }
+        }
+        close(created);
+        return existing;
+    }
+
+    private static Snmp createSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final Snmp session = agentConfig.createSnmpSession();
+        try {
+            session.listen();
+        } catch (final IOException e) {
+            close(session);
+            throw e;
+        }
+        return session;
+    }
+
+    private static String getCredentialsKey(final Snmp4JAgentConfig agentConfig) {
+        return agentConfig.getSecurityName() + "/" + agentConfig.getAuthProtocol() + "/" + agentConfig.getAuthPassPhrase() + "/" + agentConfig.getPrivProtocol() + "/" + agentConfig.getPrivPassPhrase();
+    }
+
+    private void started() {
+        m_requests.incrementAndGet();
+        final int inFlight = m_inFlight.incrementAndGet();
+        int peak;
+        while (inFlight > (peak = m_peakInFlight.get())) {
+            if (m_peakInFlight.compareAndSet(peak, inFlight)) {
+                break;
+            }
+        }
+    }
+
+    private void completed(final ResponseEvent event) {
+        m_inFlight.decrementAndGet();
+        if (event == null) {
+            m_errors.incrementAndGet();
+        } else if (event.getResponse() != null) {
+            m_responses.incrementAndGet();
+        } else if (event.getError() == null) {
+            m_timeouts.incrementAndGet();
+        } else {
+            m_errors.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized int getSessionCount() {
+        int count = m_v3Sessions.size();
+        for (final Snmp session : m_sessions) {
+            if (session != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getInFlightRequests() {
+        return m_inFlight.get();
+    }
+
+    @Override
+    public int getPeakInFlightRequests() {
+        return m_peakInFlight.get();
+    }
+
+    @Override
+    public long getRequestsSent() {
+        return m_requests.get();
+    }
+
+    @Override
+    public long getResponsesReceived() {
+        return m_responses.get();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return m_timeouts.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return m_errors.get();
+    }
+
+    /**
+     * Counts the outcome of an asynchronous request before passing it on.
+     */
+    private final class CountingResponseListener implements ResponseListener {
+
+        private final Snmp m_session;
+
+        private final ResponseListener m_delegate;
+
+        private final AtomicBoolean m_completed = new AtomicBoolean(false);
+
+        public CountingResponseListener(final Snmp session, final ResponseListener delegate) {
+            m_session = session;
+            m_delegate = delegate;
+        }
+
+        @Override
+        public void onResponse(final ResponseEvent event) {
+            // the request has to be cancelled with the listener it was sent
+            // with, otherwise SNMP4J keeps it around forever
+            m_session.cancel(event.getRequest(), this);
+
+            if (m_completed.compareAndSet(false, true)) {
+                completed(event);
+            }
+            m_delegate.onResponse(event);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+/**
+ * Statistics of the shared SNMP4J sessions.
+ *
+ * @see Snmp4JSessionPool
+ */
+public interface Snmp4JSessionPoolMBean {
+
+    /**
+     * @return the number of shared sessions (UDP transports) created so far
+     */
+    int getSessionCount();
+
+    /**
+     * @return the number of requests waiting for a response or a timeout
+     */
+    int getInFlightRequests();
+
+    /**
+     * @return the highest number of requests that were in flight at the same time
+     */
+    int getPeakInFlightRequests();
+
+    /**
+     * @return the number of requests sent through the shared sessions
+     */
+    long getRequestsSent();
+
+    /**
+     * @return the number of requests that received a response
+     */
+    long getResponsesReceived();
+
+    /**
+     * @return the number of requests that timed out after all retries
+     */
+    long getTimeouts();
+
+    /**
+     * @return the number of requests that failed with an error
+     */
+    long getErrors();
+}
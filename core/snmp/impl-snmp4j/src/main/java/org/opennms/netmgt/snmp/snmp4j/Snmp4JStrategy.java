@@ -246,6 +246,19 @@ public class Snmp4JStrategy implements SnmpStrategy {
      * @return
      */
     protected SnmpValue[] send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse) {
+        final Snmp4JSessionPool pool = expectResponse ? Snmp4JSessionPool.getPool(agentConfig) : null;
+        if (pool != null) {
+            try {
+                return processResponse(agentConfig, pool.send(agentConfig, pdu));
+            } catch (final IOException e) {
+                LOG.error("send: error during SNMP operation", e);
+                return new SnmpValue[] { null };
+            } catch (final RuntimeException e) {
+                LOG.error("send: unexpected error during SNMP operation", e);
+                return new SnmpValue[] { null };
+            }
+        }
+
         Snmp session;
 
         try {
@@ -160,7 +160,11 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
         public void onResponse(ResponseEvent responseEvent) {
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            // (requests sent through the shared session pool are cancelled by the pool)
+            final Snmp session = m_session;
+            if (session != null) {
+                session.cancel(responseEvent.getRequest(), this);
+            }
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
@@ -185,6 +189,7 @@ public class Snmp4JWalker extends SnmpWalker {
     private final Target m_tgt;
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
+    private final Snmp4JSessionPool m_pool;
 
     public Snmp4JWalker(Snmp4JAgentConfig agentConfig, String name, CollectionTracker tracker) {
         super(agentConfig.getInetAddress(), name, agentConfig.getMaxVarsPerPdu(), agentConfig.getMaxRepetitions(), tracker);
@@ -193,6 +198,7 @@ public class Snmp4JWalker extends SnmpWalker {
         
         m_tgt = agentConfig.getTarget();
         m_listener = new Snmp4JResponseListener();
+        m_pool = Snmp4JSessionPool.getPool(agentConfig);
     }
     
         @Override
@@ -213,6 +219,12 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws IOException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
+        if (m_pool != null) {
+            LOG.debug("Sending tracker pdu of size {} through the shared session pool", snmp4JPduBuilder.getPdu().size());
+            m_pool.send(m_agentConfig, snmp4JPduBuilder.getPdu(), m_tgt, m_listener);
+            return;
+        }
+
         if (m_session == null) {
             m_session = m_agentConfig.createSnmpSession();
             m_session.listen();
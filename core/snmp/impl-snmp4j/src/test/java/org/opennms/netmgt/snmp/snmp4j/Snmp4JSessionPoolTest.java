@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpConfiguration;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+public class Snmp4JSessionPoolTest {
+
+    private Snmp4JSessionPool m_pool;
+
+    @Before
+    public void setUp() {
+        m_pool = new Snmp4JSessionPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        m_pool.close();
+    }
+
+    @Test
+    public void testSessionsAreCreatedOnFirstUse() throws Exception {
+        assertEquals(0, m_pool.getSessionCount());
+
+        final Snmp4JAgentConfig agent = createAgent("192.168.1.1", SnmpConfiguration.VERSION2C, null);
+        final Snmp session = m_pool.getSession(agent);
+        assertNotNull(session);
+        assertEquals(1, m_pool.getSessionCount());
+
+        assertSame(session, m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION2C, null)));
+        assertEquals(1, m_pool.getSessionCount());
+    }
+
+    @Test
+    public void testV3AgentsShareOneSessionPerUser() throws Exception {
+        final Snmp opennms = m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION3, "opennms"));
+        assertSame(opennms, m_pool.getSession(createAgent("192.168.1.2", SnmpConfiguration.VERSION3, "opennms")));
+
+        final Snmp other = m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION3, "other"));
+        assertNotSame(opennms, other);
+
+        // v1 and v2c agents never use the session of a v3 user
+        final Snmp v2c = m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION2C, null));
+        assertNotSame(opennms, v2c);
+        assertNotSame(other, v2c);
+
+        assertEquals(3, m_pool.getSessionCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedV3SessionIsClosed() throws Exception {
+        m_pool.close();
+        m_pool = new Snmp4JSessionPool(2, 2);
+
+        final Snmp first = m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION3, "first"));
+        final Snmp second = m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION3, "second"));
+        assertSame(first, m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION3, "first")));
+
+        // "second" is the least recently used, so it makes room for "third"
+        m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION3, "third"));
+        assertEquals(2, m_pool.getSessionCount());
+        assertSame(first, m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION3, "first")));
+        assertNotSame(second, m_pool.getSession(createAgent("192.168.1.1", SnmpConfiguration.VERSION3, "second")));
+        assertEquals(2, m_pool.getSessionCount());
+    }
+
+    @Test
+    public void testTimeoutIsCounted() throws Exception {
+        // a port that is bound, so nothing else answers, but never responds
+        final DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        try {
+            final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getByName("127.0.0.1"));
+            config.setPort(socket.getLocalPort());
+            config.setVersion(SnmpConfiguration.VERSION2C);
+            config.setTimeout(100);
+            config.setRetries(0);
+            final Snmp4JAgentConfig agent = new Snmp4JAgentConfig(config);
+
+            final PDU pdu = agent.createPdu(PDU.GET);
+            pdu.add(new VariableBinding(new OID(".1.3.6.1.2.1.1.1.0")));
+
+            final ResponseEvent event = m_pool.send(agent, pdu);
+            assertNull(event.getResponse());
+        } finally {
+            socket.close();
+        }
+
+        assertEquals(1, m_pool.getRequestsSent());
+        assertEquals(0, m_pool.getResponsesReceived());
+        assertEquals(1, m_pool.getTimeouts());
+        assertEquals(0, m_pool.getErrors());
+        assertEquals(0, m_pool.getInFlightRequests());
+        assertEquals(1, m_pool.getPeakInFlightRequests());
+    }
+
+    private static Snmp4JAgentConfig createAgent(final String address, final int version, final String securityName) throws Exception {
+        final SnmpAgentConfig config = new SnmpAgentConfig(InetAddress.getByName(address));
+        config.setVersion(version);
+        if (securityName != null) {
+            config.setSecurityName(securityName);
+            config.setSecurityLevel(SnmpConfiguration.AUTH_NOPRIV);
+            config.setAuthProtocol("MD5");
+            config.setAuthPassPhrase("0p3nNMSv3");
+        }
+        return new Snmp4JAgentConfig(config);
+    }
+}
@@ -44,6 +44,7 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 
+import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.features.topology.api.GraphContainer;
 import org.opennms.features.topology.api.OperationContext;
 import org.opennms.features.topology.api.support.VertexHopGraphProvider;
@@ -236,6 +237,12 @@ public class LinkdTopologyProvider extends AbstractTopologyProvider implements G
      */
     private static final DecimalFormat s_noDigitsAfterDecimal = new DecimalFormat("0");
 
+    /**
+     * The most node IDs to put in one IN restriction; PostgreSQL allows at
+     * most 32767 bind parameters in a statement.
+     */
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
     /**
      * Do not use directly. Call {@link #getNodeStatusString(org.opennms.netmgt.model.OnmsNode.NodeType)}
      * getInterfaceStatusMap} instead.
@@ -278,6 +285,8 @@ public class LinkdTopologyProvider extends AbstractTopologyProvider implements G
 
     private FilterManager m_filterManager;
 
+    private long m_lastLoadTime = -1;
+
     public String getConfigurationFile() {
         return m_configurationFile;
     }
@@ -330,6 +339,14 @@ public class LinkdTopologyProvider extends AbstractTopologyProvider implements G
         return m_filterManager;
     }
 
+    /**
+     * @return how long the last {@link #load(String)} took in milliseconds,
+     *         or -1 if the topology was never loaded
+     */
+    public long getLastLoadTime() {
+        return m_lastLoadTime;
+    }
+
     /**
      * Used as an init-method in the OSGi blueprint
      * @throws JAXBException 
@@ -368,55 +385,69 @@ public class LinkdTopologyProvider extends AbstractTopologyProvider implements G
         if (filename != null) {
             LoggerFactory.getLogger(LinkdTopologyProvider.class).warn("Filename that was specified for linkd topology will be ignored: " + filename + ", using " + m_configurationFile + " instead");
         }
+        final long startTime = System.currentTimeMillis();
         log("loadtopology: resetContainer ");
         resetContainer();
 
-        for (DataLinkInterface link: m_dataLinkInterfaceDao.findAll()) {
+        // Load the links, their nodes and the nodes' interfaces up front with
+        // a few set-based queries instead of several queries per link.
+        final List<DataLinkInterface> links = m_dataLinkInterfaceDao.findAll();
+        final Set<Integer> linkedNodeIds = new HashSet<Integer>();
+        for (DataLinkInterface link: links) {
+            linkedNodeIds.add(link.getNode().getId());
+            linkedNodeIds.add(link.getNodeParentId());
+        }
+
+        log("loadtopology: adding nodes without links: " + isAddNodeWithoutLink());
+        final Map<Integer, OnmsNode> nodes = new LinkedHashMap<Integer, OnmsNode>();
+        for (OnmsNode node: isAddNodeWithoutLink() ? getAllNodesNoACL() : getNodesNoACL(linkedNodeIds)) {
+            nodes.put(node.getId(), node);
+        }
+        final Map<Integer, OnmsIpInterface> addresses = getAddresses(nodes.keySet(), isAddNodeWithoutLink());
+        final Map<Integer, Map<Integer, OnmsSnmpInterface>> snmpInterfaces = getSnmpInterfaces(linkedNodeIds);
+
+        for (DataLinkInterface link: links) {
             log("loadtopology: parsing link: " + link.getDataLinkInterfaceId());
 
-            OnmsNode node = m_nodeDao.get(link.getNode().getId());
+            OnmsNode node = getNode(nodes, link.getNode().getId());
+            OnmsNode parentNode = getNode(nodes, link.getNodeParentId());
+            if (node == null || parentNode == null) {
+                LoggerFactory.getLogger(LinkdTopologyProvider.class).warn("Skipping link {}: node {} or parent node {} does not exist", link.getDataLinkInterfaceId(), link.getNode().getId(), link.getNodeParentId());
+                continue;
+            }
+
             log("loadtopology: found source node: " + node.getLabel());
             String sourceId = node.getNodeId();
             Vertex source = getVertex(getVertexNamespace(), sourceId);
             if (source == null) {
                 log("loadtopology: adding source node as vertex: " + node.getLabel());
-                source = getVertex(node);
+                source = getVertex(node, addresses.get(node.getId()));
                 addVertices(source);
             }
 
-            OnmsNode parentNode = m_nodeDao.get(link.getNodeParentId());
             log("loadtopology: found target node: " + parentNode.getLabel());
             String targetId = parentNode.getNodeId();
             Vertex target = getVertex(getVertexNamespace(), targetId);
             if (target == null) {
                 log("loadtopology: adding target as vertex: " + parentNode.getLabel());
-                target = getVertex(parentNode);
+                target = getVertex(parentNode, addresses.get(parentNode.getId()));
                 addVertices(target);
             }
             
             // Create a new edge that connects the vertices
             // TODO: Make sure that all properties are set on this object
             AbstractEdge edge = connectVertices(link.getDataLinkInterfaceId(), source, target); 
-            edge.setTooltipText(getEdgeTooltipText(link, source, target));
+            edge.setTooltipText(getEdgeTooltipText(link, source, target, snmpInterfaces));
         }
         
-        log("loadtopology: adding nodes without links: " + isAddNodeWithoutLink());
         if (isAddNodeWithoutLink()) {
-
-            List<OnmsNode> allNodes;
-            allNodes = getAllNodesNoACL();
-
-            for (OnmsNode onmsnode: allNodes) {
+            for (OnmsNode onmsnode: nodes.values()) {
                 String nodeId = onmsnode.getNodeId();
                 if (getVertex(getVertexNamespace(), nodeId) == null) {
                     log("loadtopology: adding link-less node: " + onmsnode.getLabel());
-                    addVertices(getVertex(onmsnode));
+                    addVertices(getVertex(onmsnode, addresses.get(onmsnode.getId())));
                 }
             }
-
-
-
-
         }
         
         File configFile = new File(m_configurationFile);
@@ -470,15 +501,25 @@ public class LinkdTopologyProvider extends AbstractTopologyProvider implements G
         log("Found " + getGroups().size() + " groups");        
         log("Found " + getVerticesWithoutGroups().size() + " vertices");
         log("Found " + getEdges().size() + " edges");
+
+        m_lastLoadTime = System.currentTimeMillis() - startTime;
+        LoggerFactory.getLogger(LinkdTopologyProvider.class).info("loadtopology: loaded {} vertices and {} edges in {} ms", getVerticesWithoutGroups().size(), getEdges().size(), m_lastLoadTime);
     }
 
     private List<OnmsNode> getAllNodesNoACL() {
-        if(getFilterManager().isEnabled()){
+        return getNodesNoACL(null);
+    }
+
+    /**
+     * @param nodeIds the nodes to get, or null for all nodes
+     */
+    private List<OnmsNode> getNodesNoACL(final Collection<Integer> nodeIds) {
+        if(getFilterManager() != null && getFilterManager().isEnabled()){
             String[] userGroups = getFilterManager().getAuthorizationGroups();
             List<OnmsNode> nodeList = null;
             try{
                 getFilterManager().disableAuthorizationFilter();
-                nodeList = m_nodeDao.findAll();
+                nodeList = findNodes(nodeIds);
 
             } finally {
                 // Make sure that we re-enable the authorization filter
@@ -488,14 +529,55 @@ public class LinkdTopologyProvider extends AbstractTopologyProvider implements G
             }
             return nodeList != null ? nodeList : Collections.<OnmsNode>emptyList();
         } else {
+            return findNodes(nodeIds);
+        }
+    }
+
+    private List<OnmsNode> findNodes(final Collection<Integer> nodeIds) {
+        if (nodeIds == null) {
             return m_nodeDao.findAll();
+        } else if (nodeIds.isEmpty()) {
+            return Collections.<OnmsNode>emptyList();
+        }
+        final List<OnmsNode> nodes = new ArrayList<OnmsNode>(nodeIds.size());
+        for (List<Integer> chunk : partition(nodeIds)) {
+            final CriteriaBuilder builder = new CriteriaBuilder(OnmsNode.class);
+            builder.in("id", chunk);
+            nodes.addAll(m_nodeDao.findMatching(builder.toCriteria()));
         }
+        return nodes;
+    }
 
+    /**
+     * Splits the IDs into lists of at most {@link #MAX_IDS_PER_QUERY}, so
+     * that an IN restriction never exceeds the number of bind parameters
+     * the database allows in one statement.
+     */
+    private static List<List<Integer>> partition(final Collection<Integer> ids) {
+        final List<Integer> idList = new ArrayList<Integer>(ids);
+        final List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+        for (int i = 0; i < idList.size(); i += MAX_IDS_PER_QUERY) {
+            chunks.add(idList.subList(i, Math.min(i + MAX_IDS_PER_QUERY, idList.size())));
+        }
+        return chunks;
+    }
 
+    /**
+     * Returns the node from the bulk-loaded nodes, falling back to the
+     * database for a node that was not part of them.
+     */
+    private OnmsNode getNode(final Map<Integer, OnmsNode> nodes, final Integer nodeId) {
+        OnmsNode node = nodes.get(nodeId);
+        if (node == null) {
+            node = m_nodeDao.get(nodeId);
+            if (node != null) {
+                nodes.put(nodeId, node);
+            }
+        }
+        return node;
     }
 
-    private AbstractVertex getVertex(OnmsNode onmsnode) {
-        OnmsIpInterface ip = getAddress(onmsnode);
+    private AbstractVertex getVertex(OnmsNode onmsnode, OnmsIpInterface ip) {
         AbstractVertex vertex = new SimpleLeafVertex(TOPOLOGY_NAMESPACE_LINKD, onmsnode.getNodeId(), 0, 0);
         vertex.setIconKey(getIconName(onmsnode));
         vertex.setLabel(onmsnode.getLabel());
@@ -505,26 +587,100 @@ public class LinkdTopologyProvider extends AbstractTopologyProvider implements G
         return vertex;
     }
 
-    private OnmsIpInterface getAddress(OnmsNode node) {
-        //OnmsIpInterface ip = node.getPrimaryInterface();
-        OnmsIpInterface ip = m_ipInterfaceDao.findPrimaryInterfaceByNodeId(node.getId());
-        if ( ip == null) {
-//            for (OnmsIpInterface iterip: node.getIpInterfaces()) {
-            for (OnmsIpInterface iterip: m_ipInterfaceDao.findByNodeId(node.getId())) {
-                ip = iterip;
-                break;
+    /**
+     * Returns the address to show for each node: the most recently scanned
+     * primary SNMP interface like
+     * {@link IpInterfaceDao#findPrimaryInterfaceByNodeId(Integer)}, or any
+     * interface if the node has no primary one.
+     *
+     * @param nodeIds the nodes to get the addresses of
+     * @param allNodes whether <code>nodeIds</code> holds every node, in
+     *        which case the primary interfaces are not filtered by node
+     */
+    private Map<Integer, OnmsIpInterface> getAddresses(final Collection<Integer> nodeIds, final boolean allNodes) {
+        final Map<Integer, OnmsIpInterface> addresses = new HashMap<Integer, OnmsIpInterface>();
+        if (nodeIds.isEmpty()) {
+            return addresses;
+        }
+
+        if (allNodes) {
+            final CriteriaBuilder builder = new CriteriaBuilder(OnmsIpInterface.class);
+            builder.alias("node", "node");
+            builder.eq("isSnmpPrimary", PrimaryType.PRIMARY);
+            builder.orderBy("ipLastCapsdPoll").desc();
+            addFirstInterfaces(addresses, m_ipInterfaceDao.findMatching(builder.toCriteria()));
+        } else {
+            for (List<Integer> chunk : partition(nodeIds)) {
+                final CriteriaBuilder builder = new CriteriaBuilder(OnmsIpInterface.class);
+                builder.alias("node", "node");
+                builder.in("node.id", chunk);
+                builder.eq("isSnmpPrimary", PrimaryType.PRIMARY);
+                builder.orderBy("ipLastCapsdPoll").desc();
+                addFirstInterfaces(addresses, m_ipInterfaceDao.findMatching(builder.toCriteria()));
+            }
+        }
+
+        final Set<Integer> withoutPrimary = new HashSet<Integer>(nodeIds);
+        withoutPrimary.removeAll(addresses.keySet());
+        for (List<Integer> chunk : partition(withoutPrimary)) {
+            final CriteriaBuilder builder = new CriteriaBuilder(OnmsIpInterface.class);
+            builder.alias("node", "node");
+            builder.in("node.id", chunk);
+            addFirstInterfaces(addresses, m_ipInterfaceDao.findMatching(builder.toCriteria()));
+        }
+        return addresses;
+    }
+
+    private static void addFirstInterfaces(final Map<Integer, OnmsIpInterface> addresses, final List<OnmsIpInterface> ipInterfaces) {
+        for (OnmsIpInterface ip : ipInterfaces) {
+            final Integer nodeId = ip.getNode().getId();
+            if (!addresses.containsKey(nodeId)) {
+                addresses.put(nodeId, ip);
             }
         }
-        return ip;
+    }
+
+    /**
+     * Returns the SNMP interfaces of the nodes, by node ID and ifIndex.
+     */
+    private Map<Integer, Map<Integer, OnmsSnmpInterface>> getSnmpInterfaces(final Collection<Integer> nodeIds) {
+        final Map<Integer, Map<Integer, OnmsSnmpInterface>> snmpInterfaces = new HashMap<Integer, Map<Integer, OnmsSnmpInterface>>();
+        if (nodeIds.isEmpty()) {
+            return snmpInterfaces;
+        }
+
+        for (List<Integer> chunk : partition(nodeIds)) {
+            final CriteriaBuilder builder = new CriteriaBuilder(OnmsSnmpInterface.class);
+            builder.alias("node", "node");
+            builder.in("node.id", chunk);
+            for (OnmsSnmpInterface snmpInterface : m_snmpInterfaceDao.findMatching(builder.toCriteria())) {
+                if (snmpInterface.getIfIndex() == null) {
+                    continue;
+                }
+                final Integer nodeId = snmpInterface.getNode().getId();
+                Map<Integer, OnmsSnmpInterface> nodeInterfaces = snmpInterfaces.get(nodeId);
+                if (nodeInterfaces == null) {
+                    nodeInterfaces = new HashMap<Integer, OnmsSnmpInterface>();
+                    snmpInterfaces.put(nodeId, nodeInterfaces);
+                }
+                nodeInterfaces.put(snmpInterface.getIfIndex(), snmpInterface);
+            }
+        }
+        return snmpInterfaces;
+    }
+
+    private static OnmsSnmpInterface getSnmpInterface(final Map<Integer, Map<Integer, OnmsSnmpInterface>> snmpInterfaces, final Integer nodeId, final Integer ifIndex) {
+        final Map<Integer, OnmsSnmpInterface> nodeInterfaces = snmpInterfaces.get(nodeId);
+        return nodeInterfaces == null ? null : nodeInterfaces.get(ifIndex);
     }
     
 
     private String getEdgeTooltipText(DataLinkInterface link,
-            Vertex source, Vertex target) {
+            Vertex source, Vertex target, Map<Integer, Map<Integer, OnmsSnmpInterface>> snmpInterfaces) {
         StringBuffer tooltipText = new StringBuffer();
 
-        OnmsSnmpInterface sourceInterface = m_snmpInterfaceDao.findByNodeIdAndIfIndex(Integer.parseInt(source.getId()), link.getIfIndex());
-        OnmsSnmpInterface targetInterface = m_snmpInterfaceDao.findByNodeIdAndIfIndex(Integer.parseInt(target.getId()), link.getParentIfIndex());
+        OnmsSnmpInterface sourceInterface = getSnmpInterface(snmpInterfaces, Integer.parseInt(source.getId()), link.getIfIndex());
+        OnmsSnmpInterface targetInterface = getSnmpInterface(snmpInterfaces, Integer.parseInt(target.getId()), link.getParentIfIndex());
         
         tooltipText.append(HTML_TOOLTIP_TAG_OPEN);
         if (sourceInterface != null && targetInterface != null
@@ -664,13 +820,13 @@ public class LinkdTopologyProvider extends AbstractTopologyProvider implements G
             //Get All nodes when called should filter with ACL
             List<OnmsNode> onmsNodes = m_nodeDao.findAll();
 
-            //Transform the onmsNodes list to a list of Ids
-            final List<Integer> nodes = Lists.transform(onmsNodes, new Function<OnmsNode, Integer>() {
+            //Transform the onmsNodes list to a set of Ids
+            final Set<Integer> nodes = new HashSet<Integer>(Lists.transform(onmsNodes, new Function<OnmsNode, Integer>() {
                 @Override
                 public Integer apply(OnmsNode node) {
                     return node.getId();
                 }
-            });
+            }));
 
 
             //Filter out the nodes that are not viewable by the user.
@@ -129,6 +129,13 @@ public class LinkdTopologyProviderTest {
 		m_databasePopulator.check(m_topologyProvider);
 	}
 
+	@Test
+	public void testLoadUsesBulkLoadedAddresses() {
+		assertTrue(m_topologyProvider.getLastLoadTime() >= 0);
+		assertEquals("192.168.1.1", m_topologyProvider.getVertex(m_topologyProvider.getVertexNamespace(), "1").getIpAddress());
+		assertEquals("192.168.2.1", m_topologyProvider.getVertex(m_topologyProvider.getVertexNamespace(), "2").getIpAddress());
+	}
+
 	@Test
 	public void testSave() {
 		m_topologyProvider.setConfigurationFile("target/test-map.xml");
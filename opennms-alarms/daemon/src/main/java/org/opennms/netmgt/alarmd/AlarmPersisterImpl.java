@@ -28,6 +28,20 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.model.OnmsAlarm;
@@ -37,22 +51,152 @@ import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.UpdateField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
 /**
  * Singleton to persist OnmsAlarms.
  *
+ * <p>When the <code>org.opennms.alarmd.reductionWindow</code> property is set
+ * to a number of milliseconds, events that reduce onto a recently seen
+ * ("hot") alarm are not written one at a time.  They are queued per
+ * reduction key and every window the queued counter, last event and event
+ * to alarm updates are flushed in a single transaction.  The hot alarms are
+ * kept in a bounded, least recently used cache whose size is set by
+ * <code>org.opennms.alarmd.hotAlarmCacheSize</code>.  Events with update
+ * fields, events for reduction keys that are not in the cache, and events
+ * that would queue more than <code>org.opennms.alarmd.maxPendingEvents</code>
+ * events for one key are always persisted immediately.</p>
+ *
+ * <p>{@link #persist(Event)} returns null for queued events.  The alarm as
+ * written by the flush is passed to the {@link AlarmReductionListener}, if
+ * one is set, once the flush has committed.  A reduction key that is being
+ * flushed is never written by another thread until that flush is done, and
+ * a key written by {@link #persist(Event)} is not flushed until the
+ * transaction that persist ran in has completed.</p>
+ *
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  * @version $Id: $
  */
-public class AlarmPersisterImpl implements AlarmPersister {
+public class AlarmPersisterImpl implements AlarmPersister, InitializingBean, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(AlarmPersisterImpl.class);
 
+    /** Constant <code>REDUCTION_WINDOW_PROPERTY="org.opennms.alarmd.reductionWindow"</code> */
+    public static final String REDUCTION_WINDOW_PROPERTY = "org.opennms.alarmd.reductionWindow";
+
+    /** Constant <code>HOT_ALARM_CACHE_SIZE_PROPERTY="org.opennms.alarmd.hotAlarmCacheSize"</code> */
+    public static final String HOT_ALARM_CACHE_SIZE_PROPERTY = "org.opennms.alarmd.hotAlarmCacheSize";
+
+    /** Constant <code>MAX_PENDING_EVENTS_PROPERTY="org.opennms.alarmd.maxPendingEvents"</code> */
+    public static final String MAX_PENDING_EVENTS_PROPERTY = "org.opennms.alarmd.maxPendingEvents";
+
     private AlarmDao m_alarmDao;
     private EventDao m_eventDao;
+    private TransactionOperations m_transactionOperations;
+    private AlarmReductionListener m_reductionListener;
+
+    private long m_reductionWindow = Long.getLong(REDUCTION_WINDOW_PROPERTY, 0);
+    private int m_hotAlarmCacheSize = Integer.getInteger(HOT_ALARM_CACHE_SIZE_PROPERTY, 1000);
+    private int m_maxPendingEvents = Integer.getInteger(MAX_PENDING_EVENTS_PROPERTY, 1000);
+
+    /**
+     * Guards m_hotAlarms, m_pending and m_busyKeys.
+     */
+    private final Object m_lock = new Object();
+
+    /**
+     * The most recently persisted alarm for each hot reduction key, in
+     * access order.
+     */
+    private Map<String, OnmsAlarm> m_hotAlarms = Collections.emptyMap();
+
+    /**
+     * Events waiting for the next flush, by reduction key.
+     */
+    private final Map<String, PendingReduction> m_pending = new LinkedHashMap<String, PendingReduction>();
+
+    /**
+     * Reduction keys that a thread is writing to the database right now, and
+     * the thread writing each of them.
+     */
+    private final Map<String, Thread> m_busyKeys = new HashMap<String, Thread>();
+
+    private ScheduledExecutorService m_flusher;
+
+    private final AtomicLong m_eventsCoalesced = new AtomicLong();
+    private final AtomicLong m_flushes = new AtomicLong();
+    private final AtomicLong m_alarmsFlushed = new AtomicLong();
+
+    /**
+     * <p>afterPropertiesSet</p>
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(m_alarmDao, "alarmDao must be set");
+        Assert.notNull(m_eventDao, "eventDao must be set");
 
-    /** {@inheritDoc} 
-     * @return */
+        if (m_reductionWindow <= 0) {
+            return;
+        }
+        Assert.notNull(m_transactionOperations, "transactionOperations must be set when " + REDUCTION_WINDOW_PROPERTY + " is enabled");
+        Assert.isTrue(m_maxPendingEvents > 0, MAX_PENDING_EVENTS_PROPERTY + " must be positive");
+        LOG.info("Coalescing up to {} reductions onto up to {} hot alarms every {}ms.", m_maxPendingEvents, m_hotAlarmCacheSize, m_reductionWindow);
+
+        final int cacheSize = m_hotAlarmCacheSize;
+        synchronized (m_lock) {
+            m_hotAlarms = new LinkedHashMap<String, OnmsAlarm>(16, 0.75f, true) {
+                private static final long serialVersionUID = 2766421004346232375L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, OnmsAlarm> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+
+        m_flusher = Executors.newSingleThreadScheduledExecutor(new LogPreservingThreadFactory("AlarmReducer", 1, false));
+        m_flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (final Throwable t) {
+                    LOG.error("Unexpected error while flushing alarm reductions.", t);
+                }
+            }
+        }, m_reductionWindow, m_reductionWindow, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the flusher and writes any reductions that are still queued.
+     */
+    @Override
+    public void destroy() {
+        if (m_flusher != null) {
+            m_flusher.shutdown();
+            try {
+                m_flusher.awaitTermination(m_reductionWindow * 2, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            m_flusher = null;
+        }
+        flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the alarm, or null if the event was not persisted yet because
+     *         it was queued for the next flush
+     */
     @Override
     public OnmsAlarm persist(Event event) {
         if (!checkEventSanityAndDoWeProcess(event)) {
@@ -60,7 +204,258 @@ public class AlarmPersisterImpl implements AlarmPersister {
         }
         LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
 
-        return addOrReduceEventAsAlarm(event);
+        if (m_reductionWindow <= 0) {
+            return addOrReduceEventAsAlarm(event);
+        }
+
+        if (coalesce(event)) {
+            return null;
+        }
+
+        // wait for any flush of this key, and keep the reductions for this
+        // key in order
+        final String reductionKey = event.getAlarmData().getReductionKey();
+        final PendingReduction pending = acquire(reductionKey);
+        boolean releaseNow = true;
+        try {
+            // the key stays busy until the caller's transaction is done, so a
+            // flush never reads the alarm before this write is committed
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCompletion(final int status) {
+                        release(Collections.singleton(reductionKey));
+                    }
+                });
+                releaseNow = false;
+            }
+
+            if (pending != null) {
+                applyReduction(pending, new ArrayList<OnmsAlarm>());
+            }
+
+            final OnmsAlarm alarm = addOrReduceEventAsAlarm(event);
+            synchronized (m_lock) {
+                m_hotAlarms.put(reductionKey, alarm);
+            }
+            return alarm;
+        } finally {
+            if (releaseNow) {
+                release(Collections.singleton(reductionKey));
+            }
+        }
+    }
+
+    /**
+     * Queue the event for the next flush if it reduces onto a hot alarm.
+     *
+     * @return true if the event was queued, false if it must be persisted now
+     */
+    private boolean coalesce(final Event event) {
+        if (event.getAlarmData().hasUpdateFields()) {
+            return false;
+        }
+        Assert.isTrue(event.getDbid() > 0, "Incoming event has an illegal dbid (" + event.getDbid() + "), aborting");
+
+        final String reductionKey = event.getAlarmData().getReductionKey();
+        synchronized (m_lock) {
+            final OnmsAlarm alarm = m_hotAlarms.get(reductionKey);
+            if (alarm == null) {
+                return false;
+            }
+            PendingReduction pending = m_pending.get(reductionKey);
+            if (pending == null) {
+                pending = new PendingReduction(reductionKey, alarm.getId());
+                m_pending.put(reductionKey, pending);
+            } else if (pending.getEvents().size() >= m_maxPendingEvents) {
+                LOG.debug("coalesce: reductionKey:{} already has {} queued events, persisting event {} now", reductionKey, pending.getEvents().size(), event.getDbid());
+                return false;
+            }
+            pending.add(event);
+            m_eventsCoalesced.incrementAndGet();
+            LOG.debug("coalesce: reductionKey:{} queued event {} for alarm {}", reductionKey, event.getDbid(), alarm.getId());
+            return true;
+        }
+    }
+
+    /**
+     * Wait until no other thread is writing the reduction key, then mark it
+     * busy and take its queued events.  A thread that already holds the key,
+     * because it persists several events for it in one transaction, does
+     * not wait for itself.
+     */
+    private PendingReduction acquire(final String reductionKey) {
+        final Thread current = Thread.currentThread();
+        synchronized (m_lock) {
+            boolean interrupted = false;
+            while (m_busyKeys.containsKey(reductionKey) && m_busyKeys.get(reductionKey) != current) {
+                try {
+                    m_lock.wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            m_busyKeys.put(reductionKey, current);
+            return m_pending.remove(reductionKey);
+        }
+    }
+
+    private void release(final Collection<String> reductionKeys) {
+        synchronized (m_lock) {
+            m_busyKeys.keySet().removeAll(reductionKeys);
+            m_lock.notifyAll();
+        }
+    }
+
+    /**
+     * Write all queued reductions in one transaction.  If that fails, each
+     * reduction is retried in its own transaction so that one bad alarm does
+     * not lose the rest of the batch, and if that fails too its events are
+     * persisted one at a time.  Reduction keys that another thread is
+     * writing are left for the next flush.
+     */
+    public void flush() {
+        final List<PendingReduction> pending = new ArrayList<PendingReduction>();
+        final List<String> reductionKeys = new ArrayList<String>();
+        synchronized (m_lock) {
+            for (final Iterator<PendingReduction> it = m_pending.values().iterator(); it.hasNext(); ) {
+                final PendingReduction reduction = it.next();
+                if (!m_busyKeys.containsKey(reduction.getReductionKey())) {
+                    it.remove();
+                    pending.add(reduction);
+                    reductionKeys.add(reduction.getReductionKey());
+                }
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            for (final String reductionKey : reductionKeys) {
+                m_busyKeys.put(reductionKey, Thread.currentThread());
+            }
+        }
+
+        try {
+            final List<OnmsAlarm> alarms = new ArrayList<OnmsAlarm>(pending.size());
+            m_transactionOperations.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    for (final PendingReduction reduction : pending) {
+                        applyReduction(reduction, alarms);
+                    }
+                }
+            });
+            m_flushes.incrementAndGet();
+            LOG.debug("flush: wrote {} coalesced reductions", pending.size());
+            alarmsReduced(alarms);
+        } catch (final RuntimeException e) {
+            LOG.warn("flush: failed to write {} coalesced reductions in one transaction, retrying them one at a time", pending.size(), e);
+            for (final PendingReduction reduction : pending) {
+                retry(reduction);
+            }
+        } finally {
+            release(reductionKeys);
+        }
+    }
+
+    private void retry(final PendingReduction reduction) {
+        final List<OnmsAlarm> alarms = new ArrayList<OnmsAlarm>(1);
+        try {
+            m_transactionOperations.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    applyReduction(reduction, alarms);
+                }
+            });
+            alarmsReduced(alarms);
+            return;
+        } catch (final RuntimeException e) {
+            LOG.warn("flush: failed to write {} events for reduction key {}, persisting them one at a time", reduction.getEvents().size(), reduction.getReductionKey(), e);
+            forget(reduction.getReductionKey());
+        }
+
+        for (final Event event : reduction.getEvents()) {
+            try {
+                final OnmsAlarm alarm = m_transactionOperations.execute(new TransactionCallback<OnmsAlarm>() {
+                    @Override
+                    public OnmsAlarm doInTransaction(final TransactionStatus status) {
+                        return addOrReduceEventAsAlarm(event);
+                    }
+                });
+                alarmsReduced(Collections.singletonList(alarm));
+            } catch (final RuntimeException e) {
+                LOG.error("flush: unable to persist event {} for reduction key {}", event.getDbid(), reduction.getReductionKey(), e);
+            }
+        }
+    }
+
+    private void alarmsReduced(final List<OnmsAlarm> alarms) {
+        if (m_reductionListener == null) {
+            return;
+        }
+        for (final OnmsAlarm alarm : alarms) {
+            try {
+                m_reductionListener.onAlarmReduced(alarm);
+            } catch (final RuntimeException e) {
+                LOG.warn("alarmsReduced: listener failed for alarm {}", alarm.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Apply queued events to their alarm, in the current transaction.
+     *
+     * @param alarms the alarms written are added to this list
+     */
+    private void applyReduction(final PendingReduction reduction, final List<OnmsAlarm> alarms) {
+        final String reductionKey = reduction.getReductionKey();
+        final OnmsAlarm alarm = m_alarmDao.get(reduction.getAlarmId());
+
+        if (alarm == null || !reductionKey.equals(alarm.getReductionKey())) {
+            // the alarm went away while the events were queued, start over
+            LOG.debug("applyReduction: alarm {} for reductionKey:{} is gone, persisting {} events individually", reduction.getAlarmId(), reductionKey, reduction.getEvents().size());
+            forget(reductionKey);
+            OnmsAlarm newAlarm = null;
+            for (final Event event : reduction.getEvents()) {
+                newAlarm = addOrReduceEventAsAlarm(event);
+            }
+            alarms.add(newAlarm);
+            return;
+        }
+
+        final Event lastEvent = reduction.getLastEvent();
+        final OnmsEvent e = m_eventDao.get(lastEvent.getDbid());
+
+        alarm.setCounter(alarm.getCounter() + reduction.getEvents().size());
+        if (e != null && (alarm.getLastEventTime() == null || !e.getEventTime().before(alarm.getLastEventTime()))) {
+            alarm.setLastEvent(e);
+            alarm.setLastEventTime(e.getEventTime());
+            alarm.setLogMsg(e.getEventLogMsg());
+            alarm.setEventParms(e.getEventParms());
+            e.setAlarm(alarm);
+        }
+        m_alarmDao.update(alarm);
+        m_eventDao.setAlarmForEvents(alarm, reduction.getEventIds());
+
+        if (e != null && lastEvent.getAlarmData().isAutoClean()) {
+            m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), alarm.getLastEvent());
+        }
+        m_alarmsFlushed.incrementAndGet();
+        alarms.add(alarm);
+
+        synchronized (m_lock) {
+            if (m_hotAlarms.containsKey(reductionKey)) {
+                m_hotAlarms.put(reductionKey, alarm);
+            }
+        }
+    }
+
+    private void forget(final String reductionKey) {
+        synchronized (m_lock) {
+            m_hotAlarms.remove(reductionKey);
+        }
     }
 
     private OnmsAlarm addOrReduceEventAsAlarm(Event event) {
@@ -251,4 +646,140 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return m_eventDao;
     }
 
+    /**
+     * <p>setTransactionOperations</p>
+     *
+     * @param transactionOperations used to flush coalesced reductions
+     */
+    public void setTransactionOperations(TransactionOperations transactionOperations) {
+        m_transactionOperations = transactionOperations;
+    }
+
+    /**
+     * <p>setReductionListener</p>
+     *
+     * @param reductionListener told about alarms written by a flush
+     */
+    public void setReductionListener(AlarmReductionListener reductionListener) {
+        m_reductionListener = reductionListener;
+    }
+
+    /**
+     * <p>setReductionWindow</p>
+     *
+     * @param reductionWindow how long to coalesce reductions for, in
+     *        milliseconds; 0 persists every event immediately
+     */
+    public void setReductionWindow(long reductionWindow) {
+        m_reductionWindow = reductionWindow;
+    }
+
+    /**
+     * <p>getReductionWindow</p>
+     *
+     * @return a long.
+     */
+    public long getReductionWindow() {
+        return m_reductionWindow;
+    }
+
+    /**
+     * <p>setHotAlarmCacheSize</p>
+     *
+     * @param hotAlarmCacheSize the number of reduction keys to coalesce for
+     */
+    public void setHotAlarmCacheSize(int hotAlarmCacheSize) {
+        m_hotAlarmCacheSize = hotAlarmCacheSize;
+    }
+
+    /**
+     * <p>getHotAlarmCacheSize</p>
+     *
+     * @return a int.
+     */
+    public int getHotAlarmCacheSize() {
+        return m_hotAlarmCacheSize;
+    }
+
+    /**
+     * <p>setMaxPendingEvents</p>
+     *
+     * @param maxPendingEvents the most events to queue for one reduction key
+     */
+    public void setMaxPendingEvents(int maxPendingEvents) {
+        m_maxPendingEvents = maxPendingEvents;
+    }
+
+    /**
+     * <p>getMaxPendingEvents</p>
+     *
+     * @return a int.
+     */
+    public int getMaxPendingEvents() {
+        return m_maxPendingEvents;
+    }
+
+    /**
+     * @return the number of events that were queued instead of written immediately
+     */
+    public long getEventsCoalesced() {
+        return m_eventsCoalesced.get();
+    }
+
+    /**
+     * @return the number of batched transactions written
+     */
+    public long getFlushCount() {
+        return m_flushes.get();
+    }
+
+    /**
+     * @return the number of alarm updates written by those transactions
+     */
+    public long getAlarmsFlushed() {
+        return m_alarmsFlushed.get();
+    }
+
+    /**
+     * Events queued for one reduction key.
+     */
+    private static class PendingReduction {
+        private final String m_reductionKey;
+        private final Integer m_alarmId;
+        private final List<Event> m_events = new ArrayList<Event>();
+
+        public PendingReduction(final String reductionKey, final Integer alarmId) {
+            m_reductionKey = reductionKey;
+            m_alarmId = alarmId;
+        }
+
+        public void add(final Event event) {
+            m_events.add(event);
+        }
+
+        public String getReductionKey() {
+            return m_reductionKey;
+        }
+
+        public Integer getAlarmId() {
+            return m_alarmId;
+        }
+
+        public List<Event> getEvents() {
+            return m_events;
+        }
+
+        public Event getLastEvent() {
+            return m_events.get(m_events.size() - 1);
+        }
+
+        public List<Integer> getEventIds() {
+            final List<Integer> ids = new ArrayList<Integer>(m_events.size());
+            for (final Event event : m_events) {
+                ids.add(event.getDbid());
+            }
+            return ids;
+        }
+    }
+
 }
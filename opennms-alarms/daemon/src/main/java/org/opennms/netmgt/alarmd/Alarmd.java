@@ -56,7 +56,7 @@ import org.springframework.beans.factory.DisposableBean;
  * @version $Id: $
  */
 @EventListener(name=Alarmd.NAME, logPrefix="alarmd")
-public class Alarmd implements SpringServiceDaemon, DisposableBean {
+public class Alarmd implements SpringServiceDaemon, DisposableBean, AlarmReductionListener {
     private static final Logger LOG = LoggerFactory.getLogger(Alarmd.class);
 
     /** Constant <code>NAME="Alarmd"</code> */
@@ -87,15 +87,29 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
         OnmsAlarm alarm = m_persister.persist(e);
         
         if (alarm != null) {
-        	NorthboundAlarm a = new NorthboundAlarm(alarm);
-
-            for (Northbounder nbi : m_northboundInterfaces) {
-                nbi.onAlarm(a);
-            }
+            forward(alarm);
         }
         
     }
 
+    /**
+     * Forwards alarms written by a batched flush of the persister.
+     *
+     * @param alarm a {@link org.opennms.netmgt.model.OnmsAlarm} object.
+     */
+    @Override
+    public void onAlarmReduced(OnmsAlarm alarm) {
+        forward(alarm);
+    }
+
+    private void forward(OnmsAlarm alarm) {
+        NorthboundAlarm a = new NorthboundAlarm(alarm);
+
+        for (Northbounder nbi : m_northboundInterfaces) {
+            nbi.onAlarm(a);
+        }
+    }
+
     @EventHandler(uei = "uei.opennms.org/internal/reloadDaemonConfig")
     private void handleReloadEvent(Event e) {
     	LOG.info("Received reload configuration event: {}", e);
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.alarmd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.MockDatabase;
+import org.opennms.core.test.db.TemporaryDatabaseAware;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.core.utils.BeanUtils;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Replays a flapping storm, many events reducing onto a few alarms, through
+ * an {@link AlarmPersisterImpl} that writes every event and through one
+ * that coalesces reductions, and checks that both end up with the same
+ * counters and that the coalescing one writes them in a single flush.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+public class AlarmReductionStormTest implements TemporaryDatabaseAware<MockDatabase>, InitializingBean {
+
+    private static final int REDUCTION_KEYS = 10;
+
+    private static final int EVENTS = 5000;
+
+    @Autowired
+    private AlarmDao m_alarmDao;
+
+    @Autowired
+    private EventDao m_eventDao;
+
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate m_transactionTemplate;
+
+    private MockDatabase m_database;
+
+    @Override
+    public void setTemporaryDatabase(final MockDatabase database) {
+        m_database = database;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final OnmsNode node = new OnmsNode();
+        node.setId(1);
+        node.setLabel("node1");
+        m_nodeDao.save(node);
+    }
+
+    @Test
+    public void testStorm() throws Exception {
+        final AlarmPersisterImpl direct = createPersister(0);
+        replay(direct, createStorm("direct"));
+
+        final List<OnmsAlarm> reduced = new ArrayList<OnmsAlarm>();
+        final AlarmPersisterImpl coalescing = createPersister(60000);
+        coalescing.setReductionListener(new AlarmReductionListener() {
+            @Override
+            public void onAlarmReduced(final OnmsAlarm alarm) {
+                reduced.add(alarm);
+            }
+        });
+        try {
+            replay(coalescing, createStorm("coalescing"));
+            coalescing.flush();
+        } finally {
+            coalescing.destroy();
+        }
+
+        for (int i = 0; i < REDUCTION_KEYS; i++) {
+            assertEquals(EVENTS / REDUCTION_KEYS, getCounter("direct" + i));
+            assertEquals(EVENTS / REDUCTION_KEYS, getCounter("coalescing" + i));
+        }
+        assertEquals(0, m_jdbcTemplate.queryForObject("select count(*) from events where alarmid is null", Integer.class).intValue());
+
+        // only the first event of each key is written on its own, the rest
+        // go out in one transaction
+        assertEquals(EVENTS - REDUCTION_KEYS, coalescing.getEventsCoalesced());
+        assertEquals(1, coalescing.getFlushCount());
+        assertEquals(REDUCTION_KEYS, coalescing.getAlarmsFlushed());
+
+        // and the listener sees the alarms as flushed
+        assertEquals(REDUCTION_KEYS, reduced.size());
+        for (final OnmsAlarm alarm : reduced) {
+            assertEquals(EVENTS / REDUCTION_KEYS, alarm.getCounter().intValue());
+        }
+    }
+
+    @Test
+    public void testQueuedEventsAreBounded() throws Exception {
+        final AlarmPersisterImpl coalescing = createPersister(60000);
+        coalescing.setMaxPendingEvents(100);
+        try {
+            replay(coalescing, createStorm("bounded"));
+            coalescing.flush();
+        } finally {
+            coalescing.destroy();
+        }
+
+        for (int i = 0; i < REDUCTION_KEYS; i++) {
+            assertEquals(EVENTS / REDUCTION_KEYS, getCounter("bounded" + i));
+        }
+        assertEquals(0, m_jdbcTemplate.queryForObject("select count(*) from events where alarmid is null", Integer.class).intValue());
+        assertTrue(coalescing.getEventsCoalesced() < EVENTS - REDUCTION_KEYS);
+    }
+
+    @Test
+    public void testDeletedAlarmIsRecreated() throws Exception {
+        final AlarmPersisterImpl coalescing = createPersister(60000);
+        try {
+            replay(coalescing, createStorm("deleted"));
+            m_jdbcTemplate.update("delete from alarms where reductionkey = ?", "deleted0");
+            coalescing.flush();
+        } finally {
+            coalescing.destroy();
+        }
+
+        // the first event of the key went with the deleted alarm, the rest were queued
+        assertEquals(EVENTS / REDUCTION_KEYS - 1, getCounter("deleted0"));
+        assertEquals(EVENTS / REDUCTION_KEYS, getCounter("deleted1"));
+    }
+
+    @Test
+    public void testFlushWaitsForPersistToCommit() throws Exception {
+        final AlarmPersisterImpl coalescing = createPersister(60000);
+        coalescing.setMaxPendingEvents(1);
+        try {
+            final List<Event> storm = createStorm("interleaved");
+            final List<Event> events = new ArrayList<Event>();
+            for (int i = 0; i < 4; i++) {
+                events.add(storm.get(i * REDUCTION_KEYS));
+            }
+
+            // the first event creates the alarm, the second is queued
+            replay(coalescing, events.subList(0, 2));
+
+            final Thread flusher = new Thread("interleaved-flush") {
+                @Override
+                public void run() {
+                    coalescing.flush();
+                }
+            };
+            m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    // the third is over the limit and written now, the fourth is queued
+                    coalescing.persist(events.get(2));
+                    coalescing.persist(events.get(3));
+
+                    // a flush while that write is not committed yet must leave the key alone
+                    flusher.start();
+                    try {
+                        flusher.join(1000);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            flusher.join();
+            coalescing.flush();
+        } finally {
+            coalescing.destroy();
+        }
+
+        assertEquals(4, getCounter("interleaved0"));
+    }
+
+    private AlarmPersisterImpl createPersister(final long reductionWindow) {
+        final AlarmPersisterImpl persister = new AlarmPersisterImpl();
+        persister.setAlarmDao(m_alarmDao);
+        persister.setEventDao(m_eventDao);
+        persister.setTransactionOperations(m_transactionTemplate);
+        persister.setReductionWindow(reductionWindow);
+        persister.setHotAlarmCacheSize(REDUCTION_KEYS);
+        persister.afterPropertiesSet();
+        return persister;
+    }
+
+    /**
+     * Write the storm's events to the database, as eventd would.
+     */
+    private List<Event> createStorm(final String keyPrefix) {
+        final List<Event> events = new ArrayList<Event>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            final EventBuilder bldr = new EventBuilder("uei.opennms.org/test/flap", "AlarmReductionStormTest");
+            bldr.setNodeid(1);
+            bldr.setLogDest("logndisplay");
+            bldr.setLogMessage("flap " + i);
+
+            final AlarmData data = new AlarmData();
+            data.setAlarmType(1);
+            data.setReductionKey(keyPrefix + (i % REDUCTION_KEYS));
+            bldr.setAlarmData(data);
+
+            final Event event = bldr.getEvent();
+            m_database.writeEvent(event);
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * Persist every event in its own transaction, as the transactional
+     * proxy around the persister does.
+     */
+    private void replay(final AlarmPersister persister, final List<Event> events) {
+        for (final Event event : events) {
+            m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    persister.persist(event);
+                }
+            });
+        }
+    }
+
+    private int getCounter(final String reductionKey) {
+        return m_jdbcTemplate.queryForObject("select counter from alarms where reductionkey = ?", new Object[] { reductionKey }, Integer.class).intValue();
+    }
+}
@@ -32,7 +32,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +52,9 @@ import org.slf4j.LoggerFactory;
  *  - if there is still no match at this point, all keys in the eventconf are iterated through to
  *    find a match
  *
+ *  Lookups go through an immutable {@link EventKeyIndex} that is rebuilt the first time the
+ *  data is read after it changed, so only the keys that can possibly match an event are
+ *  tested and readers do not need to lock.
  * </pre>
  *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
@@ -75,12 +77,18 @@ public class EventConfData extends Object {
      */
     private LinkedHashMap<String, List<EventKey>> m_ueiToKeyListMap;
 
+    /**
+     * Snapshot index over m_eventMap used by {@link #getEvent(org.opennms.netmgt.xml.event.Event)},
+     * or null if the map has changed since it was last built
+     */
+    private volatile EventKeyIndex m_index;
+
     /**
      * Check whether the event matches the passed key
      * 
      * @return true if the event matches the passed key
      */
-    private boolean eventMatchesKey(EventKey eventKey, org.opennms.netmgt.xml.event.Event event) {
+    static boolean eventMatchesKey(EventKey eventKey, org.opennms.netmgt.xml.event.Event event) {
         // go through the key elements and see if this event will match
         boolean maskMatch = true;
 
@@ -179,6 +187,7 @@ public class EventConfData extends Object {
 
         // add to the configevent map first
         m_eventMap.put(eventKey, event);
+        m_index = null;
 
         // add to the uei to key list map
         updateUeiToKeyListMap(eventKey, event);
@@ -209,6 +218,7 @@ public class EventConfData extends Object {
      */
     public synchronized void put(EventKey key, org.opennms.netmgt.xml.eventconf.Event event) {
         m_eventMap.put(key, event);
+        m_index = null;
 
         // add to the uei to key list map
         updateUeiToKeyListMap(key, event);
@@ -233,64 +243,30 @@ public class EventConfData extends Object {
      *            the event which is to be looked up
      * @return a {@link org.opennms.netmgt.xml.eventconf.Event} object.
      */
-    public synchronized org.opennms.netmgt.xml.eventconf.Event getEvent(org.opennms.netmgt.xml.event.Event event) {
-        org.opennms.netmgt.xml.eventconf.Event matchedEvent = null;
-
-        //
-        // use the eventkey and see if there is a match
-        //
-	/*
-        EventKey key = new EventKey(event);
-        matchedEvent = m_eventMap.get(key);
-        if (matchedEvent != null) {
-            LOG.debug("Match found using key: {}", key);
-
-            return matchedEvent;
+    public org.opennms.netmgt.xml.eventconf.Event getEvent(org.opennms.netmgt.xml.event.Event event) {
+        EventKeyIndex index = m_index;
+        if (index == null) {
+            index = buildIndex();
         }
-        */
-
-        //
-        // get the UEI and see if the UEI keys get a match - this step is here
-        // to make the matching process faster in case of usual internal events
-        // of OpenNMS, using the UEI shortens the search as against going
-        // through
-        // the entire eventconf for each event
-        //
-	/*
-        String uei = event.getUei();
-        if (uei != null) {
-            // Go through the uei to keylist map
-            List<EventKey> keylist = m_ueiToKeyListMap.get(uei);
-            if (keylist != null) {
-                // check the event keys known for this uei
-                matchedEvent = getMatchInKeyList(keylist, event);
-            }
-        }
-        */
-
-        //
-        // if still no match, no option but to go through all known keys
-        //
-        if (matchedEvent == null) {
-            Iterator<Entry<EventKey, org.opennms.netmgt.xml.eventconf.Event>> entryIterator = m_eventMap.entrySet().iterator();
-            while (entryIterator.hasNext() && (matchedEvent == null)) {
-                Entry<EventKey, org.opennms.netmgt.xml.eventconf.Event> entry = entryIterator.next();
-                EventKey iterKey = entry.getKey();
-
-                boolean keyMatchFound = eventMatchesKey(iterKey, event);
-
-                // if a match was found, return the config
-                if (keyMatchFound) {
-                    LOG.debug("Match found using key: {}", iterKey);
 
-                    matchedEvent = entry.getValue();
-                }
-            }
+        final org.opennms.netmgt.xml.eventconf.Event matchedEvent = index.getEvent(event);
+        if (matchedEvent != null) {
+            LOG.debug("Match found for event {}: {}", event.getUei(), matchedEvent.getUei());
         }
-
         return matchedEvent;
     }
 
+    /**
+     * Build and publish the index over the current contents of the event map
+     */
+    private synchronized EventKeyIndex buildIndex() {
+        if (m_index == null) {
+            m_index = new EventKeyIndex(m_eventMap);
+            LOG.debug("Built event key index over {} keys", m_index.size());
+        }
+        return m_index;
+    }
+
     /**
      * Get the event with the specified uei
      *
@@ -311,5 +287,6 @@ public class EventConfData extends Object {
     public synchronized void clear() {
         m_eventMap.clear();
         m_ueiToKeyListMap.clear();
+        m_index = null;
     }
 }
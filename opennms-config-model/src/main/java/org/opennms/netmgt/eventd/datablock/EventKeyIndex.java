@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.datablock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Immutable, read-optimized index over the 'EventKey's of an
+ * {@link EventConfData}.
+ *
+ * Every key is filed under at most one of its mask elements - the UEI, the
+ * enterprise ID, the specific or the generic trap number, in that order of
+ * preference - provided all of that element's mask values are exact values
+ * (no '~' regular expressions and no trailing '%').  Such a key can only
+ * match events whose value for that element is one of those exact values,
+ * so a lookup only has to test the keys filed under the event's own values
+ * plus the keys that could not be indexed.
+ *
+ * Candidates are tested in their original configuration order, so the
+ * result is always the same first match that a scan of every key would
+ * return.
+ */
+final class EventKeyIndex {
+
+    /**
+     * The mask elements that keys can be indexed by, in order of preference.
+     */
+    private static final String[] INDEXED_TAGS = {
+        EventKey.TAG_UEI,
+        EventKey.TAG_SNMP_EID,
+        EventKey.TAG_SNMP_SPECIFIC,
+        EventKey.TAG_SNMP_GENERIC
+    };
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final EventKey[] m_keys;
+
+    private final org.opennms.netmgt.xml.eventconf.Event[] m_events;
+
+    /**
+     * Per indexed tag, the positions of the keys filed under each value.
+     */
+    private final List<Map<String, int[]>> m_indexes;
+
+    /**
+     * Positions of the keys that could not be indexed.
+     */
+    private final int[] m_unindexed;
+
+    EventKeyIndex(final Map<EventKey, org.opennms.netmgt.xml.eventconf.Event> eventMap) {
+        final int size = eventMap.size();
+        m_keys = new EventKey[size];
+        m_events = new org.opennms.netmgt.xml.eventconf.Event[size];
+
+        final List<Map<String, List<Integer>>> indexes = new ArrayList<Map<String, List<Integer>>>(INDEXED_TAGS.length);
+        for (int i = 0; i < INDEXED_TAGS.length; i++) {
+            indexes.add(new HashMap<String, List<Integer>>());
+        }
+        final List<Integer> unindexed = new ArrayList<Integer>();
+
+        int position = 0;
+        for (final Entry<EventKey, org.opennms.netmgt.xml.eventconf.Event> entry : eventMap.entrySet()) {
+            final EventKey key = entry.getKey();
+            m_keys[position] = key;
+            m_events[position] = entry.getValue();
+
+            final int tag = getIndexTag(key);
+            if (tag < 0) {
+                unindexed.add(position);
+            } else {
+                @SuppressWarnings("unchecked")
+                final List<String> values = (List<String>) key.get(INDEXED_TAGS[tag]);
+                for (final String value : values) {
+                    List<Integer> positions = indexes.get(tag).get(value);
+                    if (positions == null) {
+                        positions = new ArrayList<Integer>(1);
+                        indexes.get(tag).put(value, positions);
+                    }
+                    if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+                        positions.add(position);
+                    }
+                }
+            }
+            position++;
+        }
+
+        m_indexes = new ArrayList<Map<String, int[]>>(INDEXED_TAGS.length);
+        for (final Map<String, List<Integer>> index : indexes) {
+            final Map<String, int[]> compact = new HashMap<String, int[]>(index.size() * 2);
+            for (final Entry<String, List<Integer>> entry : index.entrySet()) {
+                compact.put(entry.getKey(), toArray(entry.getValue()));
+            }
+            m_indexes.add(compact);
+        }
+        m_unindexed = toArray(unindexed);
+    }
+
+    /**
+     * @return the number of keys in the index
+     */
+    int size() {
+        return m_keys.length;
+    }
+
+    /**
+     * Find the first configured event whose key matches the event.
+     *
+     * @param event the event to match
+     * @return the matching configuration, or null if there is none
+     */
+    org.opennms.netmgt.xml.eventconf.Event getEvent(final org.opennms.netmgt.xml.event.Event event) {
+        final int[][] candidates = new int[INDEXED_TAGS.length + 1][];
+        for (int i = 0; i < INDEXED_TAGS.length; i++) {
+            final Map<String, int[]> index = m_indexes.get(i);
+            int[] positions = null;
+            if (!index.isEmpty()) {
+                final String value = EventKey.getMaskElementValue(event, INDEXED_TAGS[i]);
+                if (value != null) {
+                    positions = index.get(value);
+                }
+            }
+            candidates[i] = positions == null ? NO_POSITIONS : positions;
+        }
+        candidates[INDEXED_TAGS.length] = m_unindexed;
+
+        // merge the sorted candidate lists, testing keys in configuration order
+        final int[] cursors = new int[candidates.length];
+        while (true) {
+            int next = -1;
+            int list = -1;
+            for (int i = 0; i < candidates.length; i++) {
+                if (cursors[i] < candidates[i].length) {
+                    final int position = candidates[i][cursors[i]];
+                    if (next < 0 || position < next) {
+                        next = position;
+                        list = i;
+                    }
+                }
+            }
+
+            if (next < 0) {
+                return null;
+            }
+            cursors[list]++;
+
+            if (EventConfData.eventMatchesKey(m_keys[next], event)) {
+                return m_events[next];
+            }
+        }
+    }
+
+    /**
+     * @return the index into INDEXED_TAGS that the key should be filed under,
+     *         or -1 if the key cannot be indexed
+     */
+    private static int getIndexTag(final EventKey key) {
+        for (int i = 0; i < INDEXED_TAGS.length; i++) {
+            final Object values = key.get(INDEXED_TAGS[i]);
+            if (values instanceof List<?> && isExact((List<?>) values)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isExact(final List<?> values) {
+        if (values.isEmpty()) {
+            return false;
+        }
+        for (final Object o : values) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            final String value = (String) o;
+            if (value.length() == 0 || value.charAt(0) == '~' || value.charAt(value.length() - 1) == '%') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the active IP addresses matched by filter rules.
+ *
+ * The addresses for each rule are kept as a compact {@link IpAddressSet}
+ * for membership tests.  Once the address list of a rule has been asked
+ * for, the list is kept too, in the order the database returned it, so
+ * that callers of {@link FilterDao#getActiveIPAddressList(String)} see
+ * the same order as without the cache.  Entries are evicted least recently used first once the cache holds
+ * <code>maxRules</code> rules, and are reloaded once they are older than
+ * <code>ttl</code> milliseconds.  The whole cache is invalidated when
+ * nodes, interfaces or services change; a load that was started before an
+ * invalidation is not cached, so stale results can not be stored after
+ * the fact.  Invalidation is driven by events, so changes made to the
+ * database without an event are only seen once the TTL expires.
+ *
+ * The defaults can be set with the
+ * <code>org.opennms.netmgt.filter.ruleCache.maxRules</code> and
+ * <code>org.opennms.netmgt.filter.ruleCache.ttl</code> system properties.
+ * A TTL of 0, the default, disables the cache, so every rule is checked
+ * against the database unless a TTL is configured.
+ */
+public class FilterRuleCache {
+
+    /** Constant <code>DEFAULT_MAX_RULES=500</code> */
+    public static final int DEFAULT_MAX_RULES = 500;
+
+    /** Constant <code>DEFAULT_TTL=0</code>, the cache is off unless configured */
+    public static final long DEFAULT_TTL = 0;
+
+    private static final class Entry {
+        private final IpAddressSet m_addresses;
+        private final List<InetAddress> m_list;
+        private final long m_loadedAt;
+
+        private Entry(final IpAddressSet addresses, final List<InetAddress> list, final long loadedAt) {
+            m_addresses = addresses;
+            m_list = list;
+            m_loadedAt = loadedAt;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> m_entries;
+
+    private volatile int m_maxRules;
+
+    private volatile long m_ttl;
+
+    private long m_generation = 0;
+
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_evictions = new AtomicLong();
+    private final AtomicLong m_invalidations = new AtomicLong();
+
+    /**
+     * Create a cache using the sizes from the system properties.
+     */
+    public FilterRuleCache() {
+        this(Integer.getInteger("org.opennms.netmgt.filter.ruleCache.maxRules", DEFAULT_MAX_RULES),
+             Long.getLong("org.opennms.netmgt.filter.ruleCache.ttl", DEFAULT_TTL));
+    }
+
+    /**
+     * <p>Constructor for FilterRuleCache.</p>
+     *
+     * @param maxRules the maximum number of rules to cache
+     * @param ttl how long a result is cached in milliseconds, 0 to disable
+     */
+    public FilterRuleCache(final int maxRules, final long ttl) {
+        m_maxRules = maxRules;
+        m_ttl = ttl;
+        m_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                if (size() > m_maxRules) {
+                    m_evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached addresses for a rule.
+     *
+     * @param rule the filter rule
+     * @return the addresses, or null if the rule is not cached or has expired
+     */
+    IpAddressSet get(final String rule) {
+        final Entry entry = getEntry(rule, false);
+        return entry == null ? null : entry.m_addresses;
+    }
+
+    /**
+     * Returns the cached address list for a rule, in database order.
+     *
+     * @param rule the filter rule
+     * @return an unmodifiable list of the addresses, or null if the rule is
+     *         not cached with its list or has expired
+     */
+    List<InetAddress> getList(final String rule) {
+        final Entry entry = getEntry(rule, true);
+        return entry == null ? null : entry.m_list;
+    }
+
+    private Entry getEntry(final String rule, final boolean needList) {
+        final long ttl = m_ttl;
+        if (ttl > 0) {
+            synchronized (this) {
+                final Entry entry = m_entries.get(rule);
+                if (entry != null) {
+                    if (System.currentTimeMillis() - entry.m_loadedAt >= ttl) {
+                        m_entries.remove(rule);
+                        m_evictions.incrementAndGet();
+                    } else if (!needList || entry.m_list != null) {
+                        m_hits.incrementAndGet();
+                        return entry;
+                    }
+                }
+            }
+        }
+        m_misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns a token that must be passed to {@link #put} for the addresses
+     * loaded after this call.
+     *
+     * @return the current generation of the cache
+     */
+    synchronized long getGeneration() {
+        return m_generation;
+    }
+
+    /**
+     * Cache the addresses for a rule, unless the cache was invalidated since
+     * <code>generation</code> was obtained.
+     *
+     * @param rule the filter rule
+     * @param generation the value of {@link #getGeneration()} before the
+     *        addresses were loaded
+     * @param addresses the addresses matched by the rule
+     */
+    void put(final String rule, final long generation, final IpAddressSet addresses) {
+        put(rule, generation, addresses, null);
+    }
+
+    /**
+     * Cache the addresses for a rule together with the list they were built
+     * from, unless the cache was invalidated since <code>generation</code>
+     * was obtained.
+     *
+     * @param rule the filter rule
+     * @param generation the value of {@link #getGeneration()} before the
+     *        addresses were loaded
+     * @param addresses the addresses matched by the rule
+     * @param list the same addresses in database order, or null
+     */
+    synchronized void put(final String rule, final long generation, final IpAddressSet addresses, final List<InetAddress> list) {
+        if (m_ttl > 0 && m_maxRules > 0 && generation == m_generation) {
+            m_entries.put(rule, new Entry(addresses, list == null ? null : Collections.unmodifiableList(list), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Discard all cached rules.
+     */
+    public synchronized void invalidate() {
+        m_generation++;
+        m_entries.clear();
+        m_invalidations.incrementAndGet();
+    }
+
+    /**
+     * <p>getMaxRules</p>
+     *
+     * @return the maximum number of rules to cache
+     */
+    public int getMaxRules() {
+        return m_maxRules;
+    }
+
+    /**
+     * <p>setMaxRules</p>
+     *
+     * @param maxRules the maximum number of rules to cache
+     */
+    public void setMaxRules(final int maxRules) {
+        m_maxRules = maxRules;
+    }
+
+    /**
+     * <p>getTtl</p>
+     *
+     * @return how long a result is cached in milliseconds
+     */
+    public long getTtl() {
+        return m_ttl;
+    }
+
+    /**
+     * <p>setTtl</p>
+     *
+     * @param ttl how long a result is cached in milliseconds, 0 to disable
+     */
+    public void setTtl(final long ttl) {
+        m_ttl = ttl;
+    }
+
+    /**
+     * @return the number of rules currently cached
+     */
+    public synchronized int getSize() {
+        return m_entries.size();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to run the rule against the
+     *         database
+     */
+    public long getMisses() {
+        return m_misses.get();
+    }
+
+    /**
+     * @return the number of rules removed because the cache was full or they
+     *         had expired
+     */
+    public long getEvictions() {
+        return m_evictions.get();
+    }
+
+    /**
+     * @return the number of times the whole cache was invalidated
+     */
+    public long getInvalidations() {
+        return m_invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FilterRuleCache[size=" + getSize() + ", hits=" + getHits() + ", misses=" + getMisses()
+            + ", evictions=" + getEvictions() + ", invalidations=" + getInvalidations() + "]";
+    }
+}
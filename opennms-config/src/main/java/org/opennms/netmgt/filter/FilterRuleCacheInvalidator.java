@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.model.events.EventListener;
+import org.opennms.netmgt.model.events.EventSubscriptionService;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Flushes the cached filter rule results of a {@link FilterDao} whenever a
+ * node, interface, service, category or asset changes, since any of them
+ * can change which addresses a rule matches.  The flush happens when the
+ * event is delivered, so rule checks made between the change and the
+ * delivery of its event may still see the old result.
+ */
+public class FilterRuleCacheInvalidator implements EventListener, InitializingBean, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilterRuleCacheInvalidator.class);
+
+    private static final List<String> UEIS = Arrays.asList(
+        EventConstants.NODE_ADDED_EVENT_UEI,
+        EventConstants.NODE_UPDATED_EVENT_UEI,
+        EventConstants.NODE_DELETED_EVENT_UEI,
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.NODE_LABEL_SOURCE_CHANGED_EVENT_UEI,
+        EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+        EventConstants.DUP_NODE_DELETED_EVENT_UEI,
+        EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+        EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+        EventConstants.INTERFACE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+        EventConstants.INTERFACE_INDEX_CHANGED_EVENT_UEI,
+        EventConstants.INTERFACE_IP_HOSTNAME_CHANGED_EVENT_UEI,
+        EventConstants.INTERFACE_SUPPORTS_SNMP_EVENT_UEI,
+        EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+        EventConstants.REINITIALIZE_PRIMARY_SNMP_INTERFACE_EVENT_UEI,
+        EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+        EventConstants.SERVICE_DELETED_EVENT_UEI,
+        EventConstants.SERVICE_UNMANAGED_EVENT_UEI
+    );
+
+    private FilterDao m_filterDao;
+
+    private EventSubscriptionService m_eventSubscriptionService;
+
+    /**
+     * <p>setFilterDao</p>
+     *
+     * @param filterDao a {@link org.opennms.netmgt.filter.FilterDao} object.
+     */
+    public void setFilterDao(final FilterDao filterDao) {
+        m_filterDao = filterDao;
+    }
+
+    /**
+     * <p>setEventSubscriptionService</p>
+     *
+     * @param eventSubscriptionService a {@link org.opennms.netmgt.model.events.EventSubscriptionService} object.
+     */
+    public void setEventSubscriptionService(final EventSubscriptionService eventSubscriptionService) {
+        m_eventSubscriptionService = eventSubscriptionService;
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_filterDao != null, "property filterDao cannot be null");
+        Assert.state(m_eventSubscriptionService != null, "property eventSubscriptionService cannot be null");
+
+        m_eventSubscriptionService.addEventListener(this, UEIS);
+    }
+
+    /**
+     * <p>destroy</p>
+     */
+    @Override
+    public void destroy() {
+        m_eventSubscriptionService.removeEventListener(this);
+    }
+
+    /**
+     * <p>getName</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return "FilterRuleCacheInvalidator";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onEvent(final Event event) {
+        LOG.debug("onEvent: flushing filter rule cache for {}", event.getUei());
+        m_filterDao.flushActiveIpAddressListCache();
+    }
+}
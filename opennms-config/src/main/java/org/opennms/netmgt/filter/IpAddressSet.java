@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable, compact set of IP addresses.
+ *
+ * IPv4 addresses are kept as a sorted array of ints and IPv6 addresses as a
+ * sorted array of pairs of longs, so a set of tens of thousands of addresses
+ * costs a few hundred kilobytes instead of one {@link InetAddress} object
+ * per address, and membership is tested with a binary search.
+ */
+final class IpAddressSet {
+
+    private final int[] m_v4;
+
+    /**
+     * High and low 64 bits of each IPv6 address, ordered by the high then
+     * the low half.
+     */
+    private final long[] m_v6;
+
+    IpAddressSet(final Collection<InetAddress> addresses) {
+        int[] v4 = new int[addresses.size()];
+        final List<long[]> v6 = new ArrayList<long[]>();
+        int v4Count = 0;
+        for (final InetAddress address : addresses) {
+            if (address == null) {
+                continue;
+            }
+            final byte[] bytes = address.getAddress();
+            if (bytes.length == 4) {
+                v4[v4Count++] = toInt(bytes);
+            } else {
+                v6.add(new long[] { toLong(bytes, 0), toLong(bytes, 8) });
+            }
+        }
+        v4 = Arrays.copyOf(v4, v4Count);
+        Arrays.sort(v4);
+        m_v4 = dedup(v4);
+
+        final long[][] sorted = v6.toArray(new long[v6.size()][]);
+        Arrays.sort(sorted, new Comparator<long[]>() {
+            @Override
+            public int compare(final long[] a, final long[] b) {
+                final int c = compareUnsigned(a[0], b[0]);
+                return c != 0 ? c : compareUnsigned(a[1], b[1]);
+            }
+        });
+        final long[] packed = new long[sorted.length * 2];
+        int v6Count = 0;
+        for (final long[] address : sorted) {
+            if (v6Count > 0 && packed[v6Count * 2 - 2] == address[0] && packed[v6Count * 2 - 1] == address[1]) {
+                continue;
+            }
+            packed[v6Count * 2] = address[0];
+            packed[v6Count * 2 + 1] = address[1];
+            v6Count++;
+        }
+        m_v6 = Arrays.copyOf(packed, v6Count * 2);
+    }
+
+    /**
+     * @return true if the address is in the set
+     */
+    boolean contains(final InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        final byte[] bytes = address.getAddress();
+        if (bytes.length == 4) {
+            return Arrays.binarySearch(m_v4, toInt(bytes)) >= 0;
+        }
+
+        final long high = toLong(bytes, 0);
+        final long low = toLong(bytes, 8);
+        int from = 0;
+        int to = m_v6.length / 2 - 1;
+        while (from <= to) {
+            final int mid = (from + to) >>> 1;
+            int c = compareUnsigned(m_v6[mid * 2], high);
+            if (c == 0) {
+                c = compareUnsigned(m_v6[mid * 2 + 1], low);
+            }
+            if (c < 0) {
+                from = mid + 1;
+            } else if (c > 0) {
+                to = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of addresses in the set
+     */
+    int size() {
+        return m_v4.length + m_v6.length / 2;
+    }
+
+    /**
+     * The address as an int with the sign bit flipped, so that sorting the
+     * ints sorts the addresses.
+     */
+    private static int toInt(final byte[] bytes) {
+        return (((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff)) ^ Integer.MIN_VALUE;
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static int compareUnsigned(final long a, final long b) {
+        final long x = a + Long.MIN_VALUE;
+        final long y = b + Long.MIN_VALUE;
+        return x < y ? -1 : (x == y ? 0 : 1);
+    }
+
+    private static int[] dedup(final int[] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (count == 0 || sorted[count - 1] != sorted[i]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+}
@@ -56,8 +56,6 @@ import org.opennms.netmgt.config.filter.Table;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.util.Assert;
 
 /**
@@ -77,6 +75,7 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
 	private DataSource m_dataSource;
     private DatabaseSchemaConfigFactory m_databaseSchemaConfigFactory;
+    private FilterRuleCache m_ruleCache = new FilterRuleCache();
 
     /**
      * <p>setDataSource</p>
@@ -114,6 +113,24 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return m_databaseSchemaConfigFactory;
     }
 
+    /**
+     * <p>setRuleCache</p>
+     *
+     * @param ruleCache a {@link org.opennms.netmgt.filter.FilterRuleCache} object.
+     */
+    public void setRuleCache(final FilterRuleCache ruleCache) {
+        m_ruleCache = ruleCache;
+    }
+
+    /**
+     * <p>getRuleCache</p>
+     *
+     * @return a {@link org.opennms.netmgt.filter.FilterRuleCache} object.
+     */
+    public FilterRuleCache getRuleCache() {
+        return m_ruleCache;
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      */
@@ -239,16 +256,38 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     }
 
     @Override
-    @CacheEvict(value="activeIpAddressList", allEntries=true)
-    public void flushActiveIpAddressListCache() {}
+    public void flushActiveIpAddressListCache() {
+        m_ruleCache.invalidate();
+        LOG.debug("flushActiveIpAddressListCache: {}", m_ruleCache);
+    }
 
     /**
      * {@inheritDoc}
      */
-    @Cacheable("activeIpAddressList")
     @Override
     public List<InetAddress> getActiveIPAddressList(final String rule) throws FilterParseException {
-    	return getIPAddressList(rule, true);
+        List<InetAddress> addresses = m_ruleCache.getList(rule);
+        if (addresses == null) {
+            final long generation = m_ruleCache.getGeneration();
+            addresses = getIPAddressList(rule, true);
+            m_ruleCache.put(rule, generation, new IpAddressSet(addresses), new ArrayList<InetAddress>(addresses));
+            return addresses;
+        }
+        return new ArrayList<InetAddress>(addresses);
+    }
+
+    /**
+     * Returns the active addresses matched by the rule, from the cache if
+     * possible.
+     */
+    private IpAddressSet getActiveIPAddressSet(final String rule) throws FilterParseException {
+        IpAddressSet addresses = m_ruleCache.get(rule);
+        if (addresses == null) {
+            final long generation = m_ruleCache.getGeneration();
+            addresses = new IpAddressSet(getIPAddressList(rule, true));
+            m_ruleCache.put(rule, generation, addresses);
+        }
+        return addresses;
     }
 
     /**
@@ -331,7 +370,7 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
              * see if the ip address is contained in the list that the
              * rule returns
              */
-            return getActiveIPAddressList(rule).contains(addr(addr));
+            return getActiveIPAddressSet(rule).contains(addr(addr));
         }
     }
 
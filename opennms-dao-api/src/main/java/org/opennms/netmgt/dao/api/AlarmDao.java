@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.dao.api;
 
+import org.opennms.core.criteria.Criteria;
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.alarm.AlarmSummary;
 
@@ -55,5 +56,16 @@ public interface AlarmDao extends LegacyOnmsDao<OnmsAlarm, Integer> {
      */
     List<AlarmSummary> getNodeAlarmSummariesIncludeAcknowledgedOnes(List<Integer> nodeIds);
 
+    /**
+     * Reads the alarms matching the criteria with a forward-only cursor,
+     * passing them to the handler one at a time so that large result sets
+     * never have to be held in memory.
+     *
+     * @param criteria the criteria to match
+     * @param handler receives each matching alarm
+     * @return the number of alarms passed to the handler
+     */
+    int scrollMatching(final Criteria criteria, final ResultHandler<OnmsAlarm> handler);
+
 
 }
@@ -28,8 +28,11 @@
 
 package org.opennms.netmgt.dao.api;
 
+import org.opennms.core.criteria.Criteria;
+import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.OnmsEvent;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -37,6 +40,15 @@ public interface EventDao extends LegacyOnmsDao<OnmsEvent, Integer> {
 
     int deletePreviousEventsForAlarm(final Integer id, final OnmsEvent e);
 
+    /**
+     * Associates the given events with an alarm using bulk updates.
+     *
+     * @param alarm the alarm the events were reduced to
+     * @param eventIds the IDs of the events
+     * @return the number of events that were updated
+     */
+    int setAlarmForEvents(final OnmsAlarm alarm, final Collection<Integer> eventIds);
+
     /**
      * Returns a list of events which have been created
      * AFTER date and the uei of each event matches one uei entry of the ueiList.
@@ -48,4 +60,15 @@ public interface EventDao extends LegacyOnmsDao<OnmsEvent, Integer> {
      */
     List<OnmsEvent> getEventsAfterDate(List<String> ueiList, Date date);
 
+    /**
+     * Reads the events matching the criteria with a forward-only cursor,
+     * passing them to the handler one at a time so that large result sets
+     * never have to be held in memory.
+     *
+     * @param criteria the criteria to match
+     * @param handler receives each matching event
+     * @return the number of events passed to the handler
+     */
+    int scrollMatching(final Criteria criteria, final ResultHandler<OnmsEvent> handler);
+
 }
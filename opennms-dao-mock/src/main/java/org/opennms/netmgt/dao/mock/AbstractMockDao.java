@@ -19,6 +19,7 @@ import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.dao.api.LegacyOnmsDao;
 import org.opennms.netmgt.dao.api.MonitoredServiceDao;
 import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.api.ResultHandler;
 import org.opennms.netmgt.dao.api.ServiceTypeDao;
 import org.opennms.netmgt.dao.api.SnmpInterfaceDao;
 import org.opennms.netmgt.model.OnmsCriteria;
@@ -109,6 +110,18 @@ public abstract class AbstractMockDao<T, K extends Serializable> implements Lega
         return new ArrayList<T>(matches);
     }
 
+    public int scrollMatching(final Criteria criteria, final ResultHandler<T> handler) {
+        LOG.debug("scrollMatching({})", criteria);
+        int count = 0;
+        for (final T result : findMatching(criteria)) {
+            count++;
+            if (!handler.handleResult(result)) {
+                break;
+            }
+        }
+        return count;
+    }
+
     @Override
     public List<T> findMatching(final OnmsCriteria criteria) {
         LOG.debug("findMatching({})", criteria);
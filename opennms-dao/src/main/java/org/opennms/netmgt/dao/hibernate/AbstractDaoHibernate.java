@@ -28,15 +28,19 @@
 
 package org.opennms.netmgt.dao.hibernate;
 
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
 import org.hibernate.EntityMode;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Projections;
 import org.hibernate.metadata.ClassMetadata;
 import org.opennms.netmgt.dao.api.OnmsDao;
+import org.opennms.netmgt.dao.api.ResultHandler;
 import org.opennms.netmgt.model.OnmsCriteria;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +66,11 @@ public abstract class AbstractDaoHibernate<T, K extends Serializable> extends Hi
     Class<T> m_entityClass;
     private String m_lockName;
     private final HibernateCriteriaConverter m_criteriaConverter = new HibernateCriteriaConverter();
+
+    /**
+     * The number of rows fetched at a time by {@link #scrollMatching}.
+     */
+    protected static final int SCROLL_FETCH_SIZE = 500;
     
     public AbstractDaoHibernate(final Class<T> entityClass) {
         super();
@@ -290,6 +299,48 @@ public abstract class AbstractDaoHibernate<T, K extends Serializable> extends Hi
         return getHibernateTemplate().executeFind(callback);
     }
     
+    /**
+     * Reads the objects matching the criteria with a forward-only cursor
+     * and passes them to the handler one at a time.  The session is cleared
+     * every {@link #SCROLL_FETCH_SIZE} results so that the objects which
+     * have already been handled can be garbage collected.  This must be
+     * called inside a transaction.
+     *
+     * @param criteria the criteria to match
+     * @param handler receives each matching object
+     * @return the number of objects passed to the handler
+     */
+    public int scrollMatching(final org.opennms.core.criteria.Criteria criteria, final ResultHandler<T> handler) {
+        final HibernateCallback<Integer> callback = new HibernateCallback<Integer>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Integer doInHibernate(final Session session) throws HibernateException, SQLException {
+                LOG.debug("criteria = {}", criteria);
+                final Criteria hibernateCriteria = m_criteriaConverter.convert(criteria, session);
+                hibernateCriteria.setFetchSize(SCROLL_FETCH_SIZE);
+                hibernateCriteria.setCacheMode(CacheMode.IGNORE);
+
+                final ScrollableResults results = hibernateCriteria.scroll(ScrollMode.FORWARD_ONLY);
+                int count = 0;
+                try {
+                    while (results.next()) {
+                        count++;
+                        if (!handler.handleResult((T)results.get(0))) {
+                            break;
+                        }
+                        if (count % SCROLL_FETCH_SIZE == 0) {
+                            session.clear();
+                        }
+                    }
+                } finally {
+                    results.close();
+                }
+                return count;
+            }
+        };
+        return getHibernateTemplate().execute(callback);
+    }
+
     /** {@inheritDoc} */
     @Override
     public int countMatching(final org.opennms.core.criteria.Criteria criteria) throws DataAccessException {
@@ -63,6 +63,11 @@ public class BottomNAttributeStatisticVisitor implements AttributeStatisticVisit
         Assert.notNull(attribute, "attribute argument must not be null");
         
         m_results.add(new AttributeStatistic(attribute, statistic));
+
+        // only the first m_count results are ever returned, so keep no more than that
+        if (m_count != null && m_results.size() > m_count) {
+            m_results.remove(m_results.last());
+        }
     }
 
     /**
@@ -256,6 +256,21 @@ public abstract class ResourceTypeUtils {
         s_cache.setProperty(propertiesFile, attrName, attrVal);
     }
 
+    /**
+     * Updates several string properties of a resource at once, writing its
+     * strings.properties file only if a value changed.
+     *
+     * @param resourceDir a {@link java.io.File} object.
+     * @param properties the values, by attribute name
+     * @return true if the file was written
+     * @throws java.io.FileNotFoundException if any.
+     * @throws java.io.IOException if any.
+     */
+    public static boolean updateStringProperties(File resourceDir, Map<String, String> properties) throws FileNotFoundException, IOException {
+        File propertiesFile = new File(resourceDir, DefaultResourceDao.STRINGS_PROPERTIES_FILE_NAME);
+        return s_cache.updateProperties(propertiesFile, properties);
+    }
+
     /**
      * <p>getStringProperty</p>
      *
@@ -55,6 +55,7 @@ import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.ServiceTypeDao;
 import org.opennms.netmgt.filter.FilterDaoFactory;
+import org.opennms.netmgt.filter.FilterRuleCache;
 import org.opennms.netmgt.filter.JdbcFilterDao;
 import org.opennms.netmgt.model.AbstractEntityVisitor;
 import org.opennms.netmgt.model.EntityVisitor;
@@ -128,6 +129,8 @@ public class JdbcFilterDaoTest implements InitializingBean {
         m_dao = new JdbcFilterDao();
         m_dao.setDataSource(m_dataSource);
         m_dao.setDatabaseSchemaConfigFactory(DatabaseSchemaConfigFactory.getInstance());
+        // the rule cache is off by default
+        m_dao.setRuleCache(new FilterRuleCache(FilterRuleCache.DEFAULT_MAX_RULES, 60000));
         m_dao.afterPropertiesSet();
         FilterDaoFactory.setInstance(m_dao);
     }
@@ -278,6 +281,90 @@ public class JdbcFilterDaoTest implements InitializingBean {
         assertFalse("There is nothing in the database, so isValid shouldn't match non-empty rules", m_dao.isValid("1.1.1.1", "ipaddr == '1.1.1.1'"));
     }
 
+    @Test
+    @Transactional
+    public void testIsValidUsesRuleCache() throws Exception {
+        FilterRuleCache cache = m_dao.getRuleCache();
+
+        assertFalse(m_dao.isValid("1.1.1.1", "ipaddr == '1.1.1.1'"));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        assertFalse(m_dao.isValid("1.1.1.1", "ipaddr == '1.1.1.1'"));
+        assertFalse(m_dao.isValid("1.1.1.2", "ipaddr == '1.1.1.1'"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+
+        m_dao.flushActiveIpAddressListCache();
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getInvalidations());
+
+        assertFalse(m_dao.isValid("1.1.1.1", "ipaddr == '1.1.1.1'"));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    @Transactional
+    public void testCachedListMatchesDatabase() throws Exception {
+        List<InetAddress> uncached = getUncachedActiveIPAddressList("ipaddr IPLIKE *.*.*.*");
+        List<InetAddress> cached = m_dao.getActiveIPAddressList("ipaddr IPLIKE *.*.*.*");
+        // the cache must keep the order the database returned
+        assertEquals(uncached, cached);
+        assertEquals(cached, m_dao.getActiveIPAddressList("ipaddr IPLIKE *.*.*.*"));
+        assertEquals(1, m_dao.getRuleCache().getHits());
+
+        // callers get their own copy of the list
+        m_dao.getActiveIPAddressList("ipaddr IPLIKE *.*.*.*").clear();
+        assertEquals(uncached, m_dao.getActiveIPAddressList("ipaddr IPLIKE *.*.*.*"));
+    }
+
+    @Test
+    @Transactional
+    public void testListIsLoadedAfterIsValid() throws Exception {
+        FilterRuleCache cache = m_dao.getRuleCache();
+
+        m_dao.isValid("1.1.1.1", "ipaddr IPLIKE *.*.*.*");
+        assertEquals(1, cache.getMisses());
+
+        // only the address set was cached, so the list has to be loaded
+        List<InetAddress> addresses = m_dao.getActiveIPAddressList("ipaddr IPLIKE *.*.*.*");
+        assertEquals(2, cache.getMisses());
+        assertEquals(getUncachedActiveIPAddressList("ipaddr IPLIKE *.*.*.*"), addresses);
+
+        m_dao.isValid("1.1.1.1", "ipaddr IPLIKE *.*.*.*");
+        m_dao.getActiveIPAddressList("ipaddr IPLIKE *.*.*.*");
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    private List<InetAddress> getUncachedActiveIPAddressList(String rule) {
+        FilterRuleCache cache = m_dao.getRuleCache();
+        m_dao.setRuleCache(new FilterRuleCache(100, 0));
+        try {
+            return m_dao.getActiveIPAddressList(rule);
+        } finally {
+            m_dao.setRuleCache(cache);
+        }
+    }
+
+    @Test
+    @Transactional
+    public void testRuleCacheIsOffByDefault() throws Exception {
+        assertEquals(0, new FilterRuleCache().getTtl());
+    }
+
+    @Test
+    @Transactional
+    public void testRuleCacheDisabled() throws Exception {
+        m_dao.setRuleCache(new FilterRuleCache(100, 0));
+        assertFalse(m_dao.isValid("1.1.1.1", "ipaddr == '1.1.1.1'"));
+        assertFalse(m_dao.isValid("1.1.1.1", "ipaddr == '1.1.1.1'"));
+        assertEquals(0, m_dao.getRuleCache().getHits());
+        assertEquals(2, m_dao.getRuleCache().getMisses());
+        assertEquals(0, m_dao.getRuleCache().getSize());
+    }
+
     @Test
     @Transactional
     public void testIsValidEmptyRule() throws Exception {
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.netmgt.provision.service.operations.DeleteOperation;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
+import org.opennms.netmgt.provision.service.operations.RequisitionImport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the scan and persist phases of a requisition import in chunks on a
+ * pool of worker threads, instead of one nested life cycle per node.
+ *
+ * Each chunk of operations is scanned and then persisted in a single
+ * transaction.  If that transaction fails the operations of the chunk are
+ * retried one at a time so that one bad node does not fail the others.
+ * Events for a chunk are only sent once its transaction commits, so the
+ * nodes of a failed chunk are not announced twice.  Deletes are run before
+ * updates and inserts.
+ */
+public class BulkImport {
+    private static final Logger LOG = LoggerFactory.getLogger(BulkImport.class);
+
+    private final ProvisionService m_provisionService;
+    private final int m_chunkSize;
+    private final int m_threads;
+
+    private final AtomicInteger m_completed = new AtomicInteger();
+    private final AtomicInteger m_failed = new AtomicInteger();
+    private volatile int m_total;
+    private volatile long m_startTime;
+
+    /**
+     * <p>Constructor for BulkImport.</p>
+     *
+     * @param provisionService a {@link org.opennms.netmgt.provision.service.ProvisionService} object.
+     * @param chunkSize the number of operations written per transaction
+     * @param threads the number of worker threads
+     */
+    public BulkImport(final ProvisionService provisionService, final int chunkSize, final int threads) {
+        m_provisionService = provisionService;
+        m_chunkSize = Math.max(1, chunkSize);
+        m_threads = Math.max(1, threads);
+    }
+
+    /**
+     * Scan and persist the operations.
+     *
+     * @param operations the operations from the audit phase
+     * @param ri the import, checked between chunks so that an aborted import stops early
+     * @param rescanExisting whether to scan the nodes before persisting them
+     * @param monitor notified of the progress of the import
+     */
+    public void run(final Collection<ImportOperation> operations, final RequisitionImport ri, final boolean rescanExisting, final ProvisionMonitor monitor) {
+        final List<ImportOperation> deletes = new ArrayList<ImportOperation>();
+        final List<ImportOperation> others = new ArrayList<ImportOperation>(operations.size());
+        for (final ImportOperation operation : operations) {
+            if (operation instanceof DeleteOperation) {
+                deletes.add(operation);
+            } else {
+                others.add(operation);
+            }
+        }
+
+        m_total = operations.size();
+        m_completed.set(0);
+        m_failed.set(0);
+        m_startTime = System.currentTimeMillis();
+
+        LOG.info("Bulk importing {} operations in chunks of {} on {} threads", m_total, m_chunkSize, m_threads);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(m_threads, new LogPreservingThreadFactory(getClass().getSimpleName(), m_threads, true));
+        try {
+            runChunks(executor, deletes, ri, rescanExisting, monitor);
+            runChunks(executor, others, ri, rescanExisting, monitor);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LOG.info("Bulk import finished: {}", this);
+    }
+
+    private void runChunks(final ExecutorService executor, final List<ImportOperation> operations, final RequisitionImport ri, final boolean rescanExisting, final ProvisionMonitor monitor) {
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < operations.size(); i += m_chunkSize) {
+            final List<ImportOperation> chunk = operations.subList(i, Math.min(i + m_chunkSize, operations.size()));
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (ri.isAborted()) {
+                        return;
+                    }
+                    runChunk(chunk, rescanExisting, monitor);
+                }
+            }));
+        }
+
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                LOG.warn("Interrupted while waiting for the bulk import to finish", e);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final ExecutionException e) {
+                LOG.error("Unexpected error while bulk importing", e.getCause());
+            }
+        }
+    }
+
+    private void runChunk(final List<ImportOperation> chunk, final boolean rescanExisting, final ProvisionMonitor monitor) {
+        if (rescanExisting) {
+            for (final ImportOperation operation : chunk) {
+                monitor.beginPreprocessing(operation);
+                try {
+                    operation.scan();
+                } finally {
+                    monitor.finishPreprocessing(operation);
+                }
+            }
+        }
+
+        try {
+            m_provisionService.persistImportOperations(chunk, monitor);
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to persist a chunk of {} operations in one transaction, retrying them one at a time", chunk.size(), e);
+            for (final ImportOperation operation : chunk) {
+                try {
+                    operation.persist(false);
+                } catch (final RuntimeException oe) {
+                    LOG.error("Failed to persist {}", operation, oe);
+                    m_failed.incrementAndGet();
+                }
+            }
+        } finally {
+            m_provisionService.clearCache();
+        }
+
+        final int completed = m_completed.addAndGet(chunk.size());
+        LOG.info("Persisted {} of {} operations ({} operations/s)", completed, m_total, String.format("%.1f", getRate()));
+    }
+
+    /**
+     * @return the number of operations scanned and persisted so far, including failures
+     */
+    public int getCompleted() {
+        return m_completed.get();
+    }
+
+    /**
+     * @return the number of operations that could not be persisted
+     */
+    public int getFailed() {
+        return m_failed.get();
+    }
+
+    /**
+     * @return the total number of operations in the import
+     */
+    public int getTotal() {
+        return m_total;
+    }
+
+    /**
+     * @return the number of operations completed per second since the import started
+     */
+    public double getRate() {
+        final long elapsed = Math.max(1, System.currentTimeMillis() - m_startTime);
+        return m_completed.get() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d operations completed, %d failed, %.1f operations/s", getCompleted(), getTotal(), getFailed(), getRate());
+    }
+}
@@ -28,8 +28,12 @@
 
 package org.opennms.netmgt.provision.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.opennms.core.tasks.BatchTask;
 import org.slf4j.Logger;
@@ -37,6 +41,8 @@ import org.slf4j.LoggerFactory;
 
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.provision.persist.AbstractRequisitionVisitor;
+import org.opennms.netmgt.provision.persist.OnmsMonitoredServiceRequisition;
+import org.opennms.netmgt.provision.persist.OnmsNodeCategoryRequisition;
 import org.opennms.netmgt.provision.persist.OnmsNodeRequisition;
 import org.opennms.netmgt.provision.persist.RequisitionVisitor;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
@@ -46,48 +52,98 @@ import org.opennms.netmgt.provision.service.lifecycle.annotations.Activity;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.ActivityProvider;
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.opennms.netmgt.provision.service.operations.NoOpProvisionMonitor;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.opennms.netmgt.provision.service.operations.RequisitionImport;
 import org.springframework.core.io.Resource;
 
 /**
  * CoreImportActivities
  *
+ * <p>When <code>org.opennms.provisiond.bulkImport</code> is true the scan and
+ * persist phases run through {@link BulkImport}, in chunks of
+ * <code>org.opennms.provisiond.bulkImportChunkSize</code> operations per
+ * transaction on <code>org.opennms.provisiond.bulkImportThreads</code>
+ * worker threads, and the relate phase sets every parent in one pass.</p>
+ *
  * @author brozow
  * @version $Id: $
  */
 @ActivityProvider
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
+
+    private static final ProvisionMonitor NO_OP_MONITOR = new NoOpProvisionMonitor();
     
     ProvisionService m_provisionService;
+
+    private boolean m_bulkImport = Boolean.getBoolean("org.opennms.provisiond.bulkImport");
+    private int m_bulkImportChunkSize = Integer.getInteger("org.opennms.provisiond.bulkImportChunkSize", 100);
+    private int m_bulkImportThreads = Integer.getInteger("org.opennms.provisiond.bulkImportThreads", 4);
     
     public CoreImportActivities(final ProvisionService provisionService) {
         m_provisionService = provisionService;
     }
 
+    public boolean isBulkImport() {
+        return m_bulkImport;
+    }
+
+    public void setBulkImport(final boolean bulkImport) {
+        m_bulkImport = bulkImport;
+    }
+
+    public int getBulkImportChunkSize() {
+        return m_bulkImportChunkSize;
+    }
+
+    public void setBulkImportChunkSize(final int bulkImportChunkSize) {
+        m_bulkImportChunkSize = bulkImportChunkSize;
+    }
+
+    public int getBulkImportThreads() {
+        return m_bulkImportThreads;
+    }
+
+    public void setBulkImportThreads(final int bulkImportThreads) {
+        m_bulkImportThreads = bulkImportThreads;
+    }
+
     @Activity( lifecycle = "import", phase = "validate", schedulingHint="import")
-    public RequisitionImport loadSpecFile(final Resource resource) {
+    public RequisitionImport loadSpecFile(final Resource resource, final ProvisionMonitor monitor) {
         final RequisitionImport ri = new RequisitionImport();
 
         info("Loading requisition from resource %s", resource);
+        monitor(monitor).beginLoadingResource(resource);
         try {
             final Requisition specFile = m_provisionService.loadRequisition(resource);
             ri.setRequisition(specFile);
             debug("Finished loading requisition.");
         } catch (final Throwable t) {
             ri.abort(t);
+        } finally {
+            monitor(monitor).finishLoadingResource(resource);
         }
 
         return ri;
     }
     
     @Activity( lifecycle = "import", phase = "audit", schedulingHint="import" )
-    public ImportOperationsManager auditNodes(final RequisitionImport ri, final Boolean rescanExisting) {
+    public ImportOperationsManager auditNodes(final RequisitionImport ri, final Boolean rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping audit phase import.");
             return null;
         }
         
+        monitor(monitor).beginAuditNodes();
+        try {
+            return doAuditNodes(ri, rescanExisting);
+        } finally {
+            monitor(monitor).finishAuditNodes();
+        }
+    }
+
+    private ImportOperationsManager doAuditNodes(final RequisitionImport ri, final Boolean rescanExisting) {
         final Requisition specFile = ri.getRequisition();
 
         info("Auditing nodes for requisition %s", specFile);
@@ -109,15 +165,28 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "import", phase = "scan", schedulingHint="import" )
-    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri) {
+    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final Boolean rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase import.");
             return;
         }
 
-        info("Scheduling nodes for phase %s", currentPhase);
-        
         final Collection<ImportOperation> operations = opsMgr.getOperations();
+
+        if (m_bulkImport) {
+            info("Bulk importing nodes for phase %s", currentPhase);
+            final ProvisionMonitor mon = monitor(monitor);
+            mon.beginProcessingOps(opsMgr.getDeleteCount(), opsMgr.getUpdateCount(), opsMgr.getInsertCount());
+            try {
+                createCategoriesAndServiceTypes(ri.getRequisition());
+                new BulkImport(m_provisionService, m_bulkImportChunkSize, m_bulkImportThreads).run(operations, ri, rescanExisting == null || rescanExisting, mon);
+            } finally {
+                mon.finishProcessingOps();
+            }
+            return;
+        }
+
+        info("Scheduling nodes for phase %s", currentPhase);
         
         for(final ImportOperation op : operations) {
             final LifeCycleInstance nodeScan = currentPhase.createNestedLifeCycle("nodeImport");
@@ -133,6 +202,35 @@ public class CoreImportActivities {
     }
     
     
+    /**
+     * Create the categories and service types of the requisition up front,
+     * so that the bulk import workers do not race each other to insert the
+     * same new category or service type.
+     */
+    private void createCategoriesAndServiceTypes(final Requisition requisition) {
+        final Set<String> categories = new TreeSet<String>();
+        final Set<String> serviceTypes = new TreeSet<String>();
+        requisition.visit(new AbstractRequisitionVisitor() {
+            @Override
+            public void visitNodeCategory(final OnmsNodeCategoryRequisition catReq) {
+                categories.add(catReq.getName());
+            }
+
+            @Override
+            public void visitMonitoredService(final OnmsMonitoredServiceRequisition monSvcReq) {
+                serviceTypes.add(monSvcReq.getServiceName());
+            }
+        });
+
+        LOG.debug("Creating {} categories and {} service types before bulk importing", categories.size(), serviceTypes.size());
+        for (final String category : categories) {
+            m_provisionService.createCategoryIfNecessary(category);
+        }
+        for (final String serviceType : serviceTypes) {
+            m_provisionService.createServiceTypeIfNecessary(serviceType);
+        }
+    }
+
     @Activity( lifecycle = "nodeImport", phase = "scan", schedulingHint="import" )
     public void scanNode(final ImportOperation operation, final RequisitionImport ri, final Boolean rescanExisting) {
         if (ri.isAborted()) {
@@ -164,7 +262,7 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "import", phase = "relate" , schedulingHint = "import" )
-    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri) {
+    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping relate phase.");
             return;
@@ -173,6 +271,20 @@ public class CoreImportActivities {
         info("Running relate phase");
         
         final Requisition requisition = ri.getRequisition();
+
+        if (m_bulkImport) {
+            final List<OnmsNodeRequisition> nodeReqs = new ArrayList<OnmsNodeRequisition>();
+            requisition.visit(new AbstractRequisitionVisitor() {
+                @Override
+                public void visitNode(final OnmsNodeRequisition nodeReq) {
+                    nodeReqs.add(nodeReq);
+                }
+            });
+            LOG.debug("Scheduling relate of {} nodes in one pass", nodeReqs.size());
+            currentPhase.add(bulkParentSetter(m_provisionService, nodeReqs, requisition.getForeignSource(), monitor(monitor)));
+            return;
+        }
+
         RequisitionVisitor visitor = new AbstractRequisitionVisitor() {
             @Override
             public void visitNode(final OnmsNodeRequisition nodeReq) {
@@ -216,6 +328,30 @@ public class CoreImportActivities {
         }; 
     }
 
+    private static Runnable bulkParentSetter(final ProvisionService provisionService, final List<OnmsNodeRequisition> nodeReqs, final String foreignSource, final ProvisionMonitor monitor) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                monitor.beginRelateNodes();
+                try {
+                    provisionService.setNodeParentsAndDependencies(foreignSource, nodeReqs);
+                    provisionService.clearCache();
+                } finally {
+                    monitor.finishRelateNodes();
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "set parents for "+nodeReqs.size()+" nodes in "+foreignSource;
+            }
+        };
+    }
+
+    private static ProvisionMonitor monitor(final ProvisionMonitor monitor) {
+        return monitor == null ? NO_OP_MONITOR : monitor;
+    }
+
     protected void info(String format, Object... args) {
     	LOG.info(format, args);
     }
@@ -89,6 +89,8 @@ import org.opennms.netmgt.provision.persist.requisition.Requisition;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionInterface;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionInterfaceCollection;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -701,6 +703,61 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         m_nodeDao.flush();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    @Transactional
+    public void setNodeParentsAndDependencies(final String foreignSource, final Collection<OnmsNodeRequisition> nodeReqs) {
+        final Map<String, OnmsNode> nodes = new HashMap<String, OnmsNode>();
+        for (final OnmsNode node : m_nodeDao.findByForeignSource(foreignSource)) {
+            nodes.put(node.getForeignId(), node);
+        }
+
+        // parents outside of this foreign source, or found by label, keyed by "foreignSource:foreignId" or label
+        final Map<String, OnmsNode> otherParents = new HashMap<String, OnmsNode>();
+
+        for (final OnmsNodeRequisition nodeReq : nodeReqs) {
+            final OnmsNode node = nodes.get(nodeReq.getForeignId());
+            if (node == null) {
+                continue;
+            }
+
+            final String parentForeignSource = nodeReq.getParentForeignSource() == null ? foreignSource : nodeReq.getParentForeignSource();
+            final String parentForeignId = nodeReq.getParentForeignId();
+            final String parentNodeLabel = nodeReq.getParentNodeLabel();
+
+            final OnmsNode parent;
+            if (parentForeignId != null && foreignSource.equals(parentForeignSource)) {
+                parent = nodes.get(parentForeignId);
+            } else if (parentForeignId != null || parentNodeLabel != null) {
+                final String key = parentForeignId != null ? parentForeignSource + ":" + parentForeignId : parentNodeLabel;
+                if (!otherParents.containsKey(key)) {
+                    otherParents.put(key, findParent(parentForeignSource, parentForeignId, parentNodeLabel));
+                }
+                parent = otherParents.get(key);
+            } else {
+                parent = null;
+            }
+
+            LOG.debug("Setting parent of node: {} to: {}", node, parent);
+            node.setParent(parent);
+            setPathDependency(node, parent);
+            m_nodeDao.update(node);
+        }
+
+        m_nodeDao.flush();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Transactional
+    public void persistImportOperations(final Collection<ImportOperation> operations, final ProvisionMonitor monitor) {
+        for (final ImportOperation operation : operations) {
+            monitor.beginPersisting(operation);
+            operation.persist(false);
+            monitor.finishPersisting(operation);
+        }
+    }
+
     private void preloadExistingTypes() {
         if (m_typeCache.get() == null) {
             m_typeCache.set(loadServiceTypeMap());
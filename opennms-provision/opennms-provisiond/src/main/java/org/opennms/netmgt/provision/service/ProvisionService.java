@@ -29,6 +29,7 @@
 package org.opennms.netmgt.provision.service;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -45,7 +46,10 @@ import org.opennms.netmgt.provision.NodePolicy;
 import org.opennms.netmgt.provision.ServiceDetector;
 import org.opennms.netmgt.provision.SnmpInterfacePolicy;
 import org.opennms.netmgt.provision.persist.ForeignSourceRepository;
+import org.opennms.netmgt.provision.persist.OnmsNodeRequisition;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.springframework.core.io.Resource;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -283,6 +287,33 @@ public interface ProvisionService {
             String parentForeignSource, String parentForeignId, 
             String parentNodeLabel
            );
+
+    /**
+     * Sets the parent and path dependency of every node in a requisition in
+     * one pass.  The nodes of the foreign source are loaded once, parents in
+     * other foreign sources or found by node label are looked up once each,
+     * and all of the updates are written in a single transaction.
+     *
+     * @param foreignSource the foreign source of the requisition
+     * @param nodeReqs the requisitioned nodes
+     */
+    @Transactional
+    void setNodeParentsAndDependencies(String foreignSource, Collection<OnmsNodeRequisition> nodeReqs);
+
+    /**
+     * Persists a chunk of import operations in a single transaction.  The
+     * cache is not cleared; callers should call {@link #clearCache()} once
+     * the chunk has been written.
+     *
+     * <p>The node, interface and service events raised by the operations go
+     * through the transaction aware event forwarder, so they are sent once
+     * the whole chunk has committed and are discarded if it rolls back.</p>
+     *
+     * @param operations the operations to persist
+     * @param monitor notified as each operation is persisted
+     */
+    @Transactional
+    void persistImportOperations(Collection<ImportOperation> operations, ProvisionMonitor monitor);
     
     /**
      * Returns a list of scheduled nodes.
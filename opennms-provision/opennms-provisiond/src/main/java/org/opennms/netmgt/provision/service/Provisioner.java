@@ -407,8 +407,11 @@ public class Provisioner implements SpringServiceDaemon {
         final LifeCycleInstance doImport = m_lifeCycleRepository.createLifeCycleInstance("import", m_importActivities);
         doImport.setAttribute("resource", resource);
         doImport.setAttribute("rescanExisting", Boolean.valueOf(rescanExisting));
+        doImport.setAttribute("monitor", monitor);
+        monitor.beginImporting();
         doImport.trigger();
         doImport.waitFor();
+        monitor.finishImporting();
         final RequisitionImport ri = doImport.findAttributeByType(RequisitionImport.class);
         if (ri.isAborted()) {
             throw new ModelImportException("Import failed for resource " + resource.toString(), ri.getError());
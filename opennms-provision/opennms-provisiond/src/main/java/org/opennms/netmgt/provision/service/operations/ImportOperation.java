@@ -71,6 +71,17 @@ public abstract class ImportOperation {
      * <p>persist</p>
      */
     public void persist() {
+        persist(true);
+    }
+
+    /**
+     * <p>persist</p>
+     *
+     * @param clearCache whether to clear the cache afterwards; bulk imports
+     *        persist a chunk of operations in one transaction and clear it
+     *        once for the whole chunk
+     */
+    public void persist(final boolean clearCache) {
     
         final ImportOperation oper = this;
     
@@ -78,11 +89,12 @@ public abstract class ImportOperation {
     
         doPersist();
     	
+        if (clearCache) {
+            LOG.info("Clear cache: {}", this);
     
-        LOG.info("Clear cache: {}", this);
-    
-        // clear the cache to we don't use up all the memory
-    	getProvisionService().clearCache();
+            // clear the cache to we don't use up all the memory
+            getProvisionService().clearCache();
+        }
     }
 
 
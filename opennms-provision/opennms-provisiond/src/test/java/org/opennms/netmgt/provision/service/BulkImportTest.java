@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.provision.service.operations.DeleteOperation;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.NoOpProvisionMonitor;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
+import org.opennms.netmgt.provision.service.operations.RequisitionImport;
+
+/**
+ * BulkImportTest
+ *
+ * Runs {@link BulkImport} against a provision service that records what
+ * was written, and treats each call to persistImportOperations as a
+ * transaction that is only kept when every operation in it succeeds.
+ */
+public class BulkImportTest {
+
+    private final List<String> m_persisted = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger m_transactions = new AtomicInteger();
+    private final AtomicInteger m_cacheClears = new AtomicInteger();
+
+    private ProvisionService m_provisionService;
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging(false);
+
+        m_provisionService = (ProvisionService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ProvisionService.class }, new InvocationHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("persistImportOperations".equals(method.getName())) {
+                    final List<String> persisted = new ArrayList<String>();
+                    final ProvisionMonitor monitor = (ProvisionMonitor) args[1];
+                    for (final ImportOperation operation : (Collection<ImportOperation>) args[0]) {
+                        monitor.beginPersisting(operation);
+                        operation.persist(false);
+                        monitor.finishPersisting(operation);
+                        persisted.add(operation.toString());
+                    }
+                    m_transactions.incrementAndGet();
+                    m_persisted.addAll(persisted);
+                } else if ("deleteNode".equals(method.getName())) {
+                    // recorded by the operation
+                } else if ("clearCache".equals(method.getName())) {
+                    m_cacheClears.incrementAndGet();
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testChunks() {
+        final List<ImportOperation> operations = new ArrayList<ImportOperation>();
+        for (int i = 0; i < 25; i++) {
+            operations.add(new TestOperation("node" + i, false));
+        }
+
+        final BulkImport bulkImport = new BulkImport(m_provisionService, 10, 3);
+        bulkImport.run(operations, new RequisitionImport(), true, new NoOpProvisionMonitor());
+
+        assertEquals(25, m_persisted.size());
+        assertEquals(3, m_transactions.get());
+        assertEquals(3, m_cacheClears.get());
+        assertEquals(25, bulkImport.getCompleted());
+        assertEquals(0, bulkImport.getFailed());
+        for (final ImportOperation operation : operations) {
+            assertTrue(((TestOperation) operation).isScanned());
+        }
+    }
+
+    @Test
+    public void testDeletesRunFirst() {
+        final List<ImportOperation> operations = new ArrayList<ImportOperation>();
+        for (int i = 0; i < 5; i++) {
+            operations.add(new TestOperation("node" + i, false));
+        }
+        for (int i = 0; i < 5; i++) {
+            operations.add(new DeleteOperation(i, "test", "deleted" + i, m_provisionService));
+        }
+
+        new BulkImport(m_provisionService, 2, 4).run(operations, new RequisitionImport(), false, new NoOpProvisionMonitor());
+
+        assertEquals(10, m_persisted.size());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(m_persisted.get(i), m_persisted.get(i).startsWith("DELETE"));
+        }
+        for (final ImportOperation operation : operations) {
+            if (operation instanceof TestOperation) {
+                assertTrue(!((TestOperation) operation).isScanned());
+            }
+        }
+    }
+
+    @Test
+    public void testFailedChunkIsRetriedOneAtATime() {
+        final List<ImportOperation> operations = new ArrayList<ImportOperation>();
+        for (int i = 0; i < 10; i++) {
+            operations.add(new TestOperation("node" + i, i == 3));
+        }
+
+        final BulkImport bulkImport = new BulkImport(m_provisionService, 5, 1);
+        bulkImport.run(operations, new RequisitionImport(), false, new NoOpProvisionMonitor());
+
+        // the second chunk goes through in one transaction, the first is retried
+        assertEquals(1, m_transactions.get());
+        assertEquals(10, bulkImport.getCompleted());
+        assertEquals(1, bulkImport.getFailed());
+    }
+
+    @Test
+    public void testAbortedImportStops() {
+        final List<ImportOperation> operations = new ArrayList<ImportOperation>();
+        for (int i = 0; i < 10; i++) {
+            operations.add(new TestOperation("node" + i, false));
+        }
+        final RequisitionImport ri = new RequisitionImport();
+        ri.abort(new Exception("test"));
+
+        final BulkImport bulkImport = new BulkImport(m_provisionService, 5, 2);
+        bulkImport.run(operations, ri, true, new NoOpProvisionMonitor());
+
+        assertEquals(0, m_persisted.size());
+        assertEquals(0, bulkImport.getCompleted());
+    }
+
+    @Test
+    public void testMonitorSeesEveryOperation() {
+        final List<ImportOperation> operations = new ArrayList<ImportOperation>();
+        for (int i = 0; i < 7; i++) {
+            operations.add(new TestOperation("node" + i, false));
+        }
+        final AtomicInteger scanned = new AtomicInteger();
+        final AtomicInteger persisted = new AtomicInteger();
+        final ProvisionMonitor countingMonitor = new NoOpProvisionMonitor() {
+            @Override
+            public void finishPreprocessing(final ImportOperation oper) {
+                scanned.incrementAndGet();
+            }
+
+            @Override
+            public void finishPersisting(final ImportOperation oper) {
+                persisted.incrementAndGet();
+            }
+        };
+
+        new BulkImport(m_provisionService, 3, 2).run(operations, new RequisitionImport(), true, countingMonitor);
+
+        assertEquals(7, scanned.get());
+        assertEquals(7, persisted.get());
+    }
+
+    private final class TestOperation extends ImportOperation {
+        private final String m_foreignId;
+        private final boolean m_fail;
+        private volatile boolean m_scanned = false;
+
+        public TestOperation(final String foreignId, final boolean fail) {
+            super(m_provisionService);
+            m_foreignId = foreignId;
+            m_fail = fail;
+        }
+
+        @Override
+        public void scan() {
+            m_scanned = true;
+        }
+
+        @Override
+        protected void doPersist() {
+            if (m_fail) {
+                throw new IllegalStateException("failed to persist " + m_foreignId);
+            }
+        }
+
+        public boolean isScanned() {
+            return m_scanned;
+        }
+
+        @Override
+        public String toString() {
+            return "TEST: " + m_foreignId;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.utils.BeanUtils;
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.dao.DatabasePopulator;
+import org.opennms.netmgt.dao.api.CategoryDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.events.EventListener;
+import org.opennms.netmgt.provision.persist.ForeignSourceRepository;
+import org.opennms.netmgt.provision.persist.MockForeignSourceRepository;
+import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * Runs requisition imports through the bulk import path, with small chunks
+ * on several workers, and checks the nodes, categories, parents and events
+ * that come out of it.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-mockDao.xml",
+        "classpath:/META-INF/opennms/applicationContext-mockEventd.xml",
+        "classpath:/META-INF/opennms/applicationContext-proxy-snmp.xml",
+        "classpath:/META-INF/opennms/mockEventIpcManager.xml",
+        "classpath:/META-INF/opennms/applicationContext-provisiond.xml",
+        "classpath*:/META-INF/opennms/provisiond-extensions.xml",
+        "classpath*:/META-INF/opennms/detectors.xml",
+        "classpath:/mockForeignSourceContext.xml",
+        "classpath:/importerServiceTest.xml"
+})
+@JUnitConfigurationEnvironment(systemProperties="org.opennms.provisiond.enableDiscovery=false")
+@DirtiesContext
+public class BulkProvisionerTest extends ProvisioningTestCase implements InitializingBean {
+
+    @Autowired
+    private MockEventIpcManager m_mockEventIpcManager;
+
+    @Autowired
+    private Provisioner m_provisioner;
+
+    @Autowired
+    private CoreImportActivities m_importActivities;
+
+    @Autowired
+    private ProvisionService m_provisionService;
+
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private CategoryDao m_categoryDao;
+
+    @Autowired
+    private ResourceLoader m_resourceLoader;
+
+    @Autowired
+    private DatabasePopulator m_populator;
+
+    private final ConcurrentMap<Integer, AtomicInteger> m_nodeAddedEvents = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+
+        m_populator.resetDatabase();
+        m_provisioner.start();
+
+        final ForeignSourceRepository foreignSourceRepository = new MockForeignSourceRepository();
+        final ForeignSource foreignSource = new ForeignSource();
+        foreignSource.setName("empty");
+        foreignSource.setScanInterval(Duration.standardDays(1));
+        foreignSourceRepository.save(foreignSource);
+        foreignSourceRepository.flush();
+        m_provisionService.setForeignSourceRepository(foreignSourceRepository);
+
+        m_importActivities.setBulkImport(true);
+        m_importActivities.setBulkImportChunkSize(1);
+        m_importActivities.setBulkImportThreads(4);
+
+        m_mockEventIpcManager.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(final Event e) {
+                final Integer nodeId = e.getNodeid().intValue();
+                m_nodeAddedEvents.putIfAbsent(nodeId, new AtomicInteger());
+                m_nodeAddedEvents.get(nodeId).incrementAndGet();
+            }
+
+            @Override
+            public String getName() {
+                return getClass().getSimpleName();
+            }
+        }, Collections.singletonList(EventConstants.NODE_ADDED_EVENT_UEI));
+
+        getScanExecutor().resume();
+        getScheduledExecutor().pause();
+    }
+
+    @After
+    public void tearDown() {
+        m_importActivities.setBulkImport(false);
+        m_populator.resetDatabase();
+    }
+
+    @Test(timeout=300000)
+    public void testBulkImport() throws Exception {
+        m_provisioner.importModelFromResource(m_resourceLoader.getResource("classpath:/tec_dump.xml.smalltest"), true);
+        waitForImport();
+
+        assertEquals(10, m_nodeDao.countAll());
+
+        // every node is announced once
+        assertEquals(10, m_nodeAddedEvents.size());
+        for (final Map.Entry<Integer, AtomicInteger> entry : m_nodeAddedEvents.entrySet()) {
+            assertNotNull("nodeAdded sent for a node that was not saved: " + entry.getKey(), m_nodeDao.get(entry.getKey()));
+            assertEquals("nodeAdded events for node " + entry.getKey(), 1, entry.getValue().get());
+        }
+
+        // the workers share the categories that were created up front
+        int beCategories = 0;
+        for (final OnmsCategory category : m_categoryDao.findAll()) {
+            if ("BE".equals(category.getName())) {
+                beCategories++;
+            }
+        }
+        assertEquals(1, beCategories);
+        int beNodes = 0;
+        for (final OnmsNode node : m_nodeDao.findAll()) {
+            if (node.hasCategory("BE")) {
+                beNodes++;
+            }
+        }
+        assertEquals(9, beNodes);
+    }
+
+    @Test(timeout=300000)
+    public void testBulkImportSetsParents() throws Exception {
+        m_provisioner.importModelFromResource(m_resourceLoader.getResource("classpath:/tec_dump.xml.smalltest"), true);
+        waitForImport();
+
+        final OnmsNode child = m_nodeDao.findByForeignId("empty", "1223");
+        assertNotNull(child);
+        assertNotNull(child.getParent());
+        assertEquals("apknd", child.getParent().getLabel());
+
+        final OnmsNode otherChild = m_nodeDao.findByForeignId("empty", "1127");
+        assertNotNull(otherChild);
+        assertNotNull(otherChild.getParent());
+        assertEquals("bebrhici", otherChild.getParent().getLabel());
+    }
+
+}
@@ -31,6 +31,7 @@ package org.opennms.netmgt.rrd;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -41,6 +42,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,6 +98,11 @@ import org.slf4j.LoggerFactory;
  * org.opennms.rrd.queuing.category: (default "OpenNMS.Queued") the log category
  * to place the statistics output in
  *
+ * org.opennms.rrd.queuing.shards: (default 1) the number of partitions of the
+ * queue.  Files are assigned to a shard by the hash of their name and each
+ * shard has its own lock, so with many write threads they do not all contend
+ * for a single queue.  The high water marks are divided between the shards.
+ *
  *
  *
  * TODO: Promote files when ZeroUpdate operations can't be merged. This may be a
@@ -158,6 +165,13 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     private long m_writeThreadExitDelay;
 
+    private volatile QueueShard[] m_shards = { new QueueShard() };
+
+    /**
+     * The file the current write thread is working on, if any.
+     */
+    private final ThreadLocal<String> m_assignment = new ThreadLocal<String>();
+
     /**
      * <p>getWriteThreads</p>
      *
@@ -323,6 +337,30 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_maxInsigUpdateSeconds = maxInsigUpdateSeconds;
     }
 
+    /**
+     * <p>getShards</p>
+     *
+     * @return a int.
+     */
+    public int getShards() {
+        return m_shards.length;
+    }
+
+    /**
+     * <p>setShards</p>
+     *
+     * This must be set before any operations are queued.
+     *
+     * @param shards a int.
+     */
+    public void setShards(int shards) {
+        final QueueShard[] newShards = new QueueShard[Math.max(shards, 1)];
+        for (int i = 0; i < newShards.length; i++) {
+            newShards[i] = new QueueShard();
+        }
+        m_shards = newShards;
+    }
+
     /**
      * <p>getWriteThreadSleepTime</p>
      *
@@ -359,41 +397,31 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
-
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
-
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+    private final AtomicLong m_totalOperationsPending = new AtomicLong();
 
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
+    private final AtomicLong m_enqueuedOperations = new AtomicLong();
 
-    Set<String> reservedFiles = new HashSet<String>();
+    private final AtomicLong m_dequeuedOperations = new AtomicLong();
 
-    private long m_totalOperationsPending = 0;
+    private final AtomicLong m_significantOpsEnqueued = new AtomicLong();
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_significantOpsDequeued = new AtomicLong();
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong();
 
-    private long m_significantOpsEnqueued = 0;
+    private final AtomicLong m_dequeuedItems = new AtomicLong();
 
-    private long m_significantOpsDequeued = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong();
 
-    private long m_significantOpsCompleted = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong();
 
-    private long m_dequeuedItems = 0;
+    private final AtomicLong m_errors = new AtomicLong();
 
-    private long m_createsCompleted = 0;
+    volatile int threadsRunning = 0;
 
-    private long m_updatesCompleted = 0;
+    private volatile long m_startTime = 0;
 
-    private long m_errors = 0;
-
-    int threadsRunning = 0;
-
-    private long m_startTime = 0;
-
-    private long m_promotionCount = 0;
+    private final AtomicLong m_promotionCount = new AtomicLong();
 
     long lastLap = System.currentTimeMillis();
 
@@ -488,7 +516,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData(), attributeMappings);
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -527,7 +555,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
+            m_updatesCompleted.incrementAndGet();
             if (getUpdatesCompleted() % m_modulus == 0) {
                 logStats();
             }
@@ -538,6 +566,46 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     }
 
+    /**
+     * Represents an update to a rrd file whose values were given as numbers
+     * rather than as an update string.
+     */
+    public class ValuesUpdateOperation extends Operation {
+
+        private final long m_timestamp;
+
+        ValuesUpdateOperation(String fileName, long timestamp, double[] values) {
+            super(fileName, UPDATE, values, true);
+            m_timestamp = timestamp;
+        }
+
+        @Override
+        Object process(Object rrd) throws Exception {
+            // open the file if we need to
+            if (rrd == null) rrd = m_delegate.openFile(getFileName());
+
+            final double[] values = (double[]) getData();
+
+            try {
+                // process the update
+                m_delegate.updateFile(rrd, "", m_timestamp, values);
+            } catch (final Throwable e) {
+                final String error = String.format("Error processing update for file %s: %s", getFileName(), RrdUtils.formatUpdate(m_timestamp, values));
+                m_log.debug(error, e);
+                throw new Exception(error, e);
+            }
+
+            // keep stats
+            m_updatesCompleted.incrementAndGet();
+            if (getUpdatesCompleted() % m_modulus == 0) {
+                logStats();
+            }
+            // return the open rrd for further processing
+            return rrd;
+        }
+
+    }
+
     /**
      * Represents an update whose value is 0. These operations can be merged
      * together and take up less memory
@@ -574,7 +642,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 ts += getInterval();
 
                 // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
+                m_updatesCompleted.incrementAndGet();
                 if (getUpdatesCompleted() % m_modulus == 0) {
                     logStats();
                 }
@@ -681,10 +749,33 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return new UpdateOperation(fileName, update);
     }
 
+    /**
+     * <p>makeUpdateOperation</p>
+     *
+     * @param fileName a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timestamp a long.
+     * @param values an array of double.
+     * @return a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     */
+    public Operation makeUpdateOperation(String fileName, String owner, long timestamp, double[] values) {
+        if (values.length == 1 && values[0] == 0.0) {
+            if (timestamp == 0)
+                m_log.debug("ZERO ERROR: created a zero update with ts=0 for file: {}", fileName);
+
+            return new ZeroUpdateOperation(fileName, timestamp);
+        }
+        return new ValuesUpdateOperation(fileName, timestamp, values);
+    }
+
     // 
     // Queue management functions.
     //
-    // TODO: Put this all in a class of its own. This is really ugly.
+    // The queue is partitioned by file name into one or more shards, each
+    // with its own lock, pending operations and work lists.  A file always
+    // maps to the same shard, so all of its operations are merged and
+    // processed in order by one thread at a time, exactly as with a single
+    // queue.
     //
 
     /**
@@ -693,53 +784,20 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
      */
     public void addOperation(Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
-                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            if (op.isSignificant() && sigQueueIsFull()) {
-                m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            if (!op.isSignificant() && inSigQueueIsFull()) {
-                m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            storeAssignment(op);
-
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
+        if (getShard(op.getFileName()).addOperation(op) && threadsRunning < m_writeThreads) {
             ensureThreadsStarted();
         }
     }
 
-    
-    private boolean queueIsFull() {
-        if (m_queueHighWaterMark <= 0)
-            return false;
-        else
-            return getTotalOperationsPending() >= m_queueHighWaterMark;
-    }
-
-    private boolean sigQueueIsFull() {
-        if (m_sigHighWaterMark <= 0)
-            return false;
-        else
-            return getTotalOperationsPending() >= m_sigHighWaterMark;
-    }
-
-    private boolean inSigQueueIsFull() {
-        if (m_inSigHighWaterMark <= 0)
-            return false;
+    /**
+     * The high water mark for a single shard, so that the configured value
+     * still bounds the queue as a whole.
+     */
+    private long getShardHighWaterMark(long highWaterMark, int shardCount) {
+        if (highWaterMark <= 0)
+            return 0;
         else
-            return getTotalOperationsPending() >= m_inSigHighWaterMark;
+            return (highWaterMark + shardCount - 1) / shardCount;
     }
 
     /**
@@ -755,186 +813,319 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     /**
      * Get the operations for the next file that should be worked on.
      *
+     * Each write thread looks at its own shard first and then at the others,
+     * and waits on its own shard when none of them have any work that is not
+     * already being processed.
+     *
      * @return a linkedList of operations to be processed all for the same file.
      */
     public LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
+        // turn in our previous assignment
+        completeAssignment();
 
-            // turn in our previous assignment
-            completeAssignment();
+        final QueueShard[] shards = m_shards;
+        final int home = (int) (Thread.currentThread().getId() % shards.length);
 
-            String newAssignment;
-            // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                }
+        LinkedList<Operation> ops = null;
+        // wait until there is work to do
+        while (ops == null) {
+            for (int i = 0; i < shards.length && ops == null; i++) {
+                ops = shards[(home + i) % shards.length].takeAssignment(-1);
             }
+            if (ops == null) {
+                // with a single shard nothing else can provide work, so wait as long as it takes
+                ops = shards[home].takeAssignment(shards.length == 1 ? 0 : Math.max(m_writeThreadSleepTime, 1));
+            }
+        }
 
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
-
-            // reserve the assignment and take work items
-            ops = takeAssignment(newAssignment);
+        // initialize start time for stats
+        if (getStartTime() == 0)
+            setStartTime(System.currentTimeMillis());
 
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
-                    if (op.isSignificant()) {
-                    	setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
-                    }
-                }
-                setDequeuedItems(getDequeuedItems() + 1);
+        // keep stats
+        for(Operation op : ops) {
+            m_dequeuedOperations.addAndGet(op.getCount());
+            if (op.isSignificant()) {
+                m_significantOpsDequeued.addAndGet(op.getCount());
             }
         }
+        m_dequeuedItems.incrementAndGet();
 
         return ops;
 
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        final QueueShard[] shards = m_shards;
+        if (shards.length == 1) {
+            shards[0].promoteFiles(rrdFiles);
+        } else {
+            final List<List<String>> filesByShard = new ArrayList<List<String>>(shards.length);
+            for (int i = 0; i < shards.length; i++) {
+                filesByShard.add(new ArrayList<String>());
+            }
+            for (String rrdFile : rrdFiles) {
+                filesByShard.get(getShardIndex(rrdFile, shards.length)).add(rrdFile);
+            }
+            for (int i = 0; i < shards.length; i++) {
+                if (!filesByShard.get(i).isEmpty()) {
+                    shards[i].promoteFiles(filesByShard.get(i));
+                }
+            }
+        }
+        m_delegate.promoteEnqueuedFiles(rrdFiles);
+    }
+
     /**
-     * We need to track which files are being processed by which threads so that
-     * we don't try to process updates for the same file on more than one
-     * thread.
+     * Record that fact that the current thread has finished process operations
+     * for its current assignment
      */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
-
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
-
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
+    private void completeAssignment() {
+        // remove any existing reservation of the current thread
+        String previousAssignment = m_assignment.get();
+        if (previousAssignment != null) {
+            m_assignment.remove();
+            getShard(previousAssignment).completeAssignment(previousAssignment);
         }
+    }
 
-        promoteAgedFiles();
+    private static int getShardIndex(String fileName, int shardCount) {
+        return (fileName.hashCode() & Integer.MAX_VALUE) % shardCount;
+    }
 
-        op.addToPendingList(pendingOperations);
+    private QueueShard getShard(String fileName) {
+        final QueueShard[] shards = m_shards;
+        return shards[getShardIndex(fileName, shards.length)];
     }
 
     /**
-     * Ensure that files with insignificant changes are getting promoted if
-     * necessary
-     * 
+     * A partition of the queue.  All of its state is guarded by the shard
+     * itself.
      */
-    private synchronized void promoteAgedFiles() {
-        
-        // no need to do this is we aren't prioritizing
-        if (!m_prioritizeSignificantUpdates) return;
+    class QueueShard {
 
-        // the num seconds to update files is 0 then use unfair prioritization
-        if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
-            return;
+        private final LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
 
-        // calculate the elapsed time we first queued updates
-        long now = System.currentTimeMillis();
-        long elapsedMillis = Math.max(now - getStartTime(), 1);
-
-        // calculate the milliseconds between promotions necessary to age
-        // insignificant files into
-        // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
-
-        // calculate the number of millis since start until the next file needs
-        // to be promotoed
-        long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
-
-        // if more time has elapsed than the next promotion time then promote a
-        // file
-        if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
-        }
+        private final LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
 
-    }
-    
-    /** {@inheritDoc} */
-    @Override
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
-        m_delegate.promoteEnqueuedFiles(rrdFiles);
-    }
+        private final Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
 
-    /**
-     * Return true if and only if all the operations in the list are
-     * insignificant
-     */
-    private boolean hasOnlyInsignificant(LinkedList<Operation> pendingOps) {
-        for(Operation op : pendingOps) {
-            if (op.isSignificant()) {
+        private final Set<String> reservedFiles = new HashSet<String>();
+
+        private long m_operationsPending = 0;
+
+        private long m_promotions = 0;
+
+        /**
+         * Add an operation to the shard unless it is full.
+         *
+         * @return true if the operation was added
+         */
+        synchronized boolean addOperation(Operation op) {
+            final int shardCount = m_shards.length;
+
+            if (isFull(m_queueHighWaterMark, shardCount)) {
+                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
                 return false;
             }
+
+            if (op.isSignificant() && isFull(m_sigHighWaterMark, shardCount)) {
+                m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
+                return false;
+            }
+
+            if (!op.isSignificant() && isFull(m_inSigHighWaterMark, shardCount)) {
+                m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+                return false;
+            }
+
+            storeAssignment(op);
+
+            m_operationsPending++;
+            m_totalOperationsPending.incrementAndGet();
+            m_enqueuedOperations.incrementAndGet();
+            if (op.isSignificant())
+                m_significantOpsEnqueued.incrementAndGet();
+            notifyAll();
+            return true;
         }
-        return true;
-    }
 
-    /**
-     * register the file that the currentThread is be working on. This enables
-     * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
-     */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
+        private boolean isFull(long highWaterMark, int shardCount) {
+            final long shardHighWaterMark = getShardHighWaterMark(highWaterMark, shardCount);
+            return shardHighWaterMark > 0 && m_operationsPending >= shardHighWaterMark;
+        }
+
+        /**
+         * Reserve the next file with available work for the current thread
+         * and take its operations.
+         *
+         * @param waitMillis how long to wait for work if there is none: a
+         *        negative value not to wait, 0 to wait until there is work
+         * @return the operations, or null if there were none
+         */
+        synchronized LinkedList<Operation> takeAssignment(long waitMillis) {
+            String newAssignment = selectNewAssignment();
+            while (newAssignment == null && waitMillis >= 0) {
+                try {
+                    wait(waitMillis);
+                } catch (InterruptedException e) {
+                }
+                newAssignment = selectNewAssignment();
+                if (waitMillis > 0) {
+                    break;
+                }
+            }
+            if (newAssignment == null) {
+                return null;
+            }
 
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
+            // make the file as reserved by the current thread
+            m_assignment.set(newAssignment);
+            reservedFiles.add(newAssignment);
 
-        // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
-    }
+            // get the assignments work list and return it
+            final LinkedList<Operation> ops = pendingFileOperations.remove(newAssignment);
+            for (Operation op : ops) {
+                m_operationsPending -= op.getCount();
+                m_totalOperationsPending.addAndGet(-op.getCount());
+            }
+            return ops;
+        }
 
-    /**
-     * Return the name of the next file with available work
-     */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
+        synchronized void completeAssignment(String fileName) {
+            reservedFiles.remove(fileName);
+        }
+
+        synchronized void promoteFiles(Collection<String> rrdFiles) {
+            filesWithSignificantWork.addAll(0, rrdFiles);
+        }
+
+        synchronized long getOperationsPending() {
+            return m_operationsPending;
+        }
+
+        synchronized int getFilesWithSignificantWork() {
+            return filesWithSignificantWork.size();
+        }
+
+        synchronized int getFilesWithInsignificantWork() {
+            return filesWithInsignificantWork.size();
+        }
+
+        /**
+         * We need to track which files are being processed by which threads so that
+         * we don't try to process updates for the same file on more than one
+         * thread.
+         */
+        private void storeAssignment(Operation op) {
+            // look and see if there a pending ops list for this file
+            LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
+
+            // if not then we create an ops list for the file and add the file to
+            // the work items list
+            if (pendingOperations == null) {
+                pendingOperations = new LinkedList<Operation>();
+                pendingFileOperations.put(op.getFileName(), pendingOperations);
+
+                // add the file to the correct list based on what type of work we
+                // are adding.  (if we aren't prioritizing then every file is counted as
+                // signficant
+                if (!m_prioritizeSignificantUpdates || op.isSignificant())
+                    filesWithSignificantWork.addLast(op.getFileName());
+                else
+                    filesWithInsignificantWork.addLast(op.getFileName());
+            } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
+                // only do this when we are prioritizing as this bumps files from inSig
+                // up to insig
+                // promote the file to the significant list if this is the first
+                // significant
+                filesWithSignificantWork.addLast(op.getFileName());
+            }
+
+            promoteAgedFiles();
+
+            op.addToPendingList(pendingOperations);
+        }
+
+        /**
+         * Ensure that files with insignificant changes are getting promoted if
+         * necessary
+         * 
+         */
+        private void promoteAgedFiles() {
+
+            // no need to do this is we aren't prioritizing
+            if (!m_prioritizeSignificantUpdates) return;
+
+            // the num seconds to update files is 0 then use unfair prioritization
+            if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
+                return;
+
+            // calculate the elapsed time we first queued updates
+            long now = System.currentTimeMillis();
+            long elapsedMillis = Math.max(now - getStartTime(), 1);
+
+            // calculate the milliseconds between promotions necessary to age
+            // insignificant files into
+            // the significant queue
+            double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
+
+            // calculate the number of millis since start until the next file needs
+            // to be promotoed
+            long nextPromotionMillis = (long) (millisPerPromotion * m_promotions);
+
+            // if more time has elapsed than the next promotion time then promote a
+            // file
+            if (elapsedMillis > nextPromotionMillis) {
+                String file = filesWithInsignificantWork.removeFirst();
+                filesWithSignificantWork.addFirst(file);
+                m_promotions++;
+                m_promotionCount.incrementAndGet();
             }
+
         }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
+
+        /**
+         * Return true if and only if all the operations in the list are
+         * insignificant
+         */
+        private boolean hasOnlyInsignificant(LinkedList<Operation> pendingOps) {
+            for(Operation op : pendingOps) {
+                if (op.isSignificant()) {
+                    return false;
+                }
             }
+            return true;
         }
-        return null;
-    }
 
-    /**
-     * Record that fact that the current thread has finished process operations
-     * for its current assignment
-     */
-    private synchronized void completeAssignment() {
-        // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
+        /**
+         * Return the name of the next file with available work.  Files can be
+         * listed more than once, or promoted without having any work, so
+         * entries without pending operations are dropped.
+         */
+        private String selectNewAssignment() {
+            for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
+                String fn = it.next();
+                if (!reservedFiles.contains(fn)) {
+                    it.remove();
+                    if (pendingFileOperations.containsKey(fn)) {
+                        return fn;
+                    }
+                }
+            }
+            for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
+                String fn = it.next();
+                if (!reservedFiles.contains(fn)) {
+                    it.remove();
+                    if (pendingFileOperations.containsKey(fn)) {
+                        return fn;
+                    }
+                }
+            }
+            return null;
+        }
     }
 
     /**
@@ -1052,6 +1243,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         addOperation(makeUpdateOperation((String) rrdFile, owner, data));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(String rrdFile, String owner, long timestamp, double[] values) throws Exception {
+        addOperation(makeUpdateOperation(rrdFile, owner, timestamp, values));
+    }
+
     /** {@inheritDoc} */
     @Override
     public Double fetchLastValue(String rrdFile, String ds, int interval) throws NumberFormatException, RrdException {
@@ -1119,8 +1316,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         } finally {
             synchronized (this) {
                 threadsRunning--;
-                completeAssignment();
             }
+            completeAssignment();
         }
     }
 
@@ -1140,7 +1337,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             // while we are processing
             for(Operation op : ops) {
                 if (op.isSignificant()) {
-                	setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
+                	m_significantOpsCompleted.incrementAndGet();
                 }
 
             }
@@ -1150,7 +1347,9 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 rrd = op.process(rrd);
             }
         } catch (Throwable e) {
-            setErrors(getErrors() + 1);
+            m_errors.incrementAndGet();
+            // the file may have been removed, make sure it is created again
+            RrdUtils.forgetRrdFile(fileName);
             logLapTime("Error updating file " + fileName + ": " + e.getMessage());
             m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
         } finally {
@@ -1208,10 +1407,27 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         long currentItemDequeueRate = (long) (currentDequeuedItems * 1000.0 / currentElapsedMillis);
         long overallItemDequeueRate = (long) (getDequeuedItems() * 1000.0 / totalElapsedMillis);
 
+        final QueueShard[] shards = m_shards;
+        int filesWithSignificantWork = 0;
+        int filesWithInsignificantWork = 0;
+        final StringBuilder shardBacklog = new StringBuilder();
+        for (QueueShard shard : shards) {
+            final int sigFiles = shard.getFilesWithSignificantWork();
+            final int inSigFiles = shard.getFilesWithInsignificantWork();
+            filesWithSignificantWork += sigFiles;
+            filesWithInsignificantWork += inSigFiles;
+            shardBacklog.append(shardBacklog.length() == 0 ? "(" : ", ");
+            shardBacklog.append(shard.getOperationsPending()).append('/').append(sigFiles).append('/').append(inSigFiles);
+        }
+        shardBacklog.append(')');
+
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() + 
         ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) + 
-        ", filesWithSignificantWork=" + filesWithSignificantWork.size() + 
-        ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
+        ", filesWithSignificantWork=" + filesWithSignificantWork + 
+        ", filesWithInsignificantWork=" + filesWithInsignificantWork
+
+        + (shards.length == 1 ? "" : "\nQS:\t" + ", shards=" + shards.length +
+        ", shardBacklog(opsPending/sigFiles/insigFiles)=" + shardBacklog)
 
         + "\nQS:\t" + ", createsCompleted=" + getCreatesCompleted() + 
         ", updatesCompleted=" + getUpdatesCompleted() + 
@@ -1325,7 +1541,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getTotalOperationsPending() {
-		return m_totalOperationsPending;
+		return m_totalOperationsPending.get();
 	}
 
 	/**
@@ -1334,7 +1550,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param totalOperationsPending a long.
 	 */
 	public void setTotalOperationsPending(long totalOperationsPending) {
-		m_totalOperationsPending = totalOperationsPending;
+		m_totalOperationsPending.set(totalOperationsPending);
 	}
 
 	/**
@@ -1343,7 +1559,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getCreatesCompleted() {
-		return m_createsCompleted;
+		return m_createsCompleted.get();
 	}
 
 	/**
@@ -1352,7 +1568,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param createsCompleted a long.
 	 */
 	public void setCreatesCompleted(long createsCompleted) {
-		m_createsCompleted = createsCompleted;
+		m_createsCompleted.set(createsCompleted);
 	}
 
 	/**
@@ -1361,7 +1577,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getUpdatesCompleted() {
-		return m_updatesCompleted;
+		return m_updatesCompleted.get();
 	}
 
 	/**
@@ -1370,7 +1586,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param updatesCompleted a long.
 	 */
 	public void setUpdatesCompleted(long updatesCompleted) {
-		m_updatesCompleted = updatesCompleted;
+		m_updatesCompleted.set(updatesCompleted);
 	}
 
 	/**
@@ -1379,7 +1595,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getErrors() {
-		return m_errors;
+		return m_errors.get();
 	}
 
 	/**
@@ -1388,7 +1604,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param errors a long.
 	 */
 	public void setErrors(long errors) {
-		m_errors = errors;
+		m_errors.set(errors);
 	}
 
 	/**
@@ -1397,7 +1613,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getPromotionCount() {
-		return m_promotionCount;
+		return m_promotionCount.get();
 	}
 
 	/**
@@ -1406,7 +1622,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param promotionCount a long.
 	 */
 	public void setPromotionCount(long promotionCount) {
-		m_promotionCount = promotionCount;
+		m_promotionCount.set(promotionCount);
 	}
 
 	/**
@@ -1415,7 +1631,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsEnqueued() {
-		return m_significantOpsEnqueued;
+		return m_significantOpsEnqueued.get();
 	}
 
 	/**
@@ -1424,7 +1640,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsEnqueued a long.
 	 */
 	public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-		m_significantOpsEnqueued = significantOpsEnqueued;
+		m_significantOpsEnqueued.set(significantOpsEnqueued);
 	}
 
 	/**
@@ -1433,7 +1649,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsDequeued() {
-		return m_significantOpsDequeued;
+		return m_significantOpsDequeued.get();
 	}
 
 	/**
@@ -1442,7 +1658,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsDequeued a long.
 	 */
 	public void setSignificantOpsDequeued(long significantOpsDequeued) {
-		m_significantOpsDequeued = significantOpsDequeued;
+		m_significantOpsDequeued.set(significantOpsDequeued);
 	}
 
 	/**
@@ -1451,7 +1667,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getEnqueuedOperations() {
-		return m_enqueuedOperations;
+		return m_enqueuedOperations.get();
 	}
 
 	/**
@@ -1460,7 +1676,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param enqueuedOperations a long.
 	 */
 	public void setEnqueuedOperations(long enqueuedOperations) {
-		m_enqueuedOperations = enqueuedOperations;
+		m_enqueuedOperations.set(enqueuedOperations);
 	}
 
 	/**
@@ -1469,7 +1685,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedOperations() {
-		return m_dequeuedOperations;
+		return m_dequeuedOperations.get();
 	}
 
 	/**
@@ -1478,7 +1694,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param dequeuedOperations a long.
 	 */
 	public void setDequeuedOperations(long dequeuedOperations) {
-		m_dequeuedOperations = dequeuedOperations;
+		m_dequeuedOperations.set(dequeuedOperations);
 	}
 
 	/**
@@ -1487,7 +1703,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedItems() {
-		return m_dequeuedItems;
+		return m_dequeuedItems.get();
 	}
 
 	/**
@@ -1496,7 +1712,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param dequeuedItems a long.
 	 */
 	public void setDequeuedItems(long dequeuedItems) {
-		m_dequeuedItems = dequeuedItems;
+		m_dequeuedItems.set(dequeuedItems);
 	}
 
 	/**
@@ -1505,7 +1721,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsCompleted() {
-		return m_significantOpsCompleted;
+		return m_significantOpsCompleted.get();
 	}
 
 	/**
@@ -1514,7 +1730,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsCompleted a long.
 	 */
 	public void setSignificantOpsCompleted(long significantOpsCompleted) {
-		m_significantOpsCompleted = significantOpsCompleted;
+		m_significantOpsCompleted.set(significantOpsCompleted);
 	}
 
 	/**
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded, in-memory registry of the RRD files that are known to exist,
+ * used by {@link RrdUtils} to skip creating files and writing their
+ * <code>.meta</code> files again on every collection cycle.
+ * <p>
+ * For each RRD the registry remembers a signature of the definition it was
+ * created with (step, data sources and archives) and of the attribute
+ * mappings last written to its meta data file.  A create or meta data write
+ * only has to happen when the RRD is not in the registry or its signature
+ * changed.  Entries expire after <code>maxAge</code> milliseconds so that
+ * files removed behind our back are eventually recreated, and the least
+ * recently used entries are evicted once there are more than
+ * <code>maxSize</code> of them.  A <code>maxSize</code> of 0 disables the
+ * registry.
+ * </p>
+ * <p>
+ * Signatures are hash codes: in the unlikely event of a collision a needed
+ * meta data update is skipped until the entry expires.
+ * </p>
+ */
+public class RrdFileRegistry {
+
+    private static class Entry {
+        private final long m_created = System.currentTimeMillis();
+        private boolean m_fileCreated = false;
+        private int m_fileSignature;
+        private boolean m_metaDataWritten = false;
+        private int m_metaDataSignature;
+    }
+
+    private volatile int m_maxSize = 100000;
+
+    private volatile long m_maxAge = 900000;
+
+    private long m_hits = 0;
+
+    private long m_misses = 0;
+
+    /**
+     * Least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > m_maxSize;
+        }
+    };
+
+    /**
+     * <p>getMaxSize</p>
+     *
+     * @return the maximum number of RRD files remembered
+     */
+    public int getMaxSize() {
+        return m_maxSize;
+    }
+
+    /**
+     * <p>setMaxSize</p>
+     *
+     * @param maxSize a int.
+     */
+    public void setMaxSize(final int maxSize) {
+        m_maxSize = maxSize;
+        if (maxSize <= 0) {
+            clear();
+        }
+    }
+
+    /**
+     * <p>getMaxAge</p>
+     *
+     * @return the time in milliseconds after which an RRD file is checked again
+     */
+    public long getMaxAge() {
+        return m_maxAge;
+    }
+
+    /**
+     * <p>setMaxAge</p>
+     *
+     * @param maxAge a long.
+     */
+    public void setMaxAge(final long maxAge) {
+        m_maxAge = maxAge;
+    }
+
+    /**
+     * Checks whether the RRD file has already been created with the given
+     * definition.
+     *
+     * @param directory the directory of the RRD file
+     * @param rrdName the name of the RRD file, without extension
+     * @param signature the signature of the definition, see {@link #getSignature(int, List, List)}
+     * @return true if the file does not need to be created
+     */
+    public synchronized boolean isFileCreated(final String directory, final String rrdName, final int signature) {
+        final Entry entry = getEntry(directory, rrdName);
+        return count(entry != null && entry.m_fileCreated && entry.m_fileSignature == signature);
+    }
+
+    /**
+     * Records that the RRD file has been created with the given definition.
+     *
+     * @param directory the directory of the RRD file
+     * @param rrdName the name of the RRD file, without extension
+     * @param signature the signature of the definition
+     */
+    public synchronized void setFileCreated(final String directory, final String rrdName, final int signature) {
+        final Entry entry = getOrCreateEntry(directory, rrdName);
+        if (entry != null) {
+            entry.m_fileCreated = true;
+            entry.m_fileSignature = signature;
+        }
+    }
+
+    /**
+     * Checks whether the meta data file of the RRD has already been written
+     * with the given attribute mappings.
+     *
+     * @param directory the directory of the RRD file
+     * @param rrdName the name of the RRD file, without extension
+     * @param signature the signature of the attribute mappings, see {@link #getSignature(Map)}
+     * @return true if the meta data file does not need to be written
+     */
+    public synchronized boolean isMetaDataWritten(final String directory, final String rrdName, final int signature) {
+        final Entry entry = getEntry(directory, rrdName);
+        return count(entry != null && entry.m_metaDataWritten && entry.m_metaDataSignature == signature);
+    }
+
+    /**
+     * Records that the meta data file of the RRD has been written with the
+     * given attribute mappings.
+     *
+     * @param directory the directory of the RRD file
+     * @param rrdName the name of the RRD file, without extension
+     * @param signature the signature of the attribute mappings
+     */
+    public synchronized void setMetaDataWritten(final String directory, final String rrdName, final int signature) {
+        final Entry entry = getOrCreateEntry(directory, rrdName);
+        if (entry != null) {
+            entry.m_metaDataWritten = true;
+            entry.m_metaDataSignature = signature;
+        }
+    }
+
+    /**
+     * Forgets an RRD file, for example because it was deleted or could not
+     * be updated.
+     *
+     * @param directory the directory of the RRD file
+     * @param rrdName the name of the RRD file, without extension
+     */
+    public synchronized void forget(final String directory, final String rrdName) {
+        m_entries.remove(getKey(directory, rrdName));
+    }
+
+    /**
+     * Forgets all RRD files in a directory and its subdirectories, for
+     * example because the directory was deleted.
+     *
+     * @param directory a {@link java.lang.String} object.
+     */
+    public synchronized void forgetDirectory(final String directory) {
+        final String prefix = new File(directory).getPath() + File.separator;
+        for (final Iterator<String> it = m_entries.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets all RRD files.
+     */
+    public synchronized void clear() {
+        m_entries.clear();
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of RRD files remembered
+     */
+    public synchronized int size() {
+        return m_entries.size();
+    }
+
+    /**
+     * <p>getStats</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public synchronized String getStats() {
+        return "knownFiles=" + m_entries.size() + ", hits=" + m_hits + ", misses=" + m_misses;
+    }
+
+    /**
+     * Computes the signature of an RRD definition.
+     *
+     * @param step the step of the RRD
+     * @param dataSources the data sources of the RRD
+     * @param rraList the round robin archives of the RRD
+     * @return a int.
+     */
+    public static int getSignature(final int step, final List<RrdDataSource> dataSources, final List<String> rraList) {
+        int signature = step;
+        if (dataSources != null) {
+            for (final RrdDataSource dataSource : dataSources) {
+                signature = 31 * signature + hashCode(dataSource.getName());
+                signature = 31 * signature + hashCode(dataSource.getType());
+                signature = 31 * signature + dataSource.getHeartBeat();
+                signature = 31 * signature + hashCode(dataSource.getMin());
+                signature = 31 * signature + hashCode(dataSource.getMax());
+            }
+        }
+        return 31 * signature + (rraList == null ? 0 : rraList.hashCode());
+    }
+
+    /**
+     * Computes the signature of the attribute mappings of a meta data file.
+     *
+     * @param attributeMappings a {@link java.util.Map} object, may be null
+     * @return a int.
+     */
+    public static int getSignature(final Map<String, String> attributeMappings) {
+        return attributeMappings == null ? 0 : attributeMappings.hashCode();
+    }
+
+    private static int hashCode(final Object o) {
+        return o == null ? 0 : o.hashCode();
+    }
+
+    private static String getKey(final String directory, final String rrdName) {
+        return new File(directory, rrdName).getPath();
+    }
+
+    private boolean count(final boolean hit) {
+        if (hit) {
+            m_hits++;
+        } else {
+            m_misses++;
+        }
+        return hit;
+    }
+
+    private Entry getEntry(final String directory, final String rrdName) {
+        final String key = getKey(directory, rrdName);
+        final Entry entry = m_entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.m_created > m_maxAge) {
+            m_entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private Entry getOrCreateEntry(final String directory, final String rrdName) {
+        if (m_maxSize <= 0) {
+            return null;
+        }
+        Entry entry = getEntry(directory, rrdName);
+        if (entry == null) {
+            entry = new Entry();
+            m_entries.put(getKey(directory, rrdName), entry);
+        }
+        return entry;
+    }
+}
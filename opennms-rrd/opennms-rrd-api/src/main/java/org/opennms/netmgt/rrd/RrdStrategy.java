@@ -130,6 +130,26 @@ public interface RrdStrategy<D extends Object,F extends Object> {
      */
     public void updateFile(F rrd, String owner, String data) throws Exception;
 
+    /**
+     * Updates the supplied round robin database with the given values at the
+     * given time.  This is the same as calling
+     * {@link #updateFile(Object, String, String)} with the values joined by
+     * colons after the timestamp, but it does not need to build or parse a
+     * string.
+     *
+     * @param rrd
+     *            an rrd object created using openFile
+     * @param owner
+     *            the owner of the rrd
+     * @param timestamp
+     *            the time of the update, in seconds
+     * @param values
+     *            the value of each data source, in order; NaN for unknown
+     * @throws java.lang.Exception
+     *             if an error occurs updating the file
+     */
+    public void updateFile(F rrd, String owner, long timestamp, double[] values) throws Exception;
+
     /**
      * This closes the supplied round robin database
      *
@@ -79,6 +79,8 @@ public abstract class RrdUtils {
             "org/opennms/netmgt/rrd/rrd-configuration.xml"
     });
 
+    private static final RrdFileRegistry s_fileRegistry = (RrdFileRegistry) m_context.getBean("rrdFileRegistry");
+
     /**
      * Writes a file with the attribute to rrd track mapping next to the rrd file.
      *
@@ -91,6 +93,11 @@ public abstract class RrdUtils {
      * the mapping of attributeId to rrd track names
      */
     public static void createMetaDataFile(final String directory, final String rrdName, final Map<String, String> attributeMappings) {
+        final int signature = RrdFileRegistry.getSignature(attributeMappings);
+        if (s_fileRegistry.isMetaDataWritten(directory, rrdName, signature)) {
+            return;
+        }
+
         final File metaFile = new File(directory + File.separator + rrdName + ".meta");
 
         try {
@@ -99,6 +106,7 @@ public abstract class RrdUtils {
             } else {
                 s_cache.saveProperties(metaFile, attributeMappings);
             }
+            s_fileRegistry.setMetaDataWritten(directory, rrdName, signature);
         } catch (final IOException e) {
             LOG.error("Failed to save metadata file {}", metaFile, e);
         }
@@ -185,6 +193,34 @@ public abstract class RrdUtils {
      */
     public static void setStrategy(RrdStrategy<?, ?> strategy) {
         m_rrdStrategy = strategy;
+        // files known to the previous strategy mean nothing to this one
+        s_fileRegistry.clear();
+    }
+
+    /**
+     * Returns the registry of RRD files that are known to exist, so that
+     * code that deletes RRD files can tell it to forget them.
+     *
+     * @return a {@link org.opennms.netmgt.rrd.RrdFileRegistry} object.
+     */
+    public static RrdFileRegistry getFileRegistry() {
+        return s_fileRegistry;
+    }
+
+    /**
+     * Forgets an RRD file that could not be updated, so that it is created
+     * again the next time it is persisted.
+     *
+     * @param rrdFile the path of the RRD file, with or without extension
+     */
+    public static void forgetRrdFile(final String rrdFile) {
+        if (rrdFile == null) {
+            return;
+        }
+        final String extension = getExtension();
+        final String path = rrdFile.endsWith(extension) ? rrdFile.substring(0, rrdFile.length() - extension.length()) : rrdFile;
+        final File file = new File(path);
+        s_fileRegistry.forget(file.getParent(), file.getName());
     }
 
     /**
@@ -262,12 +298,18 @@ public abstract class RrdUtils {
      * @throws org.opennms.netmgt.rrd.RrdException if any.
      */
     public static boolean createRRD(String creator, String directory, String rrdName, int step, List<RrdDataSource> dataSources, List<String> rraList, Map<String, String> attributeMappings) throws RrdException {
+        final int signature = RrdFileRegistry.getSignature(step, dataSources, rraList);
+        if (s_fileRegistry.isFileCreated(directory, rrdName, signature)) {
+            return true;
+        }
+
         Object def = null;
 
         try {
             def = getStrategy().createDefinition(creator, directory, rrdName, step, dataSources, rraList);
             // def can be null if the rrd-db exists already, but doesn't have to be (see MultiOutput/QueuingRrdStrategy
             getStrategy().createFile(def, attributeMappings);
+            s_fileRegistry.setFileCreated(directory, rrdName, signature);
 
             return true;
         } catch (Throwable e) {
@@ -318,6 +360,52 @@ public abstract class RrdUtils {
             rrd = getStrategy().openFile(rrdFile);
             getStrategy().updateFile(rrd, owner, updateVal);
         } catch (Throwable e) {
+            s_fileRegistry.forget(repositoryDir, rrdName);
+            LOG.error("updateRRD: Error updating RRD file {} with values '{}'", rrdFile, updateVal, e);
+            throw new org.opennms.netmgt.rrd.RrdException("Error updating RRD file " + rrdFile + " with values '" + updateVal + "': " + e, e);
+        } finally {
+            try {
+                if (rrd != null) {
+                    getStrategy().closeFile(rrd);
+                }
+            } catch (Throwable e) {
+                LOG.error("updateRRD: Exception closing RRD file {}", rrdFile, e);
+                throw new org.opennms.netmgt.rrd.RrdException("Exception closing RRD file " + rrdFile + ": " + e, e);
+            }
+        }
+
+        LOG.debug("updateRRD: RRD update command completed.");
+    }
+
+    /**
+     * Add datapoints to a round robin database without building an update
+     * string, for strategies that can take the values directly.
+     *
+     * @param owner the owner of the file. This is used in log messages
+     * @param repositoryDir the directory the file resides in
+     * @param rrdName the name for the rrd file.
+     * @param timestamp the timestamp in millis to use for the rrd update (this
+     * gets rounded to the nearest second)
+     * @param values the value of each datasource for this rrd, NaN for
+     * unknown
+     * @throws org.opennms.netmgt.rrd.RrdException if any.
+     */
+    public static void updateRRD(String owner, String repositoryDir, String rrdName, long timestamp, double[] values) throws RrdException {
+        // Issue the RRD update
+        String rrdFile = repositoryDir + File.separator + rrdName + getExtension();
+        long time = (timestamp + 500L) / 1000L;
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("updateRRD: updating RRD file {} with values '{}'", rrdFile, formatUpdate(time, values));
+        }
+
+        Object rrd = null;
+        try {
+            rrd = getStrategy().openFile(rrdFile);
+            getStrategy().updateFile(rrd, owner, time, values);
+        } catch (Throwable e) {
+            s_fileRegistry.forget(repositoryDir, rrdName);
+            String updateVal = formatUpdate(time, values);
             LOG.error("updateRRD: Error updating RRD file {} with values '{}'", rrdFile, updateVal, e);
             throw new org.opennms.netmgt.rrd.RrdException("Error updating RRD file " + rrdFile + " with values '" + updateVal + "': " + e, e);
         } finally {
@@ -334,6 +422,32 @@ public abstract class RrdUtils {
         LOG.debug("updateRRD: RRD update command completed.");
     }
 
+    /**
+     * Builds the update string for a timestamp and values, as taken by
+     * {@link RrdStrategy#updateFile(Object, String, String)}.  Unknown (NaN)
+     * values are written as 'U'.
+     *
+     * @param timestamp the time of the update, in seconds
+     * @param values the value of each datasource
+     * @return a string of the form &lt;timestamp&gt;:&lt;value&gt;[:&lt;value&gt;...]
+     */
+    public static String formatUpdate(long timestamp, double[] values) {
+        StringBuilder update = new StringBuilder(16 + values.length * 12);
+        update.append(timestamp);
+        for (double value : values) {
+            update.append(':');
+            if (Double.isNaN(value)) {
+                update.append('U');
+            } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                // whole numbers, such as counters, without the trailing '.0'
+                update.append((long) value);
+            } else {
+                update.append(value);
+            }
+        }
+        return update.toString();
+    }
+
     /**
      * This method issues an round robin fetch command to retrieve the last
      * value of the datasource stored in the specified RRD file. The retrieved
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class QueuingRrdStrategyTest extends TestCase {
+
+    private static final int FILES = 200;
+
+    private static final int UPDATES = 10;
+
+    /**
+     * The updates written by the delegate, by file.
+     */
+    private final Map<String, List<String>> m_written = new HashMap<String, List<String>>();
+
+    /**
+     * The files that the delegate currently has open.
+     */
+    private final Set<String> m_open = new HashSet<String>();
+
+    private boolean m_openedTwice = false;
+
+    private QueuingRrdStrategy m_strategy;
+
+    @Override
+    protected void setUp() throws Exception {
+        m_strategy = new QueuingRrdStrategy(createDelegate());
+        m_strategy.setWriteThreads(4);
+        m_strategy.setModulus(10000);
+        m_strategy.setWriteThreadSleepTime(10);
+        m_strategy.setWriteThreadExitDelay(1000);
+        m_strategy.setPrioritizeSignificantUpdates(true);
+        m_strategy.setMaxInsigUpdateSeconds(1);
+    }
+
+    public void testSingleQueue() throws Exception {
+        assertEquals(1, m_strategy.getShards());
+        assertUpdatesWritten();
+    }
+
+    public void testShardedQueue() throws Exception {
+        m_strategy.setShards(4);
+        assertEquals(4, m_strategy.getShards());
+        assertUpdatesWritten();
+        assertTrue(m_strategy.getStats(), m_strategy.getStats().contains("shardBacklog"));
+    }
+
+    public void testShardHighWaterMark() throws Exception {
+        m_strategy.setShards(4);
+        m_strategy.setQueueHighWaterMark(8);
+        // keep the write threads from starting
+        m_strategy.setWriteThreads(0);
+
+        for (int i = 0; i < FILES; i++) {
+            m_strategy.updateFile("/tmp/file" + i + ".jrb", "test", "1000:1");
+        }
+        assertEquals(8, m_strategy.getTotalOperationsPending());
+    }
+
+    private void assertUpdatesWritten() throws Exception {
+        for (int update = 0; update < UPDATES; update++) {
+            for (int i = 0; i < FILES; i++) {
+                // every third file only has zero valued, insignificant updates
+                m_strategy.updateFile("/tmp/file" + i + ".jrb", "test", (1000 + update * 300) + ":" + (i % 3 == 0 ? 0 : update + 1));
+            }
+        }
+
+        long timeout = System.currentTimeMillis() + 30000;
+        while (m_strategy.getDequeuedOperations() < FILES * UPDATES && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+
+        synchronized (m_written) {
+            assertFalse("a file was processed by two threads at once", m_openedTwice);
+            assertEquals(FILES, m_written.size());
+            for (List<String> updates : m_written.values()) {
+                long lastTime = 0;
+                int count = 0;
+                for (String update : updates) {
+                    long time = Long.parseLong(update.substring(0, update.indexOf(':')));
+                    assertTrue("updates out of order: " + updates, time > lastTime);
+                    lastTime = time;
+                    count++;
+                }
+                assertEquals(UPDATES, count);
+            }
+        }
+        assertEquals(0, m_strategy.getTotalOperationsPending());
+        assertEquals(0, m_strategy.getErrors());
+    }
+
+    /**
+     * A delegate that records the updates that reach it.  Zero valued updates
+     * are merged by the queue, so each of them is expanded back into the
+     * individual updates.
+     */
+    @SuppressWarnings("unchecked")
+    private RrdStrategy<Object, Object> createDelegate() {
+        return (RrdStrategy<Object, Object>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RrdStrategy.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                synchronized (m_written) {
+                    if ("openFile".equals(method.getName())) {
+                        if (!m_open.add((String) args[0])) {
+                            m_openedTwice = true;
+                        }
+                        return args[0];
+                    } else if ("closeFile".equals(method.getName())) {
+                        m_open.remove(args[0]);
+                    } else if ("updateFile".equals(method.getName())) {
+                        List<String> updates = m_written.get(args[0]);
+                        if (updates == null) {
+                            updates = new ArrayList<String>();
+                            m_written.put((String) args[0], updates);
+                        }
+                        updates.add((String) args[2]);
+                    }
+                    return null;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class RrdFileRegistryTest extends TestCase {
+
+    private static final String DIR = File.separator + "rrd" + File.separator + "snmp" + File.separator + "1";
+
+    private static final List<String> RRAS = Arrays.asList("RRA:AVERAGE:0.5:1:2016");
+
+    private RrdFileRegistry m_registry;
+
+    @Override
+    protected void setUp() throws Exception {
+        m_registry = new RrdFileRegistry();
+    }
+
+    public void testFileIsCreatedOnlyOnce() {
+        int signature = RrdFileRegistry.getSignature(300, dataSources("ifInOctets"), RRAS);
+        assertFalse(m_registry.isFileCreated(DIR, "mib2-interfaces", signature));
+
+        m_registry.setFileCreated(DIR, "mib2-interfaces", signature);
+        assertTrue(m_registry.isFileCreated(DIR, "mib2-interfaces", signature));
+        assertFalse(m_registry.isFileCreated(DIR, "mib2-tcp", signature));
+        assertFalse(m_registry.isMetaDataWritten(DIR, "mib2-interfaces", 0));
+    }
+
+    public void testChangedSignature() {
+        int signature = RrdFileRegistry.getSignature(300, dataSources("ifInOctets"), RRAS);
+        m_registry.setFileCreated(DIR, "mib2-interfaces", signature);
+
+        assertFalse(m_registry.isFileCreated(DIR, "mib2-interfaces", RrdFileRegistry.getSignature(300, dataSources("ifInOctets", "ifOutOctets"), RRAS)));
+        assertFalse(m_registry.isFileCreated(DIR, "mib2-interfaces", RrdFileRegistry.getSignature(60, dataSources("ifInOctets"), RRAS)));
+        assertFalse(m_registry.isFileCreated(DIR, "mib2-interfaces", RrdFileRegistry.getSignature(300, dataSources("ifInOctets"), Collections.<String>emptyList())));
+        assertTrue(m_registry.isFileCreated(DIR, "mib2-interfaces", RrdFileRegistry.getSignature(300, dataSources("ifInOctets"), RRAS)));
+    }
+
+    public void testMetaData() {
+        Map<String, String> mappings = new HashMap<String, String>();
+        mappings.put(".1.3.6.1.2.1.2.2.1.10", "ifInOctets");
+        m_registry.setMetaDataWritten(DIR, "mib2-interfaces", RrdFileRegistry.getSignature(mappings));
+        assertTrue(m_registry.isMetaDataWritten(DIR, "mib2-interfaces", RrdFileRegistry.getSignature(mappings)));
+
+        mappings.put(".1.3.6.1.2.1.2.2.1.16", "ifOutOctets");
+        assertFalse(m_registry.isMetaDataWritten(DIR, "mib2-interfaces", RrdFileRegistry.getSignature(mappings)));
+        assertEquals(0, RrdFileRegistry.getSignature((Map<String, String>) null));
+    }
+
+    public void testPathsAreNormalized() {
+        m_registry.setFileCreated(DIR + File.separator, File.separator + "mib2-interfaces", 1);
+        assertTrue(m_registry.isFileCreated(DIR, "mib2-interfaces", 1));
+    }
+
+    public void testForget() {
+        m_registry.setFileCreated(DIR, "mib2-interfaces", 1);
+        m_registry.setFileCreated(DIR, "mib2-tcp", 1);
+        m_registry.setFileCreated(DIR + "0", "mib2-tcp", 1);
+        m_registry.setFileCreated(DIR + File.separator + "eth0", "mib2-interfaces", 1);
+
+        m_registry.forget(DIR, "mib2-tcp");
+        assertFalse(m_registry.isFileCreated(DIR, "mib2-tcp", 1));
+        assertTrue(m_registry.isFileCreated(DIR, "mib2-interfaces", 1));
+
+        m_registry.forgetDirectory(DIR);
+        assertFalse(m_registry.isFileCreated(DIR, "mib2-interfaces", 1));
+        assertFalse(m_registry.isFileCreated(DIR + File.separator + "eth0", "mib2-interfaces", 1));
+        assertTrue("a directory with the same prefix must be kept", m_registry.isFileCreated(DIR + "0", "mib2-tcp", 1));
+    }
+
+    public void testLeastRecentlyUsedFilesAreEvicted() {
+        m_registry.setMaxSize(2);
+        m_registry.setFileCreated(DIR, "a", 1);
+        m_registry.setFileCreated(DIR, "b", 1);
+        assertTrue(m_registry.isFileCreated(DIR, "a", 1));
+        m_registry.setFileCreated(DIR, "c", 1);
+
+        assertEquals(2, m_registry.size());
+        assertTrue(m_registry.isFileCreated(DIR, "a", 1));
+        assertFalse(m_registry.isFileCreated(DIR, "b", 1));
+        assertTrue(m_registry.isFileCreated(DIR, "c", 1));
+    }
+
+    public void testEntriesExpire() throws Exception {
+        m_registry.setMaxAge(10);
+        m_registry.setFileCreated(DIR, "a", 1);
+        assertTrue(m_registry.isFileCreated(DIR, "a", 1));
+
+        Thread.sleep(50);
+        assertFalse(m_registry.isFileCreated(DIR, "a", 1));
+        assertEquals(0, m_registry.size());
+    }
+
+    public void testDisabled() {
+        m_registry.setFileCreated(DIR, "a", 1);
+        m_registry.setMaxSize(0);
+        assertEquals(0, m_registry.size());
+
+        m_registry.setFileCreated(DIR, "a", 1);
+        m_registry.setMetaDataWritten(DIR, "a", 1);
+        assertFalse(m_registry.isFileCreated(DIR, "a", 1));
+        assertFalse(m_registry.isMetaDataWritten(DIR, "a", 1));
+    }
+
+    public void testStats() {
+        m_registry.setFileCreated(DIR, "a", 1);
+        m_registry.isFileCreated(DIR, "a", 1);
+        m_registry.isFileCreated(DIR, "b", 1);
+        assertEquals("knownFiles=1, hits=1, misses=1", m_registry.getStats());
+    }
+
+    private static List<RrdDataSource> dataSources(String... names) {
+        RrdDataSource[] dataSources = new RrdDataSource[names.length];
+        for (int i = 0; i < names.length; i++) {
+            dataSources[i] = new RrdDataSource(names[i], "COUNTER", 600, "0", "U");
+        }
+        return Arrays.asList(dataSources);
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdStrategy;
+import org.opennms.netmgt.rrd.RrdUtils;
+import org.opennms.test.FileAnticipator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the string and the double[] update paths of
+ * {@link JRobinRrdStrategy}.  Not part of the normal test run; use the
+ * <code>benchmark</code> profile to run it.
+ */
+public class JRobinRrdStrategyBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategyBenchmark.class);
+
+    private static final int UPDATES = 20000;
+
+    private RrdStrategy<RrdDef,RrdDb> m_strategy;
+    private FileAnticipator m_fileAnticipator;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false);
+        m_strategy = new JRobinRrdStrategy();
+        m_fileAnticipator = new FileAnticipator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_fileAnticipator.deleteExpected();
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void testUpdatePaths() throws Exception {
+        File rrdFile = createRrdFile();
+        long timestamp = (System.currentTimeMillis() / 1000) - (2 * UPDATES);
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+
+        long allocated = getAllocatedBytes();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < UPDATES; i++) {
+            m_strategy.updateFile(openedFile, "huh?", RrdUtils.formatUpdate(++timestamp, new double[] { i }));
+        }
+        long stringElapsed = System.currentTimeMillis() - start;
+        long stringAllocated = getAllocatedBytes() - allocated;
+
+        final double[] values = new double[1];
+        allocated = getAllocatedBytes();
+        start = System.currentTimeMillis();
+        for (int i = 0; i < UPDATES; i++) {
+            values[0] = i;
+            m_strategy.updateFile(openedFile, "huh?", ++timestamp, values);
+        }
+        long valuesElapsed = System.currentTimeMillis() - start;
+        long valuesAllocated = getAllocatedBytes() - allocated;
+
+        assertEquals(UPDATES - 1, openedFile.getLastDatasourceValue("bar"), 0.0);
+        m_strategy.closeFile(openedFile);
+
+        LOG.info("{} updates: string {} ms ({} bytes allocated), values {} ms ({} bytes allocated)",
+                 UPDATES, stringElapsed, stringAllocated, valuesElapsed, valuesAllocated);
+
+        if (stringAllocated > 0) {
+            assertTrue("the values path should allocate less than the string path: " + valuesAllocated + " >= " + stringAllocated,
+                       valuesAllocated < stringAllocated);
+        }
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, or 0 when the JVM
+     *         does not keep track of it
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private File createRrdFile() throws Exception {
+        String rrdFileBase = "foo";
+
+        List<RrdDataSource> dataSources = new ArrayList<RrdDataSource>();
+        dataSources.add(new RrdDataSource("bar", "GAUGE", 3000, "U", "U"));
+        List<String> rraList = new ArrayList<String>();
+        rraList.add("RRA:AVERAGE:0.5:1:2016");
+        RrdDef def = m_strategy.createDefinition("hello!", m_fileAnticipator.getTempDir().getAbsolutePath(), rrdFileBase, 300, dataSources, rraList);
+        m_strategy.createFile(def, null);
+
+        return m_fileAnticipator.expecting(rrdFileBase + RrdUtils.getExtension());
+    }
+}
@@ -173,6 +173,24 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testUpdateWithValues() throws Exception {
+        File rrdFile = createRrdFile();
+        long start = (System.currentTimeMillis() / 1000) - 600;
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", start + ":1.234234");
+        assertEquals(1.234234, openedFile.getLastDatasourceValue("bar"), 0.0);
+
+        m_strategy.updateFile(openedFile, "huh?", start + 300, new double[] { 1.234234 });
+        assertEquals(start + 300, openedFile.getLastUpdateTime());
+        assertEquals(1.234234, openedFile.getLastDatasourceValue("bar"), 0.0);
+
+        m_strategy.updateFile(openedFile, "huh?", start + 600, new double[] { Double.NaN });
+        assertTrue(Double.isNaN(openedFile.getLastDatasourceValue("bar")));
+        m_strategy.closeFile(openedFile);
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
@@ -215,6 +215,18 @@ public class JniRrdStrategy implements RrdStrategy<JniRrdStrategy.CreateCommand
         rrd.append(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The JNI interface only takes update commands, so this appends the
+     * values in the same form as {@link #updateFile(StringBuffer, String, String)}.
+     */
+        @Override
+    public void updateFile(StringBuffer rrd, String owner, long timestamp, double[] values) throws Exception {
+        rrd.append(' ');
+        rrd.append(RrdUtils.formatUpdate(timestamp, values));
+    }
+
     /**
      * Initialized the JNI Interface
      *
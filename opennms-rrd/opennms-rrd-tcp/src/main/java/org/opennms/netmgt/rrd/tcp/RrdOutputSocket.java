@@ -52,6 +52,7 @@ public class RrdOutputSocket {
     // private final RrdDefinition m_def;
     private final String m_host;
     private final int m_port;
+    private final TcpOutputChannel m_channel;
     private final PerformanceDataProtos.PerformanceDataReadings.Builder m_messages;
     private int m_messageCount = 0;
 
@@ -64,6 +65,20 @@ public class RrdOutputSocket {
     public RrdOutputSocket(String host, int port) {
         m_host = host;
         m_port = port;
+        m_channel = null;
+        m_messages = PerformanceDataProtos.PerformanceDataReadings.newBuilder();
+    }
+
+    /**
+     * <p>Constructor for RrdOutputSocket that hands its readings to a
+     * long-lived connection instead of opening a socket of its own.</p>
+     *
+     * @param channel a {@link org.opennms.netmgt.rrd.tcp.TcpOutputChannel} object.
+     */
+    public RrdOutputSocket(TcpOutputChannel channel) {
+        m_host = null;
+        m_port = 0;
+        m_channel = channel;
         m_messages = PerformanceDataProtos.PerformanceDataReadings.newBuilder();
     }
 
@@ -86,10 +101,38 @@ public class RrdOutputSocket {
         m_messageCount++;
     }
 
+    /**
+     * <p>addData</p>
+     *
+     * @param filename a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timestamp the time of the update, in seconds
+     * @param values the values, NaN for unknown
+     */
+    public void addData(String filename, String owner, long timestamp, double[] values) {
+        PerformanceDataReading.Builder reading = PerformanceDataReading.newBuilder()
+                .setPath(filename)
+                .setOwner(owner)
+                // RRD timestamps are in seconds, we want milliseconds
+                .setTimestamp(timestamp * 1000);
+        for (double value : values) {
+            reading.addValue(value);
+        }
+        m_messages.addMessage(reading);
+        m_messageCount++;
+    }
+
     /**
      * <p>writeData</p>
      */
     public void writeData() {
+        if (m_channel != null) {
+            for (PerformanceDataReading reading : m_messages.build().getMessageList()) {
+                m_channel.offer(reading);
+            }
+            return;
+        }
+
         Socket socket = null;
         try {
             socket = new Socket(InetAddressUtils.addr(m_host), m_port);
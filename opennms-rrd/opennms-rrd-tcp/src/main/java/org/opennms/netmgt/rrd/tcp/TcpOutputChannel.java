@@ -0,0 +1,410 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.tcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReading;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReadings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-lived connection to a performance data receiver.
+ * <p>
+ * Readings are put into a bounded buffer by {@link #offer(PerformanceDataReading)}
+ * and sent by a single background thread over one TCP connection, which is
+ * re-established whenever it fails.  The thread sends a batch as soon as it
+ * has collected <code>batchSize</code> readings, or <code>flushInterval</code>
+ * milliseconds after the first reading of the batch arrived.  Each batch is
+ * written as one PerformanceDataReadings message preceded by its length as a
+ * varint, so the receiver can read them one after the other with
+ * <code>PerformanceDataReadings.parseDelimitedFrom()</code>.
+ * </p>
+ * <p>
+ * When the receiver is slow or unreachable the buffer fills up; readings that
+ * cannot be buffered within <code>offerTimeout</code> milliseconds are dropped
+ * and counted, so the threads producing them are never held up for longer
+ * than that.  Delivery is at most once: a batch written just before the
+ * receiver closes the connection may be lost.
+ * </p>
+ */
+public class TcpOutputChannel {
+    private static final Logger LOG = LoggerFactory.getLogger(TcpOutputChannel.class);
+
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final long WRITE_TIMEOUT = 30000;
+    private static final long MIN_RETRY_DELAY = 250;
+    private static final long MAX_RETRY_DELAY = 30000;
+
+    private final String m_host;
+    private final int m_port;
+    private final int m_batchSize;
+    private final long m_flushInterval;
+    private final long m_offerTimeout;
+    private final BlockingQueue<PerformanceDataReading> m_queue;
+
+    private final AtomicLong m_sent = new AtomicLong();
+    private final AtomicLong m_batches = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+    private final AtomicLong m_droppedSinceLastLog = new AtomicLong();
+    private final AtomicLong m_connects = new AtomicLong();
+    private final AtomicLong m_failures = new AtomicLong();
+
+    // only used by the sender thread
+    private final ByteBuffer m_readBuffer = ByteBuffer.allocate(512);
+    private SocketChannel m_channel = null;
+    private Selector m_selector = null;
+
+    private Thread m_sender = null;
+    private volatile boolean m_stopped = false;
+
+    /**
+     * <p>Constructor for TcpOutputChannel.</p>
+     *
+     * @param host the host name or address of the receiver
+     * @param port the TCP port of the receiver
+     * @param queueSize the maximum number of readings waiting to be sent
+     * @param batchSize the maximum number of readings sent in one message
+     * @param flushInterval the maximum time in milliseconds a reading waits for its batch to fill up
+     * @param offerTimeout the maximum time in milliseconds to wait for room in a full buffer
+     */
+    public TcpOutputChannel(String host, int port, int queueSize, int batchSize, long flushInterval, long offerTimeout) {
+        m_host = host;
+        m_port = port;
+        m_queue = new LinkedBlockingQueue<PerformanceDataReading>(queueSize);
+        m_batchSize = Math.max(1, batchSize);
+        m_flushInterval = Math.max(1, flushInterval);
+        m_offerTimeout = Math.max(0, offerTimeout);
+    }
+
+    /**
+     * Starts the thread that sends the buffered readings.
+     */
+    public synchronized void start() {
+        if (m_sender != null) {
+            return;
+        }
+        m_sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendLoop();
+            }
+        }, getClass().getSimpleName() + "-" + m_host + ":" + m_port);
+        m_sender.setDaemon(true);
+        m_sender.start();
+    }
+
+    /**
+     * Stops the sender thread and closes the connection.  Readings that have
+     * not been sent yet are dropped.
+     *
+     * @throws InterruptedException if interrupted while waiting for the sender thread
+     */
+    public void stop() throws InterruptedException {
+        final Thread sender;
+        synchronized (this) {
+            m_stopped = true;
+            sender = m_sender;
+        }
+        if (sender != null) {
+            sender.interrupt();
+            sender.join();
+        }
+    }
+
+    /**
+     * Buffers a reading to be sent.
+     *
+     * @param reading the reading
+     * @return false if the buffer stayed full and the reading was dropped
+     */
+    public boolean offer(PerformanceDataReading reading) {
+        boolean queued = false;
+        if (!m_stopped) {
+            try {
+                if (m_offerTimeout > 0) {
+                    queued = m_queue.offer(reading, m_offerTimeout, TimeUnit.MILLISECONDS);
+                } else {
+                    queued = m_queue.offer(reading);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            m_dropped.incrementAndGet();
+            m_droppedSinceLastLog.incrementAndGet();
+        }
+        return queued;
+    }
+
+    /**
+     * @return the number of readings that have been sent
+     */
+    public long getSentCount() {
+        return m_sent.get();
+    }
+
+    /**
+     * @return the number of messages that have been sent
+     */
+    public long getBatchCount() {
+        return m_batches.get();
+    }
+
+    /**
+     * @return the number of readings that were dropped
+     */
+    public long getDroppedCount() {
+        return m_dropped.get();
+    }
+
+    /**
+     * @return the number of connections that have been established
+     */
+    public long getConnectCount() {
+        return m_connects.get();
+    }
+
+    /**
+     * @return the number of failed attempts to connect or send
+     */
+    public long getFailureCount() {
+        return m_failures.get();
+    }
+
+    /**
+     * @return the number of readings waiting to be sent
+     */
+    public int getQueueSize() {
+        return m_queue.size();
+    }
+
+    /**
+     * <p>getStats</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getStats() {
+        return "sent=" + getSentCount()
+            + ", batches=" + getBatchCount()
+            + ", dropped=" + getDroppedCount()
+            + ", queued=" + getQueueSize()
+            + ", connects=" + getConnectCount()
+            + ", failures=" + getFailureCount();
+    }
+
+    private void sendLoop() {
+        final List<PerformanceDataReading> batch = new ArrayList<PerformanceDataReading>(m_batchSize);
+        try {
+            while (!m_stopped) {
+                fillBatch(batch);
+                if (!batch.isEmpty()) {
+                    send(batch);
+                    m_sent.addAndGet(batch.size());
+                    m_batches.incrementAndGet();
+                    batch.clear();
+                }
+                logDrops();
+            }
+        } catch (InterruptedException e) {
+            LOG.debug("Sender for {}:{} interrupted, stopping", m_host, m_port);
+        } catch (Throwable e) {
+            LOG.error("Unexpected exception caught in the sender for {}:{}, stopping", m_host, m_port, e);
+        } finally {
+            m_stopped = true;
+            disconnect();
+            final int lost = batch.size() + m_queue.size();
+            m_queue.clear();
+            if (lost > 0) {
+                m_dropped.addAndGet(lost);
+                LOG.warn("Dropped {} performance data reading(s) that had not been sent to {}:{}", lost, m_host, m_port);
+            }
+        }
+    }
+
+    /**
+     * Waits for the first reading, then collects more until the batch is
+     * full or the flush interval has passed.
+     */
+    private void fillBatch(final List<PerformanceDataReading> batch) throws InterruptedException {
+        final PerformanceDataReading first = m_queue.poll(m_flushInterval, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+
+        final long deadline = System.currentTimeMillis() + m_flushInterval;
+        while (batch.size() < m_batchSize) {
+            if (m_queue.drainTo(batch, m_batchSize - batch.size()) > 0) {
+                continue;
+            }
+            final long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                break;
+            }
+            final PerformanceDataReading next = m_queue.poll(wait, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Sends one batch, reconnecting and retrying with an increasing delay
+     * until it has been written or the thread is interrupted.
+     */
+    private void send(final List<PerformanceDataReading> batch) throws InterruptedException, IOException {
+        final ByteBuffer frame = encode(batch);
+        long retryDelay = MIN_RETRY_DELAY;
+        while (true) {
+            try {
+                if (m_channel == null || isClosedByPeer()) {
+                    disconnect();
+                    connect();
+                }
+                write(frame);
+                return;
+            } catch (IOException e) {
+                m_failures.incrementAndGet();
+                LOG.warn("Unable to send {} performance data reading(s) to {}:{}, retrying in {} ms: {}", batch.size(), m_host, m_port, retryDelay, e.getMessage());
+                disconnect();
+                frame.rewind();
+                Thread.sleep(retryDelay);
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+                logDrops();
+            }
+        }
+    }
+
+    /**
+     * @return the readings as one length-delimited PerformanceDataReadings message
+     */
+    static ByteBuffer encode(final List<PerformanceDataReading> batch) throws IOException {
+        final PerformanceDataReadings messages = PerformanceDataReadings.newBuilder().addAllMessage(batch).build();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(messages.getSerializedSize() + 5);
+        messages.writeDelimitedTo(out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private void connect() throws IOException {
+        final InetSocketAddress address = new InetSocketAddress(m_host, m_port);
+        if (address.isUnresolved()) {
+            throw new IOException("Unable to resolve " + m_host);
+        }
+
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(address, CONNECT_TIMEOUT);
+            channel.configureBlocking(false);
+            m_selector = Selector.open();
+            channel.register(m_selector, SelectionKey.OP_WRITE);
+            m_channel = channel;
+        } catch (IOException e) {
+            close(channel);
+            throw e;
+        }
+        m_connects.incrementAndGet();
+        LOG.info("Connected to performance data receiver at {}:{}", m_host, m_port);
+    }
+
+    /**
+     * The receiver is not expected to send anything, so discard what it does
+     * send and only look for the end of the stream.
+     */
+    private boolean isClosedByPeer() {
+        try {
+            int read;
+            do {
+                m_readBuffer.clear();
+                read = m_channel.read(m_readBuffer);
+            } while (read > 0);
+            return read < 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private void write(final ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining()) {
+            if (m_channel.write(frame) == 0) {
+                // the socket buffer is full, wait for the receiver to catch up
+                if (m_selector.select(WRITE_TIMEOUT) == 0) {
+                    throw new IOException("Receiver did not accept any data for " + WRITE_TIMEOUT + " ms");
+                }
+                m_selector.selectedKeys().clear();
+            }
+        }
+    }
+
+    private void disconnect() {
+        if (m_selector != null) {
+            try {
+                m_selector.close();
+            } catch (IOException e) {
+                LOG.debug("IOException when closing selector: {}", e.getMessage());
+            }
+            m_selector = null;
+        }
+        if (m_channel != null) {
+            close(m_channel);
+            m_channel = null;
+        }
+    }
+
+    private static void close(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("IOException when closing TCP performance data socket: {}", e.getMessage());
+        }
+    }
+
+    private void logDrops() {
+        final long dropped = m_droppedSinceLastLog.getAndSet(0);
+        if (dropped > 0) {
+            LOG.warn("Dropped {} performance data reading(s) for {}:{} because the send buffer was full", dropped, m_host, m_port);
+        }
+    }
+}
@@ -47,6 +47,12 @@ import org.opennms.netmgt.rrd.RrdStrategy;
  * The receiver of this strategy is not defined in any way. This is just a fire
  * and forget strategy. There is no way to read data back into opennms.
  * </p>
+ * <p>
+ * By default every file that is closed opens a new connection to send its
+ * readings.  With <code>persistentConnection</code> set, the readings are
+ * instead handed to a single {@link TcpOutputChannel} that keeps one
+ * connection open and sends them in length-delimited batches.
+ * </p>
  * 
  * @author ranger
  * @version $Id: $
@@ -132,6 +138,150 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
         this.m_port = port;
     }
 
+    private boolean m_persistentConnection = false;
+
+    /**
+     * <p>isPersistentConnection</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isPersistentConnection() {
+        return m_persistentConnection;
+    }
+
+    /**
+     * <p>setPersistentConnection</p>
+     *
+     * @param persistentConnection a boolean.
+     */
+    public void setPersistentConnection(boolean persistentConnection) {
+        m_persistentConnection = persistentConnection;
+    }
+
+    private int m_queueSize = 50000;
+
+    /**
+     * <p>getQueueSize</p>
+     *
+     * @return the maximum number of readings buffered by the persistent connection
+     */
+    public int getQueueSize() {
+        return m_queueSize;
+    }
+
+    /**
+     * <p>setQueueSize</p>
+     *
+     * @param queueSize a int.
+     */
+    public void setQueueSize(int queueSize) {
+        m_queueSize = queueSize;
+    }
+
+    private int m_batchSize = 1000;
+
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return the maximum number of readings the persistent connection sends in one message
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize a int.
+     */
+    public void setBatchSize(int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    private long m_flushInterval = 1000;
+
+    /**
+     * <p>getFlushInterval</p>
+     *
+     * @return the time in milliseconds the persistent connection waits for a batch to fill up
+     */
+    public long getFlushInterval() {
+        return m_flushInterval;
+    }
+
+    /**
+     * <p>setFlushInterval</p>
+     *
+     * @param flushInterval a long.
+     */
+    public void setFlushInterval(long flushInterval) {
+        m_flushInterval = flushInterval;
+    }
+
+    private long m_offerTimeout = 0;
+
+    /**
+     * <p>getOfferTimeout</p>
+     *
+     * @return the time in milliseconds to wait for room in a full buffer before dropping a reading
+     */
+    public long getOfferTimeout() {
+        return m_offerTimeout;
+    }
+
+    /**
+     * <p>setOfferTimeout</p>
+     *
+     * @param offerTimeout a long.
+     */
+    public void setOfferTimeout(long offerTimeout) {
+        m_offerTimeout = offerTimeout;
+    }
+
+    private TcpOutputChannel m_channel = null;
+
+    /**
+     * Returns the persistent connection, starting it the first time.
+     *
+     * @return a {@link org.opennms.netmgt.rrd.tcp.TcpOutputChannel} object.
+     */
+    public synchronized TcpOutputChannel getChannel() {
+        if (m_channel == null) {
+            m_channel = new TcpOutputChannel(m_host, m_port, m_queueSize, m_batchSize, m_flushInterval, m_offerTimeout);
+            m_channel.start();
+        }
+        return m_channel;
+    }
+
+    /**
+     * Stops the persistent connection, if it was started.
+     *
+     * @throws java.lang.InterruptedException if any.
+     */
+    public void destroy() throws InterruptedException {
+        final TcpOutputChannel channel;
+        synchronized (this) {
+            channel = m_channel;
+            m_channel = null;
+        }
+        if (channel != null) {
+            channel.stop();
+        }
+    }
+
+    /**
+     * <p>createOutputSocket</p>
+     *
+     * @return a new {@link org.opennms.netmgt.rrd.tcp.RrdOutputSocket} that
+     *         sends over the persistent connection if it is enabled
+     */
+    public RrdOutputSocket createOutputSocket() {
+        if (m_persistentConnection) {
+            return new RrdOutputSocket(getChannel());
+        }
+        return new RrdOutputSocket(m_host, m_port);
+    }
+
     /**
      * <p>getDefaultFileExtension</p>
      *
@@ -163,7 +313,7 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
     /** {@inheritDoc} */
     @Override
     public RrdOutputSocketWithFilename openFile(String fileName) throws Exception {
-        return new RrdOutputSocketWithFilename(new RrdOutputSocket(m_host, m_port), fileName);
+        return new RrdOutputSocketWithFilename(createOutputSocket(), fileName);
     }
 
     /** {@inheritDoc} */
@@ -172,6 +322,12 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
         rrd.getSocket().addData(rrd.getFilename(), owner, data);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(RrdOutputSocketWithFilename rrd, String owner, long timestamp, double[] values) throws Exception {
+        rrd.getSocket().addData(rrd.getFilename(), owner, timestamp, values);
+    }
+
     /**
      * <p>closeFile</p>
      *
@@ -250,6 +406,11 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
      */
     @Override
     public String getStats() {
+        synchronized (this) {
+            if (m_channel != null) {
+                return m_channel.getStats();
+            }
+        }
         throw new UnsupportedOperationException(this.getClass().getName() + " does not support graphing.");
     }
 
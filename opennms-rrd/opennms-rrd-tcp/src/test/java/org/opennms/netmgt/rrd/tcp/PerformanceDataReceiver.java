@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReading;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReadings;
+
+/**
+ * Stand-in for an external performance data receiver that reads the
+ * length-delimited messages sent by {@link TcpOutputChannel} on a local port
+ * and keeps the readings for the tests to look at.
+ */
+public class PerformanceDataReceiver {
+    private final ServerSocket m_serverSocket;
+    private final List<Socket> m_clients = new ArrayList<Socket>();
+    private final List<PerformanceDataReading> m_readings = new ArrayList<PerformanceDataReading>();
+    private int m_connections = 0;
+    private int m_messages = 0;
+    private Thread m_acceptor;
+
+    public PerformanceDataReceiver() throws IOException {
+        m_serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    public int getPort() {
+        return m_serverSocket.getLocalPort();
+    }
+
+    public void start() {
+        m_acceptor = new Thread("PerformanceDataReceiver-" + getPort()) {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = m_serverSocket.accept();
+                        synchronized (PerformanceDataReceiver.this) {
+                            m_clients.add(socket);
+                            m_connections++;
+                        }
+                        final Thread reader = new Thread(getName() + "-" + m_connections) {
+                            @Override
+                            public void run() {
+                                read(socket);
+                            }
+                        };
+                        reader.setDaemon(true);
+                        reader.start();
+                    }
+                } catch (IOException e) {
+                    // closed by stop()
+                }
+            }
+        };
+        m_acceptor.setDaemon(true);
+        m_acceptor.start();
+    }
+
+    public void stop() throws Exception {
+        m_serverSocket.close();
+        disconnectClients();
+        if (m_acceptor != null) {
+            m_acceptor.join();
+        }
+    }
+
+    /**
+     * Closes the connections that are currently open, as a receiver that is
+     * restarted would.
+     */
+    public synchronized void disconnectClients() throws IOException {
+        for (Socket socket : m_clients) {
+            socket.close();
+        }
+        m_clients.clear();
+    }
+
+    public synchronized int getConnectionCount() {
+        return m_connections;
+    }
+
+    public synchronized int getMessageCount() {
+        return m_messages;
+    }
+
+    public synchronized List<PerformanceDataReading> getReadings() {
+        return new ArrayList<PerformanceDataReading>(m_readings);
+    }
+
+    /**
+     * Waits until at least the given number of readings has been received.
+     *
+     * @return true if they were received before the timeout
+     */
+    public synchronized boolean waitForReadings(int count, long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (m_readings.size() < count) {
+            final long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                return false;
+            }
+            wait(wait);
+        }
+        return true;
+    }
+
+    private void read(Socket socket) {
+        try {
+            final InputStream in = socket.getInputStream();
+            PerformanceDataReadings messages;
+            while ((messages = PerformanceDataReadings.parseDelimitedFrom(in)) != null) {
+                synchronized (this) {
+                    m_messages++;
+                    m_readings.addAll(messages.getMessageList());
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            // closed by disconnectClients() or by the sender
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
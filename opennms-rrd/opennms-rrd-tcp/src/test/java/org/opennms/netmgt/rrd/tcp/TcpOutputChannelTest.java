@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReading;
+
+public class TcpOutputChannelTest {
+
+    private PerformanceDataReceiver m_receiver;
+    private TcpOutputChannel m_channel;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        m_receiver = new PerformanceDataReceiver();
+        m_receiver.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_channel != null) {
+            m_channel.stop();
+        }
+        m_receiver.stop();
+    }
+
+    @Test
+    public void testBatchesAreSentOverOneConnection() throws Exception {
+        m_channel = new TcpOutputChannel("127.0.0.1", m_receiver.getPort(), 10000, 100, 50, 0);
+        m_channel.start();
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(m_channel.offer(createReading("/rrd/snmp/1/foo", i)));
+        }
+
+        assertTrue("readings not received", m_receiver.waitForReadings(1000, 10000));
+        List<PerformanceDataReading> readings = m_receiver.getReadings();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, readings.get(i).getTimestamp());
+        }
+        assertEquals(1, m_receiver.getConnectionCount());
+        assertEquals(1000, m_channel.getSentCount());
+        assertEquals(0, m_channel.getDroppedCount());
+        assertEquals(m_channel.getBatchCount(), m_receiver.getMessageCount());
+        assertTrue("expected batches of at most 100 readings", m_channel.getBatchCount() >= 10);
+    }
+
+    @Test
+    public void testReconnectsAfterReceiverDisconnects() throws Exception {
+        m_channel = new TcpOutputChannel("127.0.0.1", m_receiver.getPort(), 10000, 100, 10, 0);
+        m_channel.start();
+
+        m_channel.offer(createReading("/rrd/snmp/1/foo", 1));
+        assertTrue("first reading not received", m_receiver.waitForReadings(1, 10000));
+
+        m_receiver.disconnectClients();
+        Thread.sleep(500);
+
+        m_channel.offer(createReading("/rrd/snmp/1/foo", 2));
+        assertTrue("second reading not received", m_receiver.waitForReadings(2, 10000));
+        assertEquals(2, m_receiver.getConnectionCount());
+        assertEquals(2, m_channel.getConnectCount());
+    }
+
+    @Test
+    public void testReadingsAreDroppedWhenTheReceiverIsUnreachable() throws Exception {
+        ServerSocket unused = new ServerSocket(0);
+        int port = unused.getLocalPort();
+        unused.close();
+
+        m_channel = new TcpOutputChannel("127.0.0.1", port, 10, 5, 10, 0);
+        m_channel.start();
+
+        int rejected = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            if (!m_channel.offer(createReading("/rrd/snmp/1/foo", i))) {
+                rejected++;
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("expected readings to be dropped", rejected > 0);
+        assertEquals(rejected, m_channel.getDroppedCount());
+        assertTrue("offering took " + elapsed + " ms", elapsed < 1000);
+        assertEquals(0, m_channel.getSentCount());
+    }
+
+    @Test
+    public void testStrategyWithPersistentConnection() throws Exception {
+        TcpRrdStrategy strategy = new TcpRrdStrategy();
+        strategy.setHost("127.0.0.1");
+        strategy.setPort(m_receiver.getPort());
+        strategy.setPersistentConnection(true);
+        strategy.setFlushInterval(10);
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                TcpRrdStrategy.RrdOutputSocketWithFilename file = strategy.openFile("/rrd/snmp/1/foo");
+                strategy.updateFile(file, "test", (1000 + i) + ":1.5");
+                strategy.updateFile(file, "test", 2000 + i, new double[] { 2.5, Double.NaN });
+                strategy.closeFile(file);
+            }
+
+            assertTrue("readings not received", m_receiver.waitForReadings(6, 10000));
+            List<PerformanceDataReading> readings = m_receiver.getReadings();
+            assertEquals(1, m_receiver.getConnectionCount());
+            assertEquals("/rrd/snmp/1/foo", readings.get(0).getPath());
+            assertEquals(1000000, readings.get(0).getTimestamp());
+            assertEquals(1.5, readings.get(0).getValue(0), 0.0);
+            assertEquals(2000000, readings.get(1).getTimestamp());
+            assertEquals(2, readings.get(1).getValueCount());
+            assertTrue(Double.isNaN(readings.get(1).getValue(1)));
+            assertTrue(strategy.getStats().contains("dropped=0"));
+        } finally {
+            strategy.destroy();
+        }
+    }
+
+    private static PerformanceDataReading createReading(String path, long timestamp) {
+        return PerformanceDataReading.newBuilder()
+                .setPath(path)
+                .setOwner("test")
+                .setTimestamp(timestamp)
+                .addValue(1.0)
+                .build();
+    }
+}
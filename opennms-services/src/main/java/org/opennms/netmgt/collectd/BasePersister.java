@@ -33,8 +33,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.netmgt.config.collector.AttributeDefinition;
 import org.opennms.netmgt.config.collector.AttributeGroup;
@@ -57,6 +60,9 @@ import org.slf4j.LoggerFactory;
 public class BasePersister extends AbstractCollectionSetVisitor implements Persister {
     
     protected static final Logger LOG = LoggerFactory.getLogger(BasePersister.class);
+
+    private static final AtomicLong s_stringAttributesPersisted = new AtomicLong();
+    private static final AtomicLong s_stringPropertiesWrites = new AtomicLong();
     
     private boolean m_ignorePersist = false;
     private ServiceParameters m_params;
@@ -64,6 +70,17 @@ public class BasePersister extends AbstractCollectionSetVisitor implements Persi
     private LinkedList<Boolean> m_stack = new LinkedList<Boolean>();
     private PersistOperationBuilder m_builder;
 
+    /**
+     * The number of resources being visited; string attributes are only
+     * buffered while this is not 0.
+     */
+    private int m_resourceDepth = 0;
+
+    /**
+     * String attributes waiting to be written, by resource directory.
+     */
+    private final Map<File, Map<String, String>> m_stringAttributes = new LinkedHashMap<File, Map<String, String>>();
+
     /**
      * <p>Constructor for BasePersister.</p>
      */
@@ -120,6 +137,10 @@ public class BasePersister extends AbstractCollectionSetVisitor implements Persi
     /** {@inheritDoc} */
     @Override
     public void completeResource(CollectionResource resource) {
+        if (--m_resourceDepth <= 0) {
+            m_resourceDepth = 0;
+            writeStringAttributes();
+        }
         popShouldPersist();
     }
     
@@ -196,12 +217,58 @@ public class BasePersister extends AbstractCollectionSetVisitor implements Persi
             String attrName = attribute.getName();
             try {
                 File resourceDir = resource.getResourceDir(getRepository());
-                ResourceTypeUtils.updateStringProperty(resourceDir, value, attrName);
+                Map<String, String> attributes = m_stringAttributes.get(resourceDir);
+                if (attributes == null) {
+                    attributes = new LinkedHashMap<String, String>();
+                    m_stringAttributes.put(resourceDir, attributes);
+                }
+                attributes.put(attrName, value);
+                s_stringAttributesPersisted.incrementAndGet();
             } catch(FileNotFoundException e) {
                 LOG.error("Unable to save string attribute {}", attribute, e);
+            }
+
+            // outside of a resource visit there is nothing to wait for
+            if (m_resourceDepth == 0) {
+                writeStringAttributes();
+            }
+    }
+
+    /**
+     * Writes the buffered string attributes, one strings.properties file per
+     * resource, skipping the files whose values did not change.
+     */
+    private void writeStringAttributes() {
+        for (Map.Entry<File, Map<String, String>> entry : m_stringAttributes.entrySet()) {
+            try {
+                if (ResourceTypeUtils.updateStringProperties(entry.getKey(), entry.getValue())) {
+                    s_stringPropertiesWrites.incrementAndGet();
+                }
             } catch(IOException e) {
-                LOG.error("Unable to save string attribute {}", attribute, e);
+                LOG.error("Unable to save string attributes {} in {}", entry.getValue().keySet(), entry.getKey(), e);
             }
+        }
+        m_stringAttributes.clear();
+    }
+
+    /**
+     * <p>getStringPropertiesWrites</p>
+     *
+     * @return the number of times a strings.properties file was written
+     */
+    public static long getStringPropertiesWrites() {
+        return s_stringPropertiesWrites.get();
+    }
+
+    /**
+     * <p>getStringPropertiesWritesAvoided</p>
+     *
+     * @return the number of string attributes persisted without a write of
+     *         their own, because they were written together with the other
+     *         attributes of their resource or did not change
+     */
+    public static long getStringPropertiesWritesAvoided() {
+        return s_stringAttributesPersisted.get() - s_stringPropertiesWrites.get();
     }
 
     private boolean pop() {
@@ -297,6 +364,7 @@ public class BasePersister extends AbstractCollectionSetVisitor implements Persi
     public void visitResource(CollectionResource resource) {
         LOG.info("Persisting data for resource {}", resource);
         pushShouldPersist(resource);
+        m_resourceDepth++;
     }
 
 	/**
@@ -69,9 +69,10 @@ import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventIpcManager;
 import org.opennms.netmgt.model.events.EventListener;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
+import org.opennms.netmgt.scheduler.ScheduleSpreader;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Value;
@@ -135,6 +136,17 @@ public class Collectd extends AbstractServiceDaemon implements
      */
     private volatile Scheduler m_scheduler;
 
+    /**
+     * Spreads the first collection of existing interfaces across their interval
+     */
+    private volatile ScheduleSpreader m_scheduleSpreader = new ScheduleSpreader();
+
+    /**
+     * The number of seconds covered by the jobs-due-per-second report, the
+     * default collection interval.
+     */
+    public final static int DUE_REPORT_SECONDS = 300;
+
     /**
      * Indicates if scheduling of existing interfaces has been completed
      */
@@ -307,7 +319,7 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Create a scheduler
                 try {
                     LOG.debug("init: Creating collectd scheduler");
-                    setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                    setScheduler(SchedulerFactory.createScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
                 } catch (final RuntimeException e) {
                     LOG.error("init: Failed to create collectd scheduler", e);
                     throw e;
@@ -374,6 +386,9 @@ public class Collectd extends AbstractServiceDaemon implements
                 }
 
             });
+
+            LOG.info("scheduleExistingInterfaces: at most {} collections due in any one second of the next {} seconds",
+                     getPeakJobsDuePerSecond(), DUE_REPORT_SECONDS);
         
         } finally {
             instrumentation().endScheduleExistingInterfaces();
@@ -513,8 +528,15 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Add new collectable service to the collectable service list.
                 m_collectableServices.add(cSvc);
 
-                // Schedule the collectable service for immediate collection
-                getScheduler().schedule(0, cSvc.getReadyRunnable());
+                // Schedule the collectable service for immediate collection,
+                // spreading the interfaces that exist at startup across the
+                // interval if enabled; nodes rescheduled from events, such as
+                // a category membership change, are collected right away
+                long initialDelay = 0;
+                if (existing && !m_schedulingCompletedFlag.isSchedulingCompleted()) {
+                    initialDelay = m_scheduleSpreader.getInitialDelay(iface.getNode().getId() + ":" + ipAddress + ":" + svcName + ":" + spec.getPackageName(), spec.getInterval());
+                }
+                getScheduler().schedule(initialDelay, cSvc.getReadyRunnable());
 
                 LOG.debug("scheduleInterface: {}/{} collection, scheduled", iface, svcName);
             } catch (CollectionInitializationException e) {
@@ -1379,6 +1401,39 @@ public class Collectd extends AbstractServiceDaemon implements
         m_scheduler = scheduler;
     }
 
+    /**
+     * <p>setScheduleSpreader</p>
+     *
+     * @param scheduleSpreader a {@link org.opennms.netmgt.scheduler.ScheduleSpreader} object.
+     */
+    public void setScheduleSpreader(ScheduleSpreader scheduleSpreader) {
+        m_scheduleSpreader = scheduleSpreader;
+    }
+
+    /**
+     * Returns the number of collections due in each of the next seconds.
+     *
+     * @param seconds the number of seconds to report
+     * @return the number of collections due in each second
+     */
+    public int[] getJobsDuePerSecond(int seconds) {
+        return getScheduler().getJobsDuePerSecond(seconds);
+    }
+
+    /**
+     * Returns the largest number of collections due in any one second of the
+     * next {@link #DUE_REPORT_SECONDS} seconds.
+     *
+     * @return the peak number of collections due per second
+     */
+    public int getPeakJobsDuePerSecond() {
+        int peak = 0;
+        for (int due : getJobsDuePerSecond(DUE_REPORT_SECONDS)) {
+            peak = Math.max(peak, due);
+        }
+        return peak;
+    }
+
     private Scheduler getScheduler() {
         if (m_scheduler == null) {
             createScheduler();
@@ -74,6 +74,12 @@ public class PersistOperationBuilder {
     /** Constant <code>MAX_DS_NAME_LENGTH=19</code> */
     public static final int MAX_DS_NAME_LENGTH = 19;
 
+    /**
+     * Integers from this size on cannot all be represented exactly as a
+     * double, so values this large are passed as strings.
+     */
+    private static final double MAX_EXACT_INTEGER = 9007199254740992.0; // 2^53
+
     /**
      * <p>Constructor for PersistOperationBuilder.</p>
      *
@@ -157,7 +163,12 @@ public class PersistOperationBuilder {
             final String ownerName = m_resource.getOwnerName();
             final String absolutePath = getResourceDir(m_resource).getAbsolutePath();
             RrdUtils.createRRD(ownerName, absolutePath, m_rrdName, getRepository().getStep(), getDataSources(), getRepository().getRraList(), getAttributeMappings());
-            RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+            final double[] values = getValueArray();
+            if (values == null) {
+                RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+            } else {
+                RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), values);
+            }
             RrdUtils.createMetaDataFile(absolutePath, m_rrdName, m_metaData);
         } catch (FileNotFoundException e) {
             LoggerFactory.getLogger(getClass()).warn("Could not get resource directory: " + e.getMessage(), e);
@@ -181,6 +192,35 @@ public class PersistOperationBuilder {
         return values.toString();
     }
 
+    /**
+     * Returns the values as numbers, with unknown values as NaN, or null if
+     * any of them can only be passed on as a string: values that are not
+     * numbers, and integers too large to be exact as a double, such as big
+     * 64 bit counters.
+     */
+    private double[] getValueArray() {
+        final double[] values = new double[m_declarations.size()];
+        int i = 0;
+        for (String value : m_declarations.values()) {
+            if (value == null) {
+                return null;
+            } else if ("U".equals(value)) {
+                values[i++] = Double.NaN;
+                continue;
+            }
+            try {
+                final double d = Double.parseDouble(value);
+                if (Math.abs(d) >= MAX_EXACT_INTEGER) {
+                    return null;
+                }
+                values[i++] = d;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return values;
+    }
+
     private Map<String, String> getAttributeMappings() {
         return null;
     }
@@ -51,4 +51,28 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
         return "collectdContext";
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public int[] getCollectionsDuePerSecond() {
+        return getDaemon().getJobsDuePerSecond(org.opennms.netmgt.collectd.Collectd.DUE_REPORT_SECONDS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPeakCollectionsDuePerSecond() {
+        return getDaemon().getPeakJobsDuePerSecond();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getStringPropertiesWrites() {
+        return org.opennms.netmgt.collectd.BasePersister.getStringPropertiesWrites();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getStringPropertiesWritesAvoided() {
+        return org.opennms.netmgt.collectd.BasePersister.getStringPropertiesWritesAvoided();
+    }
+
 }
@@ -37,4 +37,33 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface CollectdMBean extends BaseOnmsMBean {
+    /**
+     * Returns the number of collections due in each of the next 300 seconds.
+     *
+     * @return the number of collections due in each second
+     */
+    public int[] getCollectionsDuePerSecond();
+
+    /**
+     * Returns the largest number of collections due in any one second of the
+     * next 300 seconds.
+     *
+     * @return the peak number of collections due per second
+     */
+    public int getPeakCollectionsDuePerSecond();
+
+    /**
+     * Returns the number of times a strings.properties file was written.
+     *
+     * @return the number of strings.properties writes
+     */
+    public long getStringPropertiesWrites();
+
+    /**
+     * Returns the number of string attributes that were persisted without a
+     * strings.properties write of their own.
+     *
+     * @return the number of strings.properties writes avoided
+     */
+    public long getStringPropertiesWritesAvoided();
 }
@@ -32,16 +32,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
@@ -109,6 +108,12 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
      */
     private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
 
+    /**
+     * Snapshot of the listener registrations above, rebuilt whenever they
+     * change and read without locking by {@link #broadcastNow(Event)}.
+     */
+    private volatile UeiDispatchTable<EventListenerExecutor> m_dispatchTable = UeiDispatchTable.empty();
+
     /**
      * The thread pool handling the events
      */
@@ -137,7 +142,17 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         /**
          * The thread that is running this runnable.
          */
-        private final ExecutorService m_delegateThread;
+        private final ThreadPoolExecutor m_delegateThread;
+
+        /**
+         * Number of events queued for this listener
+         */
+        private final AtomicLong m_eventsQueued = new AtomicLong();
+
+        /**
+         * Number of events discarded because the listener's queue was full
+         */
+        private final AtomicLong m_eventsDropped = new AtomicLong();
 
         /**
          * Constructor
@@ -159,6 +174,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
                     new RejectedExecutionHandler() {
                         @Override
                         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                            m_eventsDropped.incrementAndGet();
                             LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
                         }
                     }
@@ -166,6 +182,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
 
         public void addEvent(final Event event) {
+            m_eventsQueued.incrementAndGet();
             m_delegateThread.execute(new Runnable() {
                 @Override
                 public void run() {
@@ -192,6 +209,22 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         public void stop() {
             m_delegateThread.shutdown();
         }
+
+        public String getName() {
+            return m_listener.getName();
+        }
+
+        public int getQueueDepth() {
+            return m_delegateThread.getQueue().size();
+        }
+
+        public long getEventsQueued() {
+            return m_eventsQueued.get();
+        }
+
+        public long getEventsDropped() {
+            return m_eventsDropped.get();
+        }
     }
 
     /**
@@ -264,55 +297,32 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     public void broadcastNow(Event event) {
         LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
 
-        if (m_listeners.isEmpty()) {
-            LOG.debug("No listeners interested in all events");
-        }
+        final UeiDispatchTable<EventListenerExecutor> dispatchTable = m_dispatchTable;
 
-        // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            queueEventToListener(event, listener);
+        if (dispatchTable.getMatchAll().isEmpty()) {
+            LOG.debug("No listeners interested in all events");
         }
 
         if (event.getUei() == null) {
             LOG.debug("Event ID {} does not have a UEI, so skipping UEI matching", event.getDbid());
-            return;
         }
 
         /*
-         * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
+         * Send to listeners interested in receiving all events and to
+         * listeners who are interested in this event UEI or in one of its
+         * partial wild card "directory" matches.
          */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        queueEventToListener(event, listener);
-                        sentToListeners.add(listener);
-                    }
-                }
-            }
-            
-            // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
-            if (i > 0) {
-                // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
-            } else {
-                // No more wild cards to match
-                break;
-            }
+        final List<EventListenerExecutor> listenerThreads = dispatchTable.resolve(event.getUei());
+        final int size = listenerThreads.size();
+        for (int i = 0; i < size; i++) {
+            listenerThreads.get(i).addEvent(event);
         }
-        
-        if (sentToListeners.isEmpty()) {
+
+        if (event.getUei() != null && size == dispatchTable.getMatchAll().size()) {
             LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
         }
     }
 
-    private void queueEventToListener(Event event, EventListener listener) {
-        m_listenerThreads.get(listener.getName()).addEvent(event);
-    }
-
     /**
      * {@inheritDoc}
      *
@@ -331,6 +341,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+
+        rebuildDispatchTable();
     }
 
     /**
@@ -358,6 +370,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+
+        rebuildDispatchTable();
     }
 
     /**
@@ -392,6 +406,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+
+        rebuildDispatchTable();
     }
 
     /**
@@ -411,6 +427,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+
+        rebuildDispatchTable();
     }
 
     /**
@@ -437,6 +455,78 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
             m_listenerThreads.remove(listener.getName());
         }
+
+        rebuildDispatchTable();
+    }
+
+    /**
+     * Publish a new dispatch table built from the current registrations.
+     * Must be called with the lock on this object held.
+     */
+    private void rebuildDispatchTable() {
+        final List<EventListenerExecutor> matchAll = new ArrayList<EventListenerExecutor>(m_listeners.size());
+        for (EventListener listener : m_listeners) {
+            final EventListenerExecutor listenerThread = m_listenerThreads.get(listener.getName());
+            if (listenerThread != null) {
+                matchAll.add(listenerThread);
+            }
+        }
+
+        final Map<String, List<EventListenerExecutor>> ueiTargets = new HashMap<String, List<EventListenerExecutor>>();
+        for (Map.Entry<String, List<EventListener>> entry : m_ueiListeners.entrySet()) {
+            final List<EventListenerExecutor> targets = new ArrayList<EventListenerExecutor>(entry.getValue().size());
+            for (EventListener listener : entry.getValue()) {
+                final EventListenerExecutor listenerThread = m_listenerThreads.get(listener.getName());
+                if (listenerThread != null) {
+                    targets.add(listenerThread);
+                }
+            }
+            ueiTargets.put(entry.getKey(), targets);
+        }
+
+        m_dispatchTable = new UeiDispatchTable<EventListenerExecutor>(matchAll, ueiTargets);
+    }
+
+    /**
+     * Returns the number of events waiting in each listener's queue, keyed
+     * by listener name.
+     *
+     * @return a {@link java.util.Map} object.
+     */
+    public synchronized Map<String, Integer> getListenerQueueDepths() {
+        final Map<String, Integer> depths = new HashMap<String, Integer>();
+        for (EventListenerExecutor listenerThread : m_listenerThreads.values()) {
+            depths.put(listenerThread.getName(), listenerThread.getQueueDepth());
+        }
+        return depths;
+    }
+
+    /**
+     * Returns the number of events queued to each listener since it was
+     * registered, keyed by listener name.
+     *
+     * @return a {@link java.util.Map} object.
+     */
+    public synchronized Map<String, Long> getListenerEventsQueued() {
+        final Map<String, Long> counts = new HashMap<String, Long>();
+        for (EventListenerExecutor listenerThread : m_listenerThreads.values()) {
+            counts.put(listenerThread.getName(), listenerThread.getEventsQueued());
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of events discarded for each listener because its
+     * queue was full, keyed by listener name.
+     *
+     * @return a {@link java.util.Map} object.
+     */
+    public synchronized Map<String, Long> getListenerEventsDropped() {
+        final Map<String, Long> counts = new HashMap<String, Long>();
+        for (EventListenerExecutor listenerThread : m_listenerThreads.values()) {
+            counts.put(listenerThread.getName(), listenerThread.getEventsDropped());
+        }
+        return counts;
     }
 
     /**
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable snapshot of event listener registrations used to dispatch
+ * events by UEI.
+ *
+ * A new table is built every time a listener is added or removed and is
+ * then published in place of the old one, so readers never need to lock.
+ * Resolving a UEI returns the deduplicated list of targets for the
+ * listeners interested in all events, the exact UEI and every wildcard
+ * "directory" prefix of it (e.g. <code>uei.opennms.org/nodes/</code>).  The
+ * resolved list for each UEI is computed once and remembered, so
+ * dispatching an event with a previously seen UEI does not allocate.
+ *
+ * @param <T> the type of the dispatch targets
+ */
+final class UeiDispatchTable<T> {
+
+    /**
+     * Upper bound on the number of remembered UEIs.  Event UEIs normally come
+     * from eventconf and are few, but this protects against a flood of
+     * distinct, unconfigured UEIs.
+     */
+    static final int MAX_RESOLVED_UEIS = 10000;
+
+    private final List<T> m_matchAll;
+
+    private final Map<String, List<T>> m_ueiTargets;
+
+    private final ConcurrentHashMap<String, List<T>> m_resolved = new ConcurrentHashMap<String, List<T>>();
+
+    /**
+     * @param matchAll targets interested in all events
+     * @param ueiTargets targets keyed by the UEI or UEI prefix they are interested in
+     */
+    UeiDispatchTable(final List<T> matchAll, final Map<String, List<T>> ueiTargets) {
+        m_matchAll = Collections.unmodifiableList(new ArrayList<T>(new LinkedHashSet<T>(matchAll)));
+
+        final Map<String, List<T>> copy = new HashMap<String, List<T>>();
+        for (final Map.Entry<String, List<T>> entry : ueiTargets.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                copy.put(entry.getKey(), new ArrayList<T>(entry.getValue()));
+            }
+        }
+        m_ueiTargets = copy;
+    }
+
+    /**
+     * An empty table.
+     */
+    static <T> UeiDispatchTable<T> empty() {
+        return new UeiDispatchTable<T>(Collections.<T>emptyList(), Collections.<String, List<T>>emptyMap());
+    }
+
+    /**
+     * Returns the targets that should receive an event with the given UEI.
+     *
+     * @param uei the event UEI, may be null in which case only the match-all
+     *        targets are returned
+     * @return an unmodifiable, deduplicated list of targets
+     */
+    List<T> resolve(final String uei) {
+        if (uei == null) {
+            return m_matchAll;
+        }
+
+        List<T> targets = m_resolved.get(uei);
+        if (targets == null) {
+            targets = compute(uei);
+            if (m_resolved.size() < MAX_RESOLVED_UEIS) {
+                m_resolved.putIfAbsent(uei, targets);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * @return the targets interested in all events
+     */
+    List<T> getMatchAll() {
+        return m_matchAll;
+    }
+
+    private List<T> compute(final String eventUei) {
+        final Set<T> targets = new LinkedHashSet<T>(m_matchAll);
+
+        for (String uei = eventUei; uei.length() > 0; ) {
+            final List<T> ueiTargets = m_ueiTargets.get(uei);
+            if (ueiTargets != null) {
+                targets.addAll(ueiTargets);
+            }
+
+            // Try wild cards: Find / before last character
+            final int i = uei.lastIndexOf("/", uei.length() - 2);
+            if (i > 0) {
+                // Split at "/", including the /
+                uei = uei.substring(0, i + 1);
+            } else {
+                // No more wild cards to match
+                break;
+            }
+        }
+
+        if (targets.size() == m_matchAll.size()) {
+            return m_matchAll;
+        }
+        return Collections.unmodifiableList(new ArrayList<T>(targets));
+    }
+}
@@ -28,7 +28,13 @@
 
 package org.opennms.netmgt.eventd.jmx;
 
+import java.util.Map;
+
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.eventd.EventIpcManagerDefaultImpl;
+import org.opennms.netmgt.filter.FilterDao;
+import org.opennms.netmgt.filter.FilterRuleCache;
+import org.opennms.netmgt.filter.JdbcFilterDao;
 
 /**
  * <p>Eventd class.</p>
@@ -48,4 +54,68 @@ public class Eventd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
     protected String getSpringContext() {
         return "eventDaemonContext";       
     }
+
+    private EventIpcManagerDefaultImpl getEventIpcManager() {
+        return getContext().getBean("eventIpcManagerImpl", EventIpcManagerDefaultImpl.class);
+    }
+
+    /**
+     * @return the rule cache of the shared filter DAO, or an empty cache if
+     *         the DAO does not have one
+     */
+    private FilterRuleCache getFilterRuleCache() {
+        final FilterDao filterDao = getContext().getBean("filterDao", FilterDao.class);
+        if (filterDao instanceof JdbcFilterDao) {
+            return ((JdbcFilterDao) filterDao).getRuleCache();
+        }
+        return new FilterRuleCache(0, 0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Integer> getListenerQueueDepths() {
+        return getEventIpcManager().getListenerQueueDepths();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Long> getListenerEventsQueued() {
+        return getEventIpcManager().getListenerEventsQueued();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Long> getListenerEventsDropped() {
+        return getEventIpcManager().getListenerEventsDropped();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFilterRuleCacheHits() {
+        return getFilterRuleCache().getHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFilterRuleCacheMisses() {
+        return getFilterRuleCache().getMisses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFilterRuleCacheEvictions() {
+        return getFilterRuleCache().getEvictions();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFilterRuleCacheInvalidations() {
+        return getFilterRuleCache().getInvalidations();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getFilterRuleCacheSize() {
+        return getFilterRuleCache().getSize();
+    }
 }
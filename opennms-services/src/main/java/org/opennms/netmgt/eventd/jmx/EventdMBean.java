@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.eventd.jmx;
 
+import java.util.Map;
+
 import org.opennms.netmgt.daemon.BaseOnmsMBean;
 
 /**
@@ -37,4 +39,48 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface EventdMBean extends BaseOnmsMBean {
+    /**
+     * @return the number of events waiting to be delivered to each event
+     *         listener, keyed by listener name
+     */
+    public Map<String, Integer> getListenerQueueDepths();
+
+    /**
+     * @return the number of events queued to each event listener, keyed by
+     *         listener name
+     */
+    public Map<String, Long> getListenerEventsQueued();
+
+    /**
+     * @return the number of events discarded for each event listener because
+     *         its queue was full, keyed by listener name
+     */
+    public Map<String, Long> getListenerEventsDropped();
+
+    /**
+     * @return the number of filter rule checks answered from the rule cache
+     */
+    public long getFilterRuleCacheHits();
+
+    /**
+     * @return the number of filter rule checks that had to query the
+     *         database
+     */
+    public long getFilterRuleCacheMisses();
+
+    /**
+     * @return the number of cached filter rules removed because the cache
+     *         was full or they had expired
+     */
+    public long getFilterRuleCacheEvictions();
+
+    /**
+     * @return the number of times the whole filter rule cache was flushed
+     */
+    public long getFilterRuleCacheInvalidations();
+
+    /**
+     * @return the number of filter rules currently cached
+     */
+    public int getFilterRuleCacheSize();
 }
@@ -0,0 +1,504 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.utils.DBUtils;
+import org.opennms.netmgt.eventd.EventdConstants;
+import org.opennms.netmgt.model.events.EventProcessorException;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Group-commit variant of {@link JdbcEventWriter}.
+ *
+ * Instead of opening a connection and committing a transaction for every
+ * event, events handed to {@link #process(Header, Event)} are queued for a
+ * single writer thread which inserts them with one JDBC batch in a single
+ * transaction.  The writer flushes as soon as the queue is drained and no
+ * other caller is still on its way to the queue, so a batch is written
+ * without delay when every event handler thread is already waiting on it.
+ * Only while more events are known to be on their way does it wait for
+ * them, for at most <code>batchDelay</code> milliseconds or until
+ * <code>batchSize</code> events have been gathered.  Events that arrive
+ * while a batch is being written simply form the next batch.
+ *
+ * The event host and service ID lookups are done by the calling threads
+ * before the event is queued, so the writer thread only binds and inserts.
+ *
+ * Event IDs are assigned in {@link #process(Header, Event)} from a block of
+ * pre-fetched sequence values (the default query uses the PostgreSQL
+ * <code>generate_series</code> function), and the calling thread does not return until
+ * the transaction containing its event has been committed.  Later processors
+ * (most importantly the IPC broadcast) therefore still see a persisted event
+ * with a valid database ID, exactly as with {@link JdbcEventWriter}.
+ *
+ * If a batch fails, it is rolled back and every event in it is retried in a
+ * transaction of its own so that one bad event does not fail its neighbours.
+ * If the writer thread is interrupted, the events it has not written yet
+ * fail and later events are written by the calling threads.
+ *
+ * @see JdbcEventWriter
+ */
+public class BatchingJdbcEventWriter extends JdbcEventWriter implements DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingJdbcEventWriter.class);
+
+    /**
+     * Constant <code>DEFAULT_GET_NEXT_ID_BLOCK_STRING="SELECT nextval('eventsNxtId') FROM generate_series(1, ?)"</code>.
+     * This relies on the PostgreSQL <code>generate_series</code> function.
+     */
+    public static final String DEFAULT_GET_NEXT_ID_BLOCK_STRING = "SELECT nextval('eventsNxtId') FROM generate_series(1, ?)";
+
+    private int m_batchSize = 100;
+
+    private long m_batchDelay = 10;
+
+    private int m_idBlockSize = 100;
+
+    private String m_getNextIdBlockString = DEFAULT_GET_NEXT_ID_BLOCK_STRING;
+
+    private final BlockingQueue<PendingEvent> m_pendingEvents = new LinkedBlockingQueue<PendingEvent>();
+
+    private final LinkedList<Integer> m_idBlock = new LinkedList<Integer>();
+
+    /**
+     * The number of callers in {@link #process(Header, Event)} that have not
+     * queued their event yet.
+     */
+    private final AtomicInteger m_preparingEvents = new AtomicInteger();
+
+    private final AtomicLong m_eventsWritten = new AtomicLong();
+
+    private final AtomicLong m_batchesCommitted = new AtomicLong();
+
+    private final AtomicLong m_batchesFailed = new AtomicLong();
+
+    private volatile boolean m_running = false;
+
+    /**
+     * Set once the writer thread will not take any more events.
+     */
+    private volatile boolean m_writerStopped = false;
+
+    private Thread m_writerThread;
+
+    /**
+     * An event waiting for the writer thread to commit it.
+     */
+    private static class PendingEvent {
+        private final Header m_header;
+        private final Event m_event;
+        private final String m_hostname;
+        private final int m_serviceId;
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private volatile Throwable m_failure;
+
+        PendingEvent(final Header header, final Event event, final String hostname, final int serviceId) {
+            m_header = header;
+            m_event = event;
+            m_hostname = hostname;
+            m_serviceId = serviceId;
+        }
+
+        void complete(final Throwable failure) {
+            m_failure = failure;
+            m_done.countDown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Queues the event for the next group commit and waits until it has
+     * been written.
+     */
+    @Override
+    public void process(final Header eventHeader, final Event event) throws EventProcessorException {
+        if (!m_running) {
+            super.process(eventHeader, event);
+            return;
+        }
+
+        if (!checkEventSanityAndDoWeProcess(event, "BatchingJdbcEventWriter")) {
+            return;
+        }
+
+        final int eventID;
+        final PendingEvent pending;
+        m_preparingEvents.incrementAndGet();
+        try {
+            try {
+                eventID = getNextId();
+            } catch (final SQLException e) {
+                throw new EventProcessorException(e);
+            } catch (final DataAccessException e) {
+                throw new EventProcessorException(e);
+            }
+
+            synchronized (event) {
+                event.setDbid(eventID);
+            }
+
+            LOG.debug("BatchingJdbcEventWriter: queueing {} dbid: {}", event.getUei(), eventID);
+
+            pending = new PendingEvent(eventHeader, event, getEventHost(event), getEventServiceId(event));
+            m_pendingEvents.add(pending);
+
+            // the writer may have stopped after the m_running check above
+            if (m_writerStopped && m_pendingEvents.remove(pending)) {
+                pending.complete(new IllegalStateException("Event writer thread stopped before event " + eventID + " was written"));
+            }
+        } finally {
+            m_preparingEvents.decrementAndGet();
+        }
+
+        try {
+            pending.m_done.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for event " + eventID + " to be written", e);
+        }
+
+        if (pending.m_failure != null) {
+            throw new EventProcessorException(pending.m_failure);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Hands out IDs from a block of sequence values fetched with
+     * <code>getNextIdBlockString</code>, refilling it when it runs dry.
+     */
+    @Override
+    protected int getNextId() throws SQLException {
+        synchronized (m_idBlock) {
+            if (m_idBlock.isEmpty()) {
+                final List<Integer> ids = new JdbcTemplate(getDataSource()).queryForList(m_getNextIdBlockString, Integer.class, m_idBlockSize);
+                if (ids.isEmpty()) {
+                    throw new SQLException("Query '" + m_getNextIdBlockString + "' returned no event IDs");
+                }
+                m_idBlock.addAll(ids);
+            }
+            return m_idBlock.removeFirst();
+        }
+    }
+
+    private void runWriter() {
+        final List<PendingEvent> batch = new ArrayList<PendingEvent>(m_batchSize);
+
+        while (m_running || !m_pendingEvents.isEmpty()) {
+            try {
+                final PendingEvent first = m_pendingEvents.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                m_pendingEvents.drainTo(batch, m_batchSize - batch.size());
+
+                // only wait while other callers are still on their way to the queue
+                final long deadline = System.currentTimeMillis() + m_batchDelay;
+                while (batch.size() < m_batchSize && m_preparingEvents.get() > 0) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    final PendingEvent next = m_pendingEvents.poll(Math.min(remaining, 1), TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                        m_pendingEvents.drainTo(batch, m_batchSize - batch.size());
+                    }
+                }
+
+                writeBatch(batch);
+            } catch (final InterruptedException e) {
+                LOG.warn("Event writer thread interrupted, failing {} queued events.", batch.size() + m_pendingEvents.size());
+                for (final PendingEvent pending : batch) {
+                    pending.complete(e);
+                }
+                break;
+            } catch (final Throwable t) {
+                LOG.error("Unexpected error in event writer thread.", t);
+                for (final PendingEvent pending : batch) {
+                    pending.complete(t);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // callers that are still waiting would otherwise never return
+        m_running = false;
+        m_writerStopped = true;
+        final List<PendingEvent> abandoned = new ArrayList<PendingEvent>();
+        m_pendingEvents.drainTo(abandoned);
+        for (final PendingEvent pending : abandoned) {
+            pending.complete(new IllegalStateException("Event writer thread stopped before the event was written"));
+        }
+    }
+
+    /**
+     * Writes a group of events in one transaction.  On failure the group is
+     * split up and every event is retried on its own.
+     */
+    private void writeBatch(final List<PendingEvent> batch) {
+        try {
+            insertBatch(batch);
+            m_batchesCommitted.incrementAndGet();
+            m_eventsWritten.addAndGet(batch.size());
+            for (final PendingEvent pending : batch) {
+                pending.complete(null);
+            }
+            LOG.debug("Committed batch of {} events.", batch.size());
+        } catch (final Throwable t) {
+            m_batchesFailed.incrementAndGet();
+            if (batch.size() == 1) {
+                LOG.warn("Error inserting event into the datastore.", t);
+                batch.get(0).complete(t);
+                return;
+            }
+
+            LOG.warn("Error inserting batch of {} events into the datastore, retrying individually.", batch.size(), t);
+            for (final PendingEvent pending : batch) {
+                writeBatch(Collections.singletonList(pending));
+            }
+        }
+    }
+
+    private void insertBatch(final List<PendingEvent> batch) throws SQLException {
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection connection = getDataSource().getConnection();
+            d.watch(connection);
+            connection.setAutoCommit(false);
+
+            try {
+                final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
+                d.watch(insStmt);
+
+                for (final PendingEvent pending : batch) {
+                    bindEvent(insStmt, pending.m_header, pending.m_event, pending.m_event.getDbid(), pending.m_hostname, pending.m_serviceId);
+                    insStmt.addBatch();
+                }
+
+                insStmt.executeBatch();
+                connection.commit();
+            } catch (final SQLException e) {
+                rollback(connection);
+                throw e;
+            } catch (final RuntimeException e) {
+                rollback(connection);
+                throw e;
+            }
+        } finally {
+            d.cleanUp();
+        }
+    }
+
+    private static void rollback(final Connection connection) {
+        try {
+            connection.rollback();
+        } catch (final Throwable e) {
+            LOG.warn("Rollback of transaction failed.", e);
+        }
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * @throws java.sql.SQLException if any.
+     */
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        super.afterPropertiesSet();
+        Assert.state(m_batchSize > 0, "property batchSize must be greater than zero");
+        Assert.state(m_batchDelay >= 0, "property batchDelay must not be negative");
+        Assert.state(m_idBlockSize > 0, "property idBlockSize must be greater than zero");
+        Assert.state(m_getNextIdBlockString != null, "property getNextIdBlockString must be set");
+
+        m_running = true;
+        m_writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "BatchingJdbcEventWriter");
+        m_writerThread.setDaemon(true);
+        m_writerThread.start();
+    }
+
+    /**
+     * Stops the writer thread after flushing any queued events.
+     *
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void destroy() throws Exception {
+        m_running = false;
+        if (m_writerThread != null) {
+            m_writerThread.join();
+            m_writerThread = null;
+        }
+    }
+
+    Thread getWriterThread() {
+        return m_writerThread;
+    }
+
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return the maximum number of events committed in one transaction
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize the maximum number of events committed in one transaction
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>getBatchDelay</p>
+     *
+     * @return the maximum time in milliseconds to wait for callers that are
+     *         still preparing their events
+     */
+    public long getBatchDelay() {
+        return m_batchDelay;
+    }
+
+    /**
+     * <p>setBatchDelay</p>
+     *
+     * @param batchDelay the maximum time in milliseconds to wait for callers
+     *        that are still preparing their events
+     */
+    public void setBatchDelay(final long batchDelay) {
+        m_batchDelay = batchDelay;
+    }
+
+    /**
+     * <p>getIdBlockSize</p>
+     *
+     * @return the number of event IDs fetched from the sequence at once
+     */
+    public int getIdBlockSize() {
+        return m_idBlockSize;
+    }
+
+    /**
+     * <p>setIdBlockSize</p>
+     *
+     * @param idBlockSize the number of event IDs fetched from the sequence at once
+     */
+    public void setIdBlockSize(final int idBlockSize) {
+        m_idBlockSize = idBlockSize;
+    }
+
+    /**
+     * <p>getGetNextIdBlockString</p>
+     *
+     * @return the query used to fetch a block of event IDs
+     */
+    public String getGetNextIdBlockString() {
+        return m_getNextIdBlockString;
+    }
+
+    /**
+     * <p>setGetNextIdBlockString</p>
+     *
+     * @param getNextIdBlockString a query returning one event ID per row that
+     *        takes the block size as its only parameter; the default uses the
+     *        PostgreSQL <code>generate_series</code> function
+     */
+    public void setGetNextIdBlockString(final String getNextIdBlockString) {
+        m_getNextIdBlockString = getNextIdBlockString;
+    }
+
+    /**
+     * <p>getEventsWritten</p>
+     *
+     * @return the number of events committed by the writer thread
+     */
+    public long getEventsWritten() {
+        return m_eventsWritten.get();
+    }
+
+    /**
+     * <p>getBatchesCommitted</p>
+     *
+     * @return the number of transactions committed by the writer thread
+     */
+    public long getBatchesCommitted() {
+        return m_batchesCommitted.get();
+    }
+
+    /**
+     * <p>getBatchesFailed</p>
+     *
+     * @return the number of transactions that had to be rolled back
+     */
+    public long getBatchesFailed() {
+        return m_batchesFailed.get();
+    }
+
+    /**
+     * <p>getPendingEventCount</p>
+     *
+     * @return the number of events waiting for the writer thread
+     */
+    public int getPendingEventCount() {
+        return m_pendingEvents.size();
+    }
+}
@@ -64,10 +64,19 @@ public final class DiscoveryLink implements ReadyRunnable {
     
     private List<NodeToNodeLink> m_links = new ArrayList<NodeToNodeLink>();
 
+    private Set<NodeToNodeLink> m_linkSet = new HashSet<NodeToNodeLink>();
+
     private Map<Integer, LinkableNode> m_bridgeNodes = new HashMap<Integer, LinkableNode>();
 
     private List<LinkableNode> m_routerNodes = new ArrayList<LinkableNode>();
 
+    private Set<Integer> m_routerNodeIds = new HashSet<Integer>();
+
+    /**
+     * Bridge nodes by bridge identifier (MAC address)
+     */
+    private Map<String, LinkableNode> m_bridgeIdentifiers = new HashMap<String, LinkableNode>();
+
     private List<LinkableNode> m_lldpNodes = new ArrayList<LinkableNode>();
 
     private List<LinkableNode> m_ospfNodes = new ArrayList<LinkableNode>();
@@ -79,10 +88,10 @@ public final class DiscoveryLink implements ReadyRunnable {
     private List<LinkableNode> m_wifiNodes = new ArrayList<LinkableNode>();
 
     // this is the list of MAC address just parsed by discovery process
-    private List<String> m_macsParsed = new ArrayList<String>();
+    private Set<String> m_macsParsed = new HashSet<String>();
 
     // this is the list of MAC address excluded by discovery process
-    private List<String> macsExcluded = new ArrayList<String>();
+    private Set<String> macsExcluded = new HashSet<String>();
 
     private boolean discoveryUsingRoutes = true;
 
@@ -227,6 +236,7 @@ public final class DiscoveryLink implements ReadyRunnable {
             if (discoveryUsingRoutes && linkableNode.hasRouteInterfaces()) {
                 LOG.debug("run: adding to router node list: node with nodeid/#iprouteinterface {}/#{}", linkableNode.getNodeId(),linkableNode.getRouteInterfaces().size());
                 m_routerNodes.add(linkableNode);
+                m_routerNodeIds.add(linkableNode.getNodeId());
             }
             if (discoveryUsingWifi && !linkableNode.getWifiMacIfIndexMap().isEmpty()) {
                 LOG.debug("run: adding to wifi node list: node with nodeid/#wificonnection {}/#{}", linkableNode.getNodeId(),linkableNode.getWifiMacIfIndexMap().size());
@@ -234,6 +244,15 @@ public final class DiscoveryLink implements ReadyRunnable {
             }
         }
 
+        // first bridge in m_bridgeNodes order wins, as in a linear search
+        for (final LinkableNode bridgeNode : m_bridgeNodes.values()) {
+            for (final String bridgeIdentifier : bridgeNode.getBridgeIdentifiers()) {
+                if (!m_bridgeIdentifiers.containsKey(bridgeIdentifier)) {
+                    m_bridgeIdentifiers.put(bridgeIdentifier, bridgeNode);
+                }
+            }
+        }
+
         // This will found all mac address on
         // current package and their association
         // with ip addresses.
@@ -263,7 +282,9 @@ public final class DiscoveryLink implements ReadyRunnable {
         getLinksFromCdp();
 
         m_bridgeNodes.clear();
+        m_bridgeIdentifiers.clear();
         m_routerNodes.clear();
+        m_routerNodeIds.clear();
         m_cdpNodes.clear();
         m_macsParsed.clear();
         macsExcluded.clear();
@@ -277,6 +298,7 @@ public final class DiscoveryLink implements ReadyRunnable {
         m_linkd.updateDiscoveryLinkCollection(this);
 
         m_links.clear();
+        m_linkSet.clear();
         runned = true;
     }
 
@@ -626,6 +648,18 @@ public final class DiscoveryLink implements ReadyRunnable {
 
         LOG.info("getLinksFromCdp: found # {} nodes using Cisco Discovery Protocol", m_cdpNodes.size());
 
+        // the interfaces of each node, by the device ID they point at
+        final Map<LinkableNode, Map<String, List<CdpInterface>>> cdpIfacesByTarget = new HashMap<LinkableNode, Map<String, List<CdpInterface>>>();
+        for (LinkableNode linknode: m_cdpNodes.values()) {
+            final Map<String, List<CdpInterface>> ifaces = new HashMap<String, List<CdpInterface>>();
+            for (CdpInterface cdpiface: linknode.getCdpInterfaces()) {
+                if (cdpiface != null && cdpiface.getCdpTargetDeviceId() != null) {
+                    getListFromMap(ifaces, cdpiface.getCdpTargetDeviceId()).add(cdpiface);
+                }
+            }
+            cdpIfacesByTarget.put(linknode, ifaces);
+        }
+
         LOG.info("getLinksFromCdp: founding Cisco Discovery Protocol links between Cdp nodes");
         for (LinkableNode linknode1: m_cdpNodes.values()) {
             LOG.info("getLinksFromCdp: parsing cdp device {} with cdpDeviceId {} using Cisco Discovery Protocol",linknode1.getNodeId(), linknode1.getCdpDeviceId());
@@ -645,23 +679,21 @@ public final class DiscoveryLink implements ReadyRunnable {
                         continue;
                     LOG.info("getLinksFromCdp: found node {} for cdpTargetDeviceId {} ", linknode2.getNodeId(), cdpiface1.getCdpTargetDeviceId());
                     
-                    for (CdpInterface cdpiface2: linknode2.getCdpInterfaces()) {
-                        if (cdpiface2 == null) {
-                            LOG.warn("getLinksFromCdp: cdp interface null found on target device node {} for cdpTargetDeviceId {} ", linknode2.getNodeId(), cdpiface1.getCdpTargetDeviceId());
-                            continue;
-                        }
+                    final Map<String, List<CdpInterface>> targetIfaces = cdpIfacesByTarget.get(linknode2);
+                    final List<CdpInterface> backIfaces = targetIfaces == null ? null : targetIfaces.get(linknode1.getCdpDeviceId());
+                    if (backIfaces == null) {
+                        continue;
+                    }
+                    for (CdpInterface cdpiface2: backIfaces) {
                         LOG.info("getLinksFromCdp: parsing target cdpInterface {} ", cdpiface2);
-                        if ( cdpiface2.getCdpTargetDeviceId() != null 
-                                && cdpiface2.getCdpTargetDeviceId().equals(linknode1.getCdpDeviceId())) {
-                                if(    (cdpiface1.getCdpIfName() != null && cdpiface1.getCdpIfName().equals(cdpiface2.getCdpTargetIfName()))
-                                    || (cdpiface2.getCdpIfName() != null && cdpiface2.getCdpIfName().equals(cdpiface1.getCdpTargetIfName()))
-                                    ) {
-                            
-                                    NodeToNodeLink cdpLink = new NodeToNodeLink(linknode2.getNodeId(), cdpiface2.getCdpIfIndex(),DiscoveryProtocol.cdp);
-                                    cdpLink.setNodeparentid(linknode1.getNodeId());
-                                    cdpLink.setParentifindex(cdpiface1.getCdpIfIndex());
-                                    addNodetoNodeLink(cdpLink);
-                                }
+                        if(    (cdpiface1.getCdpIfName() != null && cdpiface1.getCdpIfName().equals(cdpiface2.getCdpTargetIfName()))
+                            || (cdpiface2.getCdpIfName() != null && cdpiface2.getCdpIfName().equals(cdpiface1.getCdpTargetIfName()))
+                            ) {
+                    
+                            NodeToNodeLink cdpLink = new NodeToNodeLink(linknode2.getNodeId(), cdpiface2.getCdpIfIndex(),DiscoveryProtocol.cdp);
+                            cdpLink.setNodeparentid(linknode1.getNodeId());
+                            cdpLink.setParentifindex(cdpiface1.getCdpIfIndex());
+                            addNodetoNodeLink(cdpLink);
                         }
                     }
                 } else if (cdpiface1.getCdpTargetNodeId() != null) {
@@ -681,42 +713,55 @@ public final class DiscoveryLink implements ReadyRunnable {
     // If node1 has a isis IS adj entry for node2
     // then node2 mast have an ospf nbr entry for node1
     // the parent node is that with nodeid1 < nodeid2
+    //
+    // The nodes are indexed by IS-IS system ID and their adjacencies by
+    // neighbor system ID, so each adjacency is only compared with the
+    // adjacencies that point back at its own node.
     private void getLinksFromIsis() {
         LOG.info("getLinksFromIsis: adding links using ISO IS-IS Routing Protocol");
-        int i = 0;
-        for (LinkableNode linknode1 : m_isisNodes) {
-            for (LinkableNode linknode2 : m_isisNodes) {
-                if (linknode1.getNodeId() >= linknode2.getNodeId())
-                    continue;
-                for (NodeToNodeLink isisLink : getIsisLink(linknode1,
-                                                           linknode2)) {
-                    addNodetoNodeLink(isisLink);
-                    i++;
+        final Map<String, List<LinkableNode>> nodesBySysId = new HashMap<String, List<LinkableNode>>();
+        final Map<LinkableNode, Map<String, List<IsisISAdjInterface>>> adjsByNeighSysId = new HashMap<LinkableNode, Map<String, List<IsisISAdjInterface>>>();
+        for (final LinkableNode linknode : m_isisNodes) {
+            getListFromMap(nodesBySysId, linknode.getIsisSysId()).add(linknode);
+            final Map<String, List<IsisISAdjInterface>> adjs = new HashMap<String, List<IsisISAdjInterface>>();
+            for (final IsisISAdjInterface isis : linknode.getIsisInterfaces()) {
+                if (isis.getIsisISAdjNeighSysId() != null) {
+                    getListFromMap(adjs, isis.getIsisISAdjNeighSysId()).add(isis);
                 }
             }
+            adjsByNeighSysId.put(linknode, adjs);
         }
-        LOG.info("getLinksFromIsis: done IS-IS. Found links # {}.", i);
-    }
 
-    private List<NodeToNodeLink> getIsisLink(LinkableNode linknode1,
-                                             LinkableNode linknode2) {
-        
-        LOG.info("getIsisLink: finding IS-IS links between node with id {} and node with id {}.", linknode1.getNodeId(), linknode2.getNodeId());
-        List<NodeToNodeLink> links = new ArrayList<NodeToNodeLink>();
-        for (IsisISAdjInterface isis1: linknode1.getIsisInterfaces()) {
-            for (IsisISAdjInterface isis2: linknode2.getIsisInterfaces()) {
-                LOG.debug("getIsisLink: first IS-IS element: isisSysId {} isisISAdj {}.", linknode1.getIsisSysId(), isis1);
-                LOG.debug("getIsisLink: second IS-IS element: isisSysId {} isisISAdj {}.", linknode2.getIsisSysId(), isis2);
-                if (isis1.getIsisISAdjNeighSysId().equals(linknode2.getIsisSysId()) && isis2.getIsisISAdjNeighSysId().equals(linknode1.getIsisSysId())
-                        && isis1.getIsisISAdjIndex().intValue() == isis2.getIsisISAdjIndex().intValue()) {
-                    NodeToNodeLink link = new NodeToNodeLink(linknode1.getNodeId(), isis1.getIsisLocalIfIndex(),DiscoveryProtocol.isis);
-                    link.setNodeparentid(linknode2.getNodeId());
-                    link.setParentifindex(isis2.getIsisLocalIfIndex());
-                    links.add(link);
+        int i = 0;
+        for (final LinkableNode linknode1 : m_isisNodes) {
+            for (final Entry<String, List<IsisISAdjInterface>> entry : adjsByNeighSysId.get(linknode1).entrySet()) {
+                final List<LinkableNode> neighbors = nodesBySysId.get(entry.getKey());
+                if (neighbors == null) {
+                    continue;
+                }
+                for (final LinkableNode linknode2 : neighbors) {
+                    if (linknode1.getNodeId() >= linknode2.getNodeId())
+                        continue;
+                    final List<IsisISAdjInterface> backAdjs = adjsByNeighSysId.get(linknode2).get(linknode1.getIsisSysId());
+                    if (backAdjs == null) {
+                        continue;
+                    }
+                    LOG.info("getLinksFromIsis: finding IS-IS links between node with id {} and node with id {}.", linknode1.getNodeId(), linknode2.getNodeId());
+                    for (final IsisISAdjInterface isis1 : entry.getValue()) {
+                        for (final IsisISAdjInterface isis2 : backAdjs) {
+                            if (isis1.getIsisISAdjIndex().intValue() == isis2.getIsisISAdjIndex().intValue()) {
+                                NodeToNodeLink link = new NodeToNodeLink(linknode1.getNodeId(), isis1.getIsisLocalIfIndex(),DiscoveryProtocol.isis);
+                                link.setNodeparentid(linknode2.getNodeId());
+                                link.setParentifindex(isis2.getIsisLocalIfIndex());
+                                addNodetoNodeLink(link);
+                                i++;
+                            }
+                        }
+                    }
                 }
             }
         }
-        return links;
+        LOG.info("getLinksFromIsis: done IS-IS. Found links # {}.", i);
     }
 
     // We use a simple algoritm
@@ -724,44 +769,62 @@ public final class DiscoveryLink implements ReadyRunnable {
     // If node1 has a ospf nbr entry for node2
     // then node2 mast have an ospf nbr entry for node1
     // the parent node is that with nodeid1 < nodeid2
+    //
+    // The neighbor entries of each node are indexed by the neighbor's node
+    // ID, so each entry is only compared with the entries that point back
+    // at its own node.
     private void getLinksFromOspf() {
         LOG.info("getLinksFromOspf: adding links using Open Short Path First Protocol");
+        final Map<Integer, LinkableNode> nodesById = new HashMap<Integer, LinkableNode>();
+        final Map<Integer, Map<Integer, List<OspfNbrInterface>>> nbrsByNodeId = new HashMap<Integer, Map<Integer, List<OspfNbrInterface>>>();
+        for (final LinkableNode linknode : m_ospfNodes) {
+            nodesById.put(linknode.getNodeId(), linknode);
+            final Map<Integer, List<OspfNbrInterface>> nbrs = new HashMap<Integer, List<OspfNbrInterface>>();
+            for (final OspfNbrInterface ospf : linknode.getOspfinterfaces()) {
+                getListFromMap(nbrs, ospf.getOspfNbrNodeId()).add(ospf);
+            }
+            nbrsByNodeId.put(linknode.getNodeId(), nbrs);
+        }
+
         int i = 0;
-        for (LinkableNode linknode1 : m_ospfNodes) {
-            for (LinkableNode linknode2 : m_ospfNodes) {
-                if (linknode1.getNodeId() >= linknode2.getNodeId())
+        for (final LinkableNode linknode1 : m_ospfNodes) {
+            for (final Entry<Integer, List<OspfNbrInterface>> entry : nbrsByNodeId.get(linknode1.getNodeId()).entrySet()) {
+                final LinkableNode linknode2 = nodesById.get(entry.getKey());
+                if (linknode2 == null || linknode1.getNodeId() >= linknode2.getNodeId())
+                    continue;
+                final List<OspfNbrInterface> backNbrs = nbrsByNodeId.get(linknode2.getNodeId()).get(linknode1.getNodeId());
+                if (backNbrs == null) {
                     continue;
-                for (NodeToNodeLink ospfLink : getOspfLink(linknode1,
-                                                           linknode2)) {
-                    addNodetoNodeLink(ospfLink);
-                    i++;
+                }
+                LOG.info("getLinksFromOspf: finding OSPF links between node with id {} and node with id {}.", linknode1.getNodeId(), linknode2.getNodeId());
+                for (final OspfNbrInterface ospf : entry.getValue()) {
+                    if (!ospf.getOspfNbrRouterId().equals(linknode2.getOspfRouterId()))
+                        continue;
+                    for (final OspfNbrInterface ospf2 : backNbrs) {
+                        if (ospf2.getOspfNbrRouterId().equals(linknode1.getOspfRouterId())
+                                && getSubnetAddress(ospf).equals(getSubnetAddress(ospf2))) {
+                            NodeToNodeLink link = new NodeToNodeLink(ospf.getOspfNbrNodeId(), ospf.getOspfNbrIfIndex(),DiscoveryProtocol.ospf);
+                            link.setNodeparentid(ospf2.getOspfNbrNodeId());
+                            link.setParentifindex(ospf2.getOspfNbrIfIndex());
+                            addNodetoNodeLink(link);
+                            i++;
+                        }
+                    }
                 }
             }
         }
         LOG.info("getLinksFromOspf: done OSPF. Found links # {}.", i);
     }
 
-    private List<NodeToNodeLink> getOspfLink(LinkableNode linknode1,
-                                             LinkableNode linknode2) {
-        LOG.info("getLinksFromOspf: finding OSPF links between node with id {} and node with id {}.", linknode1.getNodeId(), linknode2.getNodeId());
-        List<NodeToNodeLink> links = new ArrayList<NodeToNodeLink>();
-        for (OspfNbrInterface ospf: linknode1.getOspfinterfaces()) {
-            for (OspfNbrInterface ospf2: linknode2.getOspfinterfaces()) {
-                if (ospf.getOspfNbrRouterId().equals(linknode2.getOspfRouterId()) && ospf.getOspfNbrNodeId() == linknode2.getNodeId() 
-                        && ospf2.getOspfNbrRouterId().equals(linknode1.getOspfRouterId()) && ospf2.getOspfNbrNodeId() == linknode1.getNodeId()) {
-                    if (getSubnetAddress(ospf).equals(getSubnetAddress(ospf2))) {
-                        NodeToNodeLink link = new NodeToNodeLink(ospf.getOspfNbrNodeId(), ospf.getOspfNbrIfIndex(),DiscoveryProtocol.ospf);
-                        link.setNodeparentid(ospf2.getOspfNbrNodeId());
-                        link.setParentifindex(ospf2.getOspfNbrIfIndex());
-                        links.add(link);
-                    }
-                }                
-            }
+    private static <K, V> List<V> getListFromMap(final Map<K, List<V>> map, final K key) {
+        List<V> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<V>();
+            map.put(key, list);
         }
-        return links;
+        return list;
     }
 
-
     protected InetAddress getSubnetAddress(OspfNbrInterface ospfinterface) {
         byte[] ip = ospfinterface.getOspfNbrIpAddr().getAddress();
         byte[] nm = ospfinterface.getOspfNbrNetMask().getAddress();
@@ -805,11 +868,7 @@ public final class DiscoveryLink implements ReadyRunnable {
      * @return LinkableSnmpNode or null if not found
      */
     boolean isBridgeNode(int nodeid) {
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (nodeid == curNode.getNodeId())
-                return true;
-        }
-        return false;
+        return m_bridgeNodes.containsKey(Integer.valueOf(nodeid));
     }
 
     /**
@@ -817,11 +876,7 @@ public final class DiscoveryLink implements ReadyRunnable {
      * @return true if found
      */
     boolean isRouterNode(int nodeid) {
-        for (final LinkableNode curNode : m_routerNodes) {
-            if (nodeid == curNode.getNodeId())
-                return true;
-        }
-        return false;
+        return m_routerNodeIds.contains(Integer.valueOf(nodeid));
     }
 
     private boolean isNearestBridgeLink(LinkableNode bridge1, int bp1,
@@ -889,20 +944,12 @@ public final class DiscoveryLink implements ReadyRunnable {
     }
 
     private boolean isMacIdentifierOfBridgeNode(String macAddress) {
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (curNode.isBridgeIdentifier(macAddress))
-                return true;
-        }
-        return false;
+        return m_bridgeIdentifiers.containsKey(macAddress);
     }
 
     private LinkableNode getNodeFromMacIdentifierOfBridgeNode(
             final String macAddress) {
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (curNode.isBridgeIdentifier(macAddress))
-                return curNode;
-        }
-        return null;
+        return m_bridgeIdentifiers.get(macAddress);
     }
 
     private List<LinkableNode> getBridgesFromMacs(final Set<String> macs) {
@@ -1127,11 +1174,9 @@ public final class DiscoveryLink implements ReadyRunnable {
             LOG.warn("addNodetoNodeLink: node link is null.");
             return;
         }
-        for (NodeToNodeLink curNnLink : m_links) {
-            if (curNnLink.equals(nnlink)) {
-                LOG.info("addNodetoNodeLink: link {} exists, not adding", nnlink.toString());
-                return;
-            }
+        if (m_linkSet.contains(nnlink)) {
+            LOG.info("addNodetoNodeLink: link {} exists, not adding", nnlink.toString());
+            return;
         }
         if (nnlink.getNodeId() == nnlink.getNodeparentid()) {
             LOG.info("addNodetoNodeLink: link {} is on the same node, not adding", nnlink.toString());
@@ -1139,6 +1184,7 @@ public final class DiscoveryLink implements ReadyRunnable {
         }
         LOG.debug("addNodetoNodeLink: adding link {}", nnlink.toString());
         m_links.add(nnlink);
+        m_linkSet.add(nnlink);
     }
 
     private void addLinks(Set<String> macs, int nodeid, int ifindex, DiscoveryProtocol proto) {
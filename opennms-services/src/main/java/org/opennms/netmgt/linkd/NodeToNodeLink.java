@@ -125,11 +125,12 @@ public class NodeToNodeLink {
 	/** {@inheritDoc} */
 	@Override
 	public int hashCode() {
+	    // equals() treats a link and its reverse as the same link, so both
+	    // ends must contribute to the hash in the same way
+	    final int end = new HashCodeBuilder(17, 57).append(m_nodeId).append(m_ifIndex).toHashCode();
+	    final int parentEnd = new HashCodeBuilder(17, 57).append(m_nodeParentId).append(m_parentIfIndex).toHashCode();
 	    return new HashCodeBuilder(17, 57)
-	        .append(m_nodeId)
-	        .append(m_ifIndex)
-	        .append(m_nodeParentId)
-	        .append(m_parentIfIndex)
+	        .append(end + parentEnd)
                 .append(m_protocol)
 	        .toHashCode();
 	}
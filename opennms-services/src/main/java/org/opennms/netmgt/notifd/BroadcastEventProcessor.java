@@ -284,6 +284,7 @@ public final class BroadcastEventProcessor implements EventListener {
                         LOG.debug("Acknowledging event {} {}:{}:{}", curAck.getAcknowledge(), event.getNodeid(), event.getInterface(), event.getService());
                         
                         Collection<Integer> notifIDs = getNotificationManager().acknowledgeNotice(event, curAck.getAcknowledge(), curAck.getMatch());
+                        cancelQueuedTasks(notifIDs);
                         try {
                             // only send resolution notifications if notifications are globally turned on
                             if (curAck.getNotify() && notifsOn) {
@@ -303,6 +304,27 @@ public final class BroadcastEventProcessor implements EventListener {
         }
     }
 
+    /**
+     * Removes the tasks of acknowledged notices that have not been sent yet
+     * from the notice queues.  The tasks would not send anything once they
+     * see that the notice has been acknowledged, so this only saves starting
+     * them.
+     */
+    private void cancelQueuedTasks(Collection<Integer> notifIDs) {
+        if (m_noticeQueues == null || notifIDs.isEmpty()) {
+            return;
+        }
+        int cancelled = 0;
+        synchronized (m_noticeQueues) {
+            for (NoticeQueue noticeQueue : m_noticeQueues.values()) {
+                for (int notifId : notifIDs) {
+                    cancelled += noticeQueue.cancel(notifId);
+                }
+            }
+        }
+        LOG.debug("Cancelled {} queued notification tasks for {} acknowledged notices", cancelled, notifIDs.size());
+    }
+
     private void sendResolvedNotifications(Collection<Integer> notifIDs, Event event, String acknowledge, 
             String[] match, String resolutionPrefix, boolean skipNumericPrefix) throws Exception {
         for (int notifId : notifIDs) {
@@ -385,9 +407,7 @@ public final class BroadcastEventProcessor implements EventListener {
             NotificationTask newTask = makeEmailTask(now, params, noticeId, targetName, commands, null, null);
 
             if (newTask != null) {
-                synchronized (noticeQueue) {
-                    noticeQueue.putItem(now, newTask);
-                }
+                noticeQueue.putItem(now, newTask);
             }
         } else {
             LOG.warn("Unrecognized target '{}' contained in destinationPaths.xml. Please check the configuration.", targetName);
@@ -753,9 +773,7 @@ public final class BroadcastEventProcessor implements EventListener {
                 for (int index = 0; index < tasks.length; index++) {
                     NotificationTask task = tasks[index];
                     if (task != null) {
-                        synchronized(noticeQueue) {
-                            noticeQueue.putItem(task.getSendTime(), task);
-                        }
+                        noticeQueue.putItem(task.getSendTime(), task);
                         targetSiblings.add(task);
                     }
                 }
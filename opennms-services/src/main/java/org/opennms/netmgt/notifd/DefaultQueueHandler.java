@@ -28,8 +28,7 @@
 
 package org.opennms.netmgt.notifd;
 
-import java.util.List;
-import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,7 +37,7 @@ import org.opennms.core.utils.TimeConverter;
 /**
  * This class is used as a thread for executing notices for events that are
  * discovered by the notice daemon. The notices are read from an scheduler queue
- * and the processes are created by the fiber. Each created process is added to
+ * as soon as they are due and the processes are created by the fiber. Each created process is added to
  * garbage collection list that is periodically polled and culled based upon the
  * status of the process or how long the process is run. If the process has run
  * long than allocated it is terminated during collection.
@@ -51,7 +50,7 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
     /**
      * The input queue of runnable commands.
      */
-    private NoticeQueue m_noticeQueue;
+    private volatile NoticeQueue m_noticeQueue;
 
     /**
      * The name of this Fiber
@@ -59,7 +58,8 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
     private String m_queueID;
 
     /**
-     * How long to sleep between processing more notices
+     * The longest time to wait for a notice to become due before checking
+     * the status of the fiber again
      */
     private long m_interval;
 
@@ -132,14 +132,23 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
 
             processQueue();
 
-            synchronized (this) {
-                // wait for the next iteration
-                try {
-                    wait(m_interval);
-                } catch (final InterruptedException ex) {
-                    // exit
-                    break;
+            try {
+                if (m_noticeQueue == null) {
+                    synchronized (this) {
+                        wait(m_interval);
+                    }
+                } else {
+                    // wait until the next notice is due
+                    final NotificationTask task = m_noticeQueue.poll(m_interval, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        startTask(task);
+                    }
                 }
+            } catch (final InterruptedException ex) {
+                // exit
+                break;
+            } catch (final Throwable e) {
+                LOG.error("failed to start notification task", e);
             }
 
         } // end infinite loop
@@ -155,26 +164,19 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      */
     @Override
     public void processQueue() {
-        if (m_noticeQueue != null) {
-            synchronized(m_noticeQueue) {
-                try {
-                	final Long now = System.currentTimeMillis();
-                	final SortedMap<Long, List<NotificationTask>> readyNotices = m_noticeQueue.headMap(now);
-        
-                    for (final List<NotificationTask> list : readyNotices.values()) {
-                        for (final NotificationTask task : list) {
-                            startTask(task);
-                        }
-                    }
-                    readyNotices.clear();
-        
-                    if (m_noticeQueue != null && m_noticeQueue.size() > 0) {
-			LOG.debug("current state of tree: {}", m_noticeQueue);
-                    }
-                } catch (final Throwable e) {
-                    LOG.error("failed to start notification task", e);
-                    
+        final NoticeQueue noticeQueue = m_noticeQueue;
+        if (noticeQueue != null) {
+            try {
+                NotificationTask task;
+                while ((task = noticeQueue.pollReady()) != null) {
+                    startTask(task);
                 }
+
+                if (LOG.isDebugEnabled() && !noticeQueue.isEmpty()) {
+                    LOG.debug("current state of tree: {}", noticeQueue);
+                }
+            } catch (final Throwable e) {
+                LOG.error("failed to start notification task", e);
             }
         }
     }
@@ -217,6 +219,7 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
             m_status = STOP_PENDING;
 
         notifyAll();
+        wakeUpQueue();
     }
 
     /**
@@ -232,6 +235,7 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         if (m_status == RUNNING || m_status == RESUME_PENDING) {
             m_status = PAUSE_PENDING;
             notifyAll();
+            wakeUpQueue();
         }
     }
 
@@ -251,6 +255,12 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         }
     }
 
+    private void wakeUpQueue() {
+        if (m_noticeQueue != null) {
+            m_noticeQueue.wakeUp();
+        }
+    }
+
     /**
      * Returns the name of this fiber.
      *
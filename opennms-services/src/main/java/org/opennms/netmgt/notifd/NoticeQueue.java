@@ -26,35 +26,125 @@
  *     http://www.opennms.com/
  *******************************************************************************/
 
+
 package org.opennms.netmgt.notifd;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This is a data class designed to hold NotificationTasks in an ordered map
- * that can handle collisions.
+ * This is a data class designed to hold NotificationTasks ordered by the
+ * time they are due to be sent.
+ *
+ * Like a {@link java.util.concurrent.DelayQueue}, a queue handler can block
+ * in {@link #poll(long, TimeUnit)} until exactly when the next task is due,
+ * rather than checking the queue on a fixed interval.  The tasks are kept in
+ * a sorted set and indexed by notice ID, so the outstanding tasks of an
+ * acknowledged notice can be cancelled without scanning the whole queue.
  *
- * @author <A HREF="mailto:jason@opennms.org">Jason Johns </A>
- * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * @author <A HREF="mailto:jason@opennms.org">Jason Johns </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * @version 1.1.1.1
  */
-public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
+public class NoticeQueue {
     private static final Logger LOG = LoggerFactory.getLogger(NoticeQueue.class);
+
+    private final ReentrantLock m_lock = new ReentrantLock();
+
     /**
-     * 
+     * Signalled when a task that is due earlier than all the others is
+     * added, or when the waiting handler should wake up.
      */
-    private static final long serialVersionUID = 7463770974135218140L;
+    private final Condition m_changed = m_lock.newCondition();
 
-    /** {@inheritDoc} */
-    @Override
-    public NotificationTask putItem(Long key, NotificationTask value) {
-        NotificationTask ret = super.putItem(key, value);
+    private final TreeSet<Entry> m_entries = new TreeSet<Entry>();
+
+    private final Map<Integer, Set<Entry>> m_entriesByNotifyId = new HashMap<Integer, Set<Entry>>();
+
+    private long m_sequence = 0;
+
+    private long m_wakeUps = 0;
+
+    private final AtomicLong m_dispatched = new AtomicLong();
+
+    private final AtomicLong m_totalDispatchLag = new AtomicLong();
+
+    private volatile long m_lastDispatchLag = 0;
+
+    /**
+     * A queued task, ordered by its send time and then by the order it was
+     * added in.
+     */
+    private static class Entry implements Comparable<Entry> {
+        private final long m_sendTime;
+        private final long m_sequence;
+        private final NotificationTask m_task;
+        private final int m_notifyId;
+
+        public Entry(final long sendTime, final long sequence, final NotificationTask task) {
+            m_sendTime = sendTime;
+            m_sequence = sequence;
+            m_task = task;
+            m_notifyId = task == null ? -1 : task.getNotifyId();
+        }
+
+        @Override
+        public int compareTo(final Entry o) {
+            if (m_sendTime != o.m_sendTime) {
+                return m_sendTime < o.m_sendTime ? -1 : 1;
+            }
+            if (m_sequence != o.m_sequence) {
+                return m_sequence < o.m_sequence ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * <p>putItem</p>
+     *
+     * @param key the time the task should be sent at
+     * @param value the task
+     * @return the task if it was already queued for that time, otherwise null
+     */
+    public NotificationTask putItem(final Long key, final NotificationTask value) {
+        m_lock.lock();
+        try {
+            // the same task can only be queued once for the same time
+            for (final Entry entry : m_entries.subSet(new Entry(key, Long.MIN_VALUE, null), new Entry(key, Long.MAX_VALUE, null))) {
+                if (entry.m_task == value) {
+                    return value;
+                }
+            }
+
+            final Entry entry = new Entry(key, m_sequence++, value);
+            m_entries.add(entry);
+            if (entry.m_notifyId != -1) {
+                Set<Entry> entries = m_entriesByNotifyId.get(entry.m_notifyId);
+                if (entries == null) {
+                    entries = new HashSet<Entry>();
+                    m_entriesByNotifyId.put(entry.m_notifyId, entries);
+                }
+                entries.add(entry);
+            }
+
+            if (m_entries.first() == entry) {
+                m_changed.signalAll();
+            }
+        } finally {
+            m_lock.unlock();
+        }
 
-        
         if (LOG.isDebugEnabled()) {
             if (value.getNotifyId() == -1) {
                 LOG.debug("autoNotify task queued");
@@ -62,7 +152,192 @@ public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
                 LOG.debug("task queued for notifyID {}", value.getNotifyId());
             }
         }
-        
-        return ret;
+
+        return null;
+    }
+
+    /**
+     * Removes and returns the next task if it is due, without waiting.
+     *
+     * @return the next task that is due, or null if none are
+     */
+    public NotificationTask pollReady() {
+        m_lock.lock();
+        try {
+            if (m_entries.isEmpty() || m_entries.first().m_sendTime > System.currentTimeMillis()) {
+                return null;
+            }
+            return dequeue();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the next task, waiting until it is due if
+     * necessary.  Returns early with null after the timeout, or when
+     * {@link #wakeUp()} is called.
+     *
+     * @param timeout how long to wait for a task to become due
+     * @param unit the unit of the timeout
+     * @return the next task, or null if none became due
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public NotificationTask poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        m_lock.lockInterruptibly();
+        try {
+            final long wakeUps = m_wakeUps;
+            for (;;) {
+                if (m_wakeUps != wakeUps) {
+                    return null;
+                }
+
+                long wait = nanos;
+                if (!m_entries.isEmpty()) {
+                    final long delay = TimeUnit.MILLISECONDS.toNanos(m_entries.first().m_sendTime - System.currentTimeMillis());
+                    if (delay <= 0) {
+                        return dequeue();
+                    }
+                    wait = Math.min(wait, delay);
+                }
+
+                if (nanos <= 0) {
+                    return null;
+                }
+                final long remaining = m_changed.awaitNanos(wait);
+                nanos -= wait - remaining;
+            }
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up a thread waiting in {@link #poll(long, TimeUnit)}, for
+     * example so that it can see that its handler has been stopped.
+     */
+    public void wakeUp() {
+        m_lock.lock();
+        try {
+            m_wakeUps++;
+            m_changed.signalAll();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the tasks of a notice that have not been sent yet, for example
+     * because the notice has been acknowledged.
+     *
+     * @param notifyId the ID of the notice
+     * @return the number of tasks removed
+     */
+    public int cancel(final int notifyId) {
+        m_lock.lock();
+        try {
+            final Set<Entry> entries = m_entriesByNotifyId.remove(notifyId);
+            if (entries == null) {
+                return 0;
+            }
+            int removed = 0;
+            for (final Entry entry : entries) {
+                if (m_entries.remove(entry)) {
+                    removed++;
+                }
+            }
+            LOG.debug("cancelled {} queued tasks for notifyID {}", removed, notifyId);
+            return removed;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    private NotificationTask dequeue() {
+        final Entry entry = m_entries.pollFirst();
+        final Set<Entry> entries = m_entriesByNotifyId.get(entry.m_notifyId);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                m_entriesByNotifyId.remove(entry.m_notifyId);
+            }
+        }
+
+        final long lag = Math.max(0, System.currentTimeMillis() - entry.m_sendTime);
+        m_dispatched.incrementAndGet();
+        m_totalDispatchLag.addAndGet(lag);
+        m_lastDispatchLag = lag;
+
+        return entry.m_task;
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of queued tasks
+     */
+    public int size() {
+        m_lock.lock();
+        try {
+            return m_entries.size();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * <p>isEmpty</p>
+     *
+     * @return true if no tasks are queued
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * <p>getDispatchedCount</p>
+     *
+     * @return the number of tasks that have been taken off the queue to be sent
+     */
+    public long getDispatchedCount() {
+        return m_dispatched.get();
+    }
+
+    /**
+     * <p>getTotalDispatchLag</p>
+     *
+     * @return the total time in milliseconds between when tasks were due and
+     *         when they were taken off the queue
+     */
+    public long getTotalDispatchLag() {
+        return m_totalDispatchLag.get();
+    }
+
+    /**
+     * <p>getLastDispatchLag</p>
+     *
+     * @return the time in milliseconds between when the last task was due and
+     *         when it was taken off the queue
+     */
+    public long getLastDispatchLag() {
+        return m_lastDispatchLag;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        final StringBuffer buffer = new StringBuffer();
+
+        m_lock.lock();
+        try {
+            for (final Entry entry : m_entries) {
+                buffer.append(entry.m_task.toString() + System.getProperty("line.separator"));
+            }
+        } finally {
+            m_lock.unlock();
+        }
+
+        return buffer.toString();
     }
 }
@@ -279,6 +279,46 @@ public final class Notifd extends AbstractServiceDaemon {
         return m_eventReader;
     }
 
+    /**
+     * <p>getNoticeQueueDepth</p>
+     *
+     * @return the number of notification tasks waiting in all the notice queues
+     */
+    public long getNoticeQueueDepth() {
+        long depth = 0;
+        for (NoticeQueue queue : m_noticeQueues.values()) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * <p>getNoticesDispatched</p>
+     *
+     * @return the number of notification tasks taken off the notice queues
+     */
+    public long getNoticesDispatched() {
+        long dispatched = 0;
+        for (NoticeQueue queue : m_noticeQueues.values()) {
+            dispatched += queue.getDispatchedCount();
+        }
+        return dispatched;
+    }
+
+    /**
+     * <p>getNoticeDispatchLag</p>
+     *
+     * @return the total time in milliseconds that notification tasks were
+     *         taken off the notice queues after they were due
+     */
+    public long getNoticeDispatchLag() {
+        long lag = 0;
+        for (NoticeQueue queue : m_noticeQueues.values()) {
+            lag += queue.getTotalDispatchLag();
+        }
+        return lag;
+    }
+
     /**
      * <p>onStart</p>
      */
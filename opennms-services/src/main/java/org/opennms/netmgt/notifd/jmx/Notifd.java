@@ -136,6 +136,24 @@ public class Notifd extends AbstractServiceDaemon implements NotifdMBean {
     /**
      * @return Notifd instance
      */
+    /** {@inheritDoc} */
+    @Override
+    public long getNoticeQueueDepth() {
+        return getNotifd().getNoticeQueueDepth();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNoticesDispatched() {
+        return getNotifd().getNoticesDispatched();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNoticeDispatchLag() {
+        return getNotifd().getNoticeDispatchLag();
+    }
+
     private org.opennms.netmgt.notifd.Notifd getNotifd() {
         return org.opennms.netmgt.notifd.Notifd.getInstance();
     }
@@ -37,4 +37,26 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface NotifdMBean extends BaseOnmsMBean {
+    /**
+     * Returns the number of notification tasks waiting to be sent (gauge).
+     *
+     * @return the number of queued notification tasks
+     */
+    public long getNoticeQueueDepth();
+
+    /**
+     * Returns the number of notification tasks taken off the queues to be
+     * sent (counter).
+     *
+     * @return the number of dispatched notification tasks
+     */
+    public long getNoticesDispatched();
+
+    /**
+     * Returns the total time in milliseconds between when notification tasks
+     * were due and when they were dispatched (counter).
+     *
+     * @return the total dispatch lag
+     */
+    public long getNoticeDispatchLag();
 }
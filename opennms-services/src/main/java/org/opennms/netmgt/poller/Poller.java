@@ -55,9 +55,10 @@ import org.opennms.netmgt.poller.pollables.PollableService;
 import org.opennms.netmgt.poller.pollables.PollableServiceConfig;
 import org.opennms.netmgt.poller.pollables.PollableVisitor;
 import org.opennms.netmgt.poller.pollables.PollableVisitorAdaptor;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.Schedule;
+import org.opennms.netmgt.scheduler.ScheduleSpreader;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -74,9 +75,17 @@ public class Poller extends AbstractServiceDaemon {
 
     private final static String LOG4J_CATEGORY = "poller";
 
+    /**
+     * The number of seconds covered by the jobs-due-per-second report, the
+     * default polling interval.
+     */
+    public final static int DUE_REPORT_SECONDS = 300;
+
     private boolean m_initialized = false;
 
-    private LegacyScheduler m_scheduler = null;
+    private Scheduler m_scheduler = null;
+
+    private ScheduleSpreader m_scheduleSpreader = new ScheduleSpreader();
 
     private PollerEventProcessor m_eventProcessor;
 
@@ -232,12 +241,30 @@ public class Poller extends AbstractServiceDaemon {
     /**
      * <p>setScheduler</p>
      *
-     * @param scheduler a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
+    /**
+     * <p>getScheduleSpreader</p>
+     *
+     * @return a {@link org.opennms.netmgt.scheduler.ScheduleSpreader} object.
+     */
+    public ScheduleSpreader getScheduleSpreader() {
+        return m_scheduleSpreader;
+    }
+
+    /**
+     * <p>setScheduleSpreader</p>
+     *
+     * @param scheduleSpreader a {@link org.opennms.netmgt.scheduler.ScheduleSpreader} object.
+     */
+    public void setScheduleSpreader(ScheduleSpreader scheduleSpreader) {
+        m_scheduleSpreader = scheduleSpreader;
+    }
+
     /**
      * <p>onInit</p>
      */
@@ -293,7 +320,7 @@ public class Poller extends AbstractServiceDaemon {
         try {
             LOG.debug("init: Creating poller scheduler");
 
-            setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            setScheduler(SchedulerFactory.createScheduler("Poller", getPollerConfig().getThreads()));
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create poller scheduler", e);
             throw e;
@@ -366,7 +393,9 @@ public class Poller extends AbstractServiceDaemon {
     }
 
     private void scheduleExistingServices() throws Exception {
-        scheduleMatchingServices(null);
+        final int count = scheduleMatchingServices(null);
+        LOG.info("scheduleExistingServices: scheduled {} services, at most {} polls due in any one second of the next {} seconds",
+                 count, getPeakJobsDuePerSecond(), DUE_REPORT_SECONDS);
         
         getNetwork().recalculateStatus();
         getNetwork().propagateInitialCause();
@@ -431,7 +460,7 @@ public class Poller extends AbstractServiceDaemon {
      * @param criteria
      * @return
      */
-    private int scheduleMatchingServices(String criteria) {
+    private int scheduleMatchingServices(final String criteria) {
         String sql = "SELECT ifServices.nodeId AS nodeId, node.nodeLabel AS nodeLabel, ifServices.ipAddr AS ipAddr, " +
                 "ifServices.serviceId AS serviceId, service.serviceName AS serviceName, ifServices.status as status, " +
                 "outages.svcLostEventId AS svcLostEventId, events.eventUei AS svcLostEventUei, " +
@@ -456,7 +485,7 @@ public class Poller extends AbstractServiceDaemon {
             public void processRow(ResultSet rs) throws SQLException {
                 if (scheduleService(rs.getInt("nodeId"), rs.getString("nodeLabel"), rs.getString("ipAddr"), rs.getString("serviceName"), 
                                 "A".equals(rs.getString("status")), (Number)rs.getObject("svcLostEventId"), rs.getTimestamp("ifLostService"), 
-                                rs.getString("svcLostEventUei"))) {
+                                rs.getString("svcLostEventUei"), criteria == null)) {
                     count.incrementAndGet();
                 }
             }
@@ -468,7 +497,7 @@ public class Poller extends AbstractServiceDaemon {
 
     }
     
-    private boolean scheduleService(int nodeId, String nodeLabel, String ipAddr, String serviceName, boolean active, Number svcLostEventId, Date date, String svcLostUei) {
+    private boolean scheduleService(int nodeId, String nodeLabel, String ipAddr, String serviceName, boolean active, Number svcLostEventId, Date date, String svcLostUei, boolean existing) {
         // We don't want to adjust the management state of the service if we're
         // on a machine that uses multiple servers with access to the same database
         // so check the value of OpennmsServerConfigFactory.getInstance().verifyServer()
@@ -524,7 +553,12 @@ public class Poller extends AbstractServiceDaemon {
 
         }
         
-        svc.schedule();
+        if (existing) {
+            // spread the services that are scheduled at startup across their interval
+            svc.schedule(m_scheduleSpreader.getInitialDelay(nodeId + ":" + ipAddr + ":" + serviceName, pollConfig.getInterval()));
+        } else {
+            svc.schedule();
+        }
         
         return true;
 
@@ -642,6 +676,34 @@ public class Poller extends AbstractServiceDaemon {
         }
     }
 
+    /**
+     * Returns the number of polls due in each of the next seconds.
+     *
+     * @param seconds the number of seconds to report
+     * @return the number of polls due in each second
+     */
+    public int[] getJobsDuePerSecond(int seconds) {
+        if (m_scheduler != null) {
+            return m_scheduler.getJobsDuePerSecond(seconds);
+        } else {
+            return new int[seconds];
+        }
+    }
+
+    /**
+     * Returns the largest number of polls due in any one second of the next
+     * {@link #DUE_REPORT_SECONDS} seconds.
+     *
+     * @return the peak number of polls due per second
+     */
+    public int getPeakJobsDuePerSecond() {
+        int peak = 0;
+        for (int due : getJobsDuePerSecond(DUE_REPORT_SECONDS)) {
+            peak = Math.max(peak, due);
+        }
+        return peak;
+    }
+
     public static String getLoggingCategory() {
         return LOG4J_CATEGORY;
 	}
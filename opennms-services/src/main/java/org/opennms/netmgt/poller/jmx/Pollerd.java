@@ -55,4 +55,16 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
     public long getNumPolls() {
         return getDaemon().getNumPolls();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public int[] getPollsDuePerSecond() {
+        return getDaemon().getJobsDuePerSecond(org.opennms.netmgt.poller.Poller.DUE_REPORT_SECONDS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPeakPollsDuePerSecond() {
+        return getDaemon().getPeakJobsDuePerSecond();
+    }
 }
@@ -43,4 +43,19 @@ public interface PollerdMBean extends BaseOnmsMBean {
      * @return the number of polls that have been executed
      */
     public long getNumPolls();
+
+    /**
+     * Returns the number of polls due in each of the next 300 seconds.
+     *
+     * @return the number of polls due in each second
+     */
+    public int[] getPollsDuePerSecond();
+
+    /**
+     * Returns the largest number of polls due in any one second of the next
+     * 300 seconds.
+     *
+     * @return the peak number of polls due per second
+     */
+    public int getPeakPollsDuePerSecond();
 }
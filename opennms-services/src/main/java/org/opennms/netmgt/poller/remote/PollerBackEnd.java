@@ -130,6 +130,15 @@ public interface PollerBackEnd {
      */
     void reportResult(int locationMonitorID, int serviceId, PollStatus status);
 
+    /**
+     * Report a batch of poll results from the client to the server.  This
+     * saves a round trip per result, and the server can process the whole
+     * batch at once.
+     *
+     * @param results the poll results, in the order they were polled
+     */
+    void reportResults(Collection<ServicePollResult> results);
+
 
     /**
      * <p>configurationUpdated</p>
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.remote;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.opennms.netmgt.model.PollStatus;
+
+/**
+ * A poll result as reported by a remote poller, for use with
+ * {@link PollerBackEnd#reportResults(java.util.Collection)}.
+ */
+public class ServicePollResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int m_locationMonitorId;
+    private final int m_serviceId;
+    private final PollStatus m_status;
+
+    /**
+     * <p>Constructor for ServicePollResult.</p>
+     *
+     * @param locationMonitorId the id of the location monitor that did the poll
+     * @param serviceId the id of the service that was polled
+     * @param status a {@link org.opennms.netmgt.model.PollStatus} object.
+     */
+    public ServicePollResult(final int locationMonitorId, final int serviceId, final PollStatus status) {
+        m_locationMonitorId = locationMonitorId;
+        m_serviceId = serviceId;
+        m_status = status;
+    }
+
+    /**
+     * <p>getLocationMonitorId</p>
+     *
+     * @return a int.
+     */
+    public int getLocationMonitorId() {
+        return m_locationMonitorId;
+    }
+
+    /**
+     * <p>getServiceId</p>
+     *
+     * @return a int.
+     */
+    public int getServiceId() {
+        return m_serviceId;
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a {@link org.opennms.netmgt.model.PollStatus} object.
+     */
+    public PollStatus getStatus() {
+        return m_status;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+            .append("locationMonitorId", m_locationMonitorId)
+            .append("serviceId", m_serviceId)
+            .append("status", m_status)
+            .toString();
+    }
+}
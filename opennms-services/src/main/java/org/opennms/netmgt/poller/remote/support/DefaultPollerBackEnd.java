@@ -39,8 +39,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -70,13 +72,19 @@ import org.opennms.netmgt.poller.remote.PolledService;
 import org.opennms.netmgt.poller.remote.PollerBackEnd;
 import org.opennms.netmgt.poller.remote.PollerConfiguration;
 import org.opennms.netmgt.poller.remote.RemoteHostThreadLocal;
+import org.opennms.netmgt.poller.remote.ServicePollResult;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdUtils;
+import org.opennms.netmgt.xml.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.PermissionDeniedDataAccessException;
 import org.springframework.orm.ObjectRetrievalFailureException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.util.Assert;
 
 /**
@@ -131,6 +139,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
     private PollerConfig m_pollerConfig;
     private TimeKeeper m_timeKeeper;
     private int m_disconnectedTimeout;
+    private TransactionOperations m_transactionOperations;
 
     private long m_minimumConfigurationReloadInterval;
     
@@ -149,6 +158,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
         Assert.notNull(m_pollerConfig, "The PollerConfig must be set");
         Assert.notNull(m_timeKeeper, "The timeKeeper must be set");
         Assert.notNull(m_eventIpcManager, "The eventIpcManager must be set");
+        Assert.notNull(m_transactionOperations, "The transactionOperations must be set");
         Assert.state(m_disconnectedTimeout > 0, "the disconnectedTimeout property must be set");
         
         m_minimumConfigurationReloadInterval = Long.getLong("opennms.pollerBackend.minimumConfigurationReloadInterval", 300000L).longValue();
@@ -490,7 +500,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
         sendMonitorStoppedEvent(mon);
     }
 
-    private void processStatusChange(final OnmsLocationSpecificStatus currentStatus, final OnmsLocationSpecificStatus newStatus) {
+    private void processStatusChange(final ResultBatch batch, final OnmsLocationSpecificStatus currentStatus, final OnmsLocationSpecificStatus newStatus) {
         if (databaseStatusChanged(currentStatus, newStatus)) {
             m_locMonDao.saveStatusChange(newStatus);
 
@@ -498,7 +508,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
 
             // if we don't know the current status only send an event if it is not up
             if (logicalStatusChanged(currentStatus, newStatus)) {
-                sendRegainedOrLostServiceEvent(newStatus, pollResult);
+                batch.addEvent(createRegainedOrLostServiceEvent(newStatus, pollResult));
             }
         }
     }
@@ -523,27 +533,65 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
     /** {@inheritDoc} */
     @Override
     public void reportResult(final int locationMonitorId, final int serviceId, final PollStatus pollResult) {
-        final OnmsLocationMonitor locationMonitor;
+        final ResultBatch batch = new ResultBatch(false, true);
+        reportResult(batch, locationMonitorId, serviceId, pollResult);
+        batch.sendEvents();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The location monitors, monitored services, polling packages and
+     * current statuses are looked up once per batch, and the status changes
+     * of the whole batch are saved in a single transaction.  If that
+     * transaction fails, each result is saved again in its own transaction
+     * so that one bad result does not lose the rest of the batch.  Events
+     * are only sent once the transaction that saved their status change
+     * has committed.
+     */
+    @Override
+    @Transactional(propagation=Propagation.NOT_SUPPORTED)
+    public void reportResults(final Collection<ServicePollResult> results) {
+        final ResultBatch batch = new ResultBatch(true, true);
         try {
-        	locationMonitor = m_locMonDao.get(locationMonitorId);
-        } catch (final Exception e) {
-            LOG.info("Unable to report result for location monitor ID {}: Location monitor does not exist.", locationMonitorId, e);
-            return;
+            m_transactionOperations.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    for (final ServicePollResult result : results) {
+                        reportResult(batch, result.getLocationMonitorId(), result.getServiceId(), result.getStatus());
+                    }
+                }
+            });
+            batch.sendEvents();
+            LOG.debug("Processed a batch of {} poll results", results.size());
+        } catch (final RuntimeException e) {
+            LOG.warn("Unable to save a batch of {} poll results in one transaction, saving them one at a time", results.size(), e);
+            for (final ServicePollResult result : results) {
+                // response times that were written before the failure are not written again
+                final ResultBatch single = new ResultBatch(false, !batch.isResponseTimeSaved(result.getStatus()));
+                try {
+                    m_transactionOperations.execute(new TransactionCallbackWithoutResult() {
+                        @Override
+                        protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                            reportResult(single, result.getLocationMonitorId(), result.getServiceId(), result.getStatus());
+                        }
+                    });
+                    single.sendEvents();
+                } catch (final RuntimeException re) {
+                    LOG.error("Unable to save result for location monitor ID {}, monitored service ID {}.", result.getLocationMonitorId(), result.getServiceId(), re);
+                }
+            }
         }
+    }
+
+    private void reportResult(final ResultBatch batch, final int locationMonitorId, final int serviceId, final PollStatus pollResult) {
+        final OnmsLocationMonitor locationMonitor = batch.getLocationMonitor(locationMonitorId);
         if (locationMonitor == null) {
-            LOG.info("Unable to report result for location monitor ID {}: Location monitor does not exist.", locationMonitorId);
             return;
         }
 
-        final OnmsMonitoredService monSvc;
-        try {
-        	monSvc = m_monSvcDao.get(serviceId);
-        } catch (final Exception e) {
-		LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Monitored service does not exist.", locationMonitorId, serviceId, e);
-        	return;
-        }
+        final OnmsMonitoredService monSvc = batch.getMonitoredService(locationMonitorId, serviceId);
         if (monSvc == null) {
-		LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Monitored service does not exist.", locationMonitorId, serviceId);
             return;
         }
         if (pollResult == null) {
@@ -554,22 +602,145 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
         final OnmsLocationSpecificStatus newStatus = new OnmsLocationSpecificStatus(locationMonitor, monSvc, pollResult);
 
         try {
-			if (newStatus.getPollResult().getResponseTime() != null) {
-			    final Package pkg = getPollingPackageForMonitor(locationMonitor);
+			if (batch.isSaveResponseTimes() && newStatus.getPollResult().getResponseTime() != null) {
+			    final Package pkg = batch.getPollingPackage(locationMonitor);
 			    saveResponseTimeData(Integer.toString(locationMonitorId), monSvc, newStatus.getPollResult().getResponseTime(), pkg);
+			    batch.responseTimeSaved(pollResult);
 			}
 		} catch (final Exception e) {
 			LOG.error("Unable to save response time data for location monitor ID {}, monitored service ID {}.", locationMonitorId, serviceId, e);
 		}
 
 		try {
-	        final OnmsLocationSpecificStatus currentStatus = m_locMonDao.getMostRecentStatusChange(locationMonitor, monSvc);
-	        processStatusChange(currentStatus, newStatus);
-		} catch (final Exception e) {
+	        final OnmsLocationSpecificStatus currentStatus = batch.getMostRecentStatusChange(locationMonitor, monSvc);
+	        processStatusChange(batch, currentStatus, newStatus);
+	        if (databaseStatusChanged(currentStatus, newStatus)) {
+	            batch.setMostRecentStatusChange(newStatus);
+	        }
+		} catch (final RuntimeException e) {
+		    if (batch.isFailFast()) {
+		        throw e;
+		    }
 			LOG.error("Unable to save result for location monitor ID {}, monitored service ID {}.", locationMonitorId, serviceId, e);
 		}
     }
 
+    /**
+     * Remembers what has been looked up while reporting a batch of results,
+     * so that each location monitor, monitored service, polling package and
+     * current status is only read once per batch.  A missing location
+     * monitor or monitored service is only logged once.  Events are queued
+     * until {@link #sendEvents()} is called.
+     */
+    private class ResultBatch {
+        private final boolean m_failFast;
+        private final boolean m_saveResponseTimes;
+        private final Map<Integer, OnmsLocationMonitor> m_monitors = new HashMap<Integer, OnmsLocationMonitor>();
+        private final Map<Integer, OnmsMonitoredService> m_services = new HashMap<Integer, OnmsMonitoredService>();
+        private final Map<Integer, Package> m_packages = new HashMap<Integer, Package>();
+        private final Map<String, OnmsLocationSpecificStatus> m_statuses = new HashMap<String, OnmsLocationSpecificStatus>();
+        private final List<Event> m_events = new ArrayList<Event>();
+        private final Set<PollStatus> m_responseTimesSaved = Collections.newSetFromMap(new IdentityHashMap<PollStatus, Boolean>());
+
+        /**
+         * @param failFast whether a failure to save a status change is
+         *        thrown instead of logged
+         * @param saveResponseTimes whether to write the response times
+         */
+        public ResultBatch(final boolean failFast, final boolean saveResponseTimes) {
+            m_failFast = failFast;
+            m_saveResponseTimes = saveResponseTimes;
+        }
+
+        public boolean isFailFast() {
+            return m_failFast;
+        }
+
+        public boolean isSaveResponseTimes() {
+            return m_saveResponseTimes;
+        }
+
+        public void responseTimeSaved(final PollStatus pollResult) {
+            m_responseTimesSaved.add(pollResult);
+        }
+
+        public boolean isResponseTimeSaved(final PollStatus pollResult) {
+            return m_responseTimesSaved.contains(pollResult);
+        }
+
+        public void addEvent(final Event event) {
+            m_events.add(event);
+        }
+
+        public void sendEvents() {
+            for (final Event event : m_events) {
+                m_eventIpcManager.sendNow(event);
+            }
+            m_events.clear();
+        }
+
+        public OnmsLocationMonitor getLocationMonitor(final int locationMonitorId) {
+            if (m_monitors.containsKey(locationMonitorId)) {
+                return m_monitors.get(locationMonitorId);
+            }
+            OnmsLocationMonitor locationMonitor = null;
+            try {
+                locationMonitor = m_locMonDao.get(locationMonitorId);
+                if (locationMonitor == null) {
+                    LOG.info("Unable to report result for location monitor ID {}: Location monitor does not exist.", locationMonitorId);
+                }
+            } catch (final Exception e) {
+                LOG.info("Unable to report result for location monitor ID {}: Location monitor does not exist.", locationMonitorId, e);
+            }
+            m_monitors.put(locationMonitorId, locationMonitor);
+            return locationMonitor;
+        }
+
+        public OnmsMonitoredService getMonitoredService(final int locationMonitorId, final int serviceId) {
+            if (m_services.containsKey(serviceId)) {
+                return m_services.get(serviceId);
+            }
+            OnmsMonitoredService monSvc = null;
+            try {
+                monSvc = m_monSvcDao.get(serviceId);
+                if (monSvc == null) {
+                    LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Monitored service does not exist.", locationMonitorId, serviceId);
+                }
+            } catch (final Exception e) {
+                LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Monitored service does not exist.", locationMonitorId, serviceId, e);
+            }
+            m_services.put(serviceId, monSvc);
+            return monSvc;
+        }
+
+        public Package getPollingPackage(final OnmsLocationMonitor locationMonitor) {
+            Package pkg = m_packages.get(locationMonitor.getId());
+            if (pkg == null) {
+                pkg = getPollingPackageForMonitor(locationMonitor);
+                m_packages.put(locationMonitor.getId(), pkg);
+            }
+            return pkg;
+        }
+
+        public OnmsLocationSpecificStatus getMostRecentStatusChange(final OnmsLocationMonitor locationMonitor, final OnmsMonitoredService monSvc) {
+            final String key = getStatusKey(locationMonitor, monSvc);
+            if (m_statuses.containsKey(key)) {
+                return m_statuses.get(key);
+            }
+            final OnmsLocationSpecificStatus currentStatus = m_locMonDao.getMostRecentStatusChange(locationMonitor, monSvc);
+            m_statuses.put(key, currentStatus);
+            return currentStatus;
+        }
+
+        public void setMostRecentStatusChange(final OnmsLocationSpecificStatus status) {
+            m_statuses.put(getStatusKey(status.getLocationMonitor(), status.getMonitoredService()), status);
+        }
+
+        private String getStatusKey(final OnmsLocationMonitor locationMonitor, final OnmsMonitoredService monSvc) {
+            return locationMonitor.getId() + ":" + monSvc.getId();
+        }
+    }
+
     /**
      * <p>saveResponseTimeData</p>
      *
@@ -644,7 +815,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
         sendEvent(mon, EventConstants.LOCATION_MONITOR_RECONNECTED_UEI);
     }
 
-    private void sendRegainedOrLostServiceEvent(final OnmsLocationSpecificStatus newStatus, final PollStatus pollResult) {
+    private Event createRegainedOrLostServiceEvent(final OnmsLocationSpecificStatus newStatus, final PollStatus pollResult) {
         final String uei = pollResult.isAvailable() ? EventConstants.REMOTE_NODE_REGAINED_SERVICE_UEI : EventConstants.REMOTE_NODE_LOST_SERVICE_UEI;
 
         final EventBuilder builder = createEventBuilder(newStatus.getLocationMonitor(), uei)
@@ -654,7 +825,16 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
             builder.addParam(EventConstants.PARM_LOSTSERVICE_REASON, pollResult.getReason());
         }
 
-        m_eventIpcManager.sendNow(builder.getEvent());
+        return builder.getEvent();
+    }
+
+    /**
+     * <p>setTransactionOperations</p>
+     *
+     * @param transactionOperations used to save batches of poll results
+     */
+    public void setTransactionOperations(final TransactionOperations transactionOperations) {
+        m_transactionOperations = transactionOperations;
     }
 
     /**
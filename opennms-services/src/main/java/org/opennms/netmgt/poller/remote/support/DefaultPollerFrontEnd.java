@@ -32,6 +32,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -55,6 +56,7 @@ import org.opennms.netmgt.poller.remote.PollerBackEnd;
 import org.opennms.netmgt.poller.remote.PollerConfiguration;
 import org.opennms.netmgt.poller.remote.PollerFrontEnd;
 import org.opennms.netmgt.poller.remote.PollerSettings;
+import org.opennms.netmgt.poller.remote.ServicePollResult;
 import org.opennms.netmgt.poller.remote.ServicePollState;
 import org.opennms.netmgt.poller.remote.ServicePollStateChangedEvent;
 import org.opennms.netmgt.poller.remote.ServicePollStateChangedListener;
@@ -277,6 +279,16 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
 
         }
 
+        @Override
+        public void flushExpiredResults() {
+            try {
+                doFlushExpiredResults();
+            } catch (Throwable e) {
+                LOG.error("Unexpected exception occurred while reporting poll results.", e);
+                setState(new FatalExceptionOccurred());
+            }
+        }
+
         @Override
         protected void onConfigChanged() {
             doLoadConfig();
@@ -348,6 +360,10 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
             throw illegalState("Cannot register from this state.");
         }
 
+        public void flushExpiredResults() {
+            // results are only reported while running
+        }
+
         public void stop() {
             // do nothing here by default as the actual exit is managed by the external program
         }
@@ -383,6 +399,18 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
     // current state of polled services
     private Map<Integer, ServicePollState> m_pollState = new LinkedHashMap<Integer, ServicePollState>();
 
+    // number of poll results to send to the back end at once; 1 reports each result as it happens
+    private int m_resultBatchSize = Integer.getInteger("opennms.poller.resultBatchSize", 1);
+
+    // longest time in milliseconds a poll result is buffered before it is reported
+    private long m_resultFlushInterval = Long.getLong("opennms.poller.resultFlushInterval", 10000);
+
+    // poll results that have not been reported yet
+    private final List<ServicePollResult> m_pendingResults = new ArrayList<ServicePollResult>();
+
+    // when the oldest pending poll result was buffered
+    private long m_oldestPendingResult;
+
     /** {@inheritDoc} */
     @Override
     public void addConfigurationChangedListener(ConfigurationChangedListener l) {
@@ -444,6 +472,17 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
         m_state.checkIn();
     }
 
+    /**
+     * <p>flushExpiredResults</p>
+     *
+     * Reports the buffered poll results if they have waited longer than the
+     * result flush interval, so results from quiet pollers are not held
+     * until the next check-in.
+     */
+    public void flushExpiredResults() {
+        m_state.flushExpiredResults();
+    }
+
     /**
      * <p>destroy</p>
      *
@@ -460,6 +499,7 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
      * @return a {@link org.opennms.netmgt.model.OnmsLocationMonitor.MonitorStatus} object.
      */
     public MonitorStatus doCheckIn() {
+        flushResults();
         return m_backEnd.pollerCheckingIn(getMonitorId(), getCurrentConfigTimestamp());
     }
 
@@ -467,6 +507,9 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
      * <p>doDelete</p>
      */
     public void doDelete() {
+        synchronized (m_pendingResults) {
+            m_pendingResults.clear();
+        }
         setMonitorId(null);
     }
 
@@ -511,9 +554,66 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
         if (result == null)
             return;
 
+        final ServicePollState pollState = getServicePollState(polledServiceId);
+        final PollStatus previous = pollState == null ? null : pollState.getLastPoll();
+
         updateServicePollState(polledServiceId, result);
 
-        m_backEnd.reportResult(getMonitorId(), polledServiceId, result);
+        if (m_resultBatchSize <= 1) {
+            m_backEnd.reportResult(getMonitorId(), polledServiceId, result);
+            return;
+        }
+
+        final boolean flush;
+        synchronized (m_pendingResults) {
+            if (m_pendingResults.isEmpty()) {
+                m_oldestPendingResult = System.currentTimeMillis();
+            }
+            m_pendingResults.add(new ServicePollResult(getMonitorId(), polledServiceId, result));
+            // status changes are reported right away so outages are not delayed
+            flush = m_pendingResults.size() >= m_resultBatchSize || previous == null || previous.isAvailable() != result.isAvailable() || isFlushIntervalExpired();
+        }
+        if (flush) {
+            flushResults();
+        }
+    }
+
+    /**
+     * <p>doFlushExpiredResults</p>
+     *
+     * Sends the buffered poll results to the back end if the oldest of them
+     * has waited longer than the result flush interval.
+     */
+    public void doFlushExpiredResults() {
+        final boolean flush;
+        synchronized (m_pendingResults) {
+            flush = !m_pendingResults.isEmpty() && isFlushIntervalExpired();
+        }
+        if (flush) {
+            flushResults();
+        }
+    }
+
+    private boolean isFlushIntervalExpired() {
+        return System.currentTimeMillis() - m_oldestPendingResult >= m_resultFlushInterval;
+    }
+
+    /**
+     * <p>flushResults</p>
+     *
+     * Sends any poll results that have been buffered because of the
+     * result batch size to the back end.
+     */
+    public void flushResults() {
+        final List<ServicePollResult> results;
+        synchronized (m_pendingResults) {
+            if (m_pendingResults.isEmpty()) {
+                return;
+            }
+            results = new ArrayList<ServicePollResult>(m_pendingResults);
+            m_pendingResults.clear();
+        }
+        m_backEnd.reportResults(results);
     }
 
     /**
@@ -534,6 +634,7 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
      * <p>doStop</p>
      */
     public void doStop() {
+        flushResults();
         m_backEnd.pollerStopping(getMonitorId());
     }
 
@@ -706,6 +807,26 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
         m_backEnd = backEnd;
     }
 
+    /**
+     * <p>setResultBatchSize</p>
+     *
+     * @param resultBatchSize the number of poll results to send to the back
+     *        end at once, or 1 to report every result as it happens
+     */
+    public void setResultBatchSize(final int resultBatchSize) {
+        m_resultBatchSize = resultBatchSize;
+    }
+
+    /**
+     * <p>setResultFlushInterval</p>
+     *
+     * @param resultFlushInterval the longest time in milliseconds a poll
+     *        result is buffered before it is sent to the back end
+     */
+    public void setResultFlushInterval(final long resultFlushInterval) {
+        m_resultFlushInterval = resultFlushInterval;
+    }
+
     /**
      * <p>setPollerSettings</p>
      *
@@ -44,6 +44,7 @@ import org.opennms.netmgt.poller.DistributionContext;
 import org.opennms.netmgt.poller.ServiceMonitorLocator;
 import org.opennms.netmgt.poller.remote.PollerBackEnd;
 import org.opennms.netmgt.poller.remote.PollerConfiguration;
+import org.opennms.netmgt.poller.remote.ServicePollResult;
 import org.springframework.remoting.RemoteAccessException;
 
 /**
@@ -174,6 +175,19 @@ public class ServerUnreachableAdaptor implements PollerBackEnd {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void reportResults(final Collection<ServicePollResult> results) {
+        if (!m_serverUnresponsive) {
+            try {
+                m_remoteBackEnd.reportResults(results);
+            } catch (RemoteAccessException e) {
+                m_serverUnresponsive = true;
+                LOG.warn("Server is unable to respond due to the following exception.", e);
+            }
+        }
+    }
+
 
     /** {@inheritDoc} */
     @Override
@@ -58,6 +58,7 @@ import org.opennms.netmgt.config.categories.Categorygroup;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.filter.FilterParseException;
 import org.opennms.netmgt.rtc.datablock.RTCCategory;
+import org.opennms.netmgt.rtc.datablock.RTCCategoryAvailability;
 import org.opennms.netmgt.rtc.datablock.RTCHashMap;
 import org.opennms.netmgt.rtc.datablock.RTCNode;
 import org.opennms.netmgt.rtc.datablock.RTCNodeKey;
@@ -188,6 +189,12 @@ public class DataManager {
      */
     private RTCHashMap m_map;
 
+    /**
+     * The outage time of each category over the rolling window, kept up to
+     * date as services and outages change
+     */
+    private Map<String, RTCCategoryAvailability> m_availability = Collections.emptyMap();
+
     /**
      * Get the 'ismanaged' status for the node ID, IP address combination
      * 
@@ -221,7 +228,9 @@ public class DataManager {
 
 		LOG.debug("regained time for nodeid/ip/svc: {}/{}/{}: {}/{}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), regainedTimeTS, regainedTime);
 
+		removeAvailability(rtcN);
 		rtcN.addSvcTime(lostTime, regainedTime);
+		addAvailability(rtcN);
 	}
 
 	private void addRTCNode(RTCNode rtcN) {
@@ -231,7 +240,14 @@ public class DataManager {
 	private void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
 
 		// add the category info to the node
-        rtcN.addCategory(cat.getLabel());
+        if (!rtcN.belongsTo(cat.getLabel())) {
+            rtcN.addCategory(cat.getLabel());
+
+            final RTCCategoryAvailability availability = m_availability.get(cat.getLabel());
+            if (availability != null) {
+                availability.addService(rtcN.getServiceTimes());
+            }
+        }
 
 		// Add node to category
 		cat.addNode(rtcN);
@@ -239,6 +255,61 @@ public class DataManager {
 		LOG.debug("rtcN : {}/{}/{} added to cat: {}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), cat.getLabel());
 	}
 
+    /**
+     * Subtracts the services and outages of the node from the availability
+     * of its categories.  This must be called before the outages or the
+     * categories of the node change, and {@link #addAvailability(RTCNode)}
+     * afterwards.
+     */
+    private void removeAvailability(RTCNode rtcN) {
+        for (String catLabel : rtcN.getCategories()) {
+            RTCCategoryAvailability availability = m_availability.get(catLabel);
+            if (availability != null) {
+                availability.removeService(rtcN.getServiceTimes());
+            }
+        }
+    }
+
+    private void addAvailability(RTCNode rtcN) {
+        for (String catLabel : rtcN.getCategories()) {
+            RTCCategoryAvailability availability = m_availability.get(catLabel);
+            if (availability != null) {
+                availability.addService(rtcN.getServiceTimes());
+            }
+        }
+    }
+
+    private void lostService(RTCNode rtcN, long t) {
+        removeAvailability(rtcN);
+        rtcN.nodeLostService(t);
+        addAvailability(rtcN);
+    }
+
+    private void regainedService(RTCNode rtcN, long t) {
+        removeAvailability(rtcN);
+        rtcN.nodeRegainedService(t);
+        addAvailability(rtcN);
+    }
+
+    /**
+     * Creates an availability accumulator for each category, if the
+     * rolling window is known.
+     */
+    private void createAvailabilityMap() {
+        long rollingWindow = RTCManager.getRollingWindow();
+        if (rollingWindow <= 0) {
+            LOG.warn("Rolling window is not set, category values will be calculated from every service");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, RTCCategoryAvailability> availability = new HashMap<String, RTCCategoryAvailability>();
+        for (String catLabel : m_categories.keySet()) {
+            availability.put(catLabel, new RTCCategoryAvailability(rollingWindow, now));
+        }
+        m_availability = availability;
+    }
+
     /**
      * Creates the categories map. Reads the categories from the categories.xml
      * and creates the 'RTCCategory's map
@@ -376,6 +447,7 @@ public class DataManager {
 
     	// create data holder
     	m_map = new RTCHashMap(30000);
+    	createAvailabilityMap();
 
     	// Populate the nodes initially from the database
     	populateNodesFromDB(null, null);
@@ -468,7 +540,7 @@ public class DataManager {
         }
 
         // inform node
-        rtcN.nodeLostService(t);
+        lostService(rtcN, t);
 
     }
 
@@ -484,7 +556,7 @@ public class DataManager {
      */
     public synchronized void interfaceDown(long nodeid, InetAddress ip, long t) {
         for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeLostService(t);
+            lostService(rtcN, t);
         }
     }
 
@@ -498,7 +570,7 @@ public class DataManager {
      */
     public synchronized void nodeDown(long nodeid, long t) {
     	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeLostService(t);
+            lostService(rtcN, t);
         }
     }
 
@@ -512,7 +584,7 @@ public class DataManager {
      */
     public synchronized void nodeUp(long nodeid, long t) {
     	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeRegainedService(t);
+            regainedService(rtcN, t);
         }
     }
 
@@ -528,7 +600,7 @@ public class DataManager {
      */
     public synchronized void interfaceUp(long nodeid, InetAddress ip, long t) {
         for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeRegainedService(t);
+            regainedService(rtcN, t);
         }
     }
 
@@ -554,7 +626,7 @@ public class DataManager {
         }
 
         // inform node
-        rtcN.nodeRegainedService(t);
+        regainedService(rtcN, t);
     }
 
     /**
@@ -579,6 +651,8 @@ public class DataManager {
             return;
         }
 
+        removeAvailability(rtcN);
+
         //
         // Go through from all the categories this node belongs to
         // and delete the service
@@ -678,6 +752,9 @@ public class DataManager {
 			cat.deleteNode(nodeid);
 		}
     	
+    	for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+    		removeAvailability(rtcN);
+    	}
     	m_map.deleteNode(nodeid);
     	
     	populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
@@ -738,6 +815,10 @@ public class DataManager {
      * Get the value(uptime) for the category in the last 'rollingWindow'
      * starting at current time
      *
+     * The value is read from the category's availability accumulator without
+     * locking the data manager, unless it cannot answer for this time and
+     * rolling window, in which case it is calculated from every service.
+     *
      * @param catLabel
      *            the category to which the node should belong to
      * @param curTime
@@ -747,8 +828,18 @@ public class DataManager {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(String catLabel, long curTime, long rollingWindow) {
-        return m_map.getValue(catLabel, curTime, rollingWindow);
+    public double getValue(String catLabel, long curTime, long rollingWindow) {
+        RTCCategoryAvailability availability = m_availability.get(catLabel);
+        if (availability != null) {
+            double value = availability.getValue(curTime, rollingWindow);
+            if (!Double.isNaN(value)) {
+                return value;
+            }
+        }
+
+        synchronized (this) {
+            return m_map.getValue(catLabel, curTime, rollingWindow);
+        }
     }
 
     /**
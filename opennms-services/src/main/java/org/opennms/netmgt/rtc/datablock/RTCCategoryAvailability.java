@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the total outage time of the services in a category over the
+ * rolling window up to date as services and outages are added and removed,
+ * so that the availability of the category can be read without looking at
+ * every service.
+ *
+ * An outage from lost time <code>l</code> to regained time <code>r</code>
+ * is down for <code>max(0, min(r, T) - max(l, T - W))</code> of the rolling
+ * window <code>W</code> ending at time <code>T</code>.  That is the sum of
+ * four ramps, each of which only counts once <code>T</code> has passed the
+ * time it starts at: <code>+(T - l)</code>, <code>-(T - (l + W))</code>,
+ * <code>-(T - r)</code> and <code>+(T - (r + W))</code>.  An outage that is
+ * still open only has the first two.  The ramps that have started are kept
+ * as a single down time and slope at a point in time; the others are kept
+ * in time order, and moving forward in time only applies the ones that
+ * start in between.
+ *
+ * Readers get an immutable snapshot that is valid until the next ramp
+ * starts, so most reads do not take a lock.
+ */
+public class RTCCategoryAvailability {
+
+    private final long m_rollingWindow;
+
+    /**
+     * The ramps that have not started yet: the sum of their slopes by start time.
+     */
+    private final TreeMap<Long, Long> m_pending = new TreeMap<Long, Long>();
+
+    private long m_time;
+
+    private long m_downTime = 0;
+
+    private long m_slope = 0;
+
+    private int m_serviceCount = 0;
+
+    private volatile Snapshot m_snapshot;
+
+    private static final class Snapshot {
+        private final long m_time;
+        private final long m_downTime;
+        private final long m_slope;
+        private final int m_serviceCount;
+        private final long m_validUntil;
+
+        public Snapshot(final long time, final long downTime, final long slope, final int serviceCount, final long validUntil) {
+            m_time = time;
+            m_downTime = downTime;
+            m_slope = slope;
+            m_serviceCount = serviceCount;
+            m_validUntil = validUntil;
+        }
+
+        public boolean isValidAt(final long curTime) {
+            return curTime >= m_time && curTime < m_validUntil;
+        }
+
+        public double getValue(final long curTime, final long rollingWindow) {
+            if (m_serviceCount <= 0) {
+                return 100.0;
+            }
+            final double outageTime = m_downTime + m_slope * (curTime - m_time);
+            return 100 * (1 - (outageTime / (rollingWindow * 1.0 * m_serviceCount)));
+        }
+    }
+
+    /**
+     * <p>Constructor for RTCCategoryAvailability.</p>
+     *
+     * @param rollingWindow the rolling window the availability is calculated over
+     * @param now the time to start from; the availability cannot be read for
+     *        earlier times
+     */
+    public RTCCategoryAvailability(final long rollingWindow, final long now) {
+        m_rollingWindow = rollingWindow;
+        m_time = now;
+        publish();
+    }
+
+    /**
+     * Get the value (uptime) for the category in the last 'rollingWindow'
+     * starting at current time.
+     *
+     * @param curTime
+     *            the current time
+     * @param rollingWindow
+     *            the window for which value is to be calculated
+     * @return the value (uptime) for the category, or {@link Double#NaN} if
+     *         it cannot be calculated for this time and rolling window
+     */
+    public double getValue(final long curTime, final long rollingWindow) {
+        if (rollingWindow != m_rollingWindow) {
+            return Double.NaN;
+        }
+
+        Snapshot snapshot = m_snapshot;
+        if (!snapshot.isValidAt(curTime)) {
+            snapshot = advance(curTime);
+            if (!snapshot.isValidAt(curTime)) {
+                // time went backwards
+                return Double.NaN;
+            }
+        }
+        return snapshot.getValue(curTime, rollingWindow);
+    }
+
+    /**
+     * Adds a service, and its outages, to the category.
+     *
+     * @param svcTimes the outages of the service
+     */
+    public synchronized void addService(final List<RTCNodeSvcTime> svcTimes) {
+        m_serviceCount++;
+        for (final RTCNodeSvcTime svcTime : svcTimes) {
+            addOutage(svcTime, 1);
+        }
+        publish();
+    }
+
+    /**
+     * Removes a service, and its outages, from the category.  The outages
+     * must be the same as when the service was added.
+     *
+     * @param svcTimes the outages of the service
+     */
+    public synchronized void removeService(final List<RTCNodeSvcTime> svcTimes) {
+        m_serviceCount--;
+        for (final RTCNodeSvcTime svcTime : svcTimes) {
+            addOutage(svcTime, -1);
+        }
+        publish();
+    }
+
+    /**
+     * <p>getServiceCount</p>
+     *
+     * @return the number of services in the category
+     */
+    public synchronized int getServiceCount() {
+        return m_serviceCount;
+    }
+
+    private void addOutage(final RTCNodeSvcTime svcTime, final int sign) {
+        final long lostTime = svcTime.getLostTime();
+        if (lostTime == -1) {
+            return;
+        }
+        addRamp(lostTime, sign);
+        addRamp(lostTime + m_rollingWindow, -sign);
+
+        final long regainedTime = svcTime.getRegainedTime();
+        if (regainedTime != -1) {
+            addRamp(regainedTime, -sign);
+            addRamp(regainedTime + m_rollingWindow, sign);
+        }
+    }
+
+    private void addRamp(final long start, final long slope) {
+        if (start <= m_time) {
+            m_downTime += slope * (m_time - start);
+            m_slope += slope;
+        } else {
+            final Long pending = m_pending.get(start);
+            final long sum = (pending == null ? 0 : pending.longValue()) + slope;
+            if (sum == 0) {
+                m_pending.remove(start);
+            } else {
+                m_pending.put(start, sum);
+            }
+        }
+    }
+
+    private synchronized Snapshot advance(final long curTime) {
+        if (curTime > m_time) {
+            while (!m_pending.isEmpty() && m_pending.firstKey() <= curTime) {
+                final Map.Entry<Long, Long> ramp = m_pending.pollFirstEntry();
+                m_downTime += m_slope * (ramp.getKey() - m_time);
+                m_time = ramp.getKey();
+                m_slope += ramp.getValue();
+            }
+            m_downTime += m_slope * (curTime - m_time);
+            m_time = curTime;
+            publish();
+        }
+        return m_snapshot;
+    }
+
+    private void publish() {
+        m_snapshot = new Snapshot(m_time, m_downTime, m_slope, m_serviceCount, m_pending.isEmpty() ? Long.MAX_VALUE : m_pending.firstKey());
+    }
+}
@@ -33,9 +33,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The RTCHashMap has either a nodeid or a nodeid/ip as key and provides
@@ -60,8 +61,12 @@ public class RTCHashMap {
         m_map = new HashMap<RTCNodeKey,List<RTCNode>>(initialCapacity);
     }
 
-    private List<Long> getNodeIDs() {
-    	List<Long> nodes = new LinkedList<Long>();
+    /**
+     * Returns each node ID once, although every node is stored under
+     * several keys (node, node and IP, node and IP and service).
+     */
+    private Set<Long> getNodeIDs() {
+    	Set<Long> nodes = new LinkedHashSet<Long>();
     	for (Iterator<RTCNodeKey> it = m_map.keySet().iterator(); it.hasNext();) {
 			RTCNodeKey key = it.next();
 			nodes.add(key.getNodeID());
@@ -99,13 +99,14 @@ public class EuiLevelMapper extends Object {
 
         // get a handle to data
         DataManager rtcDataMgr = RTCManager.getDataManager();
-        synchronized (rtcDataMgr) {
-            // category label
-            levelCat.setCatlabel(rtcCat.getLabel());
 
-            // value for this category
-            levelCat.setCatvalue(rtcDataMgr.getValue(rtcCat.getLabel(), curTime, rWindow));
+        // category label
+        levelCat.setCatlabel(rtcCat.getLabel());
+
+        // value for this category, which does not need the data manager lock
+        levelCat.setCatvalue(rtcDataMgr.getValue(rtcCat.getLabel(), curTime, rWindow));
 
+        synchronized (rtcDataMgr) {
             // nodes in this category
             Iterator<Long> nodeIter = rtcCat.getNodes().iterator();
             while (nodeIter.hasNext()) {
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how many scheduled tasks are due in each second.
+ *
+ * The counts are kept in a ring of one bucket per second covering the next
+ * hour.  Each bucket packs the second it currently counts for together with
+ * its count in a single long so that it can be claimed and incremented with
+ * one compare-and-set; a bucket still holding a second that has passed is
+ * simply reused.
+ */
+public final class DueTimeHistogram {
+
+    /** Constant <code>SECONDS=3600</code> */
+    public static final int SECONDS = 3600;
+
+    private final AtomicLongArray m_buckets = new AtomicLongArray(SECONDS);
+
+    /**
+     * Record a task that is due at the given time.
+     *
+     * @param now the current time in milliseconds
+     * @param dueTime the time the task is due in milliseconds
+     */
+    public void record(final long now, final long dueTime) {
+        final long second = Math.max(now, dueTime) / 1000;
+        if (second - now / 1000 >= SECONDS) {
+            // beyond what the ring covers
+            return;
+        }
+
+        final int index = (int) (second % SECONDS);
+        for (;;) {
+            final long bucket = m_buckets.get(index);
+            final long updated = (bucket >>> 32) == second ? bucket + 1 : (second << 32) | 1;
+            if (m_buckets.compareAndSet(index, bucket, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks due in each of the next seconds.
+     *
+     * @param now the current time in milliseconds
+     * @param seconds the number of seconds to report, at most {@link #SECONDS}
+     * @return the counts, the first element being the current second
+     */
+    public int[] getDuePerSecond(final long now, final int seconds) {
+        final int[] due = new int[Math.min(seconds, SECONDS)];
+        final long first = now / 1000;
+        for (int i = 0; i < due.length; i++) {
+            final long second = first + i;
+            final long bucket = m_buckets.get((int) (second % SECONDS));
+            if ((bucket >>> 32) == second) {
+                due[i] = (int) (bucket & 0xffffffffL);
+            }
+        }
+        return due;
+    }
+}
@@ -90,6 +90,11 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
      */
     private long m_numTasksExecuted = 0;
 
+    /**
+     * Used to keep track of when the scheduled tasks are due.
+     */
+    private final DueTimeHistogram m_dueTimes = new DueTimeHistogram();
+
     /**
      * This queue extends the standard FIFO queue instance so that it is
      * possible to peek at an instance without removing it from the queue.
@@ -197,7 +202,9 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
     /** {@inheritDoc} */
     @Override
     public synchronized void schedule(long interval, final ReadyRunnable runnable) {
-        final long timeToRun = getCurrentTime()+interval;
+        final long now = getCurrentTime();
+        final long timeToRun = now+interval;
+        m_dueTimes.record(now, timeToRun);
         ReadyRunnable timeKeeper = new ReadyRunnable() {
             @Override
             public boolean isReady() {
@@ -498,4 +505,10 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
     public long getNumTasksExecuted() {
         return m_numTasksExecuted;
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public int[] getJobsDuePerSecond(int seconds) {
+        return m_dueTimes.getDuePerSecond(getCurrentTime(), seconds);
+    }
 }
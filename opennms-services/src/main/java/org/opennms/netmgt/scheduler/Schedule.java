@@ -126,11 +126,20 @@ public class Schedule {
      * <p>schedule</p>
      */
     public void schedule() {
-        m_scheduled = true;
         schedule(0);
     }
 
-    private void schedule(long interval) {
+    /**
+     * Schedule the first run after the given delay.
+     *
+     * @param initialDelay the delay in milliseconds before the first run
+     */
+    public void schedule(long initialDelay) {
+        m_scheduled = true;
+        reschedule(initialDelay);
+    }
+
+    private void reschedule(long interval) {
         if (interval >= 0 && m_scheduled)
             m_timer.schedule(interval, new ScheduleEntry(++m_currentExpirationCode));
     }
@@ -146,7 +155,7 @@ public class Schedule {
      * <p>adjustSchedule</p>
      */
     public void adjustSchedule() {
-        schedule(m_interval.getInterval());
+        reschedule(m_interval.getInterval());
     }
 
     /**
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+/**
+ * Spreads the first run of scheduled tasks across their interval.
+ *
+ * When a daemon starts it schedules every existing service at once.  With a
+ * delay of zero they all run in the same second and, since they share an
+ * interval, keep doing so every interval after that.  When spreading is
+ * enabled each task is instead given a first-run delay between zero and its
+ * interval, derived from a hash of a key identifying it (for example the
+ * node, interface and service).  The delay for a given key is always the
+ * same, so the load stays flat across restarts.
+ *
+ * Spreading is disabled by default and is enabled by setting the
+ * <code>org.opennms.netmgt.scheduler.spreadStartup</code> system property
+ * to <code>true</code>.
+ */
+public class ScheduleSpreader {
+
+    /** Constant <code>SPREAD_STARTUP_PROPERTY="org.opennms.netmgt.scheduler.spreadStartup"</code> */
+    public static final String SPREAD_STARTUP_PROPERTY = "org.opennms.netmgt.scheduler.spreadStartup";
+
+    private volatile boolean m_enabled;
+
+    /**
+     * Create a spreader that is enabled according to the
+     * <code>org.opennms.netmgt.scheduler.spreadStartup</code> system property.
+     */
+    public ScheduleSpreader() {
+        this(Boolean.getBoolean(SPREAD_STARTUP_PROPERTY));
+    }
+
+    /**
+     * <p>Constructor for ScheduleSpreader.</p>
+     *
+     * @param enabled whether first runs are spread across the interval
+     */
+    public ScheduleSpreader(final boolean enabled) {
+        m_enabled = enabled;
+    }
+
+    /**
+     * <p>isEnabled</p>
+     *
+     * @return true if first runs are spread across the interval
+     */
+    public boolean isEnabled() {
+        return m_enabled;
+    }
+
+    /**
+     * <p>setEnabled</p>
+     *
+     * @param enabled whether first runs are spread across the interval
+     */
+    public void setEnabled(final boolean enabled) {
+        m_enabled = enabled;
+    }
+
+    /**
+     * Returns the delay before the first run of a task.
+     *
+     * @param key a string identifying the task
+     * @param interval the interval the task runs at in milliseconds
+     * @return a delay in <code>[0, interval)</code>, or 0 if spreading is
+     *         disabled or the interval is not positive
+     */
+    public long getInitialDelay(final String key, final long interval) {
+        if (!m_enabled || interval <= 0 || key == null) {
+            return 0;
+        }
+        return getOffset(key, interval);
+    }
+
+    /**
+     * Map a key onto an offset in <code>[0, interval)</code>.  Keys that
+     * differ only slightly, like consecutive IP addresses, are mixed so that
+     * they end up far apart.
+     */
+    static long getOffset(final String key, final long interval) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        final long unsigned = h & 0xffffffffL;
+        if (interval <= Integer.MAX_VALUE) {
+            return (unsigned * interval) >>> 32;
+        }
+        return unsigned % interval;
+    }
+}
@@ -105,4 +105,13 @@ public interface Scheduler extends ScheduleTimer {
          * @return the number of task executed
          */
         public abstract long getNumTasksExecuted();
+
+        /**
+         * Returns the number of scheduled tasks that are due in each of the
+         * next <code>seconds</code> seconds, starting with the current one.
+         *
+         * @param seconds the number of seconds to report
+         * @return the number of tasks due in each second
+         */
+        public abstract int[] getJobsDuePerSecond(int seconds);
 }
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link Scheduler} used by the polling and collection daemons.
+ *
+ * The implementation is selected with the
+ * <code>org.opennms.netmgt.scheduler.type</code> system property:
+ * <code>legacy</code> (the default) for the {@link LegacyScheduler} or
+ * <code>timerwheel</code> for the {@link TimerWheelScheduler}.
+ */
+public final class SchedulerFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchedulerFactory.class);
+
+    /** Constant <code>SCHEDULER_TYPE_PROPERTY="org.opennms.netmgt.scheduler.type"</code> */
+    public static final String SCHEDULER_TYPE_PROPERTY = "org.opennms.netmgt.scheduler.type";
+
+    /** Constant <code>TYPE_LEGACY="legacy"</code> */
+    public static final String TYPE_LEGACY = "legacy";
+
+    /** Constant <code>TYPE_TIMER_WHEEL="timerwheel"</code> */
+    public static final String TYPE_TIMER_WHEEL = "timerwheel";
+
+    private SchedulerFactory() {
+    }
+
+    /**
+     * Create a scheduler of the configured type.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @return a {@link org.opennms.netmgt.scheduler.Scheduler} object.
+     */
+    public static Scheduler createScheduler(final String parent, final int maxSize) {
+        final String type = System.getProperty(SCHEDULER_TYPE_PROPERTY, TYPE_LEGACY);
+        if (TYPE_TIMER_WHEEL.equalsIgnoreCase(type)) {
+            LOG.debug("createScheduler: creating timer wheel scheduler for {}", parent);
+            return new TimerWheelScheduler(parent, maxSize);
+        } else if (!TYPE_LEGACY.equalsIgnoreCase(type)) {
+            LOG.warn("createScheduler: unknown scheduler type '{}', using '{}'", type, TYPE_LEGACY);
+        }
+        return new LegacyScheduler(parent, maxSize);
+    }
+}
@@ -0,0 +1,724 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Scheduler} based on a hierarchical timing wheel.
+ *
+ * Scheduled runnables are kept in one of four wheels of slots: the first has
+ * 256 slots of one tick each, each of the others has 64 slots that each span
+ * a whole revolution of the wheel below it.  Adding and cancelling a
+ * runnable are constant time operations.  On every tick the dispatcher
+ * thread only looks at the runnables in the current slot of the first wheel,
+ * cascading runnables from the higher wheels down as their time approaches.
+ *
+ * Unlike the {@link LegacyScheduler}, a runnable that is not yet ready does
+ * not block the runnables behind it: it is simply put back on the wheel and
+ * checked again after <code>notReadyDelay</code> milliseconds.
+ *
+ * New and cancelled runnables are handed to the dispatcher through lock-free
+ * queues, so callers of {@link #schedule(long, ReadyRunnable)} never contend
+ * with the dispatcher.
+ *
+ * The scheduler keeps a histogram of how late runnables were handed to the
+ * thread pool and the number of pending runnables on each wheel.
+ */
+public class TimerWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimerWheelScheduler.class);
+
+    /** Constant <code>DEFAULT_TICK_DURATION=10</code> */
+    public static final long DEFAULT_TICK_DURATION = 10;
+
+    /** Constant <code>DEFAULT_NOT_READY_DELAY=1000</code> */
+    public static final long DEFAULT_NOT_READY_DELAY = 1000;
+
+    private static final int ROOT_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVELS = 4;
+    private static final int ROOT_SIZE = 1 << ROOT_BITS;
+    private static final int ROOT_MASK = ROOT_SIZE - 1;
+    private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+    private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+
+    /**
+     * Upper bounds, in milliseconds, of the lateness histogram buckets. The
+     * last bucket counts everything later than the last bound.
+     */
+    private static final long[] LATENESS_BOUNDS = { 10, 50, 100, 500, 1000, 5000, 10000, 60000 };
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    /**
+     * A runnable scheduled on the wheel.
+     */
+    public final class Timeout {
+        private final ReadyRunnable m_runnable;
+        private final AtomicInteger m_state = new AtomicInteger(PENDING);
+        private volatile long m_deadline;
+
+        // owned by the dispatcher thread
+        private long m_expires;
+        private Slot m_slot;
+        private Timeout m_prev;
+        private Timeout m_next;
+
+        private Timeout(final ReadyRunnable runnable, final long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+        }
+
+        /**
+         * Cancel the runnable if it has not been handed to the thread pool
+         * yet.
+         *
+         * @return true if the runnable was cancelled by this call
+         */
+        public boolean cancel() {
+            if (m_state.compareAndSet(PENDING, CANCELLED)) {
+                m_cancelled.add(this);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return true if the runnable was cancelled before it ran
+         */
+        public boolean isCancelled() {
+            return m_state.get() == CANCELLED;
+        }
+
+        /**
+         * @return the time at which the runnable is due
+         */
+        public long getDeadline() {
+            return m_deadline;
+        }
+
+        /**
+         * @return the scheduled runnable
+         */
+        public ReadyRunnable getRunnable() {
+            return m_runnable;
+        }
+
+        @Override
+        public String toString() {
+            return m_runnable + " (ready in " + Math.max(0, m_deadline - getCurrentTime()) + "ms)";
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts so that removal is constant time.
+     */
+    private static final class Slot {
+        private final int m_level;
+        private Timeout m_head;
+
+        private Slot(final int level) {
+            m_level = level;
+        }
+
+        private void add(final Timeout timeout) {
+            timeout.m_slot = this;
+            timeout.m_prev = null;
+            timeout.m_next = m_head;
+            if (m_head != null) {
+                m_head.m_prev = timeout;
+            }
+            m_head = timeout;
+        }
+
+        private void remove(final Timeout timeout) {
+            if (timeout.m_prev == null) {
+                m_head = timeout.m_next;
+            } else {
+                timeout.m_prev.m_next = timeout.m_next;
+            }
+            if (timeout.m_next != null) {
+                timeout.m_next.m_prev = timeout.m_prev;
+            }
+            timeout.m_slot = null;
+            timeout.m_prev = null;
+            timeout.m_next = null;
+        }
+
+        private Timeout detachAll() {
+            final Timeout head = m_head;
+            m_head = null;
+            return head;
+        }
+    }
+
+    private final Slot[][] m_wheels;
+
+    private final long m_tickDuration;
+
+    private long m_notReadyDelay = DEFAULT_NOT_READY_DELAY;
+
+    /**
+     * The time of tick zero, set when the dispatcher starts.
+     */
+    private long m_startTime;
+
+    /**
+     * The last tick processed by the dispatcher.
+     */
+    private long m_currentTick;
+
+    private final Queue<Timeout> m_newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+    private final Queue<Timeout> m_cancelled = new ConcurrentLinkedQueue<Timeout>();
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    private final AtomicIntegerArray m_pendingByLevel = new AtomicIntegerArray(LEVELS);
+
+    private final AtomicLongArray m_lateness = new AtomicLongArray(LATENESS_BOUNDS.length + 1);
+
+    private final AtomicLong m_numTasksExecuted = new AtomicLong();
+
+    private final DueTimeHistogram m_dueTimes = new DueTimeHistogram();
+
+    /**
+     * The pool of threads that are used to executed the runnable instances
+     * scheduled by the class' instance.
+     */
+    private final ExecutorService m_runner;
+
+    /**
+     * The status for this fiber.
+     */
+    private int m_status;
+
+    /**
+     * The worker thread that executes this instance.
+     */
+    private Thread m_worker;
+
+    /**
+     * Constructs a new instance of the scheduler with the default tick
+     * duration.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimerWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_DURATION);
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickDuration
+     *            The resolution of the wheel in milliseconds.
+     */
+    public TimerWheelScheduler(final String parent, final int maxSize, final long tickDuration) {
+        Assert.isTrue(tickDuration > 0, "tickDuration must be greater than zero");
+
+        m_status = START_PENDING;
+        m_tickDuration = tickDuration;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize, false));
+
+        m_wheels = new Slot[LEVELS][];
+        for (int level = 0; level < LEVELS; level++) {
+            final int size = level == 0 ? ROOT_SIZE : LEVEL_SIZE;
+            m_wheels[level] = new Slot[size];
+            for (int i = 0; i < size; i++) {
+                m_wheels[level][i] = new Slot(level);
+            }
+        }
+    }
+
+    /**
+     * Schedule a runnable to be run once the interval has passed and it is
+     * ready.  This is the same as {@link #schedule(long, ReadyRunnable)} with
+     * the arguments swapped, for callers written against
+     * {@link LegacyScheduler#schedule(ReadyRunnable, long)}.
+     *
+     * @param runnable
+     *            The element to run when the interval expires.
+     * @param interval
+     *            The delay in milliseconds before the runnable is run.
+     */
+    public void schedule(final ReadyRunnable runnable, final long interval) {
+        schedule(interval, runnable);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        scheduleTimeout(interval, runnable);
+    }
+
+    /**
+     * Schedule a runnable and return a handle that can be used to cancel it.
+     *
+     * @param interval
+     *            The delay in milliseconds before the runnable is run.
+     * @param runnable
+     *            The runnable to run once the delay has passed and it is ready.
+     * @return a {@link Timeout} handle
+     */
+    public Timeout scheduleTimeout(final long interval, final ReadyRunnable runnable) {
+        Assert.notNull(runnable, "runnable argument cannot be null");
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+
+        final long now = getCurrentTime();
+        final Timeout timeout = new Timeout(runnable, now + Math.max(0, interval));
+        m_dueTimes.record(now, timeout.getDeadline());
+        m_scheduled.incrementAndGet();
+        m_newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_runner.toString();
+    }
+
+    /**
+     * Returns total number of runnables currently scheduled.
+     *
+     * @return the number of runnables that have not run or been cancelled yet
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int[] getJobsDuePerSecond(final int seconds) {
+        return m_dueTimes.getDuePerSecond(getCurrentTime(), seconds);
+    }
+
+    /**
+     * <p>getTickDuration</p>
+     *
+     * @return the resolution of the wheel in milliseconds
+     */
+    public long getTickDuration() {
+        return m_tickDuration;
+    }
+
+    /**
+     * <p>getNotReadyDelay</p>
+     *
+     * @return the delay before a runnable that was not ready is checked again
+     */
+    public long getNotReadyDelay() {
+        return m_notReadyDelay;
+    }
+
+    /**
+     * <p>setNotReadyDelay</p>
+     *
+     * @param notReadyDelay the delay in milliseconds before a runnable that
+     *        was not ready is checked again
+     */
+    public void setNotReadyDelay(final long notReadyDelay) {
+        m_notReadyDelay = notReadyDelay;
+    }
+
+    /**
+     * Returns how late runnables were handed to the thread pool, as counts
+     * keyed by the upper bound of each bucket.
+     *
+     * @return a {@link java.util.Map} object.
+     */
+    public Map<String, Long> getLatenessHistogram() {
+        final Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < LATENESS_BOUNDS.length; i++) {
+            histogram.put("<=" + LATENESS_BOUNDS[i] + "ms", m_lateness.get(i));
+        }
+        histogram.put(">" + LATENESS_BOUNDS[LATENESS_BOUNDS.length - 1] + "ms", m_lateness.get(LATENESS_BOUNDS.length));
+        return histogram;
+    }
+
+    /**
+     * Returns the number of pending runnables on each wheel, keyed by the
+     * time span the wheel covers, plus the number of runnables waiting for a
+     * thread in the pool.
+     *
+     * @return a {@link java.util.Map} object.
+     */
+    public Map<String, Integer> getQueueHistogram() {
+        final Map<String, Integer> histogram = new LinkedHashMap<String, Integer>();
+        long span = m_tickDuration * ROOT_SIZE;
+        for (int level = 0; level < LEVELS; level++) {
+            histogram.put("wheel" + level + " (<" + span + "ms)", m_pendingByLevel.get(level));
+            span *= LEVEL_SIZE;
+        }
+        histogram.put("unplaced", m_newTimeouts.size());
+        if (m_runner instanceof ThreadPoolExecutor) {
+            histogram.put("runner", ((ThreadPoolExecutor) m_runner).getQueue().size());
+        }
+        return histogram;
+    }
+
+    /**
+     * The dispatcher loop.  Sleeps until the next tick, then places new
+     * runnables on the wheel, removes cancelled ones and hands the expired
+     * ones to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        m_startTime = getCurrentTime();
+        m_currentTick = 0;
+
+        LOG.debug("run: scheduler running");
+
+        try {
+            for (;;) {
+                synchronized (this) {
+                    if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                        LOG.debug("run: status = {}, time to exit", m_status);
+                        break;
+                    }
+
+                    // if paused or pause pending then block
+                    while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                        if (m_status == PAUSE_PENDING) {
+                            LOG.debug("run: pausing.");
+                        }
+                        m_status = PAUSED;
+                        wait();
+                    }
+
+                    if (m_status == RESUME_PENDING) {
+                        LOG.debug("run: resuming.");
+                        m_status = RUNNING;
+                    }
+
+                    final long sleep = tickTime(m_currentTick + 1) - getCurrentTime();
+                    if (sleep > 0) {
+                        wait(sleep);
+                        continue;
+                    }
+                }
+
+                // process every tick that has passed, catching up if we are behind
+                final long now = getCurrentTime();
+                while (tickTime(m_currentTick + 1) <= now) {
+                    m_currentTick++;
+                    transferTimeouts();
+                    processCancelled();
+                    expireTick(now);
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.debug("run: interrupted");
+        } catch (final RejectedExecutionException e) {
+            throw new UndeclaredThrowableException(e);
+        } finally {
+            LOG.debug("run: scheduler exiting, state = STOPPED");
+            synchronized (this) {
+                m_status = STOPPED;
+            }
+        }
+    }
+
+    private long tickTime(final long tick) {
+        return m_startTime + tick * m_tickDuration;
+    }
+
+    private void transferTimeouts() {
+        Timeout timeout;
+        while ((timeout = m_newTimeouts.poll()) != null) {
+            if (timeout.m_state.get() != PENDING) {
+                continue;
+            }
+            place(timeout, timeout.m_deadline);
+        }
+    }
+
+    private void processCancelled() {
+        Timeout timeout;
+        while ((timeout = m_cancelled.poll()) != null) {
+            if (timeout.m_slot != null) {
+                m_pendingByLevel.decrementAndGet(timeout.m_slot.m_level);
+                timeout.m_slot.remove(timeout);
+            }
+            m_scheduled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Put a timeout on the wheel that covers its deadline.
+     */
+    private void place(final Timeout timeout, final long deadline) {
+        // round up so that nothing runs before its deadline
+        long expires = (deadline - m_startTime + m_tickDuration - 1) / m_tickDuration;
+        if (expires < m_currentTick) {
+            // overdue; the current tick has not been processed yet
+            expires = m_currentTick;
+        }
+        timeout.m_expires = expires;
+
+        final long delta = expires - m_currentTick;
+        final int level;
+        final int index;
+        if (delta < ROOT_SIZE) {
+            level = 0;
+            index = (int) (expires & ROOT_MASK);
+        } else if (delta < 1L << (ROOT_BITS + LEVEL_BITS)) {
+            level = 1;
+            index = (int) ((expires >> ROOT_BITS) & LEVEL_MASK);
+        } else if (delta < 1L << (ROOT_BITS + 2 * LEVEL_BITS)) {
+            level = 2;
+            index = (int) ((expires >> (ROOT_BITS + LEVEL_BITS)) & LEVEL_MASK);
+        } else {
+            // anything further out than the top wheel covers is parked one
+            // revolution ahead and re-placed when it cascades
+            final long capped = Math.min(expires, m_currentTick + (1L << (ROOT_BITS + 3 * LEVEL_BITS)) - 1);
+            level = 3;
+            index = (int) ((capped >> (ROOT_BITS + 2 * LEVEL_BITS)) & LEVEL_MASK);
+        }
+
+        m_wheels[level][index].add(timeout);
+        m_pendingByLevel.incrementAndGet(level);
+    }
+
+    private void expireTick(final long now) {
+        final long tick = m_currentTick;
+
+        // cascade the higher wheels down when the wheel below wraps
+        if ((tick & ROOT_MASK) == 0) {
+            int shift = ROOT_BITS;
+            for (int level = 1; level < LEVELS; level++) {
+                final int index = (int) ((tick >> shift) & LEVEL_MASK);
+                cascade(m_wheels[level][index]);
+                if (index != 0) {
+                    break;
+                }
+                shift += LEVEL_BITS;
+            }
+        }
+
+        final Slot slot = m_wheels[0][(int) (tick & ROOT_MASK)];
+        Timeout timeout = slot.detachAll();
+        while (timeout != null) {
+            final Timeout next = timeout.m_next;
+            timeout.m_slot = null;
+            timeout.m_prev = null;
+            timeout.m_next = null;
+            m_pendingByLevel.decrementAndGet(0);
+
+            if (timeout.m_expires > tick) {
+                place(timeout, timeout.m_deadline);
+            } else {
+                expire(timeout, now);
+            }
+            timeout = next;
+        }
+    }
+
+    private void cascade(final Slot slot) {
+        Timeout timeout = slot.detachAll();
+        while (timeout != null) {
+            final Timeout next = timeout.m_next;
+            timeout.m_slot = null;
+            timeout.m_prev = null;
+            timeout.m_next = null;
+            m_pendingByLevel.decrementAndGet(slot.m_level);
+            place(timeout, timeout.m_deadline);
+            timeout = next;
+        }
+    }
+
+    private void expire(final Timeout timeout, final long now) {
+        if (timeout.m_state.get() != PENDING) {
+            return;
+        }
+
+        final ReadyRunnable runnable = timeout.m_runnable;
+        if (!runnable.isReady()) {
+            // check again later without holding up anything else
+            timeout.m_deadline = now + Math.max(m_notReadyDelay, m_tickDuration);
+            place(timeout, timeout.m_deadline);
+            return;
+        }
+
+        if (!timeout.m_state.compareAndSet(PENDING, EXPIRED)) {
+            return;
+        }
+
+        LOG.debug("run: found ready runnable {}", runnable);
+
+        recordLateness(now - timeout.m_deadline);
+        m_scheduled.decrementAndGet();
+        m_numTasksExecuted.incrementAndGet();
+        m_runner.execute(runnable);
+    }
+
+    private void recordLateness(final long lateness) {
+        int bucket = 0;
+        while (bucket < LATENESS_BOUNDS.length && lateness > LATENESS_BOUNDS[bucket]) {
+            bucket++;
+        }
+        m_lateness.incrementAndGet(bucket);
+    }
+}
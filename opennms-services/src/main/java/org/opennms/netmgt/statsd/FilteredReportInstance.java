@@ -38,7 +38,6 @@ import org.opennms.netmgt.dao.support.AttributeMatchingResourceVisitor;
 import org.opennms.netmgt.dao.support.FilterResourceWalker;
 import org.opennms.netmgt.dao.support.ResourceAttributeFilteringResourceVisitor;
 import org.opennms.netmgt.dao.support.ResourceTypeFilteringResourceVisitor;
-import org.opennms.netmgt.dao.support.RrdStatisticAttributeVisitor;
 import org.opennms.netmgt.filter.FilterDao;
 import org.opennms.netmgt.model.AttributeStatistic;
 import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
@@ -52,7 +51,7 @@ import org.springframework.beans.factory.InitializingBean;
  */
 public class FilteredReportInstance extends AbstractReportInstance implements ReportInstance, InitializingBean {
     private final AttributeStatisticVisitorWithResults m_attributeStatisticVisitor;
-    private final RrdStatisticAttributeVisitor m_rrdVisitor = new RrdStatisticAttributeVisitor();
+    private final PartitionedStatisticAttributeVisitor m_rrdVisitor = new PartitionedStatisticAttributeVisitor();
     private final AttributeMatchingResourceVisitor m_attributeVisitor = new AttributeMatchingResourceVisitor();
     private final ResourceTypeFilteringResourceVisitor m_resourceTypeVisitor = new ResourceTypeFilteringResourceVisitor();
     private final FilterResourceWalker m_walker = new FilterResourceWalker();
@@ -114,6 +113,24 @@ public class FilteredReportInstance extends AbstractReportInstance implements Re
         m_rrdVisitor.setRrdDao(rrdDao);
     }
     
+    /**
+     * <p>setThreads</p>
+     *
+     * @param threads the number of threads to read statistics with
+     */
+    public void setThreads(int threads) {
+        m_rrdVisitor.setThreads(threads);
+    }
+
+    /**
+     * <p>setStatisticCache</p>
+     *
+     * @param statisticCache a {@link org.opennms.netmgt.statsd.StatisticCache} object, or null
+     */
+    public void setStatisticCache(StatisticCache statisticCache) {
+        m_rrdVisitor.setStatisticCache(statisticCache);
+    }
+    
     /**
      * <p>walk</p>
      */
@@ -121,6 +138,7 @@ public class FilteredReportInstance extends AbstractReportInstance implements Re
     public void walk() {
         setJobStartedDate(new Date());
         m_walker.walk();
+        m_rrdVisitor.computeStatistics();
         setJobCompletedDate(new Date());
     }
 
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.statsd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.netmgt.dao.support.RrdStatisticAttributeVisitor;
+import org.opennms.netmgt.model.AttributeStatistic;
+import org.opennms.netmgt.model.AttributeStatisticVisitor;
+import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
+import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.util.Assert;
+
+/**
+ * <p>An {@link RrdStatisticAttributeVisitor} that reads the statistics of
+ * many attributes in parallel.</p>
+ *
+ * <p>While the resource tree is walked the attributes are only collected.
+ * After every {@link #BATCH_SIZE} attributes, and once more in
+ * {@link #computeStatistics()}, they are split into one partition per
+ * thread.  Each partition reads its statistics into its own instance of the
+ * report's statistic visitor, which only keeps the best <code>count</code>
+ * results, and the winners of every partition are merged into the report's
+ * visitor at the end.  The same thread pool is used for every batch of a
+ * report and is shut down by {@link #computeStatistics()}.  The RRD files
+ * are read through a shared {@link StatisticCache}, if one is set, which
+ * is grown to hold every attribute of the report.</p>
+ */
+public class PartitionedStatisticAttributeVisitor extends RrdStatisticAttributeVisitor {
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedStatisticAttributeVisitor.class);
+
+    /**
+     * The statistics are computed whenever this many attributes have been
+     * collected, so that the attributes of a large resource tree are not
+     * all held in memory at once.
+     */
+    static final int BATCH_SIZE = 10000;
+
+    private final List<OnmsAttribute> m_attributes = new ArrayList<OnmsAttribute>();
+    private int m_attributeCount = 0;
+    private int m_threads = 1;
+    private StatisticCache m_statisticCache;
+    private ExecutorService m_executor;
+
+    /** {@inheritDoc} */
+    @Override
+    public void visit(final OnmsAttribute attribute) {
+        if (!RrdGraphAttribute.class.isAssignableFrom(attribute.getClass())) {
+            // Nothing to do if we can't cast to an RrdGraphAttribute
+            return;
+        }
+        m_attributes.add(attribute);
+        m_attributeCount++;
+        if (m_attributes.size() >= BATCH_SIZE) {
+            computeBatch();
+        }
+    }
+
+    /**
+     * <p>Reads the statistics of every attribute that is left and passes the
+     * best of them to the statistic visitor.  This must be called once the
+     * resource tree has been walked.</p>
+     */
+    public void computeStatistics() {
+        try {
+            computeBatch();
+        } finally {
+            if (m_executor != null) {
+                m_executor.shutdownNow();
+                m_executor = null;
+            }
+            m_attributeCount = 0;
+        }
+    }
+
+    private void computeBatch() {
+        final List<OnmsAttribute> attributes = new ArrayList<OnmsAttribute>(m_attributes);
+        m_attributes.clear();
+
+        if (m_statisticCache != null) {
+            // keep every value of this report until the next report has read it
+            m_statisticCache.ensureCapacity(m_attributeCount);
+        }
+
+        final int partitions = Math.min(m_threads, attributes.size());
+        if (partitions <= 1 || !(getStatisticVisitor() instanceof AttributeStatisticVisitorWithResults)) {
+            for (final OnmsAttribute attribute : attributes) {
+                visitStatistic(attribute, getStatisticVisitor());
+            }
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        if (m_executor == null) {
+            m_executor = Executors.newFixedThreadPool(m_threads, new LogPreservingThreadFactory(getClass().getSimpleName(), m_threads, true));
+        }
+        boolean completed = false;
+        try {
+            final List<Future<SortedSet<AttributeStatistic>>> futures = new ArrayList<Future<SortedSet<AttributeStatistic>>>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                futures.add(m_executor.submit(new Partition(attributes, i, partitions)));
+            }
+
+            for (final Future<SortedSet<AttributeStatistic>> future : futures) {
+                for (final AttributeStatistic statistic : getResult(future)) {
+                    getStatisticVisitor().visit(statistic.getAttribute(), statistic.getStatistic());
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // the walk is aborted, so computeStatistics() may never be called
+                m_executor.shutdownNow();
+                m_executor = null;
+            }
+        }
+
+        LOG.debug("Read {} attributes in {} partitions in {} ms.", attributes.size(), partitions, System.currentTimeMillis() - start);
+    }
+
+    private static SortedSet<AttributeStatistic> getResult(final Future<SortedSet<AttributeStatistic>> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessResourceFailureException("Interrupted while reading statistics", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new DataAccessResourceFailureException("Unable to read statistics: " + e.getCause(), e.getCause());
+        }
+    }
+
+    private void visitStatistic(final OnmsAttribute attribute, final AttributeStatisticVisitor visitor) {
+        final double statistic;
+        if (m_statisticCache == null) {
+            statistic = getRrdDao().getPrintValue(attribute, getConsolidationFunction(), getStartTime(), getEndTime());
+        } else {
+            statistic = m_statisticCache.getPrintValue(getRrdDao(), attribute, getConsolidationFunction(), getStartTime(), getEndTime());
+        }
+
+        // NaN means there is no data, see RrdStatisticAttributeVisitor
+        if (Double.isNaN(statistic)) {
+            return;
+        }
+
+        visitor.visit(attribute, statistic);
+    }
+
+    /**
+     * Reads every <code>partitions</code>th attribute, starting at
+     * <code>offset</code>, into a new instance of the report's visitor.
+     */
+    private final class Partition implements Callable<SortedSet<AttributeStatistic>> {
+        private final List<OnmsAttribute> m_partitionAttributes;
+        private final int m_offset;
+        private final int m_partitions;
+
+        public Partition(final List<OnmsAttribute> attributes, final int offset, final int partitions) {
+            m_partitionAttributes = attributes;
+            m_offset = offset;
+            m_partitions = partitions;
+        }
+
+        @Override
+        public SortedSet<AttributeStatistic> call() throws Exception {
+            final AttributeStatisticVisitorWithResults reportVisitor = (AttributeStatisticVisitorWithResults) getStatisticVisitor();
+            final AttributeStatisticVisitorWithResults visitor = reportVisitor.getClass().newInstance();
+            visitor.setCount(reportVisitor.getCount());
+            visitor.afterPropertiesSet();
+
+            for (int i = m_offset; i < m_partitionAttributes.size(); i += m_partitions) {
+                visitStatistic(m_partitionAttributes.get(i), visitor);
+            }
+            return visitor.getResults();
+        }
+    }
+
+    /**
+     * <p>getThreads</p>
+     *
+     * @return the number of threads to read statistics with
+     */
+    public int getThreads() {
+        return m_threads;
+    }
+
+    /**
+     * <p>setThreads</p>
+     *
+     * @param threads the number of threads to read statistics with
+     */
+    public void setThreads(final int threads) {
+        Assert.isTrue(threads > 0, "threads must be at least 1");
+        m_threads = threads;
+    }
+
+    /**
+     * <p>getStatisticCache</p>
+     *
+     * @return a {@link org.opennms.netmgt.statsd.StatisticCache} object, or null
+     */
+    public StatisticCache getStatisticCache() {
+        return m_statisticCache;
+    }
+
+    /**
+     * <p>setStatisticCache</p>
+     *
+     * @param statisticCache a {@link org.opennms.netmgt.statsd.StatisticCache} object, or null to read every statistic
+     */
+    public void setStatisticCache(final StatisticCache statisticCache) {
+        m_statisticCache = statisticCache;
+    }
+}
@@ -252,6 +252,22 @@ public class ReportDefinition implements InitializingBean {
      * @throws java.lang.Exception if any.
      */
     public ReportInstance createReport(NodeDao nodeDao, ResourceDao resourceDao, RrdDao rrdDao, FilterDao filterDao) throws Exception {
+        return createReport(nodeDao, resourceDao, rrdDao, filterDao, null, 1);
+    }
+
+    /**
+     * <p>createReport</p>
+     *
+     * @param nodeDao a {@link org.opennms.netmgt.dao.api.NodeDao} object.
+     * @param resourceDao a {@link org.opennms.netmgt.dao.api.ResourceDao} object.
+     * @param rrdDao a {@link org.opennms.netmgt.dao.api.RrdDao} object.
+     * @param filterDao a {@link org.opennms.netmgt.filter.FilterDao} object.
+     * @param statisticCache a {@link org.opennms.netmgt.statsd.StatisticCache} shared between reports, or null
+     * @param threads the number of threads to read statistics with
+     * @return a {@link org.opennms.netmgt.statsd.ReportInstance} object.
+     * @throws java.lang.Exception if any.
+     */
+    public ReportInstance createReport(NodeDao nodeDao, ResourceDao resourceDao, RrdDao rrdDao, FilterDao filterDao, StatisticCache statisticCache, int threads) throws Exception {
         Assert.notNull(resourceDao, "resourceDao argument must not be null");
         Assert.notNull(rrdDao, "rrdDao argument must not be null");
         Assert.notNull(filterDao, "filterDao argument must not be null");
@@ -271,12 +287,16 @@ public class ReportDefinition implements InitializingBean {
             thisReport.setRrdDao(rrdDao);
             thisReport.setFilterDao(filterDao);
             thisReport.setFilter(getReport().getPackage().getFilter());
+            thisReport.setStatisticCache(statisticCache);
+            thisReport.setThreads(threads);
             
             report = thisReport;
         } else {
             UnfilteredReportInstance thisReport = new UnfilteredReportInstance(visitor); 
             thisReport.setResourceDao(resourceDao);
             thisReport.setRrdDao(rrdDao);
+            thisReport.setStatisticCache(statisticCache);
+            thisReport.setThreads(threads);
             
             report = thisReport;
         }
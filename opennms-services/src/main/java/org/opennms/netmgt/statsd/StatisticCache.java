@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.statsd;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.netmgt.dao.api.RrdDao;
+import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+
+/**
+ * <p>Remembers the statistics read from RRD files so that report
+ * definitions which look at the same attributes, with the same
+ * consolidation function and over the same period, do not open the same
+ * files again.  Values are kept by the exact start and end of their
+ * period, so they are only reused between reports that run at the same
+ * time over the same period, not by the next run of a report.</p>
+ *
+ * <p>The least recently used values are dropped once the cache is full.
+ * Reports grow the cache with {@link #ensureCapacity(int)} to hold all of
+ * their attributes, because reports read their attributes in the same
+ * order and a cache smaller than a report would drop every value before
+ * the next report asks for it.  Reports that bracket their run with
+ * {@link #reportStarted()} and {@link #reportFinished()} shrink the cache
+ * back to its configured size once no report is running, so that it does
+ * not hold on to the values of the largest report between runs.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class StatisticCache {
+    private final int m_size;
+    private int m_maxSize;
+    private int m_activeReports = 0;
+    private final Map<String, Double> m_values;
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+
+    /**
+     * <p>Constructor for StatisticCache.</p>
+     *
+     * @param maxSize the maximum number of values to remember
+     */
+    public StatisticCache(final int maxSize) {
+        m_size = maxSize;
+        m_maxSize = maxSize;
+        m_values = new LinkedHashMap<String, Double>(16, 0.75f, true) {
+            private static final long serialVersionUID = 5036393218745337745L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Double> eldest) {
+                return size() > m_maxSize;
+            }
+        };
+    }
+
+    /**
+     * <p>Grows the cache so that it can hold at least <code>size</code>
+     * values.  The cache shrinks again when the last running report calls
+     * {@link #reportFinished()}.</p>
+     *
+     * @param size the number of values the cache must be able to hold
+     */
+    public void ensureCapacity(final int size) {
+        synchronized (m_values) {
+            if (size > m_maxSize) {
+                m_maxSize = size;
+            }
+        }
+    }
+
+    /**
+     * <p>Marks the start of a report that reads through this cache.</p>
+     */
+    public void reportStarted() {
+        synchronized (m_values) {
+            m_activeReports++;
+        }
+    }
+
+    /**
+     * <p>Marks the end of a report that reads through this cache.  When no
+     * other report is running, the cache goes back to its configured size
+     * and drops the least recently used values that no longer fit.</p>
+     */
+    public void reportFinished() {
+        synchronized (m_values) {
+            if (m_activeReports > 0) {
+                m_activeReports--;
+            }
+            if (m_activeReports == 0 && m_maxSize > m_size) {
+                m_maxSize = m_size;
+                final Iterator<String> it = m_values.keySet().iterator();
+                while (m_values.size() > m_maxSize && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>getMaxSize</p>
+     *
+     * @return the maximum number of values to remember
+     */
+    public int getMaxSize() {
+        synchronized (m_values) {
+            return m_maxSize;
+        }
+    }
+
+    /**
+     * <p>Returns the statistic for the attribute, reading it from the RRD
+     * file only if it is not cached already.</p>
+     *
+     * @param rrdDao the DAO to read the statistic with
+     * @param attribute an {@link org.opennms.netmgt.model.RrdGraphAttribute}
+     * @param cf the consolidation function
+     * @param start the start of the period, in milliseconds
+     * @param end the end of the period, in milliseconds
+     * @return the statistic, which may be NaN if there is no data
+     */
+    public double getPrintValue(final RrdDao rrdDao, final OnmsAttribute attribute, final String cf, final long start, final long end) {
+        final String key = getKey(attribute, cf, start, end);
+
+        final Double cached;
+        synchronized (m_values) {
+            cached = m_values.get(key);
+        }
+        if (cached != null) {
+            m_hits.incrementAndGet();
+            return cached;
+        }
+
+        m_misses.incrementAndGet();
+        final double statistic = rrdDao.getPrintValue(attribute, cf, start, end);
+        synchronized (m_values) {
+            m_values.put(key, statistic);
+        }
+        return statistic;
+    }
+
+    private static String getKey(final OnmsAttribute attribute, final String cf, final long start, final long end) {
+        final String path = attribute instanceof RrdGraphAttribute ? ((RrdGraphAttribute) attribute).getRrdRelativePath() : attribute.getResource().getId();
+        return path + ':' + attribute.getName() + ':' + cf + ':' + start + ':' + end;
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of cached values
+     */
+    public int size() {
+        synchronized (m_values) {
+            return m_values.size();
+        }
+    }
+
+    /**
+     * <p>clear</p>
+     */
+    public void clear() {
+        synchronized (m_values) {
+            m_values.clear();
+        }
+    }
+
+    /**
+     * <p>getHits</p>
+     *
+     * @return the number of statistics that were found in the cache
+     */
+    public long getHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * <p>getMisses</p>
+     *
+     * @return the number of statistics that had to be read from RRD files
+     */
+    public long getMisses() {
+        return m_misses.get();
+    }
+}
@@ -89,6 +89,9 @@ public class Statsd implements SpringServiceDaemon {
     private ReportDefinitionBuilder m_reportDefinitionBuilder;
     private volatile EventForwarder m_eventForwarder;
 
+    private int m_threads = Integer.getInteger("org.opennms.statsd.threads", Runtime.getRuntime().availableProcessors());
+    private StatisticCache m_statisticCache = createStatisticCache(Integer.getInteger("org.opennms.statsd.statisticCacheSize", 10000));
+
     /**
      * <p>handleReloadConfigEvent</p>
      *
@@ -227,23 +230,36 @@ public class Statsd implements SpringServiceDaemon {
     public void runReport(ReportDefinition reportDef) throws Throwable {
         final ReportInstance report;
         try {
-            report = reportDef.createReport(m_nodeDao, m_resourceDao, m_rrdDao, m_filterDao);
+            report = reportDef.createReport(m_nodeDao, m_resourceDao, m_rrdDao, m_filterDao, m_statisticCache, m_threads);
         } catch (Throwable t) {
             LOG.error("Could not create a report instance for report definition {}", reportDef, t);
             throw t;
         }
         
-        getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
-            @Override
-            public void doInTransactionWithoutResult(TransactionStatus status) {
-                LOG.debug("Starting report {}", report);
-                report.walk();
-                LOG.debug("Completed report {}", report);
-                
-                m_reportPersister.persist(report);
-                LOG.debug("Report {} persisted", report);
+        final StatisticCache statisticCache = m_statisticCache;
+        if (statisticCache != null) {
+            statisticCache.reportStarted();
+        }
+        try {
+            getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+                @Override
+                public void doInTransactionWithoutResult(TransactionStatus status) {
+                    LOG.debug("Starting report {}", report);
+                    report.walk();
+                    LOG.debug("Completed report {}", report);
+
+                    m_reportPersister.persist(report);
+                    LOG.debug("Report {} persisted", report);
+                    if (statisticCache != null) {
+                        LOG.debug("Statistic cache: {} values, {} hits, {} misses", statisticCache.size(), statisticCache.getHits(), statisticCache.getMisses());
+                    }
+                }
+            });
+        } finally {
+            if (statisticCache != null) {
+                statisticCache.reportFinished();
             }
-        });
+        }
     }
 
     
@@ -263,6 +279,7 @@ public class Statsd implements SpringServiceDaemon {
         Assert.state(m_scheduler != null, "property scheduler must be set to a non-null value");
         Assert.state(m_reportDefinitionBuilder != null, "property reportDefinitionBuilder must be set to a non-null value");
         Assert.state(m_eventForwarder != null, "eventForwarder property must be set to a non-null value");
+        Assert.state(m_threads > 0, "threads property must be at least 1");
     }
 
     /**
@@ -380,6 +397,46 @@ public class Statsd implements SpringServiceDaemon {
         return m_eventForwarder;
     }
 
+    /**
+     * <p>getThreads</p>
+     *
+     * @return the number of threads each report reads statistics with
+     */
+    public int getThreads() {
+        return m_threads;
+    }
+
+    /**
+     * <p>setThreads</p>
+     *
+     * @param threads the number of threads each report reads statistics with
+     */
+    public void setThreads(int threads) {
+        m_threads = threads;
+    }
+
+    /**
+     * <p>getStatisticCache</p>
+     *
+     * @return the cache of statistics shared between reports, or null if it is disabled
+     */
+    public StatisticCache getStatisticCache() {
+        return m_statisticCache;
+    }
+
+    /**
+     * <p>setStatisticCacheSize</p>
+     *
+     * @param size the number of statistics to cache between reports, 0 to disable the cache
+     */
+    public void setStatisticCacheSize(int size) {
+        m_statisticCache = createStatisticCache(size);
+    }
+
+    private static StatisticCache createStatisticCache(int size) {
+        return size > 0 ? new StatisticCache(size) : null;
+    }
+
     public static String getLoggingCategory() {
         return LOG4J_CATEGORY;
     }
@@ -0,0 +1,583 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>ueiMatch</code> and <code>hideMatch</code> rules of a syslogd
+ * configuration, compiled once when the configuration is loaded.
+ *
+ * Every regular expression is compiled up front.  For each expression the
+ * longest piece of literal text that any match must contain is extracted,
+ * and the expression is only run against messages that contain that text.
+ * Matchers are kept per thread and reused.  Each rule counts the messages it
+ * matched; the counts are available through the Syslogd MBean.
+ *
+ * Rules are evaluated exactly as before: the first <code>ueiMatch</code>
+ * whose facility, severity, process, hostname, host address and match
+ * expression all match sets the UEI, and the first matching
+ * <code>hideMatch</code> hides the message.
+ */
+public final class SyslogMatchEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogMatchEngine.class);
+
+    /**
+     * Literals shorter than this are not worth checking before running the
+     * expression.
+     */
+    static final int MIN_PREFILTER_LENGTH = 3;
+
+    private static volatile SyslogMatchEngine s_current = null;
+
+    private final UeiList m_ueiList;
+
+    private final HideMessage m_hideMessage;
+
+    private final UeiRule[] m_ueiRules;
+
+    private final HideRule[] m_hideRules;
+
+    private final List<CompiledPattern> m_patterns = new ArrayList<CompiledPattern>();
+
+    private final ThreadLocal<Matcher[]> m_matchers = new ThreadLocal<Matcher[]>() {
+        @Override
+        protected Matcher[] initialValue() {
+            return new Matcher[m_patterns.size()];
+        }
+    };
+
+    private final AtomicLong m_unmatched = new AtomicLong();
+
+    private final AtomicLong m_hidden = new AtomicLong();
+
+    private final AtomicLong m_prefilterSkips = new AtomicLong();
+
+    /**
+     * Compile the rules of a configuration.
+     *
+     * @param ueiList the UEI rules, may be null
+     * @param hideMessage the hide rules, may be null
+     */
+    SyslogMatchEngine(final UeiList ueiList, final HideMessage hideMessage) {
+        m_ueiList = ueiList;
+        m_hideMessage = hideMessage;
+
+        final List<UeiRule> ueiRules = new ArrayList<UeiRule>();
+        if (ueiList != null) {
+            for (final UeiMatch uei : ueiList.getUeiMatchCollection()) {
+                ueiRules.add(new UeiRule(uei));
+            }
+        }
+        m_ueiRules = ueiRules.toArray(new UeiRule[ueiRules.size()]);
+
+        final List<HideRule> hideRules = new ArrayList<HideRule>();
+        if (hideMessage != null) {
+            for (final HideMatch hide : hideMessage.getHideMatchCollection()) {
+                hideRules.add(new HideRule(hide));
+            }
+        }
+        m_hideRules = hideRules.toArray(new HideRule[hideRules.size()]);
+
+        LOG.debug("Compiled {} ueiMatch and {} hideMatch rules with {} regular expressions", m_ueiRules.length, m_hideRules.length, m_patterns.size());
+    }
+
+    /**
+     * Returns the engine for a configuration, compiling it if the
+     * configuration is not the one the current engine was built from.
+     */
+    static SyslogMatchEngine getInstance(final UeiList ueiList, final HideMessage hideMessage) {
+        SyslogMatchEngine engine = s_current;
+        if (engine == null || engine.m_ueiList != ueiList || engine.m_hideMessage != hideMessage) {
+            engine = new SyslogMatchEngine(ueiList, hideMessage);
+            s_current = engine;
+        }
+        return engine;
+    }
+
+    /**
+     * Forget the current engine, so the next message compiles the
+     * configuration again.
+     */
+    static void invalidate() {
+        s_current = null;
+    }
+
+    /**
+     * @return the engine used for the most recent message, or null
+     */
+    public static SyslogMatchEngine getCurrent() {
+        return s_current;
+    }
+
+    /**
+     * Apply the first matching <code>ueiMatch</code> rule to the event.
+     *
+     * @return true if a rule matched
+     * @throws MessageDiscardedException if the matching rule's UEI is the
+     *         discard UEI
+     */
+    boolean matchUei(final SyslogMessage message, final String facilityTxt, final String priorityTxt, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+        if (m_ueiList == null) {
+            LOG.warn("No ueiList configured.");
+            return false;
+        }
+        final String facility = facilityTxt.toLowerCase(Locale.ROOT);
+        final String priority = priorityTxt.toLowerCase(Locale.ROOT);
+        for (final UeiRule rule : m_ueiRules) {
+            if (rule.match(message, facility, priority, bldr, discardUei)) {
+                return true;
+            }
+        }
+        m_unmatched.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return true if the first matching <code>hideMatch</code> rule says
+     *         the message must be hidden
+     */
+    boolean hide(final String fullText) {
+        if (m_hideMessage == null) {
+            LOG.warn("No hideMessage configured.");
+            return false;
+        }
+        for (final HideRule rule : m_hideRules) {
+            if (rule.match(fullText)) {
+                m_hidden.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return one line per <code>ueiMatch</code> rule, in configuration
+     *         order, with the number of messages it matched
+     */
+    public String[] getUeiMatchHits() {
+        final String[] hits = new String[m_ueiRules.length];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = m_ueiRules[i].toString();
+        }
+        return hits;
+    }
+
+    /**
+     * @return one line per <code>hideMatch</code> rule, in configuration
+     *         order, with the number of messages it hid
+     */
+    public String[] getHideMatchHits() {
+        final String[] hits = new String[m_hideRules.length];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = m_hideRules[i].toString();
+        }
+        return hits;
+    }
+
+    /**
+     * @return the number of messages that did not match any ueiMatch rule
+     */
+    public long getUnmatchedMessages() {
+        return m_unmatched.get();
+    }
+
+    /**
+     * @return the number of messages that were hidden
+     */
+    public long getHiddenMessages() {
+        return m_hidden.get();
+    }
+
+    /**
+     * @return the number of times a regular expression was not run because
+     *         the message did not contain its literal text
+     */
+    public long getRegexesSkippedByPrefilter() {
+        return m_prefilterSkips.get();
+    }
+
+    private CompiledPattern compile(final String expression) {
+        if (expression == null) {
+            return null;
+        }
+        try {
+            final CompiledPattern pattern = new CompiledPattern(Pattern.compile(expression, Pattern.MULTILINE), requiredLiteral(expression), m_patterns.size());
+            m_patterns.add(pattern);
+            return pattern;
+        } catch (final PatternSyntaxException pse) {
+            LOG.warn("Failed to compile regex pattern '{}'", expression, pse);
+            return null;
+        }
+    }
+
+    private static Set<String> lowerCase(final List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        final Set<String> set = new HashSet<String>();
+        for (final String value : values) {
+            set.add(value.toLowerCase(Locale.ROOT));
+        }
+        return set;
+    }
+
+    /**
+     * Find the longest run of literal text that every match of the regular
+     * expression must contain.
+     *
+     * Only text outside of groups and character classes is considered, and
+     * expressions using alternation, inline flags or quoting are not
+     * analyzed at all, so the result is always safe to use as a prefilter.
+     *
+     * @param regex the expression
+     * @return the literal, or null if there is no usable literal
+     */
+    static String requiredLiteral(final String regex) {
+        if (regex.indexOf('|') >= 0 || regex.contains("(?") || regex.contains("\\Q")) {
+            return null;
+        }
+
+        String best = null;
+        final StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            char literal = 0;
+            int next = i + 1;
+
+            if (c == '\\') {
+                if (next >= regex.length()) {
+                    return null;
+                }
+                final char escaped = regex.charAt(next);
+                next++;
+                if (!Character.isLetterOrDigit(escaped)) {
+                    literal = escaped;
+                } else if ("dDsSwWbBAGZzhHvVRXtnrfae".indexOf(escaped) < 0) {
+                    // back references and escapes with arguments (\x41, \p{Lu}, ...)
+                    return null;
+                }
+            } else if (c == '{') {
+                // skip the bounds of a quantifier
+                next = regex.indexOf('}', i) + 1;
+                if (next == 0) {
+                    return null;
+                }
+            } else if (c == '[') {
+                // skip the character class
+                next = skipClass(regex, i);
+                if (next < 0) {
+                    return null;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (".^$*+?}]".indexOf(c) < 0) {
+                literal = c;
+            }
+
+            // a quantifier that allows zero occurrences makes the previous atom optional
+            final boolean optional = next < regex.length() && "?*{".indexOf(regex.charAt(next)) >= 0;
+            final boolean repeated = next < regex.length() && regex.charAt(next) == '+';
+
+            if (literal != 0 && depth == 0 && !optional) {
+                run.append(literal);
+            }
+            if (literal == 0 || depth != 0 || optional || repeated) {
+                best = longer(best, run);
+                run.setLength(0);
+            }
+            i = next;
+        }
+        best = longer(best, run);
+        return best;
+    }
+
+    private static String longer(final String best, final StringBuilder run) {
+        if (run.length() >= MIN_PREFILTER_LENGTH && (best == null || run.length() > best.length())) {
+            return run.toString();
+        }
+        return best;
+    }
+
+    /**
+     * @return the index after the character class starting at start, or -1
+     */
+    private static int skipClass(final String regex, final int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private final class CompiledPattern {
+        private final Pattern m_pattern;
+
+        private final String m_literal;
+
+        private final int m_index;
+
+        private CompiledPattern(final Pattern pattern, final String literal, final int index) {
+            m_pattern = pattern;
+            m_literal = literal;
+            m_index = index;
+        }
+
+        /**
+         * @return this thread's matcher positioned at the first match, or
+         *         null if the input does not match
+         */
+        private Matcher find(final String input) {
+            if (m_literal != null && input.indexOf(m_literal) < 0) {
+                m_prefilterSkips.incrementAndGet();
+                return null;
+            }
+            final Matcher[] matchers = m_matchers.get();
+            Matcher matcher = matchers[m_index];
+            if (matcher == null) {
+                matcher = m_pattern.matcher(input);
+                matchers[m_index] = matcher;
+            } else {
+                matcher.reset(input);
+            }
+            return matcher.find() ? matcher : null;
+        }
+    }
+
+    private final class UeiRule {
+        private final UeiMatch m_config;
+
+        private final String m_uei;
+
+        private final Set<String> m_facilities;
+
+        private final Set<String> m_severities;
+
+        private final CompiledPattern m_process;
+
+        private final CompiledPattern m_hostname;
+
+        private final CompiledPattern m_hostaddr;
+
+        private final String m_substring;
+
+        private final CompiledPattern m_regex;
+
+        /**
+         * False if one of the expressions could not be compiled, in which
+         * case the rule never matches.
+         */
+        private final boolean m_valid;
+
+        private final AtomicLong m_hits = new AtomicLong();
+
+        private UeiRule(final UeiMatch uei) {
+            m_config = uei;
+            m_uei = uei.getUei();
+            m_facilities = lowerCase(uei.getFacilityCollection());
+            m_severities = lowerCase(uei.getSeverityCollection());
+
+            boolean valid = true;
+            m_process = uei.getProcessMatch() == null ? null : compile(uei.getProcessMatch().getExpression());
+            valid &= uei.getProcessMatch() == null || m_process != null;
+            m_hostname = uei.getHostnameMatch() == null ? null : compile(uei.getHostnameMatch().getExpression());
+            valid &= uei.getHostnameMatch() == null || m_hostname != null;
+            m_hostaddr = uei.getHostaddrMatch() == null ? null : compile(uei.getHostaddrMatch().getExpression());
+            valid &= uei.getHostaddrMatch() == null || m_hostaddr != null;
+
+            final String type = uei.getMatch().getType();
+            if ("substr".equals(type)) {
+                m_substring = uei.getMatch().getExpression();
+                m_regex = null;
+            } else if (type.startsWith("regex")) {
+                m_substring = null;
+                m_regex = compile(uei.getMatch().getExpression());
+                valid &= m_regex != null;
+            } else {
+                m_substring = null;
+                m_regex = null;
+                valid = false;
+            }
+            m_valid = valid;
+        }
+
+        private boolean match(final SyslogMessage message, final String facility, final String priority, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+            if (!m_valid) {
+                return false;
+            }
+            if (m_facilities != null && !m_facilities.contains(facility)) {
+                return false;
+            }
+            if (m_severities != null && !m_severities.contains(priority)) {
+                return false;
+            }
+
+            final String matchedText = message.getMatchedMessage();
+            if (m_substring != null && (matchedText == null || !matchedText.contains(m_substring))) {
+                LOG.trace("No substring match for text of a Syslogd event to : {}", m_substring);
+                return false;
+            }
+
+            if (!matches(m_process, message.getProcessName())
+                    || !matches(m_hostname, message.getHostName())
+                    || !matches(m_hostaddr, message.getHostAddress())) {
+                return false;
+            }
+
+            Matcher msgMat = null;
+            if (m_regex != null) {
+                msgMat = m_regex.find(matchedText != null ? matchedText : message.getFullText());
+                if (msgMat == null) {
+                    LOG.trace("Message '{}' did not regex-match pattern '{}'", message.getMessage(), m_regex.m_pattern);
+                    return false;
+                }
+            }
+
+            m_hits.incrementAndGet();
+            if (discardUei.equals(m_uei)) {
+                LOG.debug("Specified UEI '{}' is same as discard-uei, discarding this message.", m_uei);
+                throw new MessageDiscardedException();
+            }
+
+            // We matched a UEI
+            LOG.trace("Changed the UEI of a Syslogd event to : {}", m_uei);
+            bldr.setUei(m_uei);
+
+            if (msgMat != null && msgMat.groupCount() > 0) {
+                final boolean traceEnabled = LOG.isTraceEnabled();
+                if (m_config.getMatch().isDefaultParameterMapping()) {
+                    if (traceEnabled) LOG.trace("Doing default parameter mappings for this regex match.");
+                    for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
+                        if (traceEnabled) LOG.trace("Added parm 'group{}' with value '{}' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
+                        bldr.addParam("group"+groupNum, msgMat.group(groupNum));
+                    }
+                }
+                if (m_config.getParameterAssignmentCount() > 0) {
+                    if (traceEnabled) LOG.trace("Doing user-specified parameter assignments for this regex match.");
+                    for (final ParameterAssignment assignment : m_config.getParameterAssignmentCollection()) {
+                        final String parmName = assignment.getParameterName();
+                        String parmValue = msgMat.group(assignment.getMatchingGroup());
+                        parmValue = parmValue == null ? "" : parmValue;
+                        bldr.addParam(parmName, parmValue);
+                        if (traceEnabled) LOG.trace("Added parm '{}' with value '{}' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean matches(final CompiledPattern pattern, final String input) {
+            if (pattern == null) {
+                return true;
+            }
+            return input != null && pattern.find(input) != null;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s '%s' -> %s: %d", m_config.getMatch().getType(), m_config.getMatch().getExpression(), m_uei, m_hits.get());
+        }
+    }
+
+    private final class HideRule {
+        private final HideMatch m_config;
+
+        private final String m_substring;
+
+        private final CompiledPattern m_regex;
+
+        private final AtomicLong m_hits = new AtomicLong();
+
+        private HideRule(final HideMatch hide) {
+            m_config = hide;
+            final String type = hide.getMatch().getType();
+            m_substring = "substr".equals(type) ? hide.getMatch().getExpression() : null;
+            m_regex = "regex".equals(type) ? compile(hide.getMatch().getExpression()) : null;
+        }
+
+        private boolean match(final String fullText) {
+            final boolean matched;
+            if (m_substring != null) {
+                matched = fullText.contains(m_substring);
+            } else if (m_regex != null) {
+                matched = m_regex.find(fullText) != null;
+            } else {
+                matched = false;
+            }
+            if (matched) {
+                LOG.debug("Hiding syslog message from Event - May contain sensitive data");
+                m_hits.incrementAndGet();
+            }
+            return matched;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s '%s' -> hide: %d", m_config.getMatch().getType(), m_config.getMatch().getExpression(), m_hits.get());
+        }
+    }
+}
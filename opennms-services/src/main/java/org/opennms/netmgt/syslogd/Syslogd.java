@@ -120,6 +120,9 @@ import org.slf4j.LoggerFactory;
             throw new UndeclaredThrowableException(e);
         }
 
+        // compile the match rules of the new configuration on the first message
+        ConvertToEvent.invalidate();
+
         SyslogHandler.setSyslogConfig(SyslogdConfigFactory.getInstance());
         LOG.debug("Starting SyslogProcessor");
 
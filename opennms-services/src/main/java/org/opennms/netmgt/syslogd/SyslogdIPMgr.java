@@ -28,80 +28,41 @@
 
 package org.opennms.netmgt.syslogd;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.core.db.DataSourceFactory;
+import org.opennms.netmgt.utils.InterfaceToNodeIndex;
+import org.springframework.dao.DataAccessException;
 
 /**
  * This class represents a singular instance that is used to map trap IP
  * addresses to known nodes.
  *
+ * The addresses are kept in syslogd's {@link InterfaceToNodeIndex}.
+ *
  * @author <a href="mailto:joed@opennms.org">Johan Edstrom</a>
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="mailto:tarus@opennms.org">Tarus Balog </a>
  * @author <a href="http://www.opennms.org/">OpenNMS </a>
  */
 final class SyslogdIPMgr {
-    /**
-     * The SQL statement used to extract the list of currently known IP
-     * addresses and their node IDs from the IP Interface table.
-     */
-    private final static String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
-
-    /**
-     * A Map of IP addresses and node IDs
-     */
-    private static Map<String,Long> m_knownips = new ConcurrentHashMap<String,Long>();
 
     /**
      * Clears and synchronizes the internal known IP address cache with the
-     * current information contained in the database. To synchronize the cache
-     * the method opens a new connection to the database, loads the address,
-     * and then closes it's connection.
+     * current information contained in the database.  Lookups continue to
+     * use the previous addresses until the new ones have been loaded.
      *
      * @throws java.sql.SQLException
      *             Thrown if the connection cannot be created or a database
      *             error occurs.
      */
-    static synchronized void dataSourceSync() throws SQLException {
-        java.sql.Connection c = null;
-        Statement s = null;
+    static void dataSourceSync() throws SQLException {
+        final InterfaceToNodeIndex index = InterfaceToNodeIndex.getSyslogdInstance();
+        index.setDataSource(DataSourceFactory.getInstance());
         try {
-            // Get database connection
-            c = DataSourceFactory.getInstance().getConnection();
-
-            // Run with it
-            //
-            // c.setReadOnly(true);
-
-            s = c.createStatement();
-            final ResultSet rs = s.executeQuery(IP_LOAD_SQL);
-
-            if (rs != null) {
-                m_knownips.clear();
-                while (rs.next()) {
-                    m_knownips.put(rs.getString(1), rs.getLong(2));
-                }
-                rs.close();
-            }
-
-        } finally {
-            if (s != null) {
-                try {
-                    s.close();
-                } catch (final SQLException sqlE) {
-                }
-            }
-            if (c != null) {
-                try {
-                    c.close();
-                } catch (final SQLException sqlE) {
-                }
-            }
+            index.dataSourceSync();
+        } catch (final DataAccessException e) {
+            throw new SQLException("Unable to load the known IP addresses: " + e.getMessage(), e);
         }
     }
 
@@ -111,11 +72,8 @@ final class SyslogdIPMgr {
      * @param addr The IP Address to query.
      * @return The node ID of the IP Address if known.
      */
-    static synchronized long getNodeId(final String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    static long getNodeId(final String addr) {
+        return InterfaceToNodeIndex.getSyslogdInstance().getNodeId(addr);
     }
 
     /**
@@ -126,10 +84,7 @@ final class SyslogdIPMgr {
      * @return The nodeid if it existed in the map.
      */
     static long setNodeId(final String addr, final long nodeid) {
-        if (addr == null || nodeid == -1)
-            return -1;
-
-        return longValue(m_knownips.put(addr, nodeid));
+        return InterfaceToNodeIndex.getSyslogdInstance().setNodeId(addr, nodeid);
     }
 
     /**
@@ -139,13 +94,7 @@ final class SyslogdIPMgr {
      * @return The nodeid that was in the map.
      */
     static long removeNodeId(final String addr) {
-        if (addr == null)
-            return -1;
-        return longValue(m_knownips.remove(addr));
-    }
-
-    private static long longValue(final Long result) {
-        return (result == null ? -1 : result);
+        return InterfaceToNodeIndex.getSyslogdInstance().removeNodeId(addr);
     }
 
 } // end SyslodIPMgr
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.syslogd.jmx;
 
+import org.opennms.netmgt.syslogd.SyslogMatchEngine;
+
 /**
  * <p>Syslogd class.</p>
  *
@@ -88,4 +90,39 @@ public class Syslogd implements SyslogdMBean {
     public String getStatusText() {
         return org.opennms.core.fiber.Fiber.STATUS_NAMES[getStatus()];
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getUeiMatchHits() {
+        final SyslogMatchEngine engine = SyslogMatchEngine.getCurrent();
+        return engine == null ? new String[0] : engine.getUeiMatchHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getHideMatchHits() {
+        final SyslogMatchEngine engine = SyslogMatchEngine.getCurrent();
+        return engine == null ? new String[0] : engine.getHideMatchHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getUnmatchedMessages() {
+        final SyslogMatchEngine engine = SyslogMatchEngine.getCurrent();
+        return engine == null ? 0 : engine.getUnmatchedMessages();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHiddenMessages() {
+        final SyslogMatchEngine engine = SyslogMatchEngine.getCurrent();
+        return engine == null ? 0 : engine.getHiddenMessages();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRegexesSkippedByPrefilter() {
+        final SyslogMatchEngine engine = SyslogMatchEngine.getCurrent();
+        return engine == null ? 0 : engine.getRegexesSkippedByPrefilter();
+    }
 }
@@ -37,4 +37,30 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface SyslogdMBean extends BaseOnmsMBean {
+
+    /**
+     * @return the number of messages matched by each ueiMatch rule
+     */
+    public String[] getUeiMatchHits();
+
+    /**
+     * @return the number of messages hidden by each hideMatch rule
+     */
+    public String[] getHideMatchHits();
+
+    /**
+     * @return the number of messages that did not match any ueiMatch rule
+     */
+    public long getUnmatchedMessages();
+
+    /**
+     * @return the number of messages that were hidden
+     */
+    public long getHiddenMessages();
+
+    /**
+     * @return the number of regular expressions that did not have to be run
+     *         because the message lacked their literal text
+     */
+    public long getRegexesSkippedByPrefilter();
 }
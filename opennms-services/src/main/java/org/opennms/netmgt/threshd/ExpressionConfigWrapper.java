@@ -35,8 +35,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.jexl2.ExpressionImpl;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.MapContext;
 import org.opennms.netmgt.config.threshd.Expression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,16 +50,31 @@ import org.slf4j.LoggerFactory;
 public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapper.class);
 
+    /**
+     * The engine is thread safe once configured, so a single one is shared
+     * by all expressions.
+     */
+    private static final JexlEngine s_engine = new JexlEngine();
+
+    private static final MathBinding s_math = new MathBinding();
+
     private final Expression m_expression;
     private final Collection<String> m_datasources;
+
+    /**
+     * The expression compiled once, when the threshold configuration is
+     * loaded.
+     */
+    private final org.apache.commons.jexl2.Expression m_compiledExpression;
+
     public ExpressionConfigWrapper(Expression expression) throws ThresholdExpressionException {
         super(expression);
         m_expression = expression;
 
-        JexlEngine expressionParser = new JexlEngine();
         m_datasources = new ArrayList<String>();
         try {
-            ExpressionImpl e = (ExpressionImpl) expressionParser.createExpression(m_expression.getExpression());
+            ExpressionImpl e = (ExpressionImpl) s_engine.createExpression(m_expression.getExpression());
+            m_compiledExpression = e;
             LOG.trace("List of Variables on the Expression: {}", e.getVariables());
             for (List<String> list : e.getVariables()) { // Requires JEXL 2.1.x
                 if (list.get(0).equalsIgnoreCase("math")) {
@@ -140,18 +155,58 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
         public float ulp(float a) { return Math.ulp(a); }
     }
 
+    /**
+     * Script context that reads the variables straight from the values
+     * passed to {@link ExpressionConfigWrapper#evaluate(Map)} instead of
+     * copying them.  The values are also available through the
+     * <code>datasources</code> variable (see NMS-5019) and the math functions
+     * through the <code>math</code> variable.  Variables assigned by the
+     * expression itself are kept separately so the values are never changed.
+     */
+    private static final class ValuesContext implements JexlContext {
+        private final Map<String, Double> m_values;
+        private Map<String, Object> m_locals;
+
+        private ValuesContext(final Map<String, Double> values) {
+            m_values = values;
+        }
+
+        @Override
+        public Object get(final String name) {
+            if (m_locals != null && m_locals.containsKey(name)) {
+                return m_locals.get(name);
+            } else if ("math".equals(name)) {
+                return s_math;
+            } else if ("datasources".equals(name)) {
+                return m_values;
+            }
+            return m_values.get(name);
+        }
+
+        @Override
+        public void set(final String name, final Object value) {
+            if (m_locals == null) {
+                m_locals = new HashMap<String, Object>();
+            }
+            m_locals.put(name, value);
+        }
+
+        @Override
+        public boolean has(final String name) {
+            return (m_locals != null && m_locals.containsKey(name)) || "math".equals(name) || "datasources".equals(name) || m_values.containsKey(name);
+        }
+    }
+
     @Override
     public double evaluate(Map<String, Double> values) throws ThresholdExpressionException {
-        // Add all of the variable values to the script context
-        Map<String,Object> context = new HashMap<String,Object>();
-        context.putAll(values);
-        context.put("datasources", new HashMap<String, Double>(values)); // To workaround NMS-5019
-        context.put("math", new MathBinding());
         double result = Double.NaN;
         try {
-            // Fetch an instance of the JEXL script engine to evaluate the script expression
-            Object resultObject = new JexlEngine().createExpression(m_expression.getExpression()).evaluate(new MapContext(context));
-            result = Double.parseDouble(resultObject.toString());
+            Object resultObject = m_compiledExpression.evaluate(new ValuesContext(values));
+            if (resultObject instanceof Double) {
+                result = ((Double) resultObject).doubleValue();
+            } else {
+                result = Double.parseDouble(resultObject.toString());
+            }
         } catch (Throwable e) {
             throw new ThresholdExpressionException("Error while evaluating expression " + m_expression.getExpression() + ": " + e.getMessage(), e);
         }
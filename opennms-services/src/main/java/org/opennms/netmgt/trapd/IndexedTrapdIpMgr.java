@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import javax.sql.DataSource;
+
+import org.opennms.netmgt.utils.InterfaceToNodeIndex;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * TrapdIpMgr backed by trapd's {@link InterfaceToNodeIndex}, so looking up
+ * the node of a trap never blocks and reloading the addresses does not hold
+ * up trap processing.
+ */
+public class IndexedTrapdIpMgr implements TrapdIpMgr, InitializingBean {
+
+    private DataSource m_dataSource;
+
+    private InterfaceToNodeIndex m_index;
+
+    /**
+     * <p>dataSourceSync</p>
+     */
+    @Override
+    public void dataSourceSync() {
+        m_index.dataSourceSync();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNodeId(String addr) {
+        return m_index.getNodeId(addr);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long setNodeId(String addr, long nodeid) {
+        return m_index.setNodeId(addr, nodeid);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long removeNodeId(String addr) {
+        return m_index.removeNodeId(addr);
+    }
+
+    /**
+     * <p>clearKnownIpsMap</p>
+     */
+    @Override
+    public void clearKnownIpsMap() {
+        m_index.clear();
+    }
+
+    /**
+     * <p>getDataSource</p>
+     *
+     * @return a {@link javax.sql.DataSource} object.
+     */
+    public DataSource getDataSource() {
+        return m_dataSource;
+    }
+
+    /**
+     * <p>setDataSource</p>
+     *
+     * @param dataSource a {@link javax.sql.DataSource} object.
+     */
+    public void setDataSource(DataSource dataSource) {
+        m_dataSource = dataSource;
+    }
+
+    /**
+     * <p>getIndex</p>
+     *
+     * @return the index, trapd's unless another was set
+     */
+    public InterfaceToNodeIndex getIndex() {
+        return m_index;
+    }
+
+    /**
+     * <p>setIndex</p>
+     *
+     * @param index the index to use instead of trapd's
+     */
+    public void setIndex(InterfaceToNodeIndex index) {
+        m_index = index;
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.state(m_dataSource != null, "property dataSource must be set");
+        if (m_index == null) {
+            m_index = InterfaceToNodeIndex.getTrapdInstance();
+        }
+        m_index.setDataSource(m_dataSource);
+    }
+}
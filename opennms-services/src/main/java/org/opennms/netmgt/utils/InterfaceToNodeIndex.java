@@ -0,0 +1,731 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.utils;
+
+import java.lang.management.ManagementFactory;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.InetAddressUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Maps IP addresses to the IDs of the nodes they belong to, for the daemons
+ * that receive messages from arbitrary addresses (trapd and syslogd).
+ *
+ * Lookups never lock.  The bulk of the addresses lives in an immutable
+ * snapshot - IPv4 addresses as primitive ints in an open-addressing hash
+ * table, IPv6 addresses in a map - and changes made by node and interface
+ * events since the snapshot was built are kept in a small overlay in front of
+ * it.  When the overlay grows too large it is folded into a new snapshot.
+ *
+ * Reloading the index from the database builds a complete new snapshot while
+ * lookups continue against the old one, and then swaps it in.  Changes that
+ * arrive while the reload is running are replayed on top of the new
+ * snapshot, so they are not lost.  If
+ * <code>org.opennms.netmgt.interfaceToNodeIndex.refreshInterval</code> is
+ * set to a number of milliseconds the index is also reloaded periodically in
+ * the background.
+ *
+ * Trapd and syslogd each have their own index.  Trapd's follows the rules of
+ * the old Hibernate based lookup: interfaces whose SNMP primary flag is not
+ * set are ignored, and when an address belongs to several nodes the node
+ * where it is the SNMP primary interface wins.  Syslogd's indexes every
+ * interface and always gives an address to the node it was last set for.
+ */
+public final class InterfaceToNodeIndex implements InterfaceToNodeIndexMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InterfaceToNodeIndex.class);
+
+    /**
+     * The interval in milliseconds between background reloads, 0 (the
+     * default) disables them.
+     */
+    public static final String REFRESH_INTERVAL_PROPERTY = "org.opennms.netmgt.interfaceToNodeIndex.refreshInterval";
+
+    public static final String TRAPD_OBJECT_NAME = "OpenNMS:Name=TrapdInterfaceToNodeIndex";
+
+    public static final String SYSLOGD_OBJECT_NAME = "OpenNMS:Name=SyslogdInterfaceToNodeIndex";
+
+    /**
+     * The SQL statement used to extract the list of currently known IP
+     * addresses and their node IDs from the IP Interface table.
+     */
+    private static final String IP_LOAD_SQL = "SELECT ipAddr, nodeid, isSnmpPrimary FROM ipInterface";
+
+    /**
+     * As {@link #IP_LOAD_SQL}, but only the rows that the old
+     * <code>isSnmpPrimary = 'P'</code> and <code>isSnmpPrimary != 'P'</code>
+     * queries returned, which leaves out the ones where it is NULL.
+     */
+    private static final String IP_LOAD_PRIMARY_SQL = IP_LOAD_SQL + " WHERE isSnmpPrimary IS NOT NULL";
+
+    private static final String IS_PRIMARY_SQL = "SELECT isSnmpPrimary FROM ipInterface WHERE nodeid = ? AND ipAddr = ?";
+
+    /**
+     * The number of changes kept in the overlay before they are folded into
+     * a new snapshot.
+     */
+    static final int MAX_OVERLAY_SIZE = 1024;
+
+    /**
+     * Overlay value for an address that has been removed.
+     */
+    private static final Integer REMOVED = Integer.valueOf(0);
+
+    private static InterfaceToNodeIndex s_trapdInstance = null;
+
+    private static InterfaceToNodeIndex s_syslogdInstance = null;
+
+    /**
+     * Whether an address only moves to another node when it is that node's
+     * primary SNMP interface.
+     */
+    private final boolean m_primaryWins;
+
+    private volatile State m_state = new State(Snapshot.EMPTY);
+
+    private volatile DataSource m_dataSource;
+
+    private volatile long m_lastRebuild = -1;
+
+    /**
+     * Guards changes to m_state and m_pending.  Lookups do not take it.
+     */
+    private final Object m_writeLock = new Object();
+
+    /**
+     * Allows only one reload at a time.
+     */
+    private final Object m_rebuildLock = new Object();
+
+    /**
+     * Changes made while a reload is reading the database.
+     */
+    private Map<Object, Integer> m_pending = null;
+
+    private final AtomicLong m_lookups = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    private final AtomicLong m_rebuilds = new AtomicLong();
+
+    private final AtomicLong m_updates = new AtomicLong();
+
+    /**
+     * Create an empty index where the SNMP primary interface wins.  The
+     * daemons use {@link #getTrapdInstance()} and
+     * {@link #getSyslogdInstance()}.
+     */
+    public InterfaceToNodeIndex() {
+        this(true);
+    }
+
+    /**
+     * Create an empty index.
+     *
+     * @param primaryWins whether to ignore interfaces without an SNMP
+     *        primary flag and only move an address to another node when it
+     *        is that node's primary SNMP interface
+     */
+    public InterfaceToNodeIndex(final boolean primaryWins) {
+        m_primaryWins = primaryWins;
+    }
+
+    /**
+     * Returns trapd's index, creating it the first time.
+     *
+     * @return trapd's index
+     */
+    public static synchronized InterfaceToNodeIndex getTrapdInstance() {
+        if (s_trapdInstance == null) {
+            s_trapdInstance = createInstance(true, TRAPD_OBJECT_NAME);
+        }
+        return s_trapdInstance;
+    }
+
+    /**
+     * Returns syslogd's index, creating it the first time.
+     *
+     * @return syslogd's index
+     */
+    public static synchronized InterfaceToNodeIndex getSyslogdInstance() {
+        if (s_syslogdInstance == null) {
+            s_syslogdInstance = createInstance(false, SYSLOGD_OBJECT_NAME);
+        }
+        return s_syslogdInstance;
+    }
+
+    private static InterfaceToNodeIndex createInstance(final boolean primaryWins, final String objectName) {
+        final InterfaceToNodeIndex index = new InterfaceToNodeIndex(primaryWins);
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(index, new ObjectName(objectName));
+        } catch (final JMException e) {
+            LOG.warn("Unable to register {}", objectName, e);
+        }
+
+        final long interval = Long.getLong(REFRESH_INTERVAL_PROPERTY, 0);
+        if (interval > 0) {
+            index.scheduleRefresh(interval);
+        }
+        return index;
+    }
+
+    /**
+     * <p>setDataSource</p>
+     *
+     * @param dataSource the database to load the interfaces from
+     */
+    public void setDataSource(final DataSource dataSource) {
+        m_dataSource = dataSource;
+    }
+
+    /**
+     * <p>getDataSource</p>
+     *
+     * @return a {@link javax.sql.DataSource} object.
+     */
+    public DataSource getDataSource() {
+        return m_dataSource;
+    }
+
+    /**
+     * Reload the index from the database.  Lookups keep using the old data
+     * until the new data is complete.
+     *
+     * @throws DataAccessException if the interfaces could not be loaded
+     */
+    public void dataSourceSync() throws DataAccessException {
+        final DataSource dataSource = m_dataSource;
+        if (dataSource == null) {
+            throw new IllegalStateException("property dataSource must be set");
+        }
+
+        synchronized (m_rebuildLock) {
+            synchronized (m_writeLock) {
+                m_pending = new HashMap<Object, Integer>();
+            }
+
+            final Map<InetAddress, Integer> addresses = new HashMap<InetAddress, Integer>();
+            try {
+                final Set<InetAddress> primary = new HashSet<InetAddress>();
+                new JdbcTemplate(dataSource).query(m_primaryWins ? IP_LOAD_PRIMARY_SQL : IP_LOAD_SQL, new RowCallbackHandler() {
+                    @Override
+                    public void processRow(final ResultSet rs) throws SQLException {
+                        final InetAddress addr = toInetAddress(rs.getString(1));
+                        if (addr == null) {
+                            return;
+                        }
+                        if (!m_primaryWins) {
+                            addresses.put(addr, rs.getInt(2));
+                        } else if ("P".equals(rs.getString(3)) ? primary.add(addr) : !addresses.containsKey(addr)) {
+                            // primary interfaces win, otherwise the first node found keeps the address
+                            addresses.put(addr, rs.getInt(2));
+                        }
+                    }
+                });
+            } catch (final DataAccessException e) {
+                synchronized (m_writeLock) {
+                    m_pending = null;
+                }
+                throw e;
+            }
+
+            rebuild(addresses);
+        }
+    }
+
+    /**
+     * Replace the contents of the index.  Changes made since a concurrent
+     * {@link #dataSourceSync()} started reading the database are applied on
+     * top of the new contents.
+     *
+     * @param addresses the node ID of every known address
+     */
+    public void rebuild(final Map<InetAddress, Integer> addresses) {
+        synchronized (m_rebuildLock) {
+            final Map<Object, Integer> entries = new HashMap<Object, Integer>(addresses.size() * 2);
+            for (final Map.Entry<InetAddress, Integer> entry : addresses.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null && entry.getValue() > 0) {
+                    entries.put(key(entry.getKey()), entry.getValue());
+                }
+            }
+
+            synchronized (m_writeLock) {
+                if (m_pending != null) {
+                    apply(entries, m_pending);
+                    m_pending = null;
+                }
+                m_state = new State(new Snapshot(entries));
+                m_lastRebuild = System.currentTimeMillis();
+                m_updates.set(0);
+                m_rebuilds.incrementAndGet();
+            }
+            LOG.debug("rebuild: indexed {} addresses", entries.size());
+        }
+    }
+
+    /**
+     * Returns the node ID for the IP address.
+     *
+     * @param addr the IP address to query
+     * @return the node ID of the IP address if known, otherwise -1
+     */
+    public long getNodeId(final String addr) {
+        if (addr == null) {
+            return -1;
+        }
+        m_lookups.incrementAndGet();
+
+        final State state = m_state;
+        final int nodeId;
+        final long ipv4 = parseIPv4(addr);
+        if (ipv4 >= 0 && state.m_overlay.isEmpty()) {
+            nodeId = state.m_snapshot.get((int) ipv4);
+        } else {
+            final Object key = ipv4 >= 0 ? Integer.valueOf((int) ipv4) : key(addr);
+            nodeId = key == null ? 0 : lookup(state, key);
+        }
+        return found(nodeId);
+    }
+
+    /**
+     * Returns the node ID for the IP address.
+     *
+     * @param addr the IP address to query
+     * @return the node ID of the IP address if known, otherwise -1
+     */
+    public long getNodeId(final InetAddress addr) {
+        if (addr == null) {
+            return -1;
+        }
+        m_lookups.incrementAndGet();
+        return found(lookup(m_state, key(addr)));
+    }
+
+    /**
+     * Sets the node ID of an IP address.  In an index where the primary
+     * interface wins, an address that already belongs to a node is only
+     * moved when it is the primary SNMP interface of the new node.  That is
+     * checked in the database before the write lock is taken.
+     *
+     * @param addr the IP address to add
+     * @param nodeId the node ID to add
+     * @return the node ID the address belonged to before, or -1
+     */
+    public long setNodeId(final String addr, final long nodeId) {
+        if (addr == null || nodeId <= 0) {
+            return -1;
+        }
+        final Object key = key(addr);
+        if (key == null) {
+            return -1;
+        }
+
+        Boolean primary = null;
+        while (true) {
+            if (m_primaryWins && primary == null && lookup(m_state, key) > 0) {
+                primary = Boolean.valueOf(isPrimary(addr, nodeId));
+            }
+
+            synchronized (m_writeLock) {
+                final int existing = lookup(m_state, key);
+                if (existing > 0 && m_primaryWins) {
+                    if (primary == null) {
+                        // the address was added since we looked, check it outside of the lock
+                        continue;
+                    }
+                    if (!primary.booleanValue()) {
+                        LOG.info("setNodeId: {} already belongs to node {} and is not primary on node {}", addr, existing, nodeId);
+                        return -1;
+                    }
+                }
+                update(key, Integer.valueOf((int) nodeId));
+                return existing > 0 ? existing : -1;
+            }
+        }
+    }
+
+    /**
+     * Removes an IP address from the index.
+     *
+     * @param addr the address to remove
+     * @return the node ID the address belonged to, or -1
+     */
+    public long removeNodeId(final String addr) {
+        if (addr == null) {
+            return -1;
+        }
+        final Object key = key(addr);
+        if (key == null) {
+            return -1;
+        }
+
+        synchronized (m_writeLock) {
+            final int existing = lookup(m_state, key);
+            if (existing <= 0) {
+                return -1;
+            }
+            update(key, REMOVED);
+            return existing;
+        }
+    }
+
+    /**
+     * Removes all addresses from the index.
+     */
+    public void clear() {
+        synchronized (m_writeLock) {
+            m_state = new State(Snapshot.EMPTY);
+            if (m_pending != null) {
+                m_pending.clear();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getSize() {
+        final State state = m_state;
+        int size = state.m_snapshot.size();
+        for (final Map.Entry<Object, Integer> entry : state.m_overlay.entrySet()) {
+            final boolean indexed = state.m_snapshot.get(entry.getKey()) > 0;
+            if (REMOVED.equals(entry.getValue())) {
+                size -= indexed ? 1 : 0;
+            } else {
+                size += indexed ? 0 : 1;
+            }
+        }
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getLookups() {
+        return m_lookups.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMisses() {
+        return m_misses.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRebuilds() {
+        return m_rebuilds.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getUpdatesSinceRebuild() {
+        return m_updates.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMillisSinceRebuild() {
+        final long lastRebuild = m_lastRebuild;
+        return lastRebuild < 0 ? -1 : System.currentTimeMillis() - lastRebuild;
+    }
+
+    private long found(final int nodeId) {
+        if (nodeId > 0) {
+            return nodeId;
+        }
+        m_misses.incrementAndGet();
+        return -1;
+    }
+
+    /**
+     * Must be called with m_writeLock held.
+     */
+    private void update(final Object key, final Integer nodeId) {
+        final State state = m_state;
+        state.m_overlay.put(key, nodeId);
+        if (m_pending != null) {
+            m_pending.put(key, nodeId);
+        }
+        m_updates.incrementAndGet();
+
+        if (state.m_overlay.size() > MAX_OVERLAY_SIZE) {
+            final Map<Object, Integer> entries = state.m_snapshot.toMap();
+            apply(entries, state.m_overlay);
+            m_state = new State(new Snapshot(entries));
+        }
+    }
+
+    private boolean isPrimary(final String addr, final long nodeId) {
+        final DataSource dataSource = m_dataSource;
+        if (dataSource == null) {
+            return true;
+        }
+        try {
+            final List<String> primary = new JdbcTemplate(dataSource).queryForList(IS_PRIMARY_SQL, String.class, Integer.valueOf((int) nodeId), addr);
+            return primary.contains("P");
+        } catch (final DataAccessException e) {
+            LOG.warn("setNodeId: unable to check whether {} is primary on node {}", addr, nodeId, e);
+            return false;
+        }
+    }
+
+    private void scheduleRefresh(final long interval) {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new LogPreservingThreadFactory(getClass().getSimpleName(), 1, false)
+        );
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (m_dataSource == null) {
+                    return;
+                }
+                try {
+                    dataSourceSync();
+                } catch (final Throwable e) {
+                    LOG.warn("Unable to reload the interface to node index", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        LOG.info("Reloading the interface to node index every {} ms", interval);
+    }
+
+    private static int lookup(final State state, final Object key) {
+        if (!state.m_overlay.isEmpty()) {
+            final Integer nodeId = state.m_overlay.get(key);
+            if (nodeId != null) {
+                return nodeId.intValue();
+            }
+        }
+        return state.m_snapshot.get(key);
+    }
+
+    private static void apply(final Map<Object, Integer> entries, final Map<Object, Integer> changes) {
+        for (final Map.Entry<Object, Integer> change : changes.entrySet()) {
+            if (REMOVED.equals(change.getValue())) {
+                entries.remove(change.getKey());
+            } else {
+                entries.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    private static InetAddress toInetAddress(final String addr) {
+        try {
+            return InetAddressUtils.addr(addr);
+        } catch (final IllegalArgumentException e) {
+            LOG.debug("Ignoring invalid IP address {}", addr);
+            return null;
+        }
+    }
+
+    /**
+     * @return an Integer for IPv4 addresses, the address itself otherwise
+     */
+    private static Object key(final InetAddress addr) {
+        if (addr instanceof Inet4Address) {
+            final byte[] b = addr.getAddress();
+            return Integer.valueOf((b[0] & 0xff) << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | (b[3] & 0xff));
+        }
+        return addr;
+    }
+
+    private static Object key(final String addr) {
+        final long ipv4 = parseIPv4(addr);
+        if (ipv4 >= 0) {
+            return Integer.valueOf((int) ipv4);
+        }
+        final InetAddress inetAddr = toInetAddress(addr);
+        return inetAddr == null ? null : key(inetAddr);
+    }
+
+    /**
+     * Parse a dotted-quad IPv4 address without creating any objects.
+     *
+     * @return the address as an unsigned 32-bit number, or -1 if it is not
+     *         a dotted-quad IPv4 address
+     */
+    static long parseIPv4(final String addr) {
+        final int length = addr.length();
+        if (length < 7 || length > 15) {
+            return -1;
+        }
+        long result = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = addr.charAt(i);
+            if (c == '.') {
+                if (octet < 0 || ++dots > 3) {
+                    return -1;
+                }
+                result = result << 8 | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || octet < 0) {
+            return -1;
+        }
+        return result << 8 | octet;
+    }
+
+    private static final class State {
+        private final Snapshot m_snapshot;
+
+        private final ConcurrentHashMap<Object, Integer> m_overlay = new ConcurrentHashMap<Object, Integer>();
+
+        private State(final Snapshot snapshot) {
+            m_snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Immutable address to node ID table.  Node ID 0 marks an empty slot.
+     */
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(Collections.<Object, Integer>emptyMap());
+
+        private final int[] m_ipv4Keys;
+
+        private final int[] m_ipv4Nodes;
+
+        private final int m_mask;
+
+        private final Map<InetAddress, Integer> m_ipv6;
+
+        private Snapshot(final Map<Object, Integer> entries) {
+            int ipv4Count = 0;
+            for (final Object key : entries.keySet()) {
+                if (key instanceof Integer) {
+                    ipv4Count++;
+                }
+            }
+
+            // keep the table at most half full
+            int capacity = 16;
+            while (capacity < ipv4Count * 2) {
+                capacity <<= 1;
+            }
+            m_ipv4Keys = new int[capacity];
+            m_ipv4Nodes = new int[capacity];
+            m_mask = capacity - 1;
+
+            final Map<InetAddress, Integer> ipv6 = new HashMap<InetAddress, Integer>();
+            for (final Map.Entry<Object, Integer> entry : entries.entrySet()) {
+                if (entry.getKey() instanceof Integer) {
+                    final int addr = ((Integer) entry.getKey()).intValue();
+                    int i = hash(addr) & m_mask;
+                    while (m_ipv4Nodes[i] != 0 && m_ipv4Keys[i] != addr) {
+                        i = (i + 1) & m_mask;
+                    }
+                    m_ipv4Keys[i] = addr;
+                    m_ipv4Nodes[i] = entry.getValue().intValue();
+                } else {
+                    ipv6.put((InetAddress) entry.getKey(), entry.getValue());
+                }
+            }
+            m_ipv6 = ipv6;
+        }
+
+        private int get(final int addr) {
+            for (int i = hash(addr) & m_mask; ; i = (i + 1) & m_mask) {
+                final int nodeId = m_ipv4Nodes[i];
+                if (nodeId == 0 || m_ipv4Keys[i] == addr) {
+                    return nodeId;
+                }
+            }
+        }
+
+        private int get(final Object key) {
+            if (key instanceof Integer) {
+                return get(((Integer) key).intValue());
+            }
+            final Integer nodeId = m_ipv6.get(key);
+            return nodeId == null ? 0 : nodeId.intValue();
+        }
+
+        private int size() {
+            int size = m_ipv6.size();
+            for (final int nodeId : m_ipv4Nodes) {
+                if (nodeId != 0) {
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        private Map<Object, Integer> toMap() {
+            final Map<Object, Integer> entries = new HashMap<Object, Integer>();
+            for (int i = 0; i < m_ipv4Nodes.length; i++) {
+                if (m_ipv4Nodes[i] != 0) {
+                    entries.put(Integer.valueOf(m_ipv4Keys[i]), Integer.valueOf(m_ipv4Nodes[i]));
+                }
+            }
+            entries.putAll(m_ipv6);
+            return entries;
+        }
+
+        private static int hash(final int addr) {
+            final int h = addr * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
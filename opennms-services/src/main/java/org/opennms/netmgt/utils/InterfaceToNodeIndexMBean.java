@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.utils;
+
+/**
+ * Statistics of a daemon's IP address to node index.
+ *
+ * @see InterfaceToNodeIndex
+ */
+public interface InterfaceToNodeIndexMBean {
+
+    /**
+     * @return the number of addresses in the index
+     */
+    int getSize();
+
+    /**
+     * @return the number of lookups since startup
+     */
+    long getLookups();
+
+    /**
+     * @return the number of lookups that did not find a node
+     */
+    long getMisses();
+
+    /**
+     * @return the number of times the index has been reloaded from the database
+     */
+    long getRebuilds();
+
+    /**
+     * @return the number of node and interface changes applied since the last reload
+     */
+    long getUpdatesSinceRebuild();
+
+    /**
+     * @return the number of milliseconds since the last reload, or -1 if the
+     *         index has never been loaded
+     */
+    long getMillisSinceRebuild();
+}
@@ -38,6 +38,16 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -86,6 +96,20 @@ public class AutomationProcessor implements ReadyRunnable {
     private volatile Schedule m_schedule;
     private volatile boolean m_ready = false;
 
+    /**
+     * Automations whose actions write to the same tables are run one at a
+     * time, while automations that write to disjoint tables may run in
+     * parallel on the vacuumd scheduler threads.  Actions whose tables
+     * cannot be determined take the exclusive lock and run alone.
+     */
+    private static final ReadWriteLock s_exclusiveLock = new ReentrantReadWriteLock();
+    private static final ConcurrentMap<String, Lock> s_tableLocks = new ConcurrentHashMap<String, Lock>();
+
+    private final AtomicLong m_runs = new AtomicLong();
+    private final AtomicLong m_rowsAffected = new AtomicLong();
+    private final AtomicLong m_totalRunTime = new AtomicLong();
+    private volatile long m_lastRunTime = 0;
+
     static class TriggerProcessor {
     	private static final Logger LOG = LoggerFactory.getLogger(TriggerProcessor.class);
 
@@ -219,14 +243,37 @@ public class AutomationProcessor implements ReadyRunnable {
     
     static class ActionProcessor {
     	private static final Logger LOG = LoggerFactory.getLogger(ActionProcessor.class);
-        
+
+        /**
+         * Matches the table that an UPDATE, DELETE or INSERT statement writes to.
+         */
+        private static final Pattern WRITE_TABLE = Pattern.compile("\\b(?:update|delete\\s+from|insert\\s+into)\\s+(?:only\\s+)?\"?([\\w.]+)\"?", Pattern.CASE_INSENSITIVE);
+
         private final String m_automationName;
         private final Action m_action;
 
+        /**
+         * The number of trigger rows that are sent to the database in one JDBC
+         * batch.  A value of 1 or less runs one update per row.
+         */
+        private int m_batchSize = Integer.getInteger("org.opennms.vacuumd.batchSize", 1000);
+
+        // the action statement is parsed once, not for every run and trigger row
+        private String m_actionJDBC;
+        private List<String> m_actionColumns;
+        private Set<String> m_actionTables;
+        private boolean m_actionTablesParsed = false;
+
+        private volatile int m_lastRowCount = 0;
+
         public ActionProcessor(String automationName, Action action) {
             m_automationName = automationName;
             m_action = action;
         }
+
+        public void setBatchSize(int batchSize) {
+            m_batchSize = batchSize;
+        }
         
         public boolean hasAction() {
             return m_action != null;
@@ -240,13 +287,17 @@ public class AutomationProcessor implements ReadyRunnable {
             return getAction().getStatement().getContent();
         }
 
+        String getActionJDBC() {
+            if (m_actionJDBC == null) {
+                m_actionJDBC = getActionSQL().replaceAll("\\$\\{\\w+\\}", "?");
+                LOG.debug("createPrepareStatement: This action SQL: {}\nTurned into this: {}", getActionSQL(), m_actionJDBC);
+            }
+            return m_actionJDBC;
+        }
+
         PreparedStatement createPreparedStatement() throws SQLException {
-            String actionJDBC = getActionSQL().replaceAll("\\$\\{\\w+\\}", "?");
-            
-            LOG.debug("createPrepareStatement: This action SQL: {}\nTurned into this: {}", getActionSQL(), actionJDBC);
-            
             Connection conn = Transaction.getConnection(m_action.getDataSource());
-            PreparedStatement stmt = conn.prepareStatement(actionJDBC);
+            PreparedStatement stmt = conn.prepareStatement(getActionJDBC());
             Transaction.register(stmt);
             return stmt;
         }
@@ -259,7 +310,36 @@ public class AutomationProcessor implements ReadyRunnable {
          * @return
          */
         public List<String> getActionColumns() {
-        	return getTokenizedColumns(getActionSQL());
+            if (m_actionColumns == null) {
+                m_actionColumns = getTokenizedColumns(getActionSQL());
+            }
+            return m_actionColumns;
+        }
+
+        /**
+         * Returns the lower-case names of the tables that the action statement
+         * updates, deletes from or inserts into.  A statement that writes to
+         * none of them and is not a plain SELECT, such as a call to a stored
+         * procedure, may write to any table, in which case null is returned.
+         *
+         * @return the tables written by the action, or null if they are unknown
+         */
+        public Set<String> getActionTables() {
+            if (!m_actionTablesParsed) {
+                final Set<String> tables = new TreeSet<String>();
+                final String sql = getActionSQL();
+                final Matcher matcher = WRITE_TABLE.matcher(sql);
+                while (matcher.find()) {
+                    tables.add(matcher.group(1).toLowerCase(Locale.ENGLISH));
+                }
+                if (tables.isEmpty() && !sql.trim().toLowerCase(Locale.ENGLISH).startsWith("select")) {
+                    m_actionTables = null;
+                } else {
+                    m_actionTables = tables;
+                }
+                m_actionTablesParsed = true;
+            }
+            return m_actionTables;
         }
 
         private List<String> getTokenizedColumns(String targetString) {
@@ -282,15 +362,27 @@ public class AutomationProcessor implements ReadyRunnable {
         }
         
         void assignStatementParameters(PreparedStatement stmt, ResultSet rs) throws SQLException {
-            List<String> actionColumns = getTokenizedColumns(getActionSQL());        
-            Iterator<String> it = actionColumns.iterator();
-            String actionColumnName = null;
-            int i=0;
-            while (it.hasNext()) {
-                actionColumnName = (String)it.next();
-                stmt.setObject(++i, rs.getObject(actionColumnName));
+            assignStatementParameters(stmt, rs, getColumnIndexes(rs));
+        }
+
+        void assignStatementParameters(PreparedStatement stmt, ResultSet rs, int[] columnIndexes) throws SQLException {
+            for (int i = 0; i < columnIndexes.length; i++) {
+                stmt.setObject(i + 1, rs.getObject(columnIndexes[i]));
             }
-        
+        }
+
+        /**
+         * Looks up the position in the trigger results of each column used by
+         * the action, so that the columns do not have to be found by name for
+         * every row.
+         */
+        int[] getColumnIndexes(ResultSet rs) throws SQLException {
+            final List<String> actionColumns = getActionColumns();
+            final int[] columnIndexes = new int[actionColumns.size()];
+            for (int i = 0; i < columnIndexes.length; i++) {
+                columnIndexes[i] = rs.findColumn(actionColumns.get(i));
+            }
+            return columnIndexes;
         }
 
         /**
@@ -322,7 +414,7 @@ public class AutomationProcessor implements ReadyRunnable {
             } else {
                 //Convert the sql to a PreparedStatement
                 PreparedStatement actionStatement = createPreparedStatement();
-                actionStatement.executeUpdate();
+                m_lastRowCount = actionStatement.executeUpdate();
                 return true;
             }
         }
@@ -333,17 +425,52 @@ public class AutomationProcessor implements ReadyRunnable {
             triggerResultSet.beforeFirst();
             
             PreparedStatement actionStatement = createPreparedStatement();
-        
+            int[] columnIndexes = getColumnIndexes(triggerResultSet);
+
+            int rowCount = 0;
+            int batched = 0;
+
             //Loop through the select results
             while (triggerResultSet.next()) {                        
-                //Convert the sql to a PreparedStatement
-                assignStatementParameters(actionStatement, triggerResultSet);
-                actionStatement.executeUpdate();
+                assignStatementParameters(actionStatement, triggerResultSet, columnIndexes);
+                if (m_batchSize > 1) {
+                    actionStatement.addBatch();
+                    if (++batched >= m_batchSize) {
+                        rowCount += executeBatch(actionStatement);
+                        batched = 0;
+                    }
+                } else {
+                    rowCount += actionStatement.executeUpdate();
+                }
+            }
+            if (batched > 0) {
+                rowCount += executeBatch(actionStatement);
             }
 
+            m_lastRowCount = rowCount;
             return true;
         }
 
+        private int executeBatch(PreparedStatement actionStatement) throws SQLException {
+            int rowCount = 0;
+            for (int count : actionStatement.executeBatch()) {
+                if (count > 0) {
+                    rowCount += count;
+                } else if (count == Statement.SUCCESS_NO_INFO) {
+                    // the driver does not say how many rows were changed
+                    rowCount++;
+                }
+            }
+            return rowCount;
+        }
+
+        /**
+         * @return the number of rows changed by the last run of the action
+         */
+        public int getLastRowCount() {
+            return m_lastRowCount;
+        }
+
 		boolean processAction(TriggerResults triggerResults) throws SQLException {
 			if (triggerResults.hasTrigger()) {
 			    return processTriggerResults(triggerResults);
@@ -701,7 +828,12 @@ public class AutomationProcessor implements ReadyRunnable {
             }
         }
 
-        LOG.debug("run: Finished automation {}, started at {}", m_automation.getName(), startDate);
+        final long elapsed = System.currentTimeMillis() - startDate.getTime();
+        m_runs.incrementAndGet();
+        m_totalRunTime.addAndGet(elapsed);
+        m_lastRunTime = elapsed;
+
+        LOG.debug("run: Finished automation {}, started at {}, took {}ms", m_automation.getName(), startDate, elapsed);
         
     }
 
@@ -726,7 +858,15 @@ public class AutomationProcessor implements ReadyRunnable {
 
         LOG.debug("runAutomation: Executing trigger: {}", m_automation.getTriggerName());
         
-        
+        final List<Lock> locks = lockTables();
+        try {
+            return runAutomationTransaction();
+        } finally {
+            unlockTables(locks);
+        }
+    }
+
+    private boolean runAutomationTransaction() throws SQLException {
         Transaction.begin();
         try {
             LOG.debug("runAutomation: Processing automation: {}", m_automation.getName());
@@ -736,6 +876,10 @@ public class AutomationProcessor implements ReadyRunnable {
             boolean success = false;
             if (results.isSuccessful()) {
                 success = processAction(results);
+                if (success) {
+                    m_rowsAffected.addAndGet(m_action.getLastRowCount());
+                    LOG.debug("runAutomation: Action {} of automation {} changed {} rows", m_action.getName(), m_automation.getName(), m_action.getLastRowCount());
+                }
             }
             
 			return success;
@@ -753,6 +897,42 @@ public class AutomationProcessor implements ReadyRunnable {
 
     }
 
+    /**
+     * Locks the tables that the action writes to, in name order so that
+     * automations cannot deadlock each other, or everything when the tables
+     * are not known.
+     */
+    private List<Lock> lockTables() {
+        final List<Lock> locks = new ArrayList<Lock>();
+        final Set<String> tables = m_action.hasAction() ? m_action.getActionTables() : null;
+        if (tables == null) {
+            locks.add(s_exclusiveLock.writeLock());
+        } else {
+            locks.add(s_exclusiveLock.readLock());
+            for (final String table : tables) {
+                Lock lock = s_tableLocks.get(table);
+                if (lock == null) {
+                    final Lock newLock = new ReentrantLock();
+                    lock = s_tableLocks.putIfAbsent(table, newLock);
+                    if (lock == null) {
+                        lock = newLock;
+                    }
+                }
+                locks.add(lock);
+            }
+        }
+        for (final Lock lock : locks) {
+            lock.lock();
+        }
+        return locks;
+    }
+
+    private static void unlockTables(final List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
     private boolean processAction(TriggerResults triggerResults) throws SQLException {
 		LOG.debug("runAutomation: running action(s)/actionEvent(s) for : {}", m_automation.getName());
 		
@@ -855,6 +1035,42 @@ public class AutomationProcessor implements ReadyRunnable {
         return m_automation;
     }
     
+    /**
+     * <p>getRunCount</p>
+     *
+     * @return the number of times the automation has run
+     */
+    public long getRunCount() {
+        return m_runs.get();
+    }
+
+    /**
+     * <p>getRowsAffected</p>
+     *
+     * @return the total number of rows changed by the automation's action
+     */
+    public long getRowsAffected() {
+        return m_rowsAffected.get();
+    }
+
+    /**
+     * <p>getTotalRunTime</p>
+     *
+     * @return the total time in milliseconds spent running the automation
+     */
+    public long getTotalRunTime() {
+        return m_totalRunTime.get();
+    }
+
+    /**
+     * <p>getLastRunTime</p>
+     *
+     * @return the time in milliseconds that the last run took
+     */
+    public long getLastRunTime() {
+        return m_lastRunTime;
+    }
+
     /**
      * <p>isReady</p>
      *
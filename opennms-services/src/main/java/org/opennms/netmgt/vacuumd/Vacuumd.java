@@ -34,8 +34,11 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
@@ -84,6 +87,20 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
 
     private volatile EventIpcManager m_eventMgr;
 
+    private volatile List<AutomationProcessor> m_automations = Collections.emptyList();
+
+    // totals of the schedulers and automations replaced by a config reload,
+    // so the JMX counters do not go back to zero
+    private final AtomicLong m_retiredAutomations = new AtomicLong();
+    private final AtomicLong m_retiredRowsAffected = new AtomicLong();
+    private final AtomicLong m_retiredRunTime = new AtomicLong();
+
+    /**
+     * The number of threads automations are run on.  Automations whose
+     * actions write to different tables run in parallel.
+     */
+    private int m_threads = Integer.getInteger("org.opennms.vacuumd.threads", 2);
+
     /**
      * <p>getSingleton</p>
      *
@@ -287,7 +304,10 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
     private void createScheduler() {
         try {
             LOG.debug("init: Creating Vacuumd scheduler");
-            m_scheduler = new LegacyScheduler("Vacuumd", 2);
+            if (m_scheduler != null) {
+                m_retiredAutomations.addAndGet(m_scheduler.getNumTasksExecuted());
+            }
+            m_scheduler = new LegacyScheduler("Vacuumd", m_threads);
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create Vacuumd scheduler", e);
             throw e;
@@ -304,18 +324,30 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
     }
 
     private void scheduleAutomations() {
+        for (AutomationProcessor ap : m_automations) {
+            m_retiredRowsAffected.addAndGet(ap.getRowsAffected());
+            m_retiredRunTime.addAndGet(ap.getTotalRunTime());
+        }
+
+        List<AutomationProcessor> automations = new ArrayList<AutomationProcessor>();
         for (Automation auto : getVacuumdConfig().getAutomations()) {
-            scheduleAutomation(auto);
+            AutomationProcessor ap = scheduleAutomation(auto);
+            if (ap != null) {
+                automations.add(ap);
+            }
         }
+        m_automations = Collections.unmodifiableList(automations);
     }
 
-    private void scheduleAutomation(Automation auto) {
+    private AutomationProcessor scheduleAutomation(Automation auto) {
         if (auto.getActive()) {
             AutomationProcessor ap = new AutomationProcessor(auto);
             Schedule s = new Schedule(ap, new AutomationInterval(auto.getInterval()), m_scheduler);
             ap.setSchedule(s);
             s.schedule();
+            return ap;
         }
+        return null;
     }
 
     /**
@@ -419,11 +451,59 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
      * @return the number of automations that have been executed
      */
     public long getNumAutomations() {
+        final long retired = m_retiredAutomations.get();
         if (m_scheduler != null) {
-            return m_scheduler.getNumTasksExecuted();
+            return retired + m_scheduler.getNumTasksExecuted();
         } else {
-            return 0L;
+            return retired;
+        }
+    }
+
+    /**
+     * Returns the number of database rows changed by automation actions,
+     * including those run before the configuration was last reloaded.
+     *
+     * @return the number of rows changed by automations
+     */
+    public long getNumAutomationRowsAffected() {
+        long rows = m_retiredRowsAffected.get();
+        for (AutomationProcessor ap : m_automations) {
+            rows += ap.getRowsAffected();
         }
+        return rows;
+    }
+
+    /**
+     * Returns the total time in milliseconds spent running automations,
+     * including those run before the configuration was last reloaded.
+     *
+     * @return the time spent running automations
+     */
+    public long getAutomationRunTime() {
+        long time = m_retiredRunTime.get();
+        for (AutomationProcessor ap : m_automations) {
+            time += ap.getTotalRunTime();
+        }
+        return time;
+    }
+
+    /**
+     * <p>getAutomationProcessors</p>
+     *
+     * @return the scheduled automations
+     */
+    public List<AutomationProcessor> getAutomationProcessors() {
+        return m_automations;
+    }
+
+    /**
+     * <p>setThreads</p>
+     *
+     * @param threads the number of threads to run automations on; takes
+     *        effect when the scheduler is next created
+     */
+    public void setThreads(int threads) {
+        m_threads = threads;
     }
 
     private VacuumdConfigFactory getVacuumdConfig() {
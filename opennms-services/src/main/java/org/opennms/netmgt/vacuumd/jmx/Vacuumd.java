@@ -135,6 +135,18 @@ public class Vacuumd implements VacuumdMBean {
         return getVacuumd().getNumAutomations();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getNumAutomationRowsAffected() {
+        return getVacuumd().getNumAutomationRowsAffected();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAutomationRunTime() {
+        return getVacuumd().getAutomationRunTime();
+    }
+
     private org.opennms.netmgt.vacuumd.Vacuumd getVacuumd() {
         return org.opennms.netmgt.vacuumd.Vacuumd.getSingleton();
     }
@@ -46,4 +46,18 @@ public interface VacuumdMBean extends BaseOnmsMBean {
      * @return the number of automations that have been executed
      */
     public long getNumAutomations();
+
+    /**
+     * Returns the number of database rows changed by automation actions (counter).
+     *
+     * @return the number of rows changed by automations
+     */
+    public long getNumAutomationRowsAffected();
+
+    /**
+     * Returns the time in milliseconds spent running automations (counter).
+     *
+     * @return the time spent running automations
+     */
+    public long getAutomationRunTime();
 }
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.collectd;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
@@ -42,6 +44,7 @@ import org.junit.rules.TestName;
 import org.opennms.core.test.MockLogAppender;
 import org.opennms.core.test.MockPlatformTransactionManager;
 import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.PropertiesCache;
 import org.opennms.netmgt.config.MibObject;
 import org.opennms.netmgt.config.collector.AttributeGroupType;
 import org.opennms.netmgt.config.collector.CollectionAttribute;
@@ -173,6 +176,45 @@ public class BasePersisterTest {
         testPersistStringAttributeUsingBuilder();
     }
 
+    /**
+     * All the string attributes of a resource should end up in
+     * strings.properties with a single write when the resource is complete.
+     */
+    @Test
+    public void testPersistStringAttributesWrittenOncePerResource() throws Exception {
+        initPersister();
+
+        File nodeDir = m_fileAnticipator.expecting(getSnmpRrdDirectory(), m_node.getId().toString());
+        File stringsFile = m_fileAnticipator.expecting(nodeDir, "strings.properties");
+
+        SnmpAttribute attribute = buildStringAttribute();
+        SnmpCollectionResource resource = (SnmpCollectionResource) attribute.getResource();
+        SnmpAttribute otherAttribute = buildStringAttribute(resource, "otherAlias", "bar");
+
+        long writes = BasePersister.getStringPropertiesWrites();
+        long avoided = BasePersister.getStringPropertiesWritesAvoided();
+
+        m_persister.visitResource(resource);
+        m_persister.persistStringAttribute(attribute);
+        m_persister.persistStringAttribute(otherAttribute);
+        assertEquals(writes, BasePersister.getStringPropertiesWrites());
+        m_persister.completeResource(resource);
+
+        assertEquals(writes + 1, BasePersister.getStringPropertiesWrites());
+        assertEquals(avoided + 1, BasePersister.getStringPropertiesWritesAvoided());
+        assertEquals("foo", new PropertiesCache().getProperty(stringsFile, "mibObjectAlias"));
+        assertEquals("bar", new PropertiesCache().getProperty(stringsFile, "otherAlias"));
+
+        // the same values again do not need a write at all
+        m_persister.visitResource(resource);
+        m_persister.persistStringAttribute(attribute);
+        m_persister.persistStringAttribute(otherAttribute);
+        m_persister.completeResource(resource);
+
+        assertEquals(writes + 1, BasePersister.getStringPropertiesWrites());
+        assertEquals(avoided + 3, BasePersister.getStringPropertiesWritesAvoided());
+    }
+
     private SnmpAttribute buildStringAttribute() {
         
         EasyMock.expect(m_ifDao.load(m_intf.getId())).andReturn(m_intf).anyTimes();
@@ -189,17 +231,21 @@ public class BasePersisterTest {
         
         SnmpCollectionResource resource = new NodeInfo(resourceType, agent);
         
+        return buildStringAttribute(resource, "mibObjectAlias", "foo");
+    }
+
+    private SnmpAttribute buildStringAttribute(SnmpCollectionResource resource, String alias, String value) {
         MibObject mibObject = new MibObject();
         mibObject.setOid(".1.1.1.1");
-        mibObject.setAlias("mibObjectAlias");
+        mibObject.setAlias(alias);
         mibObject.setType("string");
         mibObject.setInstance("0");
         mibObject.setMaxval(null);
         mibObject.setMinval(null);
         
-        SnmpAttributeType attributeType = new StringAttributeType(resourceType, "some-collection", mibObject, new AttributeGroupType("mibGroup", "ignore"));
+        SnmpAttributeType attributeType = new StringAttributeType(resource.getResourceType(), "some-collection", mibObject, new AttributeGroupType("mibGroup", "ignore"));
         
-        return new SnmpAttribute(resource, attributeType, SnmpUtils.getValueFactory().getOctetString("foo".getBytes()));
+        return new SnmpAttribute(resource, attributeType, SnmpUtils.getValueFactory().getOctetString(value.getBytes()));
     }
 
     private void initPersister() throws IOException {
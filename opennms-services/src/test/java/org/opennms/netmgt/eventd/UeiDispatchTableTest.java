@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class UeiDispatchTableTest extends TestCase {
+
+    private UeiDispatchTable<String> m_table;
+
+    @Override
+    protected void setUp() throws Exception {
+        Map<String, List<String>> ueiTargets = new HashMap<String, List<String>>();
+        ueiTargets.put("uei.opennms.org/nodes/nodeDown", Arrays.asList("poller", "notifd"));
+        ueiTargets.put("uei.opennms.org/nodes/", Arrays.asList("notifd", "rtc"));
+        ueiTargets.put("uei.opennms.org/", Arrays.asList("correlator"));
+        ueiTargets.put("uei.opennms.org/unused", Collections.<String>emptyList());
+
+        m_table = new UeiDispatchTable<String>(Arrays.asList("alarmd"), ueiTargets);
+    }
+
+    public void testNullUeiOnlyMatchesAll() {
+        assertEquals(Arrays.asList("alarmd"), m_table.resolve(null));
+    }
+
+    public void testExactAndWildcardMatchesAreDeduplicated() {
+        assertEquals(Arrays.asList("alarmd", "poller", "notifd", "rtc", "correlator"), m_table.resolve("uei.opennms.org/nodes/nodeDown"));
+    }
+
+    public void testWildcardOnly() {
+        assertEquals(Arrays.asList("alarmd", "notifd", "rtc", "correlator"), m_table.resolve("uei.opennms.org/nodes/nodeUp"));
+    }
+
+    public void testNoMatchReturnsMatchAll() {
+        assertSame(m_table.getMatchAll(), m_table.resolve("uei.example.com/foo"));
+    }
+
+    public void testResolvedListIsReused() {
+        assertSame(m_table.resolve("uei.opennms.org/nodes/nodeDown"), m_table.resolve("uei.opennms.org/nodes/nodeDown"));
+    }
+
+    public void testTableIsNotAffectedByLaterChanges() {
+        Map<String, List<String>> ueiTargets = new HashMap<String, List<String>>();
+        List<String> targets = new ArrayList<String>(Arrays.asList("poller"));
+        ueiTargets.put("uei.opennms.org/test", targets);
+        UeiDispatchTable<String> table = new UeiDispatchTable<String>(Collections.<String>emptyList(), ueiTargets);
+
+        targets.add("notifd");
+
+        assertEquals(Arrays.asList("poller"), table.resolve("uei.opennms.org/test"));
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.datablock;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.config.DefaultEventConfDao;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Compares the speed of the indexed lookup in
+ * {@link EventConfData#getEvent(Event)} with a scan over every key, using
+ * one event for each event in the eventconf files that ship with OpenNMS.
+ * Not part of the normal test run; use the <code>benchmark</code> profile
+ * to run it.
+ */
+public class EventKeyIndexBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(EventKeyIndexBenchmark.class);
+
+    private static final int ATTEMPTS = 20;
+
+    private EventConfData m_eventConfData;
+
+    private LinkedHashMap<EventKey, org.opennms.netmgt.xml.eventconf.Event> m_eventMap;
+
+    private List<Event> m_events;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false);
+
+        DefaultEventConfDao eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        eventConfDao.afterPropertiesSet();
+
+        m_eventConfData = new EventConfData();
+        m_eventMap = new LinkedHashMap<EventKey, org.opennms.netmgt.xml.eventconf.Event>();
+        m_events = new ArrayList<Event>();
+
+        for (org.opennms.netmgt.xml.eventconf.Event eventConf : eventConfDao.getAllEvents()) {
+            m_eventConfData.put(eventConf);
+            m_eventMap.put(new EventKey(eventConf), eventConf);
+            m_events.add(EventKeyIndexTest.createEvent(eventConf));
+        }
+    }
+
+    @Test
+    public void testLookupSpeed() {
+        // warm up both paths
+        for (Event event : m_events) {
+            scan(event);
+            m_eventConfData.getEvent(event);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ATTEMPTS; i++) {
+            for (Event event : m_events) {
+                scan(event);
+            }
+        }
+        final long scanNanos = Math.max(1, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < ATTEMPTS; i++) {
+            for (Event event : m_events) {
+                m_eventConfData.getEvent(event);
+            }
+        }
+        final long indexNanos = Math.max(1, System.nanoTime() - start);
+
+        final int lookups = ATTEMPTS * m_events.size();
+        LOG.info("{} keys, {} lookups: scan {} ms ({} events/s), index {} ms ({} events/s)",
+                 m_eventMap.size(), lookups,
+                 scanNanos / 1000000, Math.round(lookups * 1e9 / scanNanos),
+                 indexNanos / 1000000, Math.round(lookups * 1e9 / indexNanos));
+        assertNotNull(m_eventConfData.getEvent(m_events.get(0)));
+    }
+
+    /**
+     * The lookup as it was done before the index, the first key in
+     * configuration order that matches.
+     */
+    private org.opennms.netmgt.xml.eventconf.Event scan(Event event) {
+        for (Map.Entry<EventKey, org.opennms.netmgt.xml.eventconf.Event> entry : m_eventMap.entrySet()) {
+            if (EventConfData.eventMatchesKey(entry.getKey(), event)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.datablock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.config.DefaultEventConfDao;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Checks that the indexed lookup in {@link EventConfData#getEvent(Event)}
+ * returns the same first match as a scan over every key, using the
+ * eventconf files that ship with OpenNMS.
+ */
+public class EventKeyIndexTest {
+
+    private EventConfData m_eventConfData;
+
+    /**
+     * The keys in the same order as EventConfData keeps them, for the
+     * reference scan.
+     */
+    private LinkedHashMap<EventKey, org.opennms.netmgt.xml.eventconf.Event> m_eventMap;
+
+    private List<Event> m_events;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false);
+
+        DefaultEventConfDao eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        eventConfDao.afterPropertiesSet();
+
+        m_eventConfData = new EventConfData();
+        m_eventMap = new LinkedHashMap<EventKey, org.opennms.netmgt.xml.eventconf.Event>();
+        m_events = new ArrayList<Event>();
+
+        for (org.opennms.netmgt.xml.eventconf.Event eventConf : eventConfDao.getAllEvents()) {
+            m_eventConfData.put(eventConf);
+
+            m_eventMap.put(new EventKey(eventConf), eventConf);
+            if (eventConf.getSnmp() != null && eventConf.getSnmp().getId() != null) {
+                EventKey snmpKey = new EventKey();
+                snmpKey.put(EventKey.TAG_SNMP_EID, new EventMaskValueList(eventConf.getSnmp().getId()));
+                m_eventMap.put(snmpKey, eventConf);
+            }
+
+            m_events.add(createEvent(eventConf));
+        }
+
+        // a few events that should not match anything specific
+        m_events.add(new EventBuilder("uei.opennms.org/test/noSuchEvent", "EventKeyIndexTest").getEvent());
+        m_events.add(createTrap(".1.3.6.1.4.1.99999.1", 6, 1));
+        m_events.add(createTrap(null, 0, 0));
+    }
+
+    @Test
+    public void testIndexMatchesScan() {
+        int matched = 0;
+        for (Event event : m_events) {
+            org.opennms.netmgt.xml.eventconf.Event expected = scan(event);
+            assertSame("wrong match for " + event.getUei() + " / " + event.getSnmp(), expected, m_eventConfData.getEvent(event));
+            if (expected != null) {
+                matched++;
+            }
+        }
+        assertTrue("expected the events built from eventconf to match", matched > 0);
+    }
+
+    @Test
+    public void testIndexIsRebuiltAfterChanges() {
+        EventConfData data = new EventConfData();
+        Event event = new EventBuilder("uei.opennms.org/test/addedLater", "EventKeyIndexTest").getEvent();
+        assertNull(data.getEvent(event));
+
+        org.opennms.netmgt.xml.eventconf.Event eventConf = new org.opennms.netmgt.xml.eventconf.Event();
+        eventConf.setUei("uei.opennms.org/test/addedLater");
+        data.put(eventConf);
+
+        assertSame(eventConf, data.getEvent(event));
+
+        data.clear();
+        assertNull(data.getEvent(event));
+    }
+
+    @Test
+    public void testWildcardKeysKeepConfigurationOrder() {
+        EventConfData data = new EventConfData();
+
+        org.opennms.netmgt.xml.eventconf.Event wildcard = createEventConf("uei.opennms.org/test/wildcard", ".1.3.6.1.4.1.5813%");
+        org.opennms.netmgt.xml.eventconf.Event exact = createEventConf("uei.opennms.org/test/exact", ".1.3.6.1.4.1.5813.1");
+        data.put(wildcard);
+        data.put(exact);
+
+        Event trap = createTrap(".1.3.6.1.4.1.5813.1", 6, 1);
+        assertSame(wildcard, data.getEvent(trap));
+        assertEquals("uei.opennms.org/test/wildcard", data.getEvent(trap).getUei());
+    }
+
+    private org.opennms.netmgt.xml.eventconf.Event scan(Event event) {
+        for (Map.Entry<EventKey, org.opennms.netmgt.xml.eventconf.Event> entry : m_eventMap.entrySet()) {
+            if (EventConfData.eventMatchesKey(entry.getKey(), event)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static org.opennms.netmgt.xml.eventconf.Event createEventConf(String uei, String id) {
+        org.opennms.netmgt.xml.eventconf.Event eventConf = new org.opennms.netmgt.xml.eventconf.Event();
+        eventConf.setUei(uei);
+        Maskelement maskelement = new Maskelement();
+        maskelement.setMename(EventKey.TAG_SNMP_EID);
+        maskelement.addMevalue(id);
+        Mask mask = new Mask();
+        mask.addMaskelement(maskelement);
+        eventConf.setMask(mask);
+        return eventConf;
+    }
+
+    /**
+     * Build an event that looks like what the configuration expects, using
+     * the first value of its enterprise ID, generic and specific mask
+     * elements when they are present.
+     */
+    static Event createEvent(org.opennms.netmgt.xml.eventconf.Event eventConf) {
+        Mask mask = eventConf.getMask();
+        if (mask == null || mask.getMaskelementCount() == 0) {
+            return new EventBuilder(eventConf.getUei(), "EventKeyIndexTest").getEvent();
+        }
+
+        String id = null;
+        int generic = 6;
+        int specific = 0;
+        for (Maskelement maskelement : mask.getMaskelementCollection()) {
+            String value = maskelement.getMevalueCount() > 0 ? maskelement.getMevalue(0) : null;
+            if (value == null || value.startsWith("~") || value.endsWith("%")) {
+                continue;
+            }
+            try {
+                if (EventKey.TAG_SNMP_EID.equals(maskelement.getMename())) {
+                    id = value;
+                } else if (EventKey.TAG_SNMP_GENERIC.equals(maskelement.getMename())) {
+                    generic = Integer.parseInt(value);
+                } else if (EventKey.TAG_SNMP_SPECIFIC.equals(maskelement.getMename())) {
+                    specific = Integer.parseInt(value);
+                }
+            } catch (NumberFormatException e) {
+                // leave the default
+            }
+        }
+        return createTrap(id, generic, specific);
+    }
+
+    static Event createTrap(String id, int generic, int specific) {
+        EventBuilder bldr = new EventBuilder(null, "EventKeyIndexTest");
+        bldr.setInterface(addr("127.0.0.1"));
+        bldr.setNodeid(0);
+        bldr.setSnmpVersion("v1");
+        bldr.setEnterpriseId(id);
+        bldr.setGeneric(generic);
+        bldr.setSpecific(specific);
+        bldr.setSnmpHost("127.0.0.1");
+        return bldr.getEvent();
+    }
+}
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opennms.core.test.db.PopulatedTemporaryDatabaseTestCase;
+import org.opennms.netmgt.eventd.JdbcEventdServiceManager;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.model.events.EventProcessorException;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Tests the group-commit behaviour of {@link BatchingJdbcEventWriter}.
+ */
+public class BatchingJdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
+    /**
+     * The default number of eventd handler threads (receivers in
+     * eventd-configuration.xml), which bounds the number of callers.
+     */
+    private static final int HANDLER_POOL_SIZE = 5;
+
+    private BatchingJdbcEventWriter m_eventWriter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        m_eventWriter = createEventWriter(10, 50);
+    }
+
+    private BatchingJdbcEventWriter createEventWriter(int batchSize, long batchDelay) throws Exception {
+        return createEventWriter(new BatchingJdbcEventWriter(), batchSize, batchDelay);
+    }
+
+    private BatchingJdbcEventWriter createEventWriter(BatchingJdbcEventWriter eventWriter, int batchSize, long batchDelay) throws Exception {
+        JdbcEventdServiceManager eventdServiceManager = new JdbcEventdServiceManager();
+        eventdServiceManager.setDataSource(getDataSource());
+        eventdServiceManager.afterPropertiesSet();
+
+        eventWriter.setEventdServiceManager(eventdServiceManager);
+        eventWriter.setDataSource(getDataSource());
+        eventWriter.setGetNextIdString("SELECT nextval('eventsNxtId')");
+        eventWriter.setBatchSize(batchSize);
+        eventWriter.setBatchDelay(batchDelay);
+        eventWriter.setIdBlockSize(5);
+        eventWriter.afterPropertiesSet();
+        return eventWriter;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_eventWriter.destroy();
+        super.tearDown();
+    }
+
+    public void testEventIsPersistedBeforeProcessReturns() throws Exception {
+        EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest("logndisplay");
+        Event event = bldr.getEvent();
+
+        m_eventWriter.process(null, event);
+
+        assertTrue("event should have been assigned a dbid", event.getDbid() > 0);
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM events WHERE eventId = ?", event.getDbid()));
+    }
+
+    public void testConcurrentEventsAreGroupCommitted() throws Exception {
+        final int count = 40;
+        ExecutorService executor = Executors.newFixedThreadPool(HANDLER_POOL_SIZE);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < count; i++) {
+                final EventBuilder bldr = new EventBuilder("testUei" + i, "testSource");
+                bldr.setLogDest("logndisplay");
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        Event event = bldr.getEvent();
+                        m_eventWriter.process(null, event);
+                        return event.getDbid();
+                    }
+                }));
+            }
+
+            Set<Integer> ids = new HashSet<Integer>();
+            for (Future<Integer> future : futures) {
+                ids.add(future.get());
+            }
+
+            assertEquals("every event should have a distinct dbid", count, ids.size());
+            assertEquals(count, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM events"));
+            assertEquals(count, m_eventWriter.getEventsWritten());
+            assertTrue("expected no more transactions than events", m_eventWriter.getBatchesCommitted() <= count);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * With only as many callers as eventd has handler threads the batch size
+     * is never reached, so the writer must flush once every caller is
+     * waiting instead of sitting out the batch delay for every batch.
+     */
+    public void testBatchIsFlushedWhenEveryHandlerIsWaiting() throws Exception {
+        m_eventWriter.destroy();
+        m_eventWriter = createEventWriter(100, 60000);
+
+        final int eventsPerHandler = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(HANDLER_POOL_SIZE);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < HANDLER_POOL_SIZE; i++) {
+                final int handler = i;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        for (int j = 0; j < eventsPerHandler; j++) {
+                            EventBuilder bldr = new EventBuilder("testUei" + handler, "testSource");
+                            bldr.setLogDest("logndisplay");
+                            m_eventWriter.process(null, bldr.getEvent());
+                        }
+                        return eventsPerHandler;
+                    }
+                }));
+            }
+
+            int written = 0;
+            for (Future<Integer> future : futures) {
+                // a single batch waiting for its deadline would take a minute
+                written += future.get(30, TimeUnit.SECONDS);
+            }
+
+            assertEquals(HANDLER_POOL_SIZE * eventsPerHandler, written);
+            assertEquals(written, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM events"));
+            assertEquals(written, m_eventWriter.getEventsWritten());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Interrupting the writer thread while one caller waits for its batch
+     * and another is still preparing its event must not leave either of
+     * them waiting forever.
+     */
+    public void testInterruptedWriterDoesNotHangCallers() throws Exception {
+        m_eventWriter.destroy();
+
+        final CountDownLatch idRequested = new CountDownLatch(1);
+        final CountDownLatch releaseId = new CountDownLatch(1);
+        final AtomicBoolean first = new AtomicBoolean(true);
+        m_eventWriter = createEventWriter(new BatchingJdbcEventWriter() {
+            @Override
+            protected int getNextId() throws SQLException {
+                if (first.getAndSet(false)) {
+                    // keeps the writer waiting for this caller
+                    idRequested.countDown();
+                    try {
+                        releaseId.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getNextId();
+            }
+        }, 100, 60000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            futures.add(executor.submit(new ProcessCallable("preparingUei")));
+            assertTrue(idRequested.await(30, TimeUnit.SECONDS));
+            futures.add(executor.submit(new ProcessCallable("waitingUei")));
+
+            // give the second caller time to queue its event
+            Thread.sleep(200);
+            Thread writer = m_eventWriter.getWriterThread();
+            writer.interrupt();
+            releaseId.countDown();
+
+            for (Future<Boolean> future : futures) {
+                // either outcome is fine, as long as the caller returns
+                future.get(30, TimeUnit.SECONDS);
+            }
+            writer.join(30000);
+            assertFalse("the writer thread should have stopped", writer.isAlive());
+        } finally {
+            releaseId.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private class ProcessCallable implements Callable<Boolean> {
+        private final String m_uei;
+
+        ProcessCallable(String uei) {
+            m_uei = uei;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            EventBuilder bldr = new EventBuilder(m_uei, "testSource");
+            bldr.setLogDest("logndisplay");
+            try {
+                m_eventWriter.process(null, bldr.getEvent());
+                return true;
+            } catch (EventProcessorException e) {
+                return false;
+            }
+        }
+    }
+
+    public void testEventServiceIsResolved() throws Exception {
+        int serviceId = 1;
+        String serviceName = "some bogus service";
+        jdbcTemplate.update("insert into service (serviceId, serviceName) values (?, ?)", new Object[] { serviceId, serviceName });
+
+        EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest("logndisplay");
+        bldr.setService(serviceName);
+        Event event = bldr.getEvent();
+
+        m_eventWriter.process(null, event);
+
+        assertEquals("event service ID", serviceId, jdbcTemplate.queryForInt("SELECT serviceId FROM events WHERE eventId = ?", event.getDbid()));
+    }
+
+    public void testIdsComeFromPrefetchedBlock() throws Exception {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 7; i++) {
+            ids.add(m_eventWriter.getNextId());
+        }
+        List<Integer> sorted = new ArrayList<Integer>(ids);
+        Collections.sort(sorted);
+        assertEquals(sorted, ids);
+        assertEquals(7, new HashSet<Integer>(ids).size());
+
+        // two blocks of five should have been taken from the sequence
+        assertEquals(11, jdbcTemplate.queryForInt("SELECT nextval('eventsNxtId')"));
+    }
+
+    public void testFailedEventDoesNotFailItsBatch() throws Exception {
+        EventBuilder good = new EventBuilder("testUei", "testSource");
+        good.setLogDest("logndisplay");
+        final Event goodEvent = good.getEvent();
+
+        // a missing source violates the NOT NULL constraint on events.eventSource
+        EventBuilder bad = new EventBuilder("testUei", null);
+        bad.setLogDest("logndisplay");
+        final Event badEvent = bad.getEvent();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> badResult = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    try {
+                        m_eventWriter.process(null, badEvent);
+                        return true;
+                    } catch (EventProcessorException e) {
+                        return false;
+                    }
+                }
+            });
+            Future<Boolean> goodResult = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    m_eventWriter.process(null, goodEvent);
+                    return true;
+                }
+            });
+
+            assertFalse("the bad event should not be persisted", badResult.get());
+            assertTrue("the good event should be persisted", goodResult.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM events WHERE eventId = ?", goodEvent.getDbid()));
+        assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM events WHERE eventId = ?", badEvent.getDbid()));
+    }
+}
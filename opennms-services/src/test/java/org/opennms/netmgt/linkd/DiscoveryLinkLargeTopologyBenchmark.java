@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.linkd;
+
+import org.opennms.core.test.MockLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the topologies of {@link DiscoveryLinkLargeTopologyTest} and reports
+ * how long the discovery took for each protocol.  Not part of the normal
+ * test run; use the <code>benchmark</code> profile to run it.
+ */
+public class DiscoveryLinkLargeTopologyBenchmark extends DiscoveryLinkLargeTopologyTest {
+    static {
+        // the test keeps the linkd package at WARN, but the timings are logged at INFO
+        System.setProperty(MockLogger.LOG_KEY_PREFIX + DiscoveryLinkLargeTopologyBenchmark.class.getName(), "INFO");
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiscoveryLinkLargeTopologyBenchmark.class);
+
+    @Override
+    protected void runDiscovery(final String protocol, final DiscoveryLink discoveryLink) {
+        final long start = System.nanoTime();
+        super.runDiscovery(protocol, discoveryLink);
+        final long elapsed = System.nanoTime() - start;
+
+        LOG.info("{}: {} nodes in {} ms", protocol, NODES, elapsed / 1000000);
+    }
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.linkd;
+
+import static org.junit.Assert.assertEquals;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.model.events.EventForwarder;
+
+/**
+ * Runs {@link DiscoveryLink} over a synthetic chain of routers that see each
+ * other through OSPF, IS-IS or CDP and checks that every adjacency becomes
+ * exactly one link.
+ *
+ * @see DiscoveryLinkLargeTopologyBenchmark
+ */
+public class DiscoveryLinkLargeTopologyTest {
+
+    private static final String PACKAGE_NAME = "large";
+
+    static final int NODES = 2000;
+
+    private final MockEventIpcManager m_eventIpcManager = new MockEventIpcManager();
+
+    private List<LinkableNode> m_nodes;
+
+    private NodeToNodeLink[] m_links;
+
+    /**
+     * Linkd without a database: it hands out the synthetic nodes and keeps
+     * the links that the discovery found.
+     */
+    private final Linkd m_linkd = new Linkd() {
+        @Override
+        public Collection<LinkableNode> getLinkableNodesOnPackage(String pkg) {
+            return m_nodes;
+        }
+
+        @Override
+        public EventForwarder getEventForwarder() {
+            return m_eventIpcManager;
+        }
+
+        @Override
+        void updateDiscoveryLinkCollection(final DiscoveryLink discover) {
+            m_links = discover.getLinks();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Properties p = new Properties();
+        p.setProperty("log4j.logger.org.opennms.netmgt.linkd", "WARN");
+        MockLogAppender.setupLogging(false, p);
+
+        m_nodes = new ArrayList<LinkableNode>(NODES);
+        for (int i = 1; i <= NODES; i++) {
+            m_nodes.add(new LinkableNode(new LinkableSnmpNode(i, getAddress(1, i), ".1.3.6.1.4.1.9.1.1", "router" + i), PACKAGE_NAME));
+        }
+    }
+
+    @Test
+    public void testOspf() throws Exception {
+        for (int i = 0; i < NODES; i++) {
+            m_nodes.get(i).setOspfRouterId(getAddress(2, i + 1));
+            m_nodes.get(i).setOspfinterfaces(new ArrayList<OspfNbrInterface>());
+        }
+        for (int i = 0; i < NODES - 1; i++) {
+            LinkableNode node1 = m_nodes.get(i);
+            LinkableNode node2 = m_nodes.get(i + 1);
+            node1.getOspfinterfaces().add(createOspfNbr(node2, i, 2));
+            node2.getOspfinterfaces().add(createOspfNbr(node1, i, 1));
+        }
+
+        assertLinks("OSPF", createDiscoveryLink(false, true, false));
+    }
+
+    @Test
+    public void testIsis() throws Exception {
+        for (int i = 0; i < NODES; i++) {
+            m_nodes.get(i).setIsisSysId(getSysId(i + 1));
+            m_nodes.get(i).setIsisInterfaces(new ArrayList<IsisISAdjInterface>());
+        }
+        for (int i = 0; i < NODES - 1; i++) {
+            LinkableNode node1 = m_nodes.get(i);
+            LinkableNode node2 = m_nodes.get(i + 1);
+            node1.getIsisInterfaces().add(new IsisISAdjInterface(node2.getIsisSysId(), 2, "00:00:00:00:00:02", i + 1));
+            node2.getIsisInterfaces().add(new IsisISAdjInterface(node1.getIsisSysId(), 1, "00:00:00:00:00:01", i + 1));
+        }
+
+        assertLinks("IS-IS", createDiscoveryLink(false, false, true));
+    }
+
+    @Test
+    public void testCdp() throws Exception {
+        List<List<CdpInterface>> cdpInterfaces = new ArrayList<List<CdpInterface>>(NODES);
+        for (int i = 0; i < NODES; i++) {
+            m_nodes.get(i).setCdpDeviceId("router" + (i + 1));
+            cdpInterfaces.add(new ArrayList<CdpInterface>());
+        }
+        for (int i = 0; i < NODES - 1; i++) {
+            cdpInterfaces.get(i).add(createCdpInterface(2, "router" + (i + 2), "ge-0/0/1"));
+            cdpInterfaces.get(i + 1).add(createCdpInterface(1, "router" + (i + 1), "ge-0/0/2"));
+        }
+        for (int i = 0; i < NODES; i++) {
+            m_nodes.get(i).setCdpInterfaces(cdpInterfaces.get(i));
+        }
+
+        assertLinks("CDP", createDiscoveryLink(true, false, false));
+    }
+
+    private void assertLinks(final String protocol, final DiscoveryLink discoveryLink) {
+        runDiscovery(protocol, discoveryLink);
+
+        assertEquals(protocol + " links", NODES - 1, m_links.length);
+        for (NodeToNodeLink link : m_links) {
+            assertEquals(protocol + " link " + link, 1, Math.abs(link.getNodeId() - link.getNodeparentid()));
+        }
+    }
+
+    /**
+     * Run the discovery for one protocol.
+     */
+    protected void runDiscovery(final String protocol, final DiscoveryLink discoveryLink) {
+        discoveryLink.run();
+    }
+
+    private DiscoveryLink createDiscoveryLink(final boolean cdp, final boolean ospf, final boolean isis) {
+        DiscoveryLink discoveryLink = new DiscoveryLink();
+        discoveryLink.setLinkd(m_linkd);
+        discoveryLink.setPackageName(PACKAGE_NAME);
+        discoveryLink.setDiscoveryUsingBridge(false);
+        discoveryLink.setDiscoveryUsingRoutes(false);
+        discoveryLink.setDiscoveryUsingLldp(false);
+        discoveryLink.setDiscoveryUsingWifi(false);
+        discoveryLink.setDiscoveryUsingCdp(cdp);
+        discoveryLink.setDiscoveryUsingOspf(ospf);
+        discoveryLink.setDiscoveryUsingIsIs(isis);
+        return discoveryLink;
+    }
+
+    /**
+     * The OSPF neighbor entry that a node keeps for the neighbor on link
+     * number <code>link</code>, where <code>host</code> is the neighbor's
+     * address in the /30 link subnet.
+     */
+    private static OspfNbrInterface createOspfNbr(final LinkableNode neighbor, final int link, final int host) {
+        OspfNbrInterface ospf = new OspfNbrInterface(neighbor.getOspfRouterId());
+        ospf.setOspfNbrNodeId(neighbor.getNodeId());
+        ospf.setOspfNbrIfIndex(host);
+        ospf.setOspfNbrIpAddr(getLinkAddress(link, host));
+        ospf.setOspfNbrNetMask(addr("255.255.255.252"));
+        return ospf;
+    }
+
+    private static CdpInterface createCdpInterface(final int ifIndex, final String targetDeviceId, final String targetIfName) {
+        CdpInterface cdpIface = new CdpInterface(ifIndex);
+        cdpIface.setCdpIfName("ge-0/0/" + ifIndex);
+        cdpIface.setCdpTargetDeviceId(targetDeviceId);
+        cdpIface.setCdpTargetIfName(targetIfName);
+        return cdpIface;
+    }
+
+    private static InetAddress getAddress(final int network, final int i) {
+        return addr("10." + network + "." + (i >> 8 & 0xff) + "." + (i & 0xff));
+    }
+
+    private static InetAddress getLinkAddress(final int link, final int host) {
+        return addr("172." + (16 + (link >> 14 & 0x0f)) + "." + (link >> 6 & 0xff) + "." + ((link & 0x3f) << 2 | host));
+    }
+
+    private static String getSysId(final int i) {
+        return String.format("0000.0000.%04x", i);
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.notifd;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class NoticeQueueTest extends TestCase {
+
+    private NoticeQueue m_queue = new NoticeQueue();
+
+    public void testPollReadyOnlyReturnsDueTasksInOrder() {
+        long now = System.currentTimeMillis();
+        NotificationTask later = createTask(now - 1000, 1);
+        NotificationTask earlier = createTask(now - 2000, 2);
+        NotificationTask future = createTask(now + 60000, 3);
+
+        assertNull(m_queue.putItem(later.getSendTime(), later));
+        assertNull(m_queue.putItem(future.getSendTime(), future));
+        assertNull(m_queue.putItem(earlier.getSendTime(), earlier));
+        assertEquals(3, m_queue.size());
+
+        assertSame(earlier, m_queue.pollReady());
+        assertSame(later, m_queue.pollReady());
+        assertNull(m_queue.pollReady());
+        assertEquals(1, m_queue.size());
+
+        assertEquals(2, m_queue.getDispatchedCount());
+        assertTrue(m_queue.getTotalDispatchLag() >= 3000);
+    }
+
+    public void testDuplicateTaskIsOnlyQueuedOnce() {
+        NotificationTask task = createTask(System.currentTimeMillis(), 1);
+
+        assertNull(m_queue.putItem(task.getSendTime(), task));
+        assertSame(task, m_queue.putItem(task.getSendTime(), task));
+        assertEquals(1, m_queue.size());
+    }
+
+    public void testPollWaitsUntilTaskIsDue() throws Exception {
+        long sendTime = System.currentTimeMillis() + 300;
+        NotificationTask task = createTask(sendTime, 1);
+        m_queue.putItem(sendTime, task);
+
+        assertSame(task, m_queue.poll(10, TimeUnit.SECONDS));
+        long now = System.currentTimeMillis();
+        assertTrue("task was dispatched early", now >= sendTime);
+        assertTrue("task was dispatched " + (now - sendTime) + "ms late", now - sendTime < 5000);
+    }
+
+    public void testPollReturnsTaskAddedWhileWaiting() throws Exception {
+        final NotificationTask task = createTask(System.currentTimeMillis(), 1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                m_queue.putItem(task.getSendTime(), task);
+            }
+        }.start();
+
+        assertSame(task, m_queue.poll(10, TimeUnit.SECONDS));
+    }
+
+    public void testPollTimesOut() throws Exception {
+        m_queue.putItem(System.currentTimeMillis() + 60000, createTask(System.currentTimeMillis() + 60000, 1));
+
+        assertNull(m_queue.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, m_queue.size());
+    }
+
+    public void testWakeUp() throws Exception {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                m_queue.wakeUp();
+            }
+        }.start();
+
+        long start = System.currentTimeMillis();
+        assertNull(m_queue.poll(10, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    public void testCancel() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            NotificationTask task = createTask(now - i, 1);
+            m_queue.putItem(task.getSendTime(), task);
+        }
+        NotificationTask other = createTask(now, 2);
+        m_queue.putItem(other.getSendTime(), other);
+        NotificationTask autoNotify = createTask(now, -1);
+        m_queue.putItem(autoNotify.getSendTime(), autoNotify);
+
+        assertEquals(5, m_queue.cancel(1));
+        assertEquals(0, m_queue.cancel(1));
+        assertEquals(0, m_queue.cancel(-1));
+        assertEquals(2, m_queue.size());
+
+        assertNotNull(m_queue.pollReady());
+        assertNotNull(m_queue.pollReady());
+        assertNull(m_queue.pollReady());
+    }
+
+    private static NotificationTask createTask(long sendTime, int notifyId) {
+        NotificationTask task = new NotificationTask(null, null, sendTime, Collections.<String, String>emptyMap(), null, null);
+        task.setNoticeId(notifyId);
+        return task;
+    }
+}
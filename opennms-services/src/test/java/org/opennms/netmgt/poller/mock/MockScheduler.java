@@ -155,4 +155,17 @@ public class MockScheduler implements Scheduler {
     public long getNumTasksExecuted() {
         return m_numTasksExecuted;
     }
+
+    @Override
+    public int[] getJobsDuePerSecond(int seconds) {
+        int[] due = new int[seconds];
+        long start = getCurrentTime() / 1000;
+        for (Map.Entry<Long, List<ReadyRunnable>> entry : m_scheduleEntries.entrySet()) {
+            long second = entry.getKey() / 1000 - start;
+            if (second >= 0 && second < seconds) {
+                due[(int) second] += entry.getValue().size();
+            }
+        }
+        return due;
+    }
 }
@@ -67,6 +67,7 @@ import org.opennms.netmgt.config.poller.Rrd;
 import org.opennms.netmgt.config.poller.Service;
 import org.opennms.netmgt.dao.api.LocationMonitorDao;
 import org.opennms.netmgt.dao.api.MonitoredServiceDao;
+import org.opennms.netmgt.dao.mock.MockTransactionTemplate;
 import org.opennms.netmgt.model.NetworkBuilder;
 import org.opennms.netmgt.model.OnmsDistPoller;
 import org.opennms.netmgt.model.OnmsIpInterface;
@@ -88,6 +89,7 @@ import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.test.mock.EasyMockUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 
 public class PollerBackEndTest extends TestCase {
     private EasyMockUtils m_mocks = new EasyMockUtils();
@@ -349,6 +351,10 @@ public class PollerBackEndTest extends TestCase {
         m_backEnd.setEventIpcManager(m_eventIpcManager);
         m_backEnd.setDisconnectedTimeout(DISCONNECTED_TIMEOUT);
 
+        final MockTransactionTemplate transactionTemplate = new MockTransactionTemplate();
+        transactionTemplate.afterPropertiesSet();
+        m_backEnd.setTransactionOperations(transactionTemplate);
+
         
         m_startTime = new Date(System.currentTimeMillis() - 600000);
         expect(m_timeKeeper.getCurrentDate()).andReturn(m_startTime);
@@ -659,6 +665,78 @@ public class PollerBackEndTest extends TestCase {
         m_backEnd.reportResult(1, 1, newStatus);
     }
 
+    public void testReportResults() {
+        // the location monitor is only looked up once for the whole batch
+        expect(m_locMonDao.get(1)).andReturn(m_locationMonitor);
+        expect(m_monSvcDao.get(1)).andReturn(m_httpService);
+        expect(m_monSvcDao.get(2)).andReturn(m_dnsService);
+
+        expect(m_locMonDao.getMostRecentStatusChange(m_locationMonitor, m_httpService)).andReturn(m_httpCurrentStatus);
+        expect(m_locMonDao.getMostRecentStatusChange(m_locationMonitor, m_dnsService)).andReturn(m_dnsCurrentStatus);
+
+        EventBuilder eventBuilder = new EventBuilder(EventConstants.REMOTE_NODE_LOST_SERVICE_UEI, "PollerBackEnd")
+        .setMonitoredService(m_httpService)
+        .addParam(EventConstants.PARM_LOCATION_MONITOR_ID, "1");
+
+        m_eventIpcManager.sendNow(eq(eventBuilder.getEvent()));
+
+        final PollStatus httpStatus = PollStatus.unavailable("Test Down");
+
+        OnmsLocationSpecificStatus expectedStatus = new OnmsLocationSpecificStatus(m_locationMonitor, m_httpService, httpStatus);
+
+        // only the HTTP service changed status
+        m_locMonDao.saveStatusChange(isA(OnmsLocationSpecificStatus.class));
+        expectLastCall().andAnswer(new StatusChecker(expectedStatus));
+
+        m_mocks.replayAll();
+
+        m_backEnd.reportResults(Arrays.asList(
+            new ServicePollResult(1, 1, httpStatus),
+            new ServicePollResult(1, 2, PollStatus.unavailable("Still Down"))
+        ));
+    }
+
+    public void testReportResultsRetriesEachResultAfterFailure() {
+        final PollStatus httpStatus = PollStatus.unavailable("Test Down");
+        final PollStatus dnsStatus = PollStatus.available();
+
+        // the batch: HTTP is saved, DNS fails and rolls back the whole batch
+        expect(m_locMonDao.get(1)).andReturn(m_locationMonitor);
+        expect(m_monSvcDao.get(1)).andReturn(m_httpService);
+        expect(m_monSvcDao.get(2)).andReturn(m_dnsService);
+        expect(m_locMonDao.getMostRecentStatusChange(m_locationMonitor, m_httpService)).andReturn(m_httpCurrentStatus);
+        expect(m_locMonDao.getMostRecentStatusChange(m_locationMonitor, m_dnsService)).andReturn(m_dnsCurrentStatus);
+        m_locMonDao.saveStatusChange(isA(OnmsLocationSpecificStatus.class));
+        expectLastCall().andAnswer(new StatusChecker(new OnmsLocationSpecificStatus(m_locationMonitor, m_httpService, httpStatus)));
+        m_locMonDao.saveStatusChange(isA(OnmsLocationSpecificStatus.class));
+        expectLastCall().andThrow(new DataIntegrityViolationException("bad status"));
+
+        // the retry: each result in its own transaction, only HTTP succeeds
+        expect(m_locMonDao.get(1)).andReturn(m_locationMonitor).times(2);
+        expect(m_monSvcDao.get(1)).andReturn(m_httpService);
+        expect(m_monSvcDao.get(2)).andReturn(m_dnsService);
+        expect(m_locMonDao.getMostRecentStatusChange(m_locationMonitor, m_httpService)).andReturn(m_httpCurrentStatus);
+        expect(m_locMonDao.getMostRecentStatusChange(m_locationMonitor, m_dnsService)).andReturn(m_dnsCurrentStatus);
+        m_locMonDao.saveStatusChange(isA(OnmsLocationSpecificStatus.class));
+        expectLastCall().andAnswer(new StatusChecker(new OnmsLocationSpecificStatus(m_locationMonitor, m_httpService, httpStatus)));
+        m_locMonDao.saveStatusChange(isA(OnmsLocationSpecificStatus.class));
+        expectLastCall().andThrow(new DataIntegrityViolationException("bad status"));
+
+        // the event is only sent once, for the result that was committed
+        EventBuilder eventBuilder = new EventBuilder(EventConstants.REMOTE_NODE_LOST_SERVICE_UEI, "PollerBackEnd")
+        .setMonitoredService(m_httpService)
+        .addParam(EventConstants.PARM_LOCATION_MONITOR_ID, "1");
+
+        m_eventIpcManager.sendNow(eq(eventBuilder.getEvent()));
+
+        m_mocks.replayAll();
+
+        m_backEnd.reportResults(Arrays.asList(
+            new ServicePollResult(1, 1, httpStatus),
+            new ServicePollResult(1, 2, dnsStatus)
+        ));
+    }
+
     public void testStatusDownWhenDown() {
         expect(m_locMonDao.get(1)).andReturn(m_locationMonitor);
         expect(m_monSvcDao.get(2)).andReturn(m_dnsService);
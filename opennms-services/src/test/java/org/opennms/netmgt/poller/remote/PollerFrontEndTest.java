@@ -35,6 +35,7 @@ import static org.springframework.util.ObjectUtils.nullSafeEquals;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
@@ -43,6 +44,7 @@ import java.util.Set;
 import junit.framework.TestCase;
 
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.easymock.IArgumentMatcher;
 import org.opennms.netmgt.config.DefaultServiceMonitorLocator;
 import org.opennms.netmgt.model.PollStatus;
@@ -248,6 +250,42 @@ public class PollerFrontEndTest extends TestCase {
 
     }
 
+    public void testPollResultsAreBuffered() throws Exception {
+
+        setRegistered();
+
+        anticipateAfterPropertiesSet();
+
+        // the first result is reported right away as it is the first known status
+        anticipateBufferedPoll();
+        anticipateReportResults(1);
+
+        // the second result waits for the batch to fill or the flush interval to expire
+        anticipateBufferedPoll();
+        anticipateReportResults(1);
+
+        m_mock.replayAll();
+
+        m_frontEnd.setResultBatchSize(10);
+        m_frontEnd.setResultFlushInterval(Long.MAX_VALUE);
+
+        m_frontEnd.afterPropertiesSet();
+
+        m_frontEnd.pollService(pollConfig().getFirstId());
+        m_frontEnd.pollService(pollConfig().getFirstId());
+
+        // nothing is sent before the flush interval expires
+        m_frontEnd.flushExpiredResults();
+
+        m_frontEnd.setResultFlushInterval(0);
+        m_frontEnd.flushExpiredResults();
+
+        // nothing is left to send
+        m_frontEnd.flushExpiredResults();
+
+        m_mock.verifyAll();
+    }
+
     public void testRegisterNewMonitor() throws Exception {
 
         anticipateAfterPropertiesSet();
@@ -597,6 +635,32 @@ public class PollerFrontEndTest extends TestCase {
     }
 
 
+    private void anticipateBufferedPoll() {
+        anticipateDoPoll();
+
+        anticipateUpdateServicePollState();
+
+        anticipateGetMonitorId();
+    }
+
+    private void anticipateReportResults(final int count) {
+        m_backEnd.reportResults(isA(Collection.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                final Collection<?> results = (Collection<?>)EasyMock.getCurrentArguments()[0];
+                assertEquals(count, results.size());
+                for (final Object o : results) {
+                    final ServicePollResult result = (ServicePollResult)o;
+                    assertEquals(getRegisteredId().intValue(), result.getLocationMonitorId());
+                    assertEquals(pollConfig().getFirstId(), result.getServiceId());
+                    assertEquals(m_serviceStatus, result.getStatus());
+                }
+                return null;
+            }
+        });
+    }
+
     private void anticipateSetInitialPollTime() {
         anticipateGetServicePollState();
         anticipateFireServicePollStateChanged();
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class RTCCategoryAvailabilityTest extends TestCase {
+
+    private static final long WINDOW = 24L * 60 * 60 * 1000;
+
+    private static final long START = 1000L * WINDOW;
+
+    private RTCCategoryAvailability m_availability;
+
+    private List<List<RTCNodeSvcTime>> m_services;
+
+    @Override
+    protected void setUp() throws Exception {
+        m_availability = new RTCCategoryAvailability(WINDOW, START);
+        m_services = new ArrayList<List<RTCNodeSvcTime>>();
+    }
+
+    public void testEmptyCategoryIsAvailable() {
+        assertEquals(100.0, m_availability.getValue(START, WINDOW), 0.0);
+        assertEquals(100.0, m_availability.getValue(START + 3 * WINDOW, WINDOW), 0.0);
+    }
+
+    public void testServicesWithoutOutages() {
+        addService();
+        addService();
+        assertEquals(2, m_availability.getServiceCount());
+        assertEquals(100.0, m_availability.getValue(START + 1000, WINDOW), 0.0);
+    }
+
+    public void testClosedOutage() {
+        addService(new RTCNodeSvcTime(START - WINDOW / 2, START - WINDOW / 4));
+        addService();
+
+        // a quarter of the window for one of two services
+        assertEquals(87.5, m_availability.getValue(START, WINDOW), 0.0001);
+        assertMatchesReference(START + WINDOW / 3);
+        assertMatchesReference(START + WINDOW / 2);
+        assertMatchesReference(START + WINDOW * 3 / 4);
+        assertEquals(100.0, m_availability.getValue(START + WINDOW, WINDOW), 0.0001);
+    }
+
+    public void testOpenOutage() {
+        addService(new RTCNodeSvcTime(START - 2 * WINDOW));
+        assertEquals(0.0, m_availability.getValue(START, WINDOW), 0.0001);
+
+        addService(new RTCNodeSvcTime(START + WINDOW / 2));
+        assertEquals(50.0, m_availability.getValue(START + WINDOW / 4, WINDOW), 0.0001);
+        assertMatchesReference(START + WINDOW);
+        assertMatchesReference(START + 5 * WINDOW);
+    }
+
+    public void testRegainedService() {
+        List<RTCNodeSvcTime> svcTimes = addService(new RTCNodeSvcTime(START + 100));
+        addService();
+        assertMatchesReference(START + 1000);
+
+        m_availability.removeService(svcTimes);
+        svcTimes.get(0).setRegainedTime(START + 2000);
+        m_availability.addService(svcTimes);
+
+        assertMatchesReference(START + 3000);
+        assertMatchesReference(START + WINDOW + 150);
+        assertEquals(100.0, m_availability.getValue(START + WINDOW + 2000, WINDOW), 0.0);
+    }
+
+    public void testRemovedService() {
+        List<RTCNodeSvcTime> svcTimes = addService(new RTCNodeSvcTime(START - 10, START + 10));
+        addService(new RTCNodeSvcTime(START - WINDOW, START - WINDOW / 2));
+        assertMatchesReference(START + 20);
+
+        m_availability.removeService(svcTimes);
+        m_services.remove(svcTimes);
+        assertEquals(1, m_availability.getServiceCount());
+        assertMatchesReference(START + 30);
+    }
+
+    public void testOtherRollingWindowIsNotCalculated() {
+        addService();
+        assertTrue(Double.isNaN(m_availability.getValue(START, WINDOW / 2)));
+    }
+
+    public void testEarlierTimeIsNotCalculated() {
+        addService(new RTCNodeSvcTime(START + 200));
+        m_availability.getValue(START + 1000, WINDOW);
+        assertTrue(Double.isNaN(m_availability.getValue(START + 500, WINDOW)));
+        assertFalse(Double.isNaN(m_availability.getValue(START + 1000, WINDOW)));
+    }
+
+    public void testRandomOutagesMatchReference() {
+        Random random = new Random(42);
+        long now = START;
+
+        for (int i = 0; i < 200; i++) {
+            List<RTCNodeSvcTime> svcTimes = new ArrayList<RTCNodeSvcTime>();
+            long lostTime = now - 2 * WINDOW + (long) (random.nextDouble() * WINDOW);
+            while (lostTime < now && random.nextInt(3) > 0) {
+                long regainedTime = lostTime + (long) (random.nextDouble() * WINDOW / 4);
+                if (regainedTime >= now) {
+                    svcTimes.add(new RTCNodeSvcTime(lostTime));
+                    break;
+                }
+                svcTimes.add(new RTCNodeSvcTime(lostTime, regainedTime));
+                lostTime = regainedTime + (long) (random.nextDouble() * WINDOW / 4);
+            }
+            m_availability.addService(svcTimes);
+            m_services.add(svcTimes);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            now += (long) (random.nextDouble() * WINDOW / 10);
+            assertMatchesReference(now);
+        }
+    }
+
+    private List<RTCNodeSvcTime> addService(RTCNodeSvcTime... outages) {
+        List<RTCNodeSvcTime> svcTimes = new ArrayList<RTCNodeSvcTime>(Arrays.asList(outages));
+        m_availability.addService(svcTimes);
+        m_services.add(svcTimes);
+        return svcTimes;
+    }
+
+    /**
+     * Compares the value with the one calculated from scratch: the down
+     * time of every outage, divided by the window times the number of
+     * services, with each service counted once.
+     */
+    private void assertMatchesReference(long curTime) {
+        long outageTime = 0;
+        for (List<RTCNodeSvcTime> svcTimes : m_services) {
+            for (RTCNodeSvcTime svcTime : svcTimes) {
+                outageTime += svcTime.getDownTime(curTime, WINDOW);
+            }
+        }
+        double expected = m_services.isEmpty() ? 100.0 : 100 * (1 - (outageTime * 1.0 / (WINDOW * 1.0 * m_services.size())));
+
+        assertEquals("value at " + curTime, expected, m_availability.getValue(curTime, WINDOW), 0.000001);
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+
+import junit.framework.TestCase;
+
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.RTCConfigFactory;
+
+public class RTCHashMapTest extends TestCase {
+
+    private static final String CATEGORY = "Web Servers";
+
+    private static final long WINDOW = 24L * 60 * 60 * 1000;
+
+    private final long NOW = System.currentTimeMillis();
+
+    private RTCHashMap m_map;
+
+    @Override
+    protected void setUp() throws Exception {
+        // adding an outage drops the expired ones using the configured rolling window
+        InputStream stream = ConfigurationTestUtils.getInputStreamForConfigFile("rtc-configuration.xml");
+        try {
+            RTCConfigFactory.setInstance(new RTCConfigFactory(stream));
+        } finally {
+            stream.close();
+        }
+
+        m_map = new RTCHashMap(16);
+    }
+
+    public void testEachServiceIsCountedOnce() {
+        // node 1 has two services, one of them down for half of the window
+        RTCNode http = addService(1, "192.168.1.1", "HTTP");
+        http.addSvcTime(NOW - WINDOW / 2, NOW);
+        addService(1, "192.168.1.1", "HTTPS");
+
+        // node 2 has one service that is up
+        addService(2, "192.168.1.2", "HTTP");
+
+        // half a window of outage over three services
+        assertEquals(100 * (1 - 0.5 / 3), m_map.getValue(CATEGORY, NOW, WINDOW), 0.0001);
+        assertEquals(75.0, m_map.getValue(1, CATEGORY, NOW, WINDOW), 0.0001);
+        assertEquals(100.0, m_map.getValue(2, CATEGORY, NOW, WINDOW), 0.0001);
+    }
+
+    public void testServicesOutsideCategoryAreIgnored() {
+        RTCNode http = addService(1, "192.168.1.1", "HTTP");
+        http.addSvcTime(NOW - WINDOW / 2, NOW);
+        http.removeCategory(CATEGORY);
+        addService(2, "192.168.1.2", "HTTP");
+
+        assertEquals(100.0, m_map.getValue(CATEGORY, NOW, WINDOW), 0.0001);
+    }
+
+    private RTCNode addService(long nodeid, String ip, String svcName) {
+        InetAddress addr = InetAddressUtils.addr(ip);
+        RTCNode node = new RTCNode(nodeid, addr, svcName);
+        node.addCategory(CATEGORY);
+        m_map.add(node);
+        return node;
+    }
+}
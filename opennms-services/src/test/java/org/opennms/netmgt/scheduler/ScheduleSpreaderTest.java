@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import junit.framework.TestCase;
+
+public class ScheduleSpreaderTest extends TestCase {
+
+    private static final long INTERVAL = 300000;
+
+    public void testDisabledByDefault() {
+        ScheduleSpreader spreader = new ScheduleSpreader(false);
+        assertEquals(0, spreader.getInitialDelay("1:192.168.1.1:SNMP", INTERVAL));
+    }
+
+    public void testOffsetIsDeterministicAndWithinInterval() {
+        ScheduleSpreader spreader = new ScheduleSpreader(true);
+        for (int i = 0; i < 1000; i++) {
+            String key = i + ":10.0.0." + (i % 256) + ":ICMP";
+            long delay = spreader.getInitialDelay(key, INTERVAL);
+            assertTrue(delay >= 0 && delay < INTERVAL);
+            assertEquals(delay, new ScheduleSpreader(true).getInitialDelay(key, INTERVAL));
+        }
+        assertEquals(0, spreader.getInitialDelay("1:192.168.1.1:SNMP", 0));
+    }
+
+    public void testLoadIsSpreadAcrossTheInterval() {
+        final int jobs = 30000;
+        final int seconds = (int) (INTERVAL / 1000);
+        ScheduleSpreader spreader = new ScheduleSpreader(true);
+        DueTimeHistogram histogram = new DueTimeHistogram();
+
+        long now = 1000000000000L;
+        for (int node = 1; node <= jobs; node++) {
+            String key = node + ":172.16." + (node / 256 % 256) + "." + (node % 256) + ":SNMP";
+            histogram.record(now, now + spreader.getInitialDelay(key, INTERVAL));
+        }
+
+        int[] due = histogram.getDuePerSecond(now, seconds);
+        int total = 0;
+        int peak = 0;
+        for (int count : due) {
+            total += count;
+            peak = Math.max(peak, count);
+        }
+        assertEquals(jobs, total);
+
+        // 100 jobs per second on average; without spreading all 30000 would be due at once
+        assertTrue("peak of " + peak + " jobs in one second", peak < 200);
+    }
+
+    public void testHistogramDropsPastSeconds() {
+        DueTimeHistogram histogram = new DueTimeHistogram();
+        long now = 1000000000000L;
+        histogram.record(now, now + 1500);
+        histogram.record(now, now + 1700);
+        histogram.record(now, now + DueTimeHistogram.SECONDS * 1000L);
+
+        int[] due = histogram.getDuePerSecond(now, 3);
+        assertEquals(0, due[0]);
+        assertEquals(2, due[1]);
+        assertEquals(0, due[2]);
+
+        // an hour later the same buckets count for new seconds
+        long later = now + DueTimeHistogram.SECONDS * 1000L;
+        histogram.record(later, later + 1000);
+        assertEquals(1, histogram.getDuePerSecond(later, 2)[1]);
+    }
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2012 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2012 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.opennms.core.fiber.Fiber;
+import org.opennms.core.test.MockLogAppender;
+
+public class TimerWheelSchedulerTest extends TestCase {
+
+    private TimerWheelScheduler m_scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        MockLogAppender.setupLogging(false);
+        m_scheduler = new TimerWheelScheduler("TimerWheelSchedulerTest", 4, 1);
+        m_scheduler.setNotReadyDelay(5);
+        m_scheduler.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_scheduler.stop();
+    }
+
+    private static class LatchRunnable implements ReadyRunnable {
+        private final CountDownLatch m_latch = new CountDownLatch(1);
+        private final AtomicBoolean m_ready;
+        private final AtomicLong m_ranAt = new AtomicLong();
+
+        LatchRunnable() {
+            this(new AtomicBoolean(true));
+        }
+
+        LatchRunnable(AtomicBoolean ready) {
+            m_ready = ready;
+        }
+
+        @Override
+        public boolean isReady() {
+            return m_ready.get();
+        }
+
+        @Override
+        public void run() {
+            m_ranAt.set(System.currentTimeMillis());
+            m_latch.countDown();
+        }
+
+        boolean await(long millis) throws InterruptedException {
+            return m_latch.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        long getRanAt() {
+            return m_ranAt.get();
+        }
+    }
+
+    public void testRunsAfterDelay() throws Exception {
+        LatchRunnable runnable = new LatchRunnable();
+        long scheduledAt = System.currentTimeMillis();
+        m_scheduler.schedule(50, runnable);
+
+        assertTrue(runnable.await(5000));
+        assertTrue("ran too early", runnable.getRanAt() - scheduledAt >= 50);
+        assertEquals(1, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    public void testRunnableFirstScheduleHonoursInterval() throws Exception {
+        LatchRunnable runnable = new LatchRunnable();
+        long scheduledAt = System.currentTimeMillis();
+        m_scheduler.schedule(runnable, 50);
+
+        assertTrue(runnable.await(5000));
+        assertTrue("ran too early", runnable.getRanAt() - scheduledAt >= 50);
+    }
+
+    public void testCascadesFromHigherWheels() throws Exception {
+        // more than one revolution of the first wheel at a 1ms tick
+        LatchRunnable runnable = new LatchRunnable();
+        long scheduledAt = System.currentTimeMillis();
+        m_scheduler.schedule(600, runnable);
+
+        assertFalse(runnable.await(300));
+        assertTrue(runnable.await(5000));
+        assertTrue("ran too early", runnable.getRanAt() - scheduledAt >= 600);
+    }
+
+    public void testCancel() throws Exception {
+        LatchRunnable cancelled = new LatchRunnable();
+        TimerWheelScheduler.Timeout timeout = m_scheduler.scheduleTimeout(100, cancelled);
+        LatchRunnable other = new LatchRunnable();
+        m_scheduler.schedule(200, other);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+
+        assertTrue(other.await(5000));
+        assertFalse(cancelled.await(0));
+        assertEquals(1, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    public void testNotReadyDoesNotBlockOthers() throws Exception {
+        AtomicBoolean ready = new AtomicBoolean(false);
+        LatchRunnable notReady = new LatchRunnable(ready);
+        m_scheduler.schedule(0, notReady);
+        LatchRunnable other = new LatchRunnable();
+        m_scheduler.schedule(10, other);
+
+        assertTrue(other.await(5000));
+        assertFalse(notReady.await(50));
+
+        ready.set(true);
+        assertTrue(notReady.await(5000));
+    }
+
+    public void testPauseAndResume() throws Exception {
+        m_scheduler.pause();
+        waitForStatus(Fiber.PAUSED);
+
+        LatchRunnable runnable = new LatchRunnable();
+        m_scheduler.schedule(0, runnable);
+        assertFalse(runnable.await(100));
+
+        m_scheduler.resume();
+        assertTrue(runnable.await(5000));
+        assertEquals(Fiber.RUNNING, m_scheduler.getStatus());
+    }
+
+    public void testHistograms() throws Exception {
+        LatchRunnable runnable = new LatchRunnable();
+        m_scheduler.schedule(0, runnable);
+        assertTrue(runnable.await(5000));
+
+        long total = 0;
+        Map<String, Long> lateness = m_scheduler.getLatenessHistogram();
+        assertEquals(9, lateness.size());
+        for (Long count : lateness.values()) {
+            total += count;
+        }
+        assertEquals(1, total);
+
+        m_scheduler.schedule(60000, new LatchRunnable());
+        m_scheduler.schedule(100, new LatchRunnable());
+        Thread.sleep(50);
+
+        Map<String, Integer> queues = m_scheduler.getQueueHistogram();
+        int pending = 0;
+        for (int level = 0; level < 4; level++) {
+            for (Map.Entry<String, Integer> entry : queues.entrySet()) {
+                if (entry.getKey().startsWith("wheel" + level)) {
+                    pending += entry.getValue();
+                }
+            }
+        }
+        assertEquals(2, pending);
+        assertEquals(2, m_scheduler.getScheduled());
+    }
+
+    private void waitForStatus(int status) throws InterruptedException {
+        for (int i = 0; i < 500 && m_scheduler.getStatus() != status; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(status, m_scheduler.getStatus());
+    }
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.statsd;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.opennms.netmgt.dao.api.RrdDao;
+import org.opennms.netmgt.dao.support.BottomNAttributeStatisticVisitor;
+import org.opennms.netmgt.dao.support.RrdStatisticAttributeVisitor;
+import org.opennms.netmgt.dao.support.TopNAttributeStatisticVisitor;
+import org.opennms.netmgt.mock.MockResourceType;
+import org.opennms.netmgt.model.AttributeStatistic;
+import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
+import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.model.OnmsResource;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+
+public class PartitionedStatisticAttributeVisitorTest extends TestCase {
+    private static final int ATTRIBUTES = 2000;
+
+    private final AtomicInteger m_reads = new AtomicInteger();
+    private final List<OnmsAttribute> m_attributes = new ArrayList<OnmsAttribute>();
+    private final Map<OnmsAttribute, Double> m_values = new IdentityHashMap<OnmsAttribute, Double>();
+    private RrdDao m_rrdDao;
+
+    @Override
+    protected void setUp() throws Exception {
+        final Random random = new Random(42);
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            final OnmsAttribute attribute = new RrdGraphAttribute("ifInOctets", "snmp/" + i, "ifInOctets.jrb");
+            new OnmsResource(Integer.toString(i), "Resource " + i, new MockResourceType(), Collections.singleton(attribute));
+            m_attributes.add(attribute);
+            // every tenth attribute has no data
+            m_values.put(attribute, i % 10 == 0 ? Double.NaN : random.nextInt(500) * 1.0);
+        }
+
+        m_rrdDao = (RrdDao) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RrdDao.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getPrintValue".equals(method.getName())) {
+                    m_reads.incrementAndGet();
+                    return m_values.get(args[0]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    public void testTopNMatchesSequentialVisitor() throws Exception {
+        assertSameResults(new TopNAttributeStatisticVisitor(), 4);
+    }
+
+    public void testBottomNMatchesSequentialVisitor() throws Exception {
+        assertSameResults(new BottomNAttributeStatisticVisitor(), 3);
+    }
+
+    public void testSingleThread() throws Exception {
+        assertSameResults(new TopNAttributeStatisticVisitor(), 1);
+    }
+
+    public void testCacheIsSharedBetweenReports() throws Exception {
+        final StatisticCache cache = new StatisticCache(ATTRIBUTES);
+
+        final AttributeStatisticVisitorWithResults first = createResultsVisitor(new TopNAttributeStatisticVisitor());
+        visitAll(createVisitor(first, 4, cache));
+        assertEquals(ATTRIBUTES, m_reads.get());
+
+        final AttributeStatisticVisitorWithResults second = createResultsVisitor(new TopNAttributeStatisticVisitor());
+        visitAll(createVisitor(second, 4, cache));
+        assertEquals("the second report should not read any files", ATTRIBUTES, m_reads.get());
+        assertEquals(ATTRIBUTES, cache.getHits());
+        assertEquals(ATTRIBUTES, cache.getMisses());
+
+        assertEquals(first.getResults().size(), second.getResults().size());
+    }
+
+    public void testCacheGrowsToHoldReport() throws Exception {
+        final StatisticCache cache = new StatisticCache(10);
+
+        cache.reportStarted();
+        visitAll(createVisitor(createResultsVisitor(new TopNAttributeStatisticVisitor()), 4, cache));
+        assertEquals(ATTRIBUTES, cache.getMaxSize());
+        assertEquals(ATTRIBUTES, cache.size());
+
+        cache.reportStarted();
+        cache.reportFinished();
+        assertEquals("a report is still running", ATTRIBUTES, cache.getMaxSize());
+
+        visitAll(createVisitor(createResultsVisitor(new BottomNAttributeStatisticVisitor()), 1, cache));
+        assertEquals("the second report should not read any files", ATTRIBUTES, m_reads.get());
+        assertEquals(ATTRIBUTES, cache.getHits());
+
+        cache.reportFinished();
+        assertEquals(10, cache.getMaxSize());
+        assertEquals(10, cache.size());
+    }
+
+    private void assertSameResults(final AttributeStatisticVisitorWithResults prototype, final int threads) throws Exception {
+        final AttributeStatisticVisitorWithResults expected = createResultsVisitor(prototype.getClass().newInstance());
+        final RrdStatisticAttributeVisitor sequential = new RrdStatisticAttributeVisitor();
+        configure(sequential, expected);
+        for (final OnmsAttribute attribute : m_attributes) {
+            sequential.visit(attribute);
+        }
+
+        final AttributeStatisticVisitorWithResults actual = createResultsVisitor(prototype);
+        visitAll(createVisitor(actual, threads, null));
+
+        final SortedSet<AttributeStatistic> expectedResults = expected.getResults();
+        final SortedSet<AttributeStatistic> actualResults = actual.getResults();
+        assertEquals(20, expectedResults.size());
+        assertEquals(expectedResults.size(), actualResults.size());
+
+        final Iterator<AttributeStatistic> it = actualResults.iterator();
+        for (final AttributeStatistic stat : expectedResults) {
+            final AttributeStatistic actualStat = it.next();
+            assertSame(stat.getAttribute(), actualStat.getAttribute());
+            assertEquals(stat.getStatistic(), actualStat.getStatistic());
+        }
+    }
+
+    private AttributeStatisticVisitorWithResults createResultsVisitor(final AttributeStatisticVisitorWithResults visitor) {
+        visitor.setCount(20);
+        visitor.afterPropertiesSet();
+        return visitor;
+    }
+
+    private PartitionedStatisticAttributeVisitor createVisitor(final AttributeStatisticVisitorWithResults resultsVisitor, final int threads, final StatisticCache cache) {
+        final PartitionedStatisticAttributeVisitor visitor = new PartitionedStatisticAttributeVisitor();
+        configure(visitor, resultsVisitor);
+        visitor.setThreads(threads);
+        visitor.setStatisticCache(cache);
+        return visitor;
+    }
+
+    private void configure(final RrdStatisticAttributeVisitor visitor, final AttributeStatisticVisitorWithResults resultsVisitor) {
+        visitor.setRrdDao(m_rrdDao);
+        visitor.setConsolidationFunction("AVERAGE");
+        visitor.setStartTime(0L);
+        visitor.setEndTime(300000L);
+        visitor.setStatisticVisitor(resultsVisitor);
+        visitor.afterPropertiesSet();
+    }
+
+    private void visitAll(final PartitionedStatisticAttributeVisitor visitor) {
+        for (final OnmsAttribute attribute : m_attributes) {
+            visitor.visit(attribute);
+        }
+        visitor.computeStatistics();
+    }
+}
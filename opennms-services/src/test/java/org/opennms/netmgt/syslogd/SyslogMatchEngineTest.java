@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.config.SyslogdConfigFactory;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+
+public class SyslogMatchEngineTest {
+
+    private static final String DISCARD_UEI = "DISCARD-MATCHING-MESSAGES";
+
+    private SyslogdConfigFactory m_config;
+
+    private SyslogMatchEngine m_engine;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false);
+
+        InputStream stream = null;
+        try {
+            stream = ConfigurationTestUtils.getInputStreamForResource(this, "/etc/syslogd-configuration.xml");
+            m_config = new SyslogdConfigFactory(stream);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+        m_engine = new SyslogMatchEngine(m_config.getUeiList(), m_config.getHideMessages());
+    }
+
+    @Test
+    public void testRequiredLiteral() {
+        assertEquals("CRISCO", SyslogMatchEngine.requiredLiteral("CRISCO"));
+        assertEquals(" tests failed for ", SyslogMatchEngine.requiredLiteral("foo: (\\d+) out of (\\d+) tests failed for (\\S+)$"));
+        assertEquals("coffee: Secretly replaced ", SyslogMatchEngine.requiredLiteral("coffee: Secretly replaced (\\S+) coffee with (\\d+) (\\S+)$"));
+        assertEquals("ritical", SyslogMatchEngine.requiredLiteral("[Cc]ritical"));
+        assertEquals("foo.bar", SyslogMatchEngine.requiredLiteral("^foo\\.bar"));
+        assertEquals("xab", SyslogMatchEngine.requiredLiteral("xab+c"));
+        assertEquals("def", SyslogMatchEngine.requiredLiteral("abc?def"));
+        assertEquals("def", SyslogMatchEngine.requiredLiteral("ab{2,3}def"));
+
+        assertNull(SyslogMatchEngine.requiredLiteral(".*"));
+        assertNull(SyslogMatchEngine.requiredLiteral("[Tt][Rr][Aa][Ss][Hh]"));
+        assertNull(SyslogMatchEngine.requiredLiteral("(foobar)?"));
+        assertNull(SyslogMatchEngine.requiredLiteral("foo|bar"));
+        assertNull(SyslogMatchEngine.requiredLiteral("(?i)foobar"));
+        assertNull(SyslogMatchEngine.requiredLiteral("\\x41\\x42\\x43"));
+        assertNull(SyslogMatchEngine.requiredLiteral("(a)b\\1cde"));
+    }
+
+    @Test
+    public void testSubstringMatch() throws Exception {
+        EventBuilder bldr = match(createMessage("CRISCO is here"));
+        assertEquals("uei.opennms.org/tests/syslogd/substrUeiRewriteTest", bldr.getEvent().getUei());
+        assertTrue(m_engine.getUeiMatchHits()[0].endsWith(": 1"));
+    }
+
+    @Test
+    public void testRegexMatchWithParameters() throws Exception {
+        EventBuilder bldr = match(createMessage("coffee: Secretly replaced Bob's coffee with 3 beans"));
+        Event event = bldr.getEvent();
+        assertEquals("uei.opennms.org/tests/syslogd/regexParameterAssignmentTest/bothKinds", event.getUei());
+
+        Map<String, String> parms = new HashMap<String, String>();
+        for (Parm parm : event.getParmCollection()) {
+            parms.put(parm.getParmName(), parm.getValue().getContent());
+        }
+        assertEquals("Bob's", parms.get("group1"));
+        assertEquals("Bob's", parms.get("whoseBeverage"));
+        assertEquals("3", parms.get("count"));
+        assertEquals("beans", parms.get("replacementItem"));
+    }
+
+    @Test
+    public void testProcessAndFacilityMatch() throws Exception {
+        SyslogMessage message = createMessage("nothing special");
+        message.setProcessName("beerd");
+        assertEquals("uei.opennms.org/tests/syslogd/nonMessageMatch/processOnly", match(message).getEvent().getUei());
+
+        message = createMessage("nothing special");
+        message.setFacility(SyslogFacility.LOCAL0);
+        assertEquals("uei.opennms.org/tests/syslogd/nonMessageMatch/facilityOnly", match(message).getEvent().getUei());
+    }
+
+    @Test
+    public void testNoMatch() throws Exception {
+        assertEquals("uei.opennms.org/syslogd/default", match(createMessage("nothing special")).getEvent().getUei());
+        assertEquals(1, m_engine.getUnmatchedMessages());
+        assertTrue(m_engine.getRegexesSkippedByPrefilter() > 0);
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        try {
+            match(createMessage("this is JUNK"));
+            fail("expected the message to be discarded");
+        } catch (MessageDiscardedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHide() {
+        assertTrue(m_engine.hide("<14>Mar 13 08:00:00 host TESTHIDING here"));
+        assertTrue(m_engine.hide("<14>Mar 13 08:00:00 host a DoubleSecret here"));
+        assertFalse(m_engine.hide("<14>Mar 13 08:00:00 host nothing to hide"));
+        assertEquals(2, m_engine.getHiddenMessages());
+    }
+
+    @Test
+    public void testEngineIsReusedForTheSameConfiguration() {
+        SyslogMatchEngine engine = SyslogMatchEngine.getInstance(m_config.getUeiList(), m_config.getHideMessages());
+        assertSame(engine, SyslogMatchEngine.getInstance(m_config.getUeiList(), m_config.getHideMessages()));
+        assertSame(engine, SyslogMatchEngine.getCurrent());
+
+        SyslogMatchEngine.invalidate();
+        assertNull(SyslogMatchEngine.getCurrent());
+    }
+
+    private EventBuilder match(SyslogMessage message) throws MessageDiscardedException {
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        m_engine.matchUei(message, message.getFacility().toString(), message.getSeverity().toString(), bldr, DISCARD_UEI);
+        return bldr;
+    }
+
+    private static SyslogMessage createMessage(String text) {
+        SyslogMessage message = new SyslogMessage();
+        message.setFacility(SyslogFacility.USER);
+        message.setSeverity(SyslogSeverity.INFORMATIONAL);
+        message.setHostName("localhost");
+        message.setMessage(text);
+        message.setMatchedMessage(text);
+        return message;
+    }
+}
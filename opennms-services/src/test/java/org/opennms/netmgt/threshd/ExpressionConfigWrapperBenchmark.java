@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.config.ThresholdingConfigFactory;
+import org.opennms.netmgt.config.threshd.Basethresholddef;
+import org.opennms.netmgt.config.threshd.Expression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the throughput of evaluating the expression thresholds from the
+ * shipped thresholds.xml with compiled expressions against parsing each
+ * expression on every evaluation, as was done before expressions were
+ * compiled once per configuration load.  Not part of the normal test run;
+ * use the <code>benchmark</code> profile to run it.
+ */
+public class ExpressionConfigWrapperBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapperBenchmark.class);
+
+    private static final int RESOURCES = 2000;
+
+    private List<ExpressionConfigWrapper> m_wrappers;
+
+    private List<Map<String, Double>> m_samples;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false);
+
+        ThresholdingConfigFactory factory = new ThresholdingConfigFactory(ConfigurationTestUtils.getInputStreamForConfigFile("thresholds.xml"));
+        m_wrappers = new ArrayList<ExpressionConfigWrapper>();
+        for (String groupName : factory.getGroupNames()) {
+            for (Basethresholddef def : factory.getThresholds(groupName)) {
+                if (def instanceof Expression) {
+                    m_wrappers.add(new ExpressionConfigWrapper((Expression) def));
+                }
+            }
+        }
+        assertFalse("thresholds.xml should contain expression thresholds", m_wrappers.isEmpty());
+
+        // one sample per resource, with a value for every data source used by any expression
+        m_samples = new ArrayList<Map<String, Double>>(RESOURCES);
+        for (int i = 0; i < RESOURCES; i++) {
+            Map<String, Double> values = new HashMap<String, Double>();
+            for (ExpressionConfigWrapper wrapper : m_wrappers) {
+                for (String ds : wrapper.getRequiredDatasources()) {
+                    values.put(ds, Double.valueOf(1 + (ds.hashCode() & 0xff) + i));
+                }
+            }
+            m_samples.add(values);
+        }
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        final int evaluations = RESOURCES * m_wrappers.size();
+
+        // warm up both paths
+        for (Map<String, Double> values : m_samples.subList(0, 100)) {
+            for (ExpressionConfigWrapper wrapper : m_wrappers) {
+                ExpressionConfigWrapperTest.evaluateParsed(wrapper.getDatasourceExpression(), values);
+                wrapper.evaluate(values);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (Map<String, Double> values : m_samples) {
+            for (ExpressionConfigWrapper wrapper : m_wrappers) {
+                ExpressionConfigWrapperTest.evaluateParsed(wrapper.getDatasourceExpression(), values);
+            }
+        }
+        final long parsedNanos = Math.max(1, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (Map<String, Double> values : m_samples) {
+            for (ExpressionConfigWrapper wrapper : m_wrappers) {
+                wrapper.evaluate(values);
+            }
+        }
+        final long compiledNanos = Math.max(1, System.nanoTime() - start);
+
+        LOG.info("{} expressions x {} resources: parsed {} ms ({} evaluations/s), compiled {} ms ({} evaluations/s)",
+                 m_wrappers.size(), RESOURCES,
+                 parsedNanos / 1000000, Math.round(evaluations * 1e9 / parsedNanos),
+                 compiledNanos / 1000000, Math.round(evaluations * 1e9 / compiledNanos));
+        assertTrue("compiled expressions should evaluate faster than parsed ones", compiledNanos < parsedNanos);
+    }
+}
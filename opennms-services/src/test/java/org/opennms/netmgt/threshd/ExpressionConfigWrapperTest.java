@@ -28,15 +28,22 @@
 
 package org.opennms.netmgt.threshd;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
 import org.junit.Assert;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
 import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.config.ThresholdingConfigFactory;
+import org.opennms.netmgt.config.threshd.Basethresholddef;
 import org.opennms.netmgt.config.threshd.Expression;
 
 /**
@@ -171,4 +178,46 @@ public class ExpressionConfigWrapperTest {
         values.put("ifSpeed", 10.0);
         Assert.assertEquals(160.0, wrapper.evaluate(values), 0.0);
     }
+
+    /**
+     * The compiled expressions of the shipped thresholds.xml must evaluate
+     * to the same values as parsing them on every evaluation did.
+     */
+    @Test
+    public void testCompiledMatchesParsed() throws Exception {
+        ThresholdingConfigFactory factory = new ThresholdingConfigFactory(ConfigurationTestUtils.getInputStreamForConfigFile("thresholds.xml"));
+        List<ExpressionConfigWrapper> wrappers = new ArrayList<ExpressionConfigWrapper>();
+        for (String groupName : factory.getGroupNames()) {
+            for (Basethresholddef def : factory.getThresholds(groupName)) {
+                if (def instanceof Expression) {
+                    wrappers.add(new ExpressionConfigWrapper((Expression) def));
+                }
+            }
+        }
+        Assert.assertFalse("thresholds.xml should contain expression thresholds", wrappers.isEmpty());
+
+        for (int i = 0; i < 10; i++) {
+            Map<String, Double> values = new HashMap<String, Double>();
+            for (ExpressionConfigWrapper w : wrappers) {
+                for (String ds : w.getRequiredDatasources()) {
+                    values.put(ds, Double.valueOf(1 + (ds.hashCode() & 0xff) + i));
+                }
+            }
+            for (ExpressionConfigWrapper w : wrappers) {
+                Assert.assertEquals(w.getDatasourceExpression(), evaluateParsed(w.getDatasourceExpression(), values), w.evaluate(values), 0.0);
+            }
+        }
+    }
+
+    /**
+     * The evaluation as it was done before expressions were compiled.
+     */
+    static double evaluateParsed(String expression, Map<String, Double> values) {
+        Map<String,Object> context = new HashMap<String,Object>();
+        context.putAll(values);
+        context.put("datasources", new HashMap<String, Double>(values));
+        context.put("math", new ExpressionConfigWrapper.MathBinding());
+        Object resultObject = new JexlEngine().createExpression(expression).evaluate(new MapContext(context));
+        return Double.parseDouble(resultObject.toString());
+    }
 }
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class InterfaceToNodeIndexTest {
+
+    private InterfaceToNodeIndex m_index;
+
+    @Before
+    public void setUp() {
+        Map<InetAddress, Integer> addresses = new HashMap<InetAddress, Integer>();
+        addresses.put(addr("192.168.1.1"), 1);
+        addresses.put(addr("192.168.1.2"), 1);
+        addresses.put(addr("10.0.0.1"), 2);
+        addresses.put(addr("255.255.255.255"), 3);
+        addresses.put(addr("fe80::1"), 4);
+
+        m_index = new InterfaceToNodeIndex();
+        m_index.rebuild(addresses);
+    }
+
+    @Test
+    public void testLookup() {
+        assertEquals(1, m_index.getNodeId("192.168.1.1"));
+        assertEquals(1, m_index.getNodeId("192.168.1.2"));
+        assertEquals(2, m_index.getNodeId(addr("10.0.0.1")));
+        assertEquals(3, m_index.getNodeId("255.255.255.255"));
+        assertEquals(4, m_index.getNodeId("fe80:0:0:0:0:0:0:1"));
+        assertEquals(4, m_index.getNodeId(addr("fe80::1")));
+        assertEquals(-1, m_index.getNodeId("192.168.1.3"));
+        assertEquals(-1, m_index.getNodeId((String) null));
+
+        assertEquals(5, m_index.getSize());
+        assertEquals(7, m_index.getLookups());
+        assertEquals(1, m_index.getMisses());
+        assertEquals(1, m_index.getRebuilds());
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        assertEquals(-1, m_index.setNodeId("192.168.1.3", 5));
+        assertEquals(5, m_index.getNodeId("192.168.1.3"));
+
+        assertEquals(1, m_index.removeNodeId("192.168.1.1"));
+        assertEquals(-1, m_index.getNodeId("192.168.1.1"));
+        assertEquals(-1, m_index.removeNodeId("192.168.1.1"));
+
+        assertEquals(4, m_index.removeNodeId("fe80::1"));
+        assertEquals(-1, m_index.getNodeId("fe80::1"));
+
+        // without a database every new owner is accepted
+        assertEquals(2, m_index.setNodeId("10.0.0.1", 6));
+        assertEquals(6, m_index.getNodeId("10.0.0.1"));
+
+        assertEquals(4, m_index.getSize());
+        assertEquals(4, m_index.getUpdatesSinceRebuild());
+    }
+
+    @Test
+    public void testOverlayIsFolded() {
+        for (int i = 0; i <= InterfaceToNodeIndex.MAX_OVERLAY_SIZE * 2; i++) {
+            m_index.setNodeId("172.16." + (i / 256) + "." + (i % 256), 100 + i);
+        }
+        m_index.removeNodeId("10.0.0.1");
+
+        for (int i = 0; i <= InterfaceToNodeIndex.MAX_OVERLAY_SIZE * 2; i++) {
+            assertEquals(100 + i, m_index.getNodeId("172.16." + (i / 256) + "." + (i % 256)));
+        }
+        assertEquals(1, m_index.getNodeId("192.168.1.1"));
+        assertEquals(-1, m_index.getNodeId("10.0.0.1"));
+        assertEquals(4 + InterfaceToNodeIndex.MAX_OVERLAY_SIZE * 2 + 1, m_index.getSize());
+    }
+
+    @Test
+    public void testRebuildReplacesContents() {
+        m_index.setNodeId("192.168.1.3", 5);
+
+        Map<InetAddress, Integer> addresses = new HashMap<InetAddress, Integer>();
+        addresses.put(addr("192.168.2.1"), 7);
+        m_index.rebuild(addresses);
+
+        assertEquals(7, m_index.getNodeId("192.168.2.1"));
+        assertEquals(-1, m_index.getNodeId("192.168.1.1"));
+        assertEquals(-1, m_index.getNodeId("192.168.1.3"));
+        assertEquals(1, m_index.getSize());
+        assertEquals(0, m_index.getUpdatesSinceRebuild());
+        assertEquals(2, m_index.getRebuilds());
+    }
+
+    @Test
+    public void testOnlyPrimaryInterfacesMoveAddresses() {
+        // the database can't be reached, so no interface is known to be primary
+        m_index.setDataSource(getUnavailableDataSource());
+
+        assertEquals(-1, m_index.setNodeId("10.0.0.1", 6));
+        assertEquals(2, m_index.getNodeId("10.0.0.1"));
+
+        // new addresses don't need the database
+        assertEquals(-1, m_index.setNodeId("10.0.0.2", 6));
+        assertEquals(6, m_index.getNodeId("10.0.0.2"));
+    }
+
+    @Test
+    public void testLastSetWinsWithoutPrimary() {
+        final Map<InetAddress, Integer> addresses = new HashMap<InetAddress, Integer>();
+        addresses.put(addr("10.0.0.1"), 2);
+
+        final InterfaceToNodeIndex index = new InterfaceToNodeIndex(false);
+        index.setDataSource(getUnavailableDataSource());
+        index.rebuild(addresses);
+
+        assertEquals(2, index.setNodeId("10.0.0.1", 6));
+        assertEquals(6, index.getNodeId("10.0.0.1"));
+    }
+
+    @Test
+    public void testClear() {
+        m_index.clear();
+        assertEquals(-1, m_index.getNodeId("192.168.1.1"));
+        assertEquals(0, m_index.getSize());
+    }
+
+    @Test
+    public void testParseIPv4() {
+        assertEquals(0xC0A80101L, InterfaceToNodeIndex.parseIPv4("192.168.1.1"));
+        assertEquals(0xFFFFFFFFL, InterfaceToNodeIndex.parseIPv4("255.255.255.255"));
+        assertEquals(0L, InterfaceToNodeIndex.parseIPv4("0.0.0.0"));
+        assertEquals(-1, InterfaceToNodeIndex.parseIPv4("256.1.1.1"));
+        assertEquals(-1, InterfaceToNodeIndex.parseIPv4("1.1.1"));
+        assertEquals(-1, InterfaceToNodeIndex.parseIPv4("1.1.1.1.1"));
+        assertEquals(-1, InterfaceToNodeIndex.parseIPv4("1..1.1"));
+        assertEquals(-1, InterfaceToNodeIndex.parseIPv4("fe80::1"));
+        assertEquals(-1, InterfaceToNodeIndex.parseIPv4("host.example"));
+    }
+
+    private static DataSource getUnavailableDataSource() {
+        return (DataSource) Proxy.newProxyInstance(InterfaceToNodeIndexTest.class.getClassLoader(), new Class<?>[] { DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("toString".equals(method.getName())) {
+                    return "unavailable data source";
+                }
+                throw new SQLException("no database in this test");
+            }
+        });
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vacuumd;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.opennms.core.db.DataSourceFactory;
+import org.opennms.netmgt.config.vacuumd.Action;
+import org.opennms.netmgt.config.vacuumd.Statement;
+import org.opennms.netmgt.vacuumd.AutomationProcessor.ActionProcessor;
+import org.opennms.netmgt.vacuumd.AutomationProcessor.TriggerProcessor;
+import org.opennms.netmgt.vacuumd.AutomationProcessor.TriggerResults;
+import org.opennms.test.mock.EasyMockUtils;
+
+/**
+ * Tests the batching and table detection of vacuumd actions.
+ */
+public class ActionProcessorTest extends TestCase {
+
+    private static final String UPDATE_SQL = "UPDATE alarms SET severity = ${_sev} WHERE alarmid = ${_id}";
+
+    private EasyMockUtils m_ezMock = new EasyMockUtils();
+    private DataSource m_ds;
+    private Connection m_conn;
+    private PreparedStatement m_stmt;
+    private ResultSet m_rs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        m_ds = m_ezMock.createMock(DataSource.class);
+        m_conn = m_ezMock.createMock(Connection.class);
+        m_stmt = m_ezMock.createMock(PreparedStatement.class);
+        m_rs = m_ezMock.createMock(ResultSet.class);
+
+        DataSourceFactory.setInstance("ds", m_ds);
+    }
+
+    public void testActionTables() {
+        assertEquals(new TreeSet<String>(Arrays.asList("alarms")), createAction(UPDATE_SQL).getActionTables());
+        assertEquals(new TreeSet<String>(Arrays.asList("alarms")), createAction("DELETE from Alarms WHERE severity <= 3").getActionTables());
+        assertEquals(new TreeSet<String>(Arrays.asList("events", "outages")), createAction("INSERT INTO outages SELECT * FROM events; DELETE FROM events").getActionTables());
+        assertEquals(Collections.emptySet(), createAction("SELECT now()").getActionTables());
+        final ActionProcessor call = createAction("{call cleanup()}");
+        assertNull(call.getActionTables());
+        assertNull(call.getActionTables());
+    }
+
+    public void testBatchedTriggerResults() throws Exception {
+        ActionProcessor action = createAction(UPDATE_SQL);
+        action.setBatchSize(2);
+
+        expectTriggerRows(3);
+
+        m_stmt.addBatch();
+        EasyMock.expectLastCall().times(3);
+        EasyMock.expect(m_stmt.executeBatch()).andReturn(new int[] { 1, 1 });
+        EasyMock.expect(m_stmt.executeBatch()).andReturn(new int[] { java.sql.Statement.SUCCESS_NO_INFO });
+
+        m_ezMock.replayAll();
+
+        runAction(action);
+
+        m_ezMock.verifyAll();
+
+        assertEquals(3, action.getLastRowCount());
+    }
+
+    public void testUnbatchedTriggerResults() throws Exception {
+        ActionProcessor action = createAction(UPDATE_SQL);
+        action.setBatchSize(1);
+
+        expectTriggerRows(3);
+
+        EasyMock.expect(m_stmt.executeUpdate()).andReturn(1).times(2);
+        EasyMock.expect(m_stmt.executeUpdate()).andReturn(0);
+
+        m_ezMock.replayAll();
+
+        runAction(action);
+
+        m_ezMock.verifyAll();
+
+        assertEquals(2, action.getLastRowCount());
+    }
+
+    private void expectTriggerRows(int rows) throws Exception {
+        EasyMock.expect(m_ds.getConnection()).andReturn(m_conn);
+        m_conn.setAutoCommit(false);
+        EasyMock.expect(m_conn.prepareStatement("UPDATE alarms SET severity = ? WHERE alarmid = ?")).andReturn(m_stmt);
+        m_conn.commit();
+        m_conn.close();
+        m_stmt.close();
+
+        m_rs.beforeFirst();
+        // the columns are only looked up by name once
+        EasyMock.expect(m_rs.findColumn("_sev")).andReturn(2);
+        EasyMock.expect(m_rs.findColumn("_id")).andReturn(1);
+        EasyMock.expect(m_rs.next()).andReturn(true).times(rows);
+        EasyMock.expect(m_rs.next()).andReturn(false);
+        EasyMock.expect(m_rs.getObject(2)).andReturn(Integer.valueOf(5)).times(rows);
+        EasyMock.expect(m_rs.getObject(1)).andReturn(Integer.valueOf(42)).times(rows);
+
+        m_stmt.setObject(1, Integer.valueOf(5));
+        EasyMock.expectLastCall().times(rows);
+        m_stmt.setObject(2, Integer.valueOf(42));
+        EasyMock.expectLastCall().times(rows);
+    }
+
+    private void runAction(ActionProcessor action) throws Exception {
+        Transaction.begin();
+        try {
+            assertTrue(action.processTriggerResults(new TriggerResults(new TriggerProcessor("test", null), m_rs, true)));
+        } finally {
+            Transaction.end();
+        }
+    }
+
+    private static ActionProcessor createAction(String sql) {
+        return new ActionProcessor("test", new Action("testAction", "ds", new Statement(sql, true)));
+    }
+}
@@ -66,6 +66,7 @@ public class PropertiesCache {
         }
         
         private Properties read() throws IOException {
+            restoreBackup();
             if (!m_file.canRead()) {
                 return null;
             }
@@ -85,13 +86,54 @@ public class PropertiesCache {
         }
         
         private void write() throws IOException {
-            m_file.getParentFile().mkdirs();
+            final File dir = m_file.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+
+            // write a temporary file and rename it over the real one, so
+            // that readers never see a partly written file
+            final File tmp = File.createTempFile(m_file.getName(), ".tmp", dir);
             OutputStream out = null;
             try {
-                out = new FileOutputStream(m_file);
+                out = new FileOutputStream(tmp);
                 m_properties.store(out, null);
+                out.close();
+                out = null;
+                if (!tmp.renameTo(m_file)) {
+                    // renaming over an existing file fails on some platforms,
+                    // so move the old file aside first and only remove it
+                    // once the new one is in place; a crash in between
+                    // leaves the old file for read() to restore
+                    final File backup = getBackupFile();
+                    backup.delete();
+                    if (!m_file.renameTo(backup)) {
+                        throw new IOException("Unable to rename " + m_file + " to " + backup);
+                    }
+                    if (!tmp.renameTo(m_file)) {
+                        backup.renameTo(m_file);
+                        throw new IOException("Unable to rename " + tmp + " to " + m_file);
+                    }
+                    backup.delete();
+                }
             } finally {
                 IOUtils.closeQuietly(out);
+                if (tmp.exists()) {
+                    tmp.delete();
+                }
+            }
+        }
+
+        private File getBackupFile() {
+            return new File(m_file.getAbsoluteFile().getParentFile(), m_file.getName() + ".bak");
+        }
+
+        /**
+         * Put back the old file if a write was interrupted after moving it
+         * aside.
+         */
+        private void restoreBackup() {
+            final File backup = getBackupFile();
+            if (!m_file.exists() && backup.exists()) {
+                backup.renameTo(m_file);
             }
         }
 
@@ -137,8 +179,8 @@ public class PropertiesCache {
             }
         }
 
-        public void update(Map<String, String> props) throws IOException {
-            if (props == null) return;
+        public boolean update(Map<String, String> props) throws IOException {
+            if (props == null) return false;
             lock.lock();
             try {
                 boolean save = false;
@@ -151,6 +193,7 @@ public class PropertiesCache {
                 if (save) {
                     write();
                 }
+                return save;
             } finally {
                 lock.unlock();
             }
@@ -262,10 +305,11 @@ public class PropertiesCache {
      *
      * @param propFile a {@link java.io.File} object.
      * @param props a {@link java.util.Map} object.
+     * @return true if any value changed and the file was written
      * @throws java.io.IOException if any.
      */
-    public void updateProperties(File propFile, Map<String, String> props) throws IOException {
-        getHolder(propFile).update(props);
+    public boolean updateProperties(File propFile, Map<String, String> props) throws IOException {
+        return getHolder(propFile).update(props);
     }
     
     /**
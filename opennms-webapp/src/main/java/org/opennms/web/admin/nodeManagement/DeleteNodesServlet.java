@@ -49,6 +49,7 @@ import org.opennms.core.utils.WebSecurityUtils;
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.dao.support.DefaultResourceDao;
 import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.rrd.RrdUtils;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.web.api.Util;
 import org.opennms.web.svclayer.ResourceService;
@@ -106,6 +107,7 @@ public class DeleteNodesServlet extends HttpServlet {
                 } else {
                     LOG.warn("Node SNMP data directory *not* deleted successfully: {}", nodeDir.getAbsolutePath());
                 }
+                RrdUtils.getFileRegistry().forgetDirectory(nodeDir.getAbsolutePath());
             }
             
             // Response time RRD directories
@@ -119,6 +121,7 @@ public class DeleteNodesServlet extends HttpServlet {
                     } else {
                         LOG.warn("Node response time data directory *not* deleted successfully: {}", intfDir.getAbsolutePath());
                     }
+                    RrdUtils.getFileRegistry().forgetDirectory(intfDir.getAbsolutePath());
                 }
             }
         }
@@ -37,14 +37,18 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriInfo;
 
+import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.netmgt.dao.api.AcknowledgmentDao;
 import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.ResultHandler;
 import org.opennms.netmgt.model.AckAction;
 import org.opennms.netmgt.model.OnmsAcknowledgment;
 import org.opennms.netmgt.model.OnmsAlarm;
@@ -53,7 +57,10 @@ import org.opennms.web.api.Authentication;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.sun.jersey.spi.resource.PerRequest;
 
@@ -69,9 +76,15 @@ public class AlarmRestService extends AlarmRestServiceBase {
     @Autowired
     private AcknowledgmentDao m_ackDao;
 
+    @Autowired
+    private TransactionTemplate m_transactionTemplate;
+
     @Context
     UriInfo m_uriInfo;
 
+    @Context
+    HttpHeaders m_headers;
+
     @Context
     SecurityContext m_securityContext;
 
@@ -145,6 +158,63 @@ public class AlarmRestService extends AlarmRestServiceBase {
         }
     }
 
+    /**
+     * Streams the alarms which match the filter/query in the query
+     * parameters, ordered by ID, without loading them all into memory.
+     * Clients page through the results with the <code>afterId</code>
+     * parameter (the last alarm ID they have seen) and the
+     * <code>limit</code> parameter (the page size, all remaining alarms if
+     * it is left out).  Pass <code>totalCount=false</code> to skip counting
+     * the matching alarms.
+     *
+     * @return a {@link javax.ws.rs.core.Response} that writes the alarms as they are read
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @Path("stream")
+    @Transactional
+    public Response streamAlarms() {
+        readLock();
+
+        try {
+            final MultivaluedMap<String, String> params = m_uriInfo.getQueryParameters();
+            final Integer afterId = removeIntegerParameter(params, "afterId");
+            final Integer limit = removeIntegerParameter(params, "limit");
+            final boolean withTotalCount = Boolean.valueOf(removeParameter(params, "totalCount", "true"));
+            removeOffsetParameters(params);
+
+            final CriteriaBuilder builder = getCriteriaBuilder(params, false);
+
+            final Integer totalCount = withTotalCount ? m_alarmDao.countMatching(builder.clearOrder().limit(0).offset(0).toCriteria()) : null;
+            final Criteria criteria = getKeysetCriteria(builder, afterId);
+
+            final StreamingCollectionOutput<OnmsAlarm> output = new StreamingCollectionOutput<OnmsAlarm>(OnmsAlarm.class, "alarms", "alarm", StreamingCollectionOutput.getMediaType(m_headers), totalCount, limit) {
+                @Override
+                protected Object getId(final OnmsAlarm alarm) {
+                    return alarm.getId();
+                }
+
+                @Override
+                protected void scroll(final ResultHandler<OnmsAlarm> handler) {
+                    readLock();
+                    try {
+                        m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                            @Override
+                            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                                m_alarmDao.scrollMatching(criteria, handler);
+                            }
+                        });
+                    } finally {
+                        readUnlock();
+                    }
+                }
+            };
+            return Response.ok(output, output.getMediaType()).build();
+        } finally {
+            readUnlock();
+        }
+    }
+
     /**
      * <p>
      * updateAlarm
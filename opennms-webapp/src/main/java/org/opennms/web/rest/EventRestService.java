@@ -48,14 +48,19 @@ import javax.ws.rs.core.UriInfo;
 
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
+import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.dao.api.ResultHandler;
 import org.opennms.netmgt.model.OnmsEvent;
 import org.opennms.netmgt.model.OnmsEventCollection;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.sun.jersey.spi.resource.PerRequest;
 
@@ -70,6 +75,9 @@ public class EventRestService extends OnmsRestService {
     @Autowired
     private EventDao m_eventDao;
 
+    @Autowired
+    private TransactionTemplate m_transactionTemplate;
+
     @Context
     UriInfo m_uriInfo;
 
@@ -119,6 +127,64 @@ public class EventRestService extends OnmsRestService {
         }
     }
 
+    /**
+     * Streams the events which match the filter/query in the query
+     * parameters, ordered by ID, without loading them all into memory.
+     * Clients page through the results with the <code>afterId</code>
+     * parameter (the last event ID they have seen) and the
+     * <code>limit</code> parameter (the page size, all remaining events if
+     * it is left out).  Pass <code>totalCount=false</code> to skip counting
+     * the matching events.
+     *
+     * @return a {@link javax.ws.rs.core.Response} that writes the events as they are read
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @Path("stream")
+    @Transactional
+    public Response streamEvents() {
+        readLock();
+
+        try {
+            final MultivaluedMap<String, String> params = m_uriInfo.getQueryParameters();
+            final Integer afterId = removeIntegerParameter(params, "afterId");
+            final Integer limit = removeIntegerParameter(params, "limit");
+            final boolean withTotalCount = Boolean.valueOf(removeParameter(params, "totalCount", "true"));
+            removeOffsetParameters(params);
+
+            final CriteriaBuilder builder = new CriteriaBuilder(OnmsEvent.class);
+            applyQueryFilters(params, builder);
+
+            final Integer totalCount = withTotalCount ? m_eventDao.countMatching(builder.clearOrder().limit(0).offset(0).toCriteria()) : null;
+            final Criteria criteria = getKeysetCriteria(builder, afterId);
+
+            final StreamingCollectionOutput<OnmsEvent> output = new StreamingCollectionOutput<OnmsEvent>(OnmsEvent.class, "events", "event", StreamingCollectionOutput.getMediaType(m_headers), totalCount, limit) {
+                @Override
+                protected Object getId(final OnmsEvent event) {
+                    return event.getId();
+                }
+
+                @Override
+                protected void scroll(final ResultHandler<OnmsEvent> handler) {
+                    readLock();
+                    try {
+                        m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                            @Override
+                            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                                m_eventDao.scrollMatching(criteria, handler);
+                            }
+                        });
+                    } finally {
+                        readUnlock();
+                    }
+                }
+            };
+            return Response.ok(output, output.getMediaType()).build();
+        } finally {
+            readUnlock();
+        }
+    }
+
     /**
      * Returns all the events which match the filter/query in the query
      * parameters
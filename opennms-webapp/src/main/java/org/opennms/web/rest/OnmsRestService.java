@@ -47,6 +47,7 @@ import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.CriteriaBuilder;
+import org.opennms.core.criteria.restrictions.Restrictions;
 import org.opennms.netmgt.model.OnmsArpInterface.StatusType;
 import org.opennms.netmgt.model.OnmsSeverity;
 import org.opennms.netmgt.model.OnmsSeverityEditor;
@@ -245,6 +246,50 @@ public class OnmsRestService {
     	}
     }
     
+    protected Integer removeIntegerParameter(final MultivaluedMap<java.lang.String, java.lang.String> params, final String key) {
+        final String value = removeParameter(params, key);
+        if (value == null || value.trim().length() == 0) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (final NumberFormatException e) {
+            throw getException(Status.BAD_REQUEST, "Invalid value for parameter {}: {}", key, value);
+        }
+    }
+
+    /**
+     * Removes the paging and ordering parameters that do not apply to a
+     * keyset-paginated stream, which is always ordered by ID and pages with
+     * the <code>afterId</code> and <code>limit</code> parameters instead.
+     *
+     * @param params the query parameters
+     */
+    protected void removeOffsetParameters(final MultivaluedMap<java.lang.String, java.lang.String> params) {
+        params.remove("offset");
+        params.remove("start");
+        params.remove("orderBy");
+        params.remove("order");
+    }
+
+    /**
+     * Returns the criteria for one keyset page: the filters in the builder,
+     * ordered by ID and restricted to the IDs after <code>afterId</code>.
+     * The restriction is added to the finished criteria so that it still
+     * applies when the filters are matched with <code>match=any</code>.
+     *
+     * @param builder a builder with the query filters applied
+     * @param afterId the last ID the client has already seen, or null
+     * @return the criteria to scroll through
+     */
+    protected Criteria getKeysetCriteria(final CriteriaBuilder builder, final Integer afterId) {
+        final Criteria criteria = builder.clearOrder().orderBy("id").asc().limit(0).offset(0).toCriteria();
+        if (afterId != null) {
+            criteria.addRestriction(Restrictions.gt("id", afterId));
+        }
+        return criteria;
+    }
+
     /**
      * <p>throwException</p>
      *
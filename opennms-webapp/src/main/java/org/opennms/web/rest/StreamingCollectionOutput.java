@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.opennms.netmgt.dao.api.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jersey.api.json.JSONConfiguration;
+import com.sun.jersey.api.json.JSONJAXBContext;
+import com.sun.jersey.api.json.JSONMarshaller;
+
+/**
+ * Writes a collection of entities to the response one element at a time,
+ * as they are read from the database, instead of building the whole
+ * collection in memory first.
+ *
+ * The XML output has the same shape as the collection classes (e.g.
+ * <code>&lt;events totalCount="..."&gt;&lt;event&gt;...&lt;/events&gt;</code>),
+ * except that the <code>count</code> attribute is not known up front and is
+ * left out.  The JSON output is an object with a <code>totalCount</code>
+ * property and an array named after the element.  <code>totalCount</code> is
+ * left out when the client asked not to count the matches.
+ *
+ * Rows that repeat the previous entity, which happens when the query joins
+ * to collections, are skipped.
+ *
+ * @param <T> the entity type
+ */
+public abstract class StreamingCollectionOutput<T> implements StreamingOutput {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingCollectionOutput.class);
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Class<T> m_entityClass;
+    private final String m_collectionName;
+    private final String m_elementName;
+    private final MediaType m_mediaType;
+    private final Integer m_totalCount;
+    private final Integer m_limit;
+
+    /**
+     * @param entityClass the JAXB-annotated entity class
+     * @param collectionName the name of the root element
+     * @param elementName the name of each entity's element
+     * @param mediaType {@link MediaType#APPLICATION_JSON_TYPE} or {@link MediaType#APPLICATION_XML_TYPE}
+     * @param totalCount the number of matches across all pages, or null to leave it out
+     * @param limit the maximum number of entities to write, or null for no limit
+     */
+    public StreamingCollectionOutput(final Class<T> entityClass, final String collectionName, final String elementName, final MediaType mediaType, final Integer totalCount, final Integer limit) {
+        m_entityClass = entityClass;
+        m_collectionName = collectionName;
+        m_elementName = elementName;
+        m_mediaType = mediaType;
+        m_totalCount = totalCount;
+        m_limit = (limit == null || limit <= 0) ? null : limit;
+    }
+
+    /**
+     * Picks JSON or XML from the client's acceptable media types, in order of
+     * preference.  XML is the default.
+     *
+     * @param headers the request headers
+     * @return the media type to write
+     */
+    public static MediaType getMediaType(final HttpHeaders headers) {
+        final List<MediaType> acceptable = headers == null ? null : headers.getAcceptableMediaTypes();
+        if (acceptable != null) {
+            for (final MediaType type : acceptable) {
+                if (type.isCompatible(MediaType.APPLICATION_XML_TYPE)) {
+                    return MediaType.APPLICATION_XML_TYPE;
+                } else if (type.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                    return MediaType.APPLICATION_JSON_TYPE;
+                }
+            }
+        }
+        return MediaType.APPLICATION_XML_TYPE;
+    }
+
+    /**
+     * @return the media type this output writes
+     */
+    public MediaType getMediaType() {
+        return m_mediaType;
+    }
+
+    /**
+     * Read the matching entities from the database, in order, and pass
+     * them to the handler.  Implementations are responsible for opening a
+     * transaction, since this is called after the resource method returned.
+     *
+     * @param handler the handler that writes each entity
+     */
+    protected abstract void scroll(ResultHandler<T> handler);
+
+    /**
+     * @param entity an entity
+     * @return the ID of the entity, used to skip repeated rows
+     */
+    protected abstract Object getId(T entity);
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(output, ENCODING));
+        final boolean json = MediaType.APPLICATION_JSON_TYPE.isCompatible(m_mediaType);
+
+        final EntityWriter entityWriter;
+        try {
+            entityWriter = json ? new JsonEntityWriter(writer) : new XmlEntityWriter(writer);
+        } catch (final JAXBException e) {
+            throw new IOException("Unable to create a marshaller for " + m_entityClass.getName(), e);
+        }
+
+        entityWriter.start();
+
+        final long start = System.currentTimeMillis();
+        final int[] written = new int[1];
+        try {
+            scroll(new ResultHandler<T>() {
+                private Object m_lastId;
+
+                @Override
+                public boolean handleResult(final T result) {
+                    final Object id = getId(result);
+                    if (id != null && id.equals(m_lastId)) {
+                        return true;
+                    }
+                    m_lastId = id;
+
+                    if (m_limit != null && written[0] >= m_limit) {
+                        return false;
+                    }
+                    try {
+                        entityWriter.write(result, written[0] == 0);
+                    } catch (final Exception e) {
+                        throw new StreamingException(e);
+                    }
+                    written[0]++;
+                    return true;
+                }
+            });
+        } catch (final StreamingException e) {
+            throw new IOException("Unable to write " + m_elementName + " " + (written[0] + 1), e.getCause());
+        }
+
+        entityWriter.finish();
+        writer.flush();
+        LOG.debug("Streamed {} {} elements in {} ms.", written[0], m_elementName, System.currentTimeMillis() - start);
+    }
+
+    private interface EntityWriter {
+        void start() throws IOException;
+        void write(Object entity, boolean first) throws IOException, JAXBException;
+        void finish() throws IOException;
+    }
+
+    private final class XmlEntityWriter implements EntityWriter {
+        private final Writer m_writer;
+        private final Marshaller m_marshaller;
+
+        public XmlEntityWriter(final Writer writer) throws JAXBException {
+            m_writer = writer;
+            m_marshaller = JAXBContext.newInstance(m_entityClass).createMarshaller();
+            m_marshaller.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
+            m_marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        }
+
+        @Override
+        public void start() throws IOException {
+            m_writer.write("<?xml version=\"1.0\" encoding=\"" + ENCODING + "\" standalone=\"yes\"?>");
+            m_writer.write("<" + m_collectionName);
+            if (m_totalCount != null) {
+                m_writer.write(" totalCount=\"" + m_totalCount + "\"");
+            }
+            m_writer.write(">");
+        }
+
+        @Override
+        public void write(final Object entity, final boolean first) throws JAXBException {
+            m_marshaller.marshal(entity, m_writer);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            m_writer.write("</" + m_collectionName + ">");
+        }
+    }
+
+    private final class JsonEntityWriter implements EntityWriter {
+        private final Writer m_writer;
+        private final JSONMarshaller m_marshaller;
+
+        public JsonEntityWriter(final Writer writer) throws JAXBException {
+            m_writer = writer;
+            m_marshaller = new JSONJAXBContext(JSONConfiguration.DEFAULT, m_entityClass).createJSONMarshaller();
+        }
+
+        @Override
+        public void start() throws IOException {
+            m_writer.write("{");
+            if (m_totalCount != null) {
+                m_writer.write("\"totalCount\":" + m_totalCount + ",");
+            }
+            m_writer.write("\"" + m_elementName + "\":[");
+        }
+
+        @Override
+        public void write(final Object entity, final boolean first) throws IOException, JAXBException {
+            if (!first) {
+                m_writer.write(",");
+            }
+            m_marshaller.marshallToJSON(entity, m_writer);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            m_writer.write("]}");
+        }
+    }
+
+    /**
+     * Carries a write failure out of the result handler.
+     */
+    private static final class StreamingException extends RuntimeException {
+        private static final long serialVersionUID = -2185226617312866424L;
+
+        public StreamingException(final Throwable cause) {
+            super(cause);
+        }
+    }
+}
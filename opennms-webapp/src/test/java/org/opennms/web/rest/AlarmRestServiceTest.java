@@ -28,6 +28,7 @@
 
 package org.opennms.web.rest;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -119,6 +120,20 @@ public class AlarmRestServiceTest extends AbstractSpringJerseyRestTestCase {
         assertTrue(xml.contains("<nodeLabel>node1</nodeLabel>"));
     }
 
+    @Test
+    @JUnitTemporaryDatabase
+    public void testStreamAlarms() throws Exception {
+        // node1 has several interfaces, so the joined rows for the alarm must only be written once
+        String xml = sendRequest(GET, "/alarms/stream", parseParamData("node.label=node1"), 200);
+        assertTrue(xml.contains("<alarms totalCount=\"1\">"));
+        assertTrue(xml.contains("This is a test alarm"));
+        assertEquals(1, xml.split("</alarm>", -1).length - 1);
+
+        xml = sendRequest(GET, "/alarms/stream", parseParamData("node.label=node1&totalCount=false&afterId=1"), 200);
+        assertFalse(xml.contains("totalCount"));
+        assertFalse(xml.contains("This is a test alarm"));
+    }
+
     @Test
     @JUnitTemporaryDatabase
     public void testAlarmQueryByNode() throws Exception {
@@ -28,8 +28,16 @@
 
 package org.opennms.web.rest;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.opennms.core.test.MockLogAppender;
@@ -37,7 +45,10 @@ import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
 import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
 import org.opennms.core.test.rest.AbstractSpringJerseyRestTestCase;
 import org.opennms.netmgt.dao.DatabasePopulator;
+import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.model.OnmsEvent;
 import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.transaction.annotation.Transactional;
@@ -88,4 +99,65 @@ public class EventRestServiceTest extends AbstractSpringJerseyRestTestCase {
         xml = sendRequest(GET, "/events/between", parseParamData("end=2010-01-01T01:00:00Z"), 200);
         assertTrue(xml.contains("totalCount=\"0\""));
     }
+
+    @Test
+    public void testStream() throws Exception {
+        final OnmsDistPoller distPoller = m_databasePopulator.getDistPollerDao().get("localhost");
+        final List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 4; i++) {
+            final OnmsEvent event = new OnmsEvent();
+            event.setDistPoller(distPoller);
+            event.setEventUei("uei.opennms.org/test/stream");
+            event.setEventTime(new Date());
+            event.setEventSource("test");
+            event.setEventCreateTime(new Date());
+            event.setEventSeverity(1);
+            event.setEventLog("Y");
+            event.setEventDisplay("Y");
+            m_databasePopulator.getEventDao().save(event);
+            ids.add(event.getId());
+        }
+        m_databasePopulator.getEventDao().flush();
+
+        String xml = sendRequest(GET, "/events/stream", parseParamData("eventUei=uei.opennms.org/test/stream"), 200);
+        assertTrue(xml.contains("<events totalCount=\"4\">"));
+        assertEquals(4, countMatches(xml, "</event>"));
+
+        // first page
+        xml = sendRequest(GET, "/events/stream", parseParamData("eventUei=uei.opennms.org/test/stream&limit=2"), 200);
+        assertTrue(xml.contains("totalCount=\"4\""));
+        assertEquals(2, countMatches(xml, "</event>"));
+        assertTrue(xml.contains("id=\"" + ids.get(0) + "\""));
+        assertTrue(xml.contains("id=\"" + ids.get(1) + "\""));
+
+        // second page, without counting
+        xml = sendRequest(GET, "/events/stream", parseParamData("eventUei=uei.opennms.org/test/stream&limit=2&totalCount=false&afterId=" + ids.get(1)), 200);
+        assertFalse(xml.contains("totalCount"));
+        assertEquals(2, countMatches(xml, "</event>"));
+        assertFalse(xml.contains("id=\"" + ids.get(1) + "\""));
+        assertTrue(xml.contains("id=\"" + ids.get(2) + "\""));
+        assertTrue(xml.contains("id=\"" + ids.get(3) + "\""));
+
+        // past the end
+        xml = sendRequest(GET, "/events/stream", parseParamData("eventUei=uei.opennms.org/test/stream&afterId=" + ids.get(3)), 200);
+        assertTrue(xml.contains("<events totalCount=\"4\"></events>"));
+
+        final MockHttpServletRequest request = createRequest(getServletContext(), GET, "/events/stream");
+        request.addHeader("Accept", MediaType.APPLICATION_JSON);
+        request.setParameters(parseParamData("eventUei=uei.opennms.org/test/stream&limit=3"));
+        request.setQueryString("eventUei=uei.opennms.org/test/stream&limit=3");
+        final String json = sendRequest(request, 200);
+        assertTrue(json.startsWith("{\"totalCount\":4,\"event\":["));
+        assertTrue(json.endsWith("]}"));
+
+        sendRequest(GET, "/events/stream", parseParamData("afterId=foo"), 400);
+    }
+
+    private static int countMatches(final String string, final String substring) {
+        int count = 0;
+        for (int i = string.indexOf(substring); i >= 0; i = string.indexOf(substring, i + substring.length())) {
+            count++;
+        }
+        return count;
+    }
 }